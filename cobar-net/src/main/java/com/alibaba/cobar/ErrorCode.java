@@ -494,6 +494,7 @@ public interface ErrorCode {
     int ER_PARTITION_WRONG_NO_SUBPART_ERROR = 1459;
     int ER_CONST_EXPR_IN_PARTITION_FUNC_ERROR = 1460;
     int ER_NO_CONST_EXPR_IN_RANGE_OR_LIST_ERROR = 1461;
+    int ER_MAX_PREPARED_STMT_COUNT_REACHED = 1461;
     int ER_FIELD_NOT_FOUND_PART_ERROR = 1462;
     int ER_LIST_OF_FIELDS_ONLY_IN_HASH_ERROR = 1463;
     int ER_INCONSISTENT_PARTITION_INFO_ERROR = 1464;
@@ -22,13 +22,20 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
 
 import com.alibaba.cobar.ErrorCode;
-import com.alibaba.cobar.net.buffer.BufferPool;
+import com.alibaba.cobar.net.buffer.BufferArena;
 import com.alibaba.cobar.net.buffer.BufferQueue;
+import com.alibaba.cobar.net.buffer.BufferReference;
+import com.alibaba.cobar.net.buffer.PacketSlice;
+import com.alibaba.cobar.net.handler.NIOSliceHandler;
+import com.alibaba.cobar.net.util.StripedCounter;
 import com.alibaba.cobar.net.util.TimeUtil;
 
 /**
@@ -46,6 +53,7 @@ public abstract class AbstractConnection implements NIOConnection {
     protected int maxPacketSize;
     protected int readBufferOffset;
     protected ByteBuffer readBuffer;
+    private BufferReference readReference;
     protected BufferQueue writeQueue;
     protected final ReentrantLock writeLock;
     protected boolean isRegistered;
@@ -54,18 +62,35 @@ public abstract class AbstractConnection implements NIOConnection {
     protected long startupTime;
     protected long lastReadTime;
     protected long lastWriteTime;
-    protected long netInBytes;
-    protected long netOutBytes;
+    protected final StripedCounter netInBytes;
+    protected final StripedCounter netOutBytes;
     protected int writeAttempts;
+    protected int writeGatherSize;
+    protected boolean writeThrough;
+    protected int writeHighWatermark;
+    protected int writeLowWatermark;
+    private final Queue<Runnable> writableTasks = new ConcurrentLinkedQueue<Runnable>();
+    protected boolean compress;
+    protected int compressThreshold;
+    private volatile PacketCompressor compressor;
+    private final ReentrantLock compressLock;
+    private ByteBuffer compressBuffer;
+    private ByteBuffer[] gatherBuffers;
+    private int gatherOffset;
+    private int gatherLength;
+    private boolean gatherClosing;
 
     public AbstractConnection(SocketChannel channel) {
         this.channel = channel;
         this.keyLock = new ReentrantLock();
         this.writeLock = new ReentrantLock();
+        this.compressLock = new ReentrantLock();
         this.isClosed = new AtomicBoolean(false);
         this.startupTime = TimeUtil.currentTimeMillis();
         this.lastReadTime = startupTime;
         this.lastWriteTime = startupTime;
+        this.netInBytes = new StripedCounter();
+        this.netOutBytes = new StripedCounter();
     }
 
     public SocketChannel getChannel() {
@@ -101,17 +126,139 @@ public abstract class AbstractConnection implements NIOConnection {
     }
 
     public long getNetInBytes() {
-        return netInBytes;
+        return netInBytes.sum();
     }
 
     public long getNetOutBytes() {
-        return netOutBytes;
+        return netOutBytes.sum();
     }
 
     public int getWriteAttempts() {
         return writeAttempts;
     }
 
+    public int getWriteGatherSize() {
+        return writeGatherSize;
+    }
+
+    /**
+     * 设置一次写操作最多聚集的缓存块个数，小于等于1时每次只写出一个缓存块。
+     */
+    public void setWriteGatherSize(int writeGatherSize) {
+        this.writeGatherSize = writeGatherSize;
+    }
+
+    public boolean isWriteThrough() {
+        return writeThrough;
+    }
+
+    /**
+     * 设置为true时由提交数据的线程直接写出，写不完才注册写事件，不再经过Reactor的W线程。
+     */
+    public void setWriteThrough(boolean writeThrough) {
+        this.writeThrough = writeThrough;
+    }
+
+    public int getWriteHighWatermark() {
+        return writeHighWatermark;
+    }
+
+    /**
+     * 设置发送队列的高水位(缓存块个数)，超过时数据生产方应暂停，小于等于0时不限制。
+     */
+    public void setWriteHighWatermark(int writeHighWatermark) {
+        this.writeHighWatermark = writeHighWatermark;
+    }
+
+    public int getWriteLowWatermark() {
+        return writeLowWatermark;
+    }
+
+    /**
+     * 设置发送队列的低水位(缓存块个数)，降到该值及以下时恢复暂停的数据生产方。
+     */
+    public void setWriteLowWatermark(int writeLowWatermark) {
+        this.writeLowWatermark = writeLowWatermark;
+    }
+
+    /**
+     * 发送队列是否低于高水位
+     */
+    public boolean isWritable() {
+        int high = writeHighWatermark;
+        return high <= 0 || writeQueue.size() < high;
+    }
+
+    /**
+     * 登记发送队列降到低水位时执行的任务，如果已经低于低水位或连接已关闭则立即执行。
+     * 任务在写线程中执行，只应做重新调度之类的轻量操作。
+     */
+    public void onWritable(Runnable task) {
+        writableTasks.offer(task);
+        // 登记之后再检查一次，避免登记前队列已经写空而错过通知。
+        notifyWritable();
+    }
+
+    /**
+     * 发送队列降到低水位或连接关闭时执行登记的任务
+     */
+    private void notifyWritable() {
+        if (writableTasks.isEmpty()) {
+            return;
+        }
+        if (!isClosed.get() && writeQueue.size() > writeLowWatermark) {
+            return;
+        }
+        Runnable task = null;
+        while ((task = writableTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * 设置是否允许协商MySQL压缩协议(CLIENT_COMPRESS)
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    /**
+     * 设置压缩阈值，小于该长度的数据以未压缩帧发送。
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 是否已启用压缩协议
+     */
+    public boolean isCompressed() {
+        return compressor != null;
+    }
+
+    /**
+     * 启用压缩协议，此后读写的数据都按压缩帧编解码。
+     * 
+     * @param plain 启用前最后一个以明文发送的缓存，如认证成功的OK包，可以为null。
+     * @param client 当前连接是否作为客户端
+     */
+    public void startCompress(ByteBuffer plain, boolean client) {
+        PacketCompressor compressor = new PacketCompressor(client, compressThreshold);
+        this.compressor = compressor;
+        if (plain != null) {
+            write(plain);
+        }
+        compressor.startWriting();
+    }
+
     public NIOProcessor getProcessor() {
         return processor;
     }
@@ -132,14 +279,14 @@ public abstract class AbstractConnection implements NIOConnection {
      * 分配缓存
      */
     public ByteBuffer allocate() {
-        return processor.getBufferPool().allocate();
+        return processor.getBufferArena().allocate();
     }
 
     /**
      * 回收缓存
      */
     public void recycle(ByteBuffer buffer) {
-        processor.getBufferPool().recycle(buffer);
+        processor.getBufferArena().recycle(buffer);
     }
 
     @Override
@@ -156,16 +303,27 @@ public abstract class AbstractConnection implements NIOConnection {
 
     @Override
     public void read() throws IOException {
-        ByteBuffer buffer = this.readBuffer;
+        PacketCompressor compressor = this.compressor;
+        ByteBuffer buffer = (compressor == null) ? this.readBuffer : getCompressBuffer();
         int got = channel.read(buffer);
         lastReadTime = TimeUtil.currentTimeMillis();
         if (got < 0) {
             throw new EOFException();
         }
-        netInBytes += got;
+        netInBytes.add(got);
         processor.addNetInBytes(got);
 
-        // 处理数据
+        // 压缩协议下先解码出完整的帧
+        if (compressor != null && !decompress(compressor, buffer)) {
+            return;
+        }
+        handlePackets(this.readBuffer);
+    }
+
+    /**
+     * 处理ReadBuffer中的数据包
+     */
+    private void handlePackets(ByteBuffer buffer) {
         int offset = readBufferOffset, length = 0, position = buffer.position();
         for (;;) {
             length = getPacketLength(buffer, offset);
@@ -177,10 +335,15 @@ public abstract class AbstractConnection implements NIOConnection {
             }
             if (position >= offset + length) {
                 // 提取一个数据包的数据进行处理                
-                buffer.position(offset);
-                byte[] data = new byte[length];
-                buffer.get(data, 0, length);
-                handleData(data);
+                NIOSliceHandler sliceHandler = getSliceHandler();
+                if (sliceHandler != null) {
+                    handleSlice(sliceHandler, slice(buffer, offset, length));
+                } else {
+                    buffer.position(offset);
+                    byte[] data = new byte[length];
+                    buffer.get(data, 0, length);
+                    handleData(data);
+                }
 
                 // 设置偏移量
                 offset += length;
@@ -188,7 +351,7 @@ public abstract class AbstractConnection implements NIOConnection {
                     if (readBufferOffset != 0) {
                         readBufferOffset = 0;
                     }
-                    buffer.clear();
+                    shrinkReadBuffer(buffer);
                     break;
                 } else {// 还有剩余数据未处理
                     readBufferOffset = offset;
@@ -204,6 +367,21 @@ public abstract class AbstractConnection implements NIOConnection {
         }
     }
 
+    /**
+     * 返回非null时，数据包以读缓存切片的形式交给该处理器，不再复制为byte[]。
+     */
+    protected NIOSliceHandler getSliceHandler() {
+        return null;
+    }
+
+    protected void handleSlice(NIOSliceHandler handler, PacketSlice slice) {
+        try {
+            handler.handle(slice);
+        } catch (Throwable e) {
+            handleError(ErrorCode.ERR_HANDLE_DATA, e);
+        }
+    }
+
     public void write(byte[] data) {
         ByteBuffer buffer = allocate();
         buffer = writeToBuffer(data, buffer);
@@ -213,19 +391,35 @@ public abstract class AbstractConnection implements NIOConnection {
     @Override
     public void write(ByteBuffer buffer) {
         if (isClosed.get()) {
-            processor.getBufferPool().recycle(buffer);
+            processor.getBufferArena().recycle(buffer);
             return;
         }
         if (isRegistered) {
             try {
-                writeQueue.put(buffer);
+                PacketCompressor compressor = this.compressor;
+                if (compressor != null && compressor.isWriting() && buffer.position() > 0) {
+                    if (!writeCompressed(compressor, buffer)) {
+                        return;
+                    }
+                } else {
+                    writeQueue.put(buffer);
+                }
             } catch (InterruptedException e) {
                 handleError(ErrorCode.ERR_PUT_WRITE_QUEUE, e);
                 return;
             }
-            processor.postWrite(this);
+            // 与close()并发时cleanup()可能已清空发送队列，之后放入的缓存由写入方回收
+            if (isClosed.get()) {
+                recycleWriteQueue();
+                return;
+            }
+            if (writeThrough) {
+                writeByCaller();
+            } else {
+                processor.postWrite(this);
+            }
         } else {
-            processor.getBufferPool().recycle(buffer);
+            processor.getBufferArena().recycle(buffer);
             close();
         }
     }
@@ -247,6 +441,29 @@ public abstract class AbstractConnection implements NIOConnection {
         } finally {
             lock.unlock();
         }
+        notifyWritable();
+    }
+
+    /**
+     * 在提交数据的线程中直接写出，逻辑同writeByQueue()。
+     */
+    private void writeByCaller() {
+        if (isClosed.get()) {
+            return;
+        }
+        final ReentrantLock lock = this.writeLock;
+        lock.lock();
+        try {
+            // 已注册写事件时由R线程负责写出
+            if ((processKey.interestOps() & SelectionKey.OP_WRITE) == 0 && !write0()) {
+                enableWrite();
+            }
+        } catch (Throwable e) {
+            handleError(ErrorCode.ERR_WRITE_BY_QUEUE, e);
+        } finally {
+            lock.unlock();
+        }
+        notifyWritable();
     }
 
     @Override
@@ -266,6 +483,7 @@ public abstract class AbstractConnection implements NIOConnection {
         } finally {
             lock.unlock();
         }
+        notifyWritable();
     }
 
     /**
@@ -297,13 +515,61 @@ public abstract class AbstractConnection implements NIOConnection {
         }
     }
 
+    /**
+     * 把缓存中的数据编码为压缩帧后放入发送队列，帧可以跨越多个缓存块。
+     * 编码与入队在compressLock内完成，保证压缩序号与发送顺序一致；入队可能阻塞，但不占用压缩器的锁，
+     * cleanup()释放压缩器时不会被阻塞。
+     * 
+     * @return 连接已关闭时返回false，buffer已回收
+     */
+    private boolean writeCompressed(PacketCompressor compressor, ByteBuffer buffer) throws InterruptedException {
+        BufferArena arena = processor.getBufferArena();
+        final ReentrantLock lock = this.compressLock;
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            arena.recycle(buffer);
+            throw e;
+        }
+        try {
+            int length = isClosed.get() ? -1 : compressor.compress(buffer);
+            arena.recycle(buffer);
+            if (length < 0) {
+                return false;
+            }
+            byte[] frame = compressor.getOutput();
+            int offset = 0;
+            while (offset < length) {
+                ByteBuffer out = arena.allocate();
+                int n = Math.min(out.remaining(), length - offset);
+                out.put(frame, offset, n);
+                offset += n;
+                writeQueue.put(out);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 回收发送队列中的缓存
+     */
+    private void recycleWriteQueue() {
+        BufferArena pool = processor.getBufferArena();
+        ByteBuffer buffer;
+        while ((buffer = writeQueue.poll()) != null) {
+            pool.recycle(buffer);
+        }
+    }
+
     /**
      * 检查WriteBuffer容量，不够则写出当前缓存块并申请新的缓存块。
      */
     public ByteBuffer checkWriteBuffer(ByteBuffer buffer, int capacity) {
         if (capacity > buffer.remaining()) {
             write(buffer);
-            return processor.getBufferPool().allocate();
+            return processor.getBufferArena().allocate();
         } else {
             return buffer;
         }
@@ -323,7 +589,31 @@ public abstract class AbstractConnection implements NIOConnection {
             } else {
                 buffer.put(src, offset, remaining);
                 write(buffer);
-                buffer = processor.getBufferPool().allocate();
+                buffer = processor.getBufferArena().allocate();
+                offset += remaining;
+                length -= remaining;
+                remaining = buffer.remaining();
+                continue;
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * 把数据包切片写到给定的缓存中，如果满了则提交当前缓存并申请新的缓存。
+     */
+    public ByteBuffer writeToBuffer(PacketSlice src, ByteBuffer buffer) {
+        int offset = 0;
+        int length = src.length();
+        int remaining = buffer.remaining();
+        while (length > 0) {
+            if (remaining >= length) {
+                src.writeTo(buffer, offset, length);
+                break;
+            } else {
+                src.writeTo(buffer, offset, remaining);
+                write(buffer);
+                buffer = processor.getBufferArena().allocate();
                 offset += remaining;
                 length -= remaining;
                 remaining = buffer.remaining();
@@ -339,7 +629,10 @@ public abstract class AbstractConnection implements NIOConnection {
             return false;
         } else {
             if (closeSocket()) {
-                return isClosed.compareAndSet(false, true);
+                boolean closed = isClosed.compareAndSet(false, true);
+                // 唤醒等待发送队列的数据生产方，由其自行结束
+                notifyWritable();
+                return closed;
             } else {
                 return false;
             }
@@ -359,20 +652,48 @@ public abstract class AbstractConnection implements NIOConnection {
      * 清理遗留资源
      */
     protected void cleanup() {
-        BufferPool pool = processor.getBufferPool();
+        BufferArena pool = processor.getBufferArena();
         ByteBuffer buffer = null;
 
         // 回收接收缓存
         buffer = this.readBuffer;
         if (buffer != null) {
             this.readBuffer = null;
-            pool.recycle(buffer);
+            recycleReadBuffer(buffer);
         }
 
         // 回收发送缓存
-        while ((buffer = writeQueue.poll()) != null) {
+        recycleWriteQueue();
+
+        // 释放压缩协议的资源
+        PacketCompressor compressor = this.compressor;
+        if (compressor != null) {
+            compressor.end();
+        }
+        buffer = this.compressBuffer;
+        if (buffer != null) {
+            this.compressBuffer = null;
             pool.recycle(buffer);
         }
+
+        // 回收聚集写遗留的缓存
+        final ReentrantLock lock = this.writeLock;
+        lock.lock();
+        try {
+            ByteBuffer[] buffers = this.gatherBuffers;
+            if (buffers != null) {
+                for (int i = 0; i < buffers.length; i++) {
+                    if (buffers[i] != null) {
+                        pool.recycle(buffers[i]);
+                        buffers[i] = null;
+                    }
+                }
+                gatherOffset = 0;
+                gatherLength = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -400,12 +721,21 @@ public abstract class AbstractConnection implements NIOConnection {
             }
             int size = buffer.capacity() << 1;
             size = (size > maxPacketSize) ? maxPacketSize : size;
-            ByteBuffer newBuffer = ByteBuffer.allocate(size);
+            ByteBuffer newBuffer = processor.getBufferArena().allocate(size);
             buffer.position(offset);
             newBuffer.put(buffer);
             readBuffer = newBuffer;
             // 回收扩容前的缓存块
-            processor.getBufferPool().recycle(buffer);
+            recycleReadBuffer(buffer);
+            return newBuffer;
+        } else if (readReference != null) {
+            // 缓存块仍被数据包切片引用，不能原地移动，把剩余数据复制到新的缓存块
+            ByteBuffer newBuffer = processor.getBufferArena().allocate(buffer.capacity());
+            buffer.position(offset);
+            newBuffer.put(buffer);
+            readBuffer = newBuffer;
+            readBufferOffset = 0;
+            recycleReadBuffer(buffer);
             return newBuffer;
         } else {
             buffer.position(offset);
@@ -415,46 +745,239 @@ public abstract class AbstractConnection implements NIOConnection {
         }
     }
 
+    /**
+     * 数据处理完毕后，把扩容过的ReadBuffer归还并换回最小的缓存块。
+     */
+    private void shrinkReadBuffer(ByteBuffer buffer) {
+        BufferArena arena = processor.getBufferArena();
+        if (readReference != null || buffer.capacity() > arena.getChunkSize()) {
+            readBuffer = arena.allocate();
+            recycleReadBuffer(buffer);
+        } else {
+            buffer.clear();
+        }
+    }
+
+    private ByteBuffer getCompressBuffer() {
+        ByteBuffer buffer = compressBuffer;
+        if (buffer == null) {
+            compressBuffer = buffer = processor.getBufferArena().allocate();
+        }
+        return buffer;
+    }
+
+    /**
+     * 解码CompressBuffer中所有完整的压缩帧，明文追加到ReadBuffer。
+     * 
+     * @return 是否解码出了数据
+     */
+    private boolean decompress(PacketCompressor compressor, ByteBuffer buffer) throws IOException {
+        BufferArena arena = processor.getBufferArena();
+        int offset = 0, position = buffer.position();
+        boolean decoded = false;
+        while (position - offset >= PacketCompressor.HEADER_SIZE) {
+            int length = PacketCompressor.HEADER_SIZE + PacketCompressor.getLength(buffer, offset);
+            if (position < offset + length) {
+                break;
+            }
+            ensureReadBuffer(PacketCompressor.getPlainLength(buffer, offset));
+            try {
+                compressor.decompress(buffer, offset, readBuffer);
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+            offset += length;
+            decoded = true;
+        }
+
+        // 整理未解码的数据，单个帧超过缓存容量时扩容
+        if (offset == position) {
+            if (buffer.capacity() > arena.getChunkSize()) {
+                compressBuffer = arena.allocate();
+                arena.recycle(buffer);
+            } else {
+                buffer.clear();
+            }
+        } else if (offset > 0) {
+            buffer.limit(position);
+            buffer.position(offset);
+            buffer.compact();
+        } else if (!buffer.hasRemaining()) {
+            int size = PacketCompressor.HEADER_SIZE + PacketCompressor.getLength(buffer, 0);
+            if (size > maxPacketSize + PacketCompressor.HEADER_SIZE) {
+                throw new IllegalArgumentException("Packet size over the limit.");
+            }
+            ByteBuffer newBuffer = arena.allocate(size);
+            buffer.flip();
+            newBuffer.put(buffer);
+            compressBuffer = newBuffer;
+            arena.recycle(buffer);
+        }
+        return decoded;
+    }
+
+    /**
+     * 确保ReadBuffer至少还能写入size个字节，必要时整理或扩容。
+     */
+    private void ensureReadBuffer(int size) {
+        ByteBuffer buffer = readBuffer;
+        if (buffer.remaining() >= size) {
+            return;
+        }
+        int offset = readBufferOffset, position = buffer.position();
+        int need = position - offset + size;
+        if (readReference == null && buffer.capacity() >= need) {
+            buffer.limit(position);
+            buffer.position(offset);
+            buffer.compact();
+        } else {
+            ByteBuffer newBuffer = processor.getBufferArena().allocate(Math.max(need, buffer.capacity()));
+            ByteBuffer view = buffer.duplicate();
+            view.limit(position);
+            view.position(offset);
+            newBuffer.put(view);
+            readBuffer = newBuffer;
+            recycleReadBuffer(buffer);
+        }
+        readBufferOffset = 0;
+    }
+
+    /**
+     * 从ReadBuffer中切出一个数据包，首次切片时为ReadBuffer建立引用计数。
+     */
+    private PacketSlice slice(ByteBuffer buffer, int offset, int length) {
+        BufferReference ref = readReference;
+        if (ref == null) {
+            readReference = ref = new BufferReference(buffer, processor.getBufferArena());
+        }
+        ref.retain();
+        return new PacketSlice(ref, offset, length);
+    }
+
+    /**
+     * 回收ReadBuffer，被切片引用时只释放连接自身持有的引用。
+     */
+    private void recycleReadBuffer(ByteBuffer buffer) {
+        BufferReference ref = readReference;
+        if (ref != null) {
+            readReference = null;
+            ref.release();
+        } else {
+            processor.getBufferArena().recycle(buffer);
+        }
+    }
+
     private boolean write0() throws IOException {
+        if (writeGatherSize > 1) {
+            return gatheringWrite0();
+        }
+
         // 检查是否有遗留数据未写出
         ByteBuffer buffer = writeQueue.attachment();
         if (buffer != null) {
             int written = channel.write(buffer);
             if (written > 0) {
-                netOutBytes += written;
+                netOutBytes.add(written);
                 processor.addNetOutBytes(written);
             }
             lastWriteTime = TimeUtil.currentTimeMillis();
             if (buffer.hasRemaining()) {
+                processor.addWrites(0);
                 writeAttempts++;
                 return false;
             } else {
+                processor.addWrites(1);
                 writeQueue.attach(null);
-                processor.getBufferPool().recycle(buffer);
+                processor.getBufferArena().recycle(buffer);
             }
         }
         // 写出发送队列中的数据块
         if ((buffer = writeQueue.poll()) != null) {
             // 如果是一块未使用过的buffer，则执行关闭连接。
             if (buffer.position() == 0) {
-                processor.getBufferPool().recycle(buffer);
+                processor.getBufferArena().recycle(buffer);
                 close();
                 return true;
             }
             buffer.flip();
             int written = channel.write(buffer);
             if (written > 0) {
-                netOutBytes += written;
+                netOutBytes.add(written);
                 processor.addNetOutBytes(written);
             }
             lastWriteTime = TimeUtil.currentTimeMillis();
             if (buffer.hasRemaining()) {
+                processor.addWrites(0);
                 writeQueue.attach(buffer);
                 writeAttempts++;
                 return false;
             } else {
-                processor.getBufferPool().recycle(buffer);
+                processor.addWrites(1);
+                processor.getBufferArena().recycle(buffer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 聚集写：从发送队列中一次取出多个缓存块，通过一次系统调用写出。
+     * 未写完的缓存块保留在gatherBuffers中，下次写操作时优先写出。
+     */
+    private boolean gatheringWrite0() throws IOException {
+        ByteBuffer[] buffers = this.gatherBuffers;
+        if (buffers == null) {
+            buffers = this.gatherBuffers = new ByteBuffer[writeGatherSize];
+        }
+
+        // 没有遗留数据时，从发送队列中取出一批数据块。
+        if (gatherLength == 0) {
+            int count = writeQueue.drainTo(buffers, 0, buffers.length);
+            for (int i = 0; i < count; i++) {
+                ByteBuffer buffer = buffers[i];
+                // 如果是一块未使用过的buffer，则写出之前的数据后关闭连接。
+                if (buffer.position() == 0) {
+                    for (int j = i; j < count; j++) {
+                        processor.getBufferArena().recycle(buffers[j]);
+                        buffers[j] = null;
+                    }
+                    count = i;
+                    gatherClosing = true;
+                    break;
+                }
+                buffer.flip();
             }
+            gatherOffset = 0;
+            gatherLength = count;
+        }
+
+        // 写出数据
+        if (gatherLength > 0) {
+            long written = channel.write(buffers, gatherOffset, gatherLength);
+            if (written > 0) {
+                netOutBytes.add(written);
+                processor.addNetOutBytes(written);
+            }
+            lastWriteTime = TimeUtil.currentTimeMillis();
+
+            // 回收已经写完的缓存块
+            int finished = 0;
+            while (gatherLength > 0 && !buffers[gatherOffset].hasRemaining()) {
+                processor.getBufferArena().recycle(buffers[gatherOffset]);
+                buffers[gatherOffset++] = null;
+                --gatherLength;
+                ++finished;
+            }
+            processor.addWrites(finished);
+            if (gatherLength > 0) {
+                writeAttempts++;
+                return false;
+            }
+        }
+
+        // 遇到未使用过的buffer，则执行关闭连接。
+        if (gatherClosing) {
+            gatherClosing = false;
+            close();
         }
         return true;
     }
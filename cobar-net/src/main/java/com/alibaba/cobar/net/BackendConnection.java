@@ -23,6 +23,7 @@ import java.nio.channels.SocketChannel;
 
 import com.alibaba.cobar.ErrorCode;
 import com.alibaba.cobar.net.handler.NIOHandler;
+import com.alibaba.cobar.net.handler.NIOSliceHandler;
 import com.alibaba.cobar.net.util.TimeUtil;
 
 /**
@@ -38,6 +39,7 @@ public abstract class BackendConnection extends AbstractConnection {
     protected NIOConnector connector;
     protected NIOHandler handler;
     protected boolean isFinishConnect;
+    protected NIOProcessor affinity;
 
     public BackendConnection(SocketChannel channel) {
         super(channel);
@@ -87,6 +89,17 @@ public abstract class BackendConnection extends AbstractConnection {
         return TimeUtil.currentTimeMillis() > Math.max(lastWriteTime, lastReadTime) + idleTimeout;
     }
 
+    public NIOProcessor getAffinity() {
+        return affinity;
+    }
+
+    /**
+     * 连接建立后注册到该处理器，为空时由连接器的{@link ProcessorSelector}选择。
+     */
+    public void setAffinity(NIOProcessor affinity) {
+        this.affinity = affinity;
+    }
+
     public void setConnector(NIOConnector connector) {
         this.connector = connector;
     }
@@ -109,7 +122,7 @@ public abstract class BackendConnection extends AbstractConnection {
 
     public void setProcessor(NIOProcessor processor) {
         this.processor = processor;
-        this.readBuffer = processor.getBufferPool().allocate();
+        this.readBuffer = processor.getBufferArena().allocate();
         processor.addBackend(this);
     }
 
@@ -126,6 +139,12 @@ public abstract class BackendConnection extends AbstractConnection {
         }
     }
 
+    @Override
+    protected NIOSliceHandler getSliceHandler() {
+        NIOHandler handler = this.handler;
+        return (handler instanceof NIOSliceHandler) ? (NIOSliceHandler) handler : null;
+    }
+
     @Override
     protected void idleCheck() {
         // nothing
@@ -130,7 +130,7 @@ public abstract class FrontendConnection extends AbstractConnection {
 
     public void setProcessor(NIOProcessor processor) {
         this.processor = processor;
-        this.readBuffer = processor.getBufferPool().allocate();
+        this.readBuffer = processor.getBufferArena().allocate();
         processor.addFrontend(this);
     }
 
@@ -299,6 +299,14 @@ public abstract class FrontendConnection extends AbstractConnection {
         writeErrMessage(ErrorCode.ER_UNKNOWN_COM_ERROR, "Unknown command");
     }
 
+    public void stmtReset(byte[] data) {
+        writeErrMessage(ErrorCode.ER_UNKNOWN_COM_ERROR, "Unknown command");
+    }
+
+    public void stmtSendLongData(byte[] data) {
+        writeErrMessage(ErrorCode.ER_UNKNOWN_COM_ERROR, "Unknown command");
+    }
+
     public void unknown(byte[] data) {
         writeErrMessage(ErrorCode.ER_UNKNOWN_COM_ERROR, "Unknown command");
     }
@@ -361,7 +369,9 @@ public abstract class FrontendConnection extends AbstractConnection {
         flag |= Capabilities.CLIENT_LONG_FLAG;
         flag |= Capabilities.CLIENT_CONNECT_WITH_DB;
         // flag |= Capabilities.CLIENT_NO_SCHEMA;
-        // flag |= Capabilities.CLIENT_COMPRESS;
+        if (compress) {
+            flag |= Capabilities.CLIENT_COMPRESS;
+        }
         flag |= Capabilities.CLIENT_ODBC;
         // flag |= Capabilities.CLIENT_LOCAL_FILES;
         flag |= Capabilities.CLIENT_IGNORE_SPACE;
@@ -23,6 +23,7 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,8 +42,9 @@ public final class NIOAcceptor extends Thread {
     private final ServerSocketChannel serverChannel;
     private final FrontendConnectionFactory factory;
     private NIOProcessor[] processors;
-    private int nextProcessor;
-    private long acceptCount;
+    private ProcessorSelector processorSelector;
+    private int acceptors;
+    private final AtomicLong acceptCount = new AtomicLong();
 
     public NIOAcceptor(String name, int port, FrontendConnectionFactory factory) throws IOException {
         super.setName(name);
@@ -53,6 +55,8 @@ public final class NIOAcceptor extends Thread {
         this.serverChannel.configureBlocking(false);
         this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
         this.factory = factory;
+        this.processorSelector = new ProcessorSelectors.RoundRobin();
+        this.acceptors = 1;
     }
 
     public int getPort() {
@@ -60,18 +64,58 @@ public final class NIOAcceptor extends Thread {
     }
 
     public long getAcceptCount() {
-        return acceptCount;
+        return acceptCount.get();
     }
 
     public void setProcessors(NIOProcessor[] processors) {
         this.processors = processors;
     }
 
+    public void setProcessorSelector(ProcessorSelector processorSelector) {
+        this.processorSelector = processorSelector;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    /**
+     * 设置接收连接的线程数，需在start()之前调用。
+     */
+    public void setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    @Override
+    public synchronized void start() {
+        // 额外的接收线程各自使用独立的Selector监听同一个ServerSocketChannel
+        for (int i = 1; i < acceptors; i++) {
+            try {
+                final Selector selector = Selector.open();
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+                Thread t = new Thread(getName() + "-" + i) {
+                    @Override
+                    public void run() {
+                        select(selector);
+                    }
+                };
+                t.setDaemon(isDaemon());
+                t.start();
+            } catch (IOException e) {
+                LOGGER.warn(getName(), e);
+            }
+        }
+        super.start();
+    }
+
     @Override
     public void run() {
-        final Selector selector = this.selector;
+        select(this.selector);
+    }
+
+    private void select(Selector selector) {
         for (;;) {
-            ++acceptCount;
+            acceptCount.incrementAndGet();
             try {
                 selector.select(1000L);
                 Set<SelectionKey> keys = selector.selectedKeys();
@@ -96,11 +140,14 @@ public final class NIOAcceptor extends Thread {
         SocketChannel channel = null;
         try {
             channel = serverChannel.accept();
+            if (channel == null) {// 已被其他接收线程取走
+                return;
+            }
             channel.configureBlocking(false);
             FrontendConnection c = factory.make(channel);
             c.setAccepted(true);
             c.setId(ID_GENERATOR.getId());
-            NIOProcessor processor = nextProcessor();
+            NIOProcessor processor = processorSelector.select(processors, c);
             c.setProcessor(processor);
             processor.postRegister(c);
         } catch (Throwable e) {
@@ -109,13 +156,6 @@ public final class NIOAcceptor extends Thread {
         }
     }
 
-    private NIOProcessor nextProcessor() {
-        if (++nextProcessor == processors.length) {
-            nextProcessor = 0;
-        }
-        return processors[nextProcessor];
-    }
-
     private static void closeChannel(SocketChannel channel) {
         if (channel == null) {
             return;
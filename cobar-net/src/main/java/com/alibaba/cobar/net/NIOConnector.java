@@ -38,7 +38,7 @@ public final class NIOConnector extends Thread {
     private final Selector selector;
     private final BlockingQueue<BackendConnection> connectQueue;
     private NIOProcessor[] processors;
-    private int nextProcessor;
+    private ProcessorSelector processorSelector;
     private long connectCount;
 
     public NIOConnector(String name) throws IOException {
@@ -46,6 +46,7 @@ public final class NIOConnector extends Thread {
         this.name = name;
         this.selector = Selector.open();
         this.connectQueue = new LinkedBlockingQueue<BackendConnection>();
+        this.processorSelector = new ProcessorSelectors.RoundRobin();
     }
 
     public long getConnectCount() {
@@ -56,6 +57,10 @@ public final class NIOConnector extends Thread {
         this.processors = processors;
     }
 
+    public void setProcessorSelector(ProcessorSelector processorSelector) {
+        this.processorSelector = processorSelector;
+    }
+
     public void postConnect(BackendConnection c) {
         connectQueue.offer(c);
         selector.wakeup();
@@ -105,7 +110,10 @@ public final class NIOConnector extends Thread {
             if (c.finishConnect()) {
                 clearSelectionKey(key);
                 c.setId(ID_GENERATOR.getId());
-                NIOProcessor processor = nextProcessor();
+                NIOProcessor processor = c.getAffinity();
+                if (processor == null) {
+                    processor = processorSelector.select(processors, c);
+                }
                 c.setProcessor(processor);
                 processor.postRegister(c);
             }
@@ -122,13 +130,6 @@ public final class NIOConnector extends Thread {
         }
     }
 
-    private NIOProcessor nextProcessor() {
-        if (++nextProcessor == processors.length) {
-            nextProcessor = 0;
-        }
-        return processors[nextProcessor];
-    }
-
     /**
      * 后端连接ID生成器
      * 
@@ -21,10 +21,11 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
-import com.alibaba.cobar.net.buffer.BufferPool;
+import com.alibaba.cobar.net.buffer.BufferArena;
 import com.alibaba.cobar.net.handler.CommandCount;
 import com.alibaba.cobar.net.util.ExecutorUtil;
 import com.alibaba.cobar.net.util.NameableExecutor;
+import com.alibaba.cobar.net.util.StripedCounter;
 
 /**
  * @author xianmao.hexm
@@ -36,14 +37,16 @@ public final class NIOProcessor {
 
     private final String name;
     private final NIOReactor reactor;
-    private final BufferPool bufferPool;
+    private final BufferArena bufferArena;
     private final NameableExecutor handler;
     private final NameableExecutor executor;
     private final ConcurrentMap<Long, FrontendConnection> frontends;
     private final ConcurrentMap<Long, BackendConnection> backends;
     private final CommandCount commands;
-    private long netInBytes;
-    private long netOutBytes;
+    private final StripedCounter netInBytes;
+    private final StripedCounter netOutBytes;
+    private final StripedCounter writeCount;
+    private final StripedCounter writeBuffers;
 
     public NIOProcessor(String name) throws IOException {
         this(name, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_CHUNK_SIZE, AVAILABLE_PROCESSORS, AVAILABLE_PROCESSORS);
@@ -54,22 +57,30 @@ public final class NIOProcessor {
     }
 
     public NIOProcessor(String name, int buffer, int chunk, int handler, int executor) throws IOException {
+        this(name, new BufferArena(buffer, chunk), handler, executor);
+    }
+
+    public NIOProcessor(String name, BufferArena arena, int handler, int executor) throws IOException {
         this.name = name;
         this.reactor = new NIOReactor(name);
-        this.bufferPool = new BufferPool(buffer, chunk);
+        this.bufferArena = arena;
         this.handler = (handler > 0) ? ExecutorUtil.create(name + "-H", handler) : null;
         this.executor = (executor > 0) ? ExecutorUtil.create(name + "-E", executor) : null;
         this.frontends = new ConcurrentHashMap<Long, FrontendConnection>();
         this.backends = new ConcurrentHashMap<Long, BackendConnection>();
         this.commands = new CommandCount();
+        this.netInBytes = new StripedCounter();
+        this.netOutBytes = new StripedCounter();
+        this.writeCount = new StripedCounter();
+        this.writeBuffers = new StripedCounter();
     }
 
     public String getName() {
         return name;
     }
 
-    public BufferPool getBufferPool() {
-        return bufferPool;
+    public BufferArena getBufferArena() {
+        return bufferArena;
     }
 
     public int getRegisterQueueSize() {
@@ -105,19 +116,64 @@ public final class NIOProcessor {
     }
 
     public long getNetInBytes() {
-        return netInBytes;
+        return netInBytes.sum();
+    }
+
+    /**
+     * 每秒接收字节数
+     */
+    public long getNetInRate() {
+        return netInBytes.rate();
     }
 
     public void addNetInBytes(long bytes) {
-        netInBytes += bytes;
+        netInBytes.add(bytes);
     }
 
     public long getNetOutBytes() {
-        return netOutBytes;
+        return netOutBytes.sum();
+    }
+
+    /**
+     * 每秒发送字节数
+     */
+    public long getNetOutRate() {
+        return netOutBytes.rate();
     }
 
     public void addNetOutBytes(long bytes) {
-        netOutBytes += bytes;
+        netOutBytes.add(bytes);
+    }
+
+    /**
+     * 记录一次写操作(系统调用)及其写完的缓存块个数
+     */
+    public void addWrites(int buffers) {
+        writeCount.increment();
+        writeBuffers.add(buffers);
+    }
+
+    public long getWriteCount() {
+        return writeCount.sum();
+    }
+
+    /**
+     * 每秒写操作次数
+     */
+    public long getWriteRate() {
+        return writeCount.rate();
+    }
+
+    public long getWriteBuffers() {
+        return writeBuffers.sum();
+    }
+
+    /**
+     * 平均每次写操作写完的缓存块个数
+     */
+    public double getAvgWriteBuffers() {
+        long count = writeCount.sum();
+        return count == 0 ? 0.0 : (double) writeBuffers.sum() / count;
     }
 
     public long getReactCount() {
@@ -0,0 +1,205 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * MySQL压缩协议的帧编解码，每个连接一个实例。编码由写数据的线程在锁内进行，解码只在R线程中进行。
+ * 
+ * <pre>
+ * 帧格式: 3字节压缩后长度 + 1字节压缩序号 + 3字节压缩前长度(为0时表示未压缩) + 数据
+ * </pre>
+ * 
+ * @author xianmao.hexm
+ */
+final class PacketCompressor {
+    static final int HEADER_SIZE = 7;
+    static final int MAX_PAYLOAD_SIZE = 0xffffff;
+
+    private final boolean client;
+    private final int threshold;
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private byte[] deflateInput;
+    private byte[] deflateOutput;
+    private byte[] inflateInput;
+    private byte[] inflateOutput;
+    private volatile int sequence;
+    private volatile boolean received;
+    private volatile boolean writing;
+    private boolean ended;
+
+    /**
+     * @param client 作为客户端时每个新命令的压缩序号从0开始
+     * @param threshold 小于该长度的数据不压缩
+     */
+    PacketCompressor(boolean client, int threshold) {
+        this.client = client;
+        this.threshold = threshold;
+        this.deflater = new Deflater();
+        this.inflater = new Inflater();
+        this.deflateInput = new byte[4096];
+        this.deflateOutput = new byte[4096];
+        this.inflateInput = new byte[4096];
+        this.inflateOutput = new byte[4096];
+    }
+
+    boolean isWriting() {
+        return writing;
+    }
+
+    void startWriting() {
+        this.writing = true;
+    }
+
+    /**
+     * 编码后的帧数据
+     */
+    byte[] getOutput() {
+        return deflateOutput;
+    }
+
+    /**
+     * 把buffer中已写入的数据编码为一个压缩帧放入getOutput()，返回帧长度。
+     * 
+     * @return -1 if {@link #end()} has been called
+     */
+    synchronized int compress(ByteBuffer buffer) {
+        if (ended) {
+            return -1;
+        }
+        int length = buffer.position();
+        if (length > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Compress payload size over the limit.");
+        }
+        if (client && received) {
+            sequence = 0;
+            received = false;
+        }
+        byte[] src = deflateInput = copy(buffer, 0, length, deflateInput);
+        int size = HEADER_SIZE + length + (length >> 3) + 64;
+        if (deflateOutput.length < size) {
+            deflateOutput = new byte[size];
+        }
+        byte[] out = deflateOutput;
+        int compressed = 0;
+        if (length >= threshold) {
+            deflater.reset();
+            deflater.setInput(src, 0, length);
+            deflater.finish();
+            compressed = deflater.deflate(out, HEADER_SIZE, out.length - HEADER_SIZE);
+            if (!deflater.finished() || compressed >= length) {
+                compressed = 0;
+            }
+        }
+        if (compressed > 0) {
+            writeHeader(out, compressed, length);
+            return HEADER_SIZE + compressed;
+        } else {
+            writeHeader(out, length, 0);
+            System.arraycopy(src, 0, out, HEADER_SIZE, length);
+            return HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * 解码src中从offset开始的一个完整压缩帧，把明文追加到dst，调用方需保证dst剩余空间足够。
+     */
+    void decompress(ByteBuffer src, int offset, ByteBuffer dst) throws DataFormatException {
+        int compressed = getLength(src, offset);
+        int length = getLength(src, offset + 4);
+        byte[] in = inflateInput = copy(src, offset + HEADER_SIZE, compressed, inflateInput);
+        if (length == 0) {
+            dst.put(in, 0, compressed);
+        } else {
+            if (inflateOutput.length < length) {
+                inflateOutput = new byte[length];
+            }
+            byte[] out = inflateOutput;
+            inflater.reset();
+            inflater.setInput(in, 0, compressed);
+            int n = 0;
+            while (n < length) {
+                int got = inflater.inflate(out, n, length - n);
+                if (got == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                n += got;
+            }
+            if (n != length) {
+                throw new DataFormatException("Bad compressed packet length:" + n + ", expect:" + length);
+            }
+            dst.put(out, 0, length);
+        }
+        sequence = (src.get(offset + 3) & 0xff) + 1;
+        received = true;
+    }
+
+    /**
+     * 释放压缩器，之后的{@link #compress(ByteBuffer)}不再编码
+     */
+    synchronized void end() {
+        ended = true;
+        deflater.end();
+        inflater.end();
+    }
+
+    /**
+     * 读取帧头中3字节的长度
+     */
+    static int getLength(ByteBuffer buffer, int offset) {
+        int length = buffer.get(offset) & 0xff;
+        length |= (buffer.get(++offset) & 0xff) << 8;
+        length |= (buffer.get(++offset) & 0xff) << 16;
+        return length;
+    }
+
+    /**
+     * 解码后的明文长度
+     */
+    static int getPlainLength(ByteBuffer buffer, int offset) {
+        int length = getLength(buffer, offset + 4);
+        return (length == 0) ? getLength(buffer, offset) : length;
+    }
+
+    private void writeHeader(byte[] frame, int compressed, int length) {
+        int seq = sequence;
+        sequence = seq + 1;
+        frame[0] = (byte) (compressed & 0xff);
+        frame[1] = (byte) (compressed >>> 8);
+        frame[2] = (byte) (compressed >>> 16);
+        frame[3] = (byte) seq;
+        frame[4] = (byte) (length & 0xff);
+        frame[5] = (byte) (length >>> 8);
+        frame[6] = (byte) (length >>> 16);
+    }
+
+    private static byte[] copy(ByteBuffer buffer, int offset, int length, byte[] dst) {
+        if (dst.length < length) {
+            dst = new byte[length];
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        view.get(dst, 0, length);
+        return dst;
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net;
+
+/**
+ * 为新建立的连接选择处理器
+ * 
+ * @author xianmao.hexm
+ */
+public interface ProcessorSelector {
+
+    /**
+     * 调用时连接尚未绑定处理器，实现需支持多个线程并发调用。
+     */
+    NIOProcessor select(NIOProcessor[] processors, AbstractConnection c);
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net;
+
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.cobar.net.util.NameableExecutor;
+
+/**
+ * 内置的处理器选择策略
+ * 
+ * @author xianmao.hexm
+ */
+public final class ProcessorSelectors {
+
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String LEAST_CONNECTION = "leastConnection";
+    public static final String LEAST_QUEUE = "leastQueue";
+    public static final String HASH = "hash";
+
+    /**
+     * 按名称创建选择策略，名称为空时使用轮询。
+     */
+    public static ProcessorSelector get(String name) {
+        if (name == null || name.length() == 0 || ROUND_ROBIN.equalsIgnoreCase(name)) {
+            return new RoundRobin();
+        } else if (LEAST_CONNECTION.equalsIgnoreCase(name)) {
+            return new LeastConnection();
+        } else if (LEAST_QUEUE.equalsIgnoreCase(name)) {
+            return new LeastQueue();
+        } else if (HASH.equalsIgnoreCase(name)) {
+            return new Hash();
+        } else {
+            throw new IllegalArgumentException("unknown processor selector: " + name);
+        }
+    }
+
+    /**
+     * 轮询
+     */
+    public static final class RoundRobin implements ProcessorSelector {
+        private final AtomicInteger next = new AtomicInteger();
+
+        @Override
+        public NIOProcessor select(NIOProcessor[] processors, AbstractConnection c) {
+            int i = next.getAndIncrement() % processors.length;
+            return processors[i < 0 ? i + processors.length : i];
+        }
+    }
+
+    /**
+     * 选择前后端连接总数最少的处理器
+     */
+    public static final class LeastConnection implements ProcessorSelector {
+        @Override
+        public NIOProcessor select(NIOProcessor[] processors, AbstractConnection c) {
+            NIOProcessor selected = processors[0];
+            int min = Integer.MAX_VALUE;
+            for (NIOProcessor p : processors) {
+                int count = p.getFrontends().size() + p.getBackends().size();
+                if (count < min) {
+                    min = count;
+                    selected = p;
+                }
+            }
+            return selected;
+        }
+    }
+
+    /**
+     * 选择写队列与线程池任务队列积压最少的处理器
+     */
+    public static final class LeastQueue implements ProcessorSelector {
+        @Override
+        public NIOProcessor select(NIOProcessor[] processors, AbstractConnection c) {
+            NIOProcessor selected = processors[0];
+            int min = Integer.MAX_VALUE;
+            for (NIOProcessor p : processors) {
+                int depth = p.getWriteQueueSize() + queueSize(p.getHandler()) + queueSize(p.getExecutor());
+                if (depth < min) {
+                    min = depth;
+                    selected = p;
+                }
+            }
+            return selected;
+        }
+
+        private static int queueSize(NameableExecutor executor) {
+            return (executor == null) ? 0 : executor.getQueue().size();
+        }
+    }
+
+    /**
+     * 按对端地址散列，同一主机的连接固定分配到同一个处理器
+     */
+    public static final class Hash implements ProcessorSelector {
+        @Override
+        public NIOProcessor select(NIOProcessor[] processors, AbstractConnection c) {
+            Socket socket = c.getChannel().socket();
+            int hash = (socket.getInetAddress() == null) ? 0 : socket.getInetAddress().hashCode();
+            hash ^= (hash >>> 16);
+            int i = hash % processors.length;
+            return processors[i < 0 ? i + processors.length : i];
+        }
+    }
+
+}
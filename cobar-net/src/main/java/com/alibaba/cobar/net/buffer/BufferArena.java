@@ -0,0 +1,128 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按容量分级的缓存池集合：申请时取不小于所需容量的最小级别，回收时按缓存容量归还到对应级别，
+ * 超过最大级别的缓存不做池化，并且总是在堆上分配，避免大结果集耗尽只能靠GC释放的直接内存。
+ * 
+ * @author xianmao.hexm
+ */
+public final class BufferArena {
+
+    private final BufferPool[] pools;
+    private final boolean direct;
+    private final AtomicInteger hugeCount;
+
+    public BufferArena(int bufferSize, int chunkSize) {
+        this(new int[] { chunkSize }, new int[] { bufferSize }, false);
+    }
+
+    /**
+     * @param chunkSizes 各级别的缓存块大小，必须递增
+     * @param bufferSizes 各级别预分配的总字节数
+     */
+    public BufferArena(int[] chunkSizes, int[] bufferSizes, boolean direct) {
+        if (chunkSizes.length == 0 || chunkSizes.length != bufferSizes.length) {
+            throw new IllegalArgumentException("chunkSizes and bufferSizes not match");
+        }
+        this.pools = new BufferPool[chunkSizes.length];
+        for (int i = 0; i < chunkSizes.length; i++) {
+            if (i > 0 && chunkSizes[i] <= chunkSizes[i - 1]) {
+                throw new IllegalArgumentException("chunkSizes must be increasing");
+            }
+            pools[i] = new BufferPool(bufferSizes[i], chunkSizes[i], direct);
+        }
+        this.direct = direct;
+        this.hugeCount = new AtomicInteger();
+    }
+
+    public BufferPool[] getPools() {
+        return pools;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * 最小级别的缓存块大小
+     */
+    public int getChunkSize() {
+        return pools[0].getChunkSize();
+    }
+
+    public int capacity() {
+        int capacity = 0;
+        for (BufferPool pool : pools) {
+            capacity += pool.capacity();
+        }
+        return capacity;
+    }
+
+    public int size() {
+        int size = 0;
+        for (BufferPool pool : pools) {
+            size += pool.size();
+        }
+        return size;
+    }
+
+    public int getNewCount() {
+        int count = hugeCount.get();
+        for (BufferPool pool : pools) {
+            count += pool.getNewCount();
+        }
+        return count;
+    }
+
+    /**
+     * 申请最小级别的缓存块
+     */
+    public ByteBuffer allocate() {
+        return pools[0].allocate();
+    }
+
+    /**
+     * 申请容量不小于size的缓存块
+     */
+    public ByteBuffer allocate(int size) {
+        for (BufferPool pool : pools) {
+            if (pool.getChunkSize() >= size) {
+                return pool.allocate();
+            }
+        }
+        hugeCount.incrementAndGet();
+        return ByteBuffer.allocate(size);
+    }
+
+    public void recycle(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        for (BufferPool pool : pools) {
+            if (pool.getChunkSize() == capacity) {
+                pool.recycle(buffer);
+                return;
+            }
+        }
+    }
+
+}
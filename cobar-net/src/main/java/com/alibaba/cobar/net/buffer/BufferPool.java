@@ -15,100 +15,260 @@
  */
 package com.alibaba.cobar.net.buffer;
 
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * 缓存池：每个线程持有loaded/previous两个弹夹(magazine)作为本地缓存，线程间通过无锁的仓库(depot)交换满弹夹，
+ * 常规的allocate/recycle只操作线程本地数据，不再争用全局锁。
+ * <p>
+ * 仓库与本地缓存中的空闲缓存统一计入capacity：本地缓存按需向池申请额度，额度用尽时回收的缓存直接丢弃；
+ * 本地缓存以线程的弱引用登记，线程退出后其弹夹由{@link #size()}或分配未命中时归还给仓库。
+ * 
  * @author xianmao.hexm
  */
 public final class BufferPool {
 
+    private static final int MAX_MAGAZINE_SIZE = 32;
+
     private final int chunkSize;
-    private final ByteBuffer[] items;
-    private final ReentrantLock lock;
-    private int putIndex;
-    private int takeIndex;
-    private int count;
-    private volatile int newCount;
+    private final boolean direct;
+    private final int capacity;
+    private final int magazineSize;
+    private final Queue<Magazine> fullMagazines;
+    private final Queue<Magazine> emptyMagazines;
+    private final AtomicInteger depotCount;
+    private final AtomicInteger pooledCount;
+    private final Queue<CacheRef> caches;
+    private final ThreadLocal<LocalCache> localCache;
+    private final AtomicInteger newCount;
 
     public BufferPool(int bufferSize, int chunkSize) {
+        this(bufferSize, chunkSize, false);
+    }
+
+    public BufferPool(int bufferSize, int chunkSize, boolean direct) {
         this.chunkSize = chunkSize;
+        this.direct = direct;
         int capacity = bufferSize / chunkSize;
         capacity = (bufferSize % chunkSize == 0) ? capacity : capacity + 1;
-        this.items = new ByteBuffer[capacity];
-        this.lock = new ReentrantLock();
-        for (int i = 0; i < capacity; i++) {
-            insert(create(chunkSize));
+        this.capacity = capacity;
+        this.magazineSize = Math.max(1, Math.min(MAX_MAGAZINE_SIZE, capacity >> 4));
+        this.fullMagazines = new ConcurrentLinkedQueue<Magazine>();
+        this.emptyMagazines = new ConcurrentLinkedQueue<Magazine>();
+        this.depotCount = new AtomicInteger();
+        this.pooledCount = new AtomicInteger(capacity);
+        this.caches = new ConcurrentLinkedQueue<CacheRef>();
+        this.localCache = new ThreadLocal<LocalCache>() {
+            @Override
+            protected LocalCache initialValue() {
+                LocalCache cache = new LocalCache(new Magazine(magazineSize), new Magazine(magazineSize));
+                caches.offer(new CacheRef(Thread.currentThread(), cache));
+                return cache;
+            }
+        };
+        this.newCount = new AtomicInteger();
+        for (int i = 0; i < capacity;) {
+            Magazine m = new Magazine(magazineSize);
+            for (int j = 0; j < magazineSize && i < capacity; j++, i++) {
+                m.push(create(chunkSize));
+            }
+            fullMagazines.offer(m);
+            depotCount.addAndGet(m.count);
         }
     }
 
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
     public int capacity() {
-        return items.length;
+        return capacity;
     }
 
+    /**
+     * 仓库与各线程本地缓存中空闲缓存数之和，仅为统计用的近似值
+     */
     public int size() {
-        return count;
+        reap();
+        int size = depotCount.get();
+        for (CacheRef ref : caches) {
+            LocalCache cache = ref.cache;
+            size += cache.loaded.count + cache.previous.count;
+        }
+        return size;
     }
 
     public int getNewCount() {
-        return newCount;
+        return newCount.get();
     }
 
     public ByteBuffer allocate() {
-        ByteBuffer node = null;
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            node = (count == 0) ? null : extract();
-        } finally {
-            lock.unlock();
-        }
-        if (node == null) {
-            ++newCount;
-            return create(chunkSize);
-        } else {
-            return node;
+        LocalCache cache = localCache.get();
+        if (cache.loaded.count > 0) {
+            return take(cache);
         }
+        if (cache.previous.count > 0) {
+            cache.swap();
+            return take(cache);
+        }
+
+        // 本地弹夹均为空，从仓库换取一个满弹夹
+        Magazine full = fullMagazines.poll();
+        if (full == null) {
+            // 仓库也为空时，先收回已退出线程的缓存再重试
+            reap();
+            full = fullMagazines.poll();
+        }
+        if (full != null) {
+            // 额度随弹夹从仓库转入本地，本地原有的空闲额度归还给池
+            depotCount.addAndGet(-full.count);
+            pooledCount.addAndGet(-cache.reserved);
+            cache.reserved = full.count;
+            emptyMagazines.offer(cache.previous);
+            cache.previous = cache.loaded;
+            cache.loaded = full;
+            return cache.loaded.pop();
+        }
+        pooledCount.addAndGet(-cache.reserved);
+        cache.reserved = 0;
+        newCount.incrementAndGet();
+        return create(chunkSize);
     }
 
     public void recycle(ByteBuffer buffer) {
-        // 拒绝回收null和容量大于chunkSize的缓存
-        if (buffer == null || buffer.capacity() > chunkSize) {
+        // 拒绝回收null、容量大于chunkSize以及内存类型不一致的缓存
+        if (buffer == null || buffer.capacity() > chunkSize || buffer.isDirect() != direct) {
             return;
         }
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            if (count != items.length) {
-                buffer.clear();
-                insert(buffer);
+        buffer.clear();
+        LocalCache cache = localCache.get();
+        if (cache.loaded.count == magazineSize) {
+            if (cache.previous.count < magazineSize) {
+                cache.swap();
+            } else {
+                // 本地弹夹均已满，将previous连同其额度交给仓库
+                Magazine full = cache.previous;
+                cache.reserved -= full.count;
+                depotCount.addAndGet(full.count);
+                fullMagazines.offer(full);
+                Magazine empty = emptyMagazines.poll();
+                cache.previous = cache.loaded;
+                cache.loaded = (empty == null) ? new Magazine(magazineSize) : empty;
+            }
+        }
+        if (cache.loaded.count + cache.previous.count >= cache.reserved) {
+            // 本地额度已用尽，向池申请，池已满时直接丢弃
+            if (pooledCount.incrementAndGet() > capacity) {
+                pooledCount.decrementAndGet();
+                return;
             }
-        } finally {
-            lock.unlock();
+            ++cache.reserved;
         }
+        cache.loaded.push(buffer);
     }
 
-    private void insert(ByteBuffer buffer) {
-        items[putIndex] = buffer;
-        putIndex = inc(putIndex);
-        ++count;
+    private ByteBuffer take(LocalCache cache) {
+        ByteBuffer buffer = cache.loaded.pop();
+        // 空闲额度攒满一个弹夹时成批归还，使每个线程占而未用的额度少于一个弹夹
+        if (cache.reserved - cache.loaded.count - cache.previous.count >= magazineSize) {
+            cache.reserved -= magazineSize;
+            pooledCount.addAndGet(-magazineSize);
+        }
+        return buffer;
     }
 
-    private ByteBuffer extract() {
-        final ByteBuffer[] items = this.items;
-        ByteBuffer item = items[takeIndex];
-        items[takeIndex] = null;
-        takeIndex = inc(takeIndex);
-        --count;
-        return item;
+    /**
+     * 将已退出线程的本地缓存归还给仓库
+     */
+    private void reap() {
+        for (CacheRef ref : caches) {
+            Thread owner = ref.get();
+            if (owner != null && owner.isAlive()) {
+                continue;
+            }
+            if (caches.remove(ref)) {
+                LocalCache cache = ref.cache;
+                flush(cache.loaded);
+                flush(cache.previous);
+                pooledCount.addAndGet(-cache.reserved);
+                cache.reserved = 0;
+            }
+        }
     }
 
-    private int inc(int i) {
-        return (++i == items.length) ? 0 : i;
+    private void flush(Magazine m) {
+        if (m.count > 0) {
+            // 额度随缓存一起转入仓库
+            depotCount.addAndGet(m.count);
+            pooledCount.addAndGet(m.count);
+            fullMagazines.offer(m);
+        } else {
+            emptyMagazines.offer(m);
+        }
     }
 
     private ByteBuffer create(int size) {
-        return ByteBuffer.allocate(size);
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    /**
+     * 定长的缓存栈，只由持有它的线程访问
+     */
+    private static final class Magazine {
+        private final ByteBuffer[] items;
+        private int count;
+
+        Magazine(int size) {
+            this.items = new ByteBuffer[size];
+        }
+
+        void push(ByteBuffer buffer) {
+            items[count++] = buffer;
+        }
+
+        ByteBuffer pop() {
+            ByteBuffer buffer = items[--count];
+            items[count] = null;
+            return buffer;
+        }
+    }
+
+    private static final class LocalCache {
+        private Magazine loaded;
+        private Magazine previous;
+        /** 本地已占用的capacity额度，不小于两个弹夹中的缓存数，且超出部分少于一个弹夹 */
+        private int reserved;
+
+        LocalCache(Magazine loaded, Magazine previous) {
+            this.loaded = loaded;
+            this.previous = previous;
+        }
+
+        void swap() {
+            Magazine m = loaded;
+            loaded = previous;
+            previous = m;
+        }
+    }
+
+    /**
+     * 以弱引用持有线程，线程退出后仍保留其本地缓存以便归还
+     */
+    private static final class CacheRef extends WeakReference<Thread> {
+        private final LocalCache cache;
+
+        CacheRef(Thread owner, LocalCache cache) {
+            super(owner);
+            this.cache = cache;
+        }
     }
 
 }
@@ -88,6 +88,25 @@ public final class BufferQueue {
         }
     }
 
+    /**
+     * 一次取出最多max个缓存块，放入array中从offset开始的位置。
+     *
+     * @return 实际取出的缓存块个数
+     */
+    public int drainTo(ByteBuffer[] array, int offset, int max) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            int n = (count < max) ? count : max;
+            for (int i = 0; i < n; i++) {
+                array[offset + i] = extract();
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private void insert(ByteBuffer buffer) {
         items[putIndex] = buffer;
         putIndex = inc(putIndex);
@@ -0,0 +1,66 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带引用计数的缓存块，计数归零时归还到所属的BufferArena。
+ * 
+ * @author xianmao.hexm
+ */
+public final class BufferReference {
+
+    private final ByteBuffer buffer;
+    private final BufferArena arena;
+    private final AtomicInteger refCount;
+
+    /**
+     * 创建时引用计数为1，arena为null时不回收。
+     */
+    public BufferReference(ByteBuffer buffer, BufferArena arena) {
+        this.buffer = buffer;
+        this.arena = arena;
+        this.refCount = new AtomicInteger(1);
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int refCount() {
+        return refCount.get();
+    }
+
+    public void retain() {
+        if (refCount.getAndIncrement() <= 0) {
+            throw new IllegalStateException("buffer already released");
+        }
+    }
+
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            if (arena != null) {
+                arena.recycle(buffer);
+            }
+        } else if (count < 0) {
+            throw new IllegalStateException("buffer already released");
+        }
+    }
+
+}
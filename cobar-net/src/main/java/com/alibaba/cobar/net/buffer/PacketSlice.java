@@ -0,0 +1,88 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 数据包切片：直接引用读缓存中的一段数据，不做复制。使用完毕后必须调用release()，
+ * 读缓存在所有切片都释放后才会被回收。
+ * 
+ * @author xianmao.hexm
+ */
+public final class PacketSlice {
+
+    private final BufferReference reference;
+    private final int offset;
+    private final int length;
+
+    /**
+     * 调用方需已为该切片持有reference的一次引用
+     */
+    public PacketSlice(BufferReference reference, int offset, int length) {
+        this.reference = reference;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * 包装一个独立的数据包，不涉及缓存回收。
+     */
+    public static PacketSlice wrap(byte[] data) {
+        return new PacketSlice(new BufferReference(ByteBuffer.wrap(data), null), 0, data.length);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public byte get(int index) {
+        return reference.buffer().get(offset + index);
+    }
+
+    public void set(int index, byte b) {
+        reference.buffer().put(offset + index, b);
+    }
+
+    /**
+     * 复制出数据包的全部数据
+     */
+    public byte[] getBytes() {
+        byte[] data = new byte[length];
+        view(0, length).get(data);
+        return data;
+    }
+
+    /**
+     * 把从index开始的length个字节写入dst
+     */
+    public void writeTo(ByteBuffer dst, int index, int length) {
+        dst.put(view(index, length));
+    }
+
+    public void release() {
+        reference.release();
+    }
+
+    private ByteBuffer view(int index, int length) {
+        // 读缓存的limit始终等于capacity，duplicate后只使用自身的position和limit
+        ByteBuffer view = reference.buffer().duplicate();
+        view.limit(offset + index + length);
+        view.position(offset + index);
+        return view;
+    }
+
+}
@@ -33,6 +33,10 @@ public abstract class BackendConnectionFactory {
     protected int packetHeaderSize = 4;
     protected int maxPacketSize = 16 * 1024 * 1024;
     protected int writeQueueCapcity = 8;
+    protected int writeGatherSize = 1;
+    protected boolean writeThrough = false;
+    protected boolean compress = false;
+    protected int compressThreshold = 256;
     protected long idleTimeout = 8 * 3600 * 1000L;
 
     protected SocketChannel openSocketChannel() throws IOException {
@@ -59,6 +63,10 @@ public abstract class BackendConnectionFactory {
         c.setPacketHeaderSize(packetHeaderSize);
         c.setMaxPacketSize(maxPacketSize);
         c.setWriteQueue(new BufferQueue(writeQueueCapcity));
+        c.setWriteGatherSize(writeGatherSize);
+        c.setWriteThrough(writeThrough);
+        c.setCompress(compress);
+        c.setCompressThreshold(compressThreshold);
         c.setIdleTimeout(idleTimeout);
         c.setConnector(connector);
         connector.postConnect(c);
@@ -104,6 +112,38 @@ public abstract class BackendConnectionFactory {
         this.writeQueueCapcity = writeQueueCapcity;
     }
 
+    public int getWriteGatherSize() {
+        return writeGatherSize;
+    }
+
+    public void setWriteGatherSize(int writeGatherSize) {
+        this.writeGatherSize = writeGatherSize;
+    }
+
+    public boolean isWriteThrough() {
+        return writeThrough;
+    }
+
+    public void setWriteThrough(boolean writeThrough) {
+        this.writeThrough = writeThrough;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
     public long getIdleTimeout() {
         return idleTimeout;
     }
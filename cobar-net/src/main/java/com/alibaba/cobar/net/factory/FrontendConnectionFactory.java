@@ -32,6 +32,12 @@ public abstract class FrontendConnectionFactory {
     protected int packetHeaderSize = 4;
     protected int maxPacketSize = 16 * 1024 * 1024;
     protected int writeQueueCapcity = 16;
+    protected int writeGatherSize = 1;
+    protected boolean writeThrough = false;
+    protected int writeHighWatermark = 12;
+    protected int writeLowWatermark = 4;
+    protected boolean compress = false;
+    protected int compressThreshold = 256;
     protected long idleTimeout = 8 * 3600 * 1000L;
     protected String charset = "utf8";
 
@@ -47,6 +53,12 @@ public abstract class FrontendConnectionFactory {
         c.setPacketHeaderSize(packetHeaderSize);
         c.setMaxPacketSize(maxPacketSize);
         c.setWriteQueue(new BufferQueue(writeQueueCapcity));
+        c.setWriteGatherSize(writeGatherSize);
+        c.setWriteThrough(writeThrough);
+        c.setWriteHighWatermark(writeHighWatermark);
+        c.setWriteLowWatermark(writeLowWatermark);
+        c.setCompress(compress);
+        c.setCompressThreshold(compressThreshold);
         c.setIdleTimeout(idleTimeout);
         c.setCharset(charset);
         return c;
@@ -92,6 +104,54 @@ public abstract class FrontendConnectionFactory {
         this.writeQueueCapcity = writeQueueCapcity;
     }
 
+    public int getWriteGatherSize() {
+        return writeGatherSize;
+    }
+
+    public void setWriteGatherSize(int writeGatherSize) {
+        this.writeGatherSize = writeGatherSize;
+    }
+
+    public boolean isWriteThrough() {
+        return writeThrough;
+    }
+
+    public void setWriteThrough(boolean writeThrough) {
+        this.writeThrough = writeThrough;
+    }
+
+    public int getWriteHighWatermark() {
+        return writeHighWatermark;
+    }
+
+    public void setWriteHighWatermark(int writeHighWatermark) {
+        this.writeHighWatermark = writeHighWatermark;
+    }
+
+    public int getWriteLowWatermark() {
+        return writeLowWatermark;
+    }
+
+    public void setWriteLowWatermark(int writeLowWatermark) {
+        this.writeLowWatermark = writeLowWatermark;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
     public long getIdleTimeout() {
         return idleTimeout;
     }
@@ -15,99 +15,115 @@
  */
 package com.alibaba.cobar.net.handler;
 
+import com.alibaba.cobar.net.util.StripedCounter;
+
 /**
  * @author xianmao.hexm
  */
 public class CommandCount {
 
-    private long initDB;
-    private long query;
-    private long stmtPrepare;
-    private long stmtExecute;
-    private long stmtClose;
-    private long ping;
-    private long kill;
-    private long quit;
-    private long heartbeat;
-    private long other;
+    private final StripedCounter initDB = new StripedCounter();
+    private final StripedCounter query = new StripedCounter();
+    private final StripedCounter stmtPrepare = new StripedCounter();
+    private final StripedCounter stmtExecute = new StripedCounter();
+    private final StripedCounter stmtClose = new StripedCounter();
+    private final StripedCounter ping = new StripedCounter();
+    private final StripedCounter kill = new StripedCounter();
+    private final StripedCounter quit = new StripedCounter();
+    private final StripedCounter heartbeat = new StripedCounter();
+    private final StripedCounter other = new StripedCounter();
 
     public void doInitDB() {
-        ++initDB;
+        initDB.increment();
     }
 
     public long initDBCount() {
-        return initDB;
+        return initDB.sum();
     }
 
     public void doQuery() {
-        ++query;
+        query.increment();
     }
 
     public long queryCount() {
-        return query;
+        return query.sum();
+    }
+
+    /**
+     * 每秒查询次数
+     */
+    public long queryRate() {
+        return query.rate();
     }
 
     public void doStmtPrepare() {
-        ++stmtPrepare;
+        stmtPrepare.increment();
     }
 
     public long stmtPrepareCount() {
-        return stmtPrepare;
+        return stmtPrepare.sum();
     }
 
     public void doStmtExecute() {
-        ++stmtExecute;
+        stmtExecute.increment();
     }
 
     public long stmtExecuteCount() {
-        return stmtExecute;
+        return stmtExecute.sum();
+    }
+
+    /**
+     * 每秒预处理语句执行次数
+     */
+    public long stmtExecuteRate() {
+        return stmtExecute.rate();
     }
 
     public void doStmtClose() {
-        ++stmtClose;
+        stmtClose.increment();
     }
 
     public long stmtCloseCount() {
-        return stmtClose;
+        return stmtClose.sum();
     }
 
     public void doPing() {
-        ++ping;
+        ping.increment();
     }
 
     public long pingCount() {
-        return ping;
+        return ping.sum();
     }
 
     public void doKill() {
-        ++kill;
+        kill.increment();
     }
 
     public long killCount() {
-        return kill;
+        return kill.sum();
     }
 
     public void doQuit() {
-        ++quit;
+        quit.increment();
     }
 
     public long quitCount() {
-        return quit;
+        return quit.sum();
     }
 
     public void doOther() {
-        ++other;
+        other.increment();
     }
 
     public long otherCount() {
-        return other;
+        return other.sum();
     }
 
     public long heartbeat() {
-        return heartbeat;
+        return heartbeat.sum();
     }
 
     public void doHeartbeat() {
-        ++heartbeat;
+        heartbeat.increment();
     }
 }
@@ -22,6 +22,7 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.cobar.Capabilities;
 import com.alibaba.cobar.Commands;
 import com.alibaba.cobar.ErrorCode;
 import com.alibaba.cobar.net.FrontendConnection;
@@ -154,7 +155,13 @@ public class FrontendAuthenticator implements NIOHandler {
             LOGGER.info(s.toString());
         }
         ByteBuffer buffer = source.allocate();
-        source.write(source.writeToBuffer(AUTH_OK, buffer));
+        buffer = source.writeToBuffer(AUTH_OK, buffer);
+        if (source.isCompress() && (auth.clientFlags & Capabilities.CLIENT_COMPRESS) != 0) {
+            // 认证成功的OK包以明文发送，此后的数据使用压缩协议
+            source.startCompress(buffer, false);
+        } else {
+            source.write(buffer);
+        }
     }
 
     protected void failure(int errno, String info) {
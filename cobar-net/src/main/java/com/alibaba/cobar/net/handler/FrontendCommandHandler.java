@@ -69,6 +69,14 @@ public class FrontendCommandHandler implements NIOHandler {
             commandCount.doStmtClose();
             source.stmtClose(data);
             break;
+        case Commands.COM_STMT_RESET:
+            commandCount.doOther();
+            source.stmtReset(data);
+            break;
+        case Commands.COM_STMT_SEND_LONG_DATA:
+            commandCount.doOther();
+            source.stmtSendLongData(data);
+            break;
         case Commands.COM_HEARTBEAT:
             commandCount.doHeartbeat();
             source.heartbeat(data);
@@ -0,0 +1,29 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.handler;
+
+import com.alibaba.cobar.net.buffer.PacketSlice;
+
+/**
+ * 以切片形式接收数据包的处理器，负责在处理完毕后释放切片。
+ * 
+ * @author xianmao.hexm
+ */
+public interface NIOSliceHandler extends NIOHandler {
+
+    void handle(PacketSlice slice);
+
+}
@@ -54,6 +54,22 @@ public class BinaryPacket extends MySQLPacket {
         return buffer;
     }
 
+    /**
+     * 转为含包头的完整数据包
+     */
+    public byte[] getBytes() {
+        int size = calcPacketSize();
+        byte[] ab = new byte[4 + size];
+        ab[0] = (byte) (size & 0xff);
+        ab[1] = (byte) (size >>> 8);
+        ab[2] = (byte) (size >>> 16);
+        ab[3] = packetId;
+        if (data != null) {
+            System.arraycopy(data, 0, ab, 4, size);
+        }
+        return ab;
+    }
+
     @Override
     public int calcPacketSize() {
         return data == null ? 0 : data.length;
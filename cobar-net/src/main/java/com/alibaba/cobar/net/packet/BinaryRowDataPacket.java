@@ -0,0 +1,271 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.packet;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.FrontendConnection;
+import com.alibaba.cobar.net.util.BufferUtil;
+import com.alibaba.cobar.net.util.MySQLMessage;
+
+/**
+ * From server to client, one packet for each row in the result set of a
+ * prepared statement. Values are in binary format instead of character string.
+ * 
+ * <pre>
+ * Bytes                   Name
+ * -----                   ----
+ * 1                       packet header [00]
+ * (column_count+7+2)/8    null_bit_map, the first 2 bits are reserved
+ * n                       (column values)
+ * 
+ * @see http://dev.mysql.com/doc/internals/en/binary-protocol-resultset-row.html
+ * </pre>
+ * 
+ * @author xianmao.hexm
+ */
+public class BinaryRowDataPacket extends MySQLPacket {
+    public static final byte PACKET_HEADER = 0x00;
+    private static final int NULL_BIT_MAP_OFFSET = 2;
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    public int fieldCount;
+    public byte[] nullBitMap;
+    public byte[][] fieldValues;
+
+    /**
+     * 把文本协议的行数据按字段类型转换成二进制协议的行数据
+     */
+    public void read(List<FieldPacket> fields, BinaryPacket textRow) {
+        this.packetLength = textRow.packetLength;
+        this.packetId = textRow.packetId;
+        readBody(fields, new MySQLMessage(textRow.data));
+    }
+
+    /**
+     * 同{@link #read(List, BinaryPacket)}，textRow是包含包头的完整数据包。
+     */
+    public void read(List<FieldPacket> fields, byte[] textRow) {
+        MySQLMessage mm = new MySQLMessage(textRow);
+        this.packetLength = mm.readUB3();
+        this.packetId = mm.read();
+        readBody(fields, mm);
+    }
+
+    private void readBody(List<FieldPacket> fields, MySQLMessage mm) {
+        this.fieldCount = fields.size();
+        this.nullBitMap = new byte[(fieldCount + 7 + NULL_BIT_MAP_OFFSET) / 8];
+        this.fieldValues = new byte[fieldCount][];
+        for (int i = 0; i < fieldCount; i++) {
+            long length = mm.readLength();
+            if (length == MySQLMessage.NULL_LENGTH) {
+                int bit = i + NULL_BIT_MAP_OFFSET;
+                nullBitMap[bit / 8] |= (byte) (1 << (bit & 7));
+                continue;
+            }
+            byte[] text = length == 0 ? EMPTY_BYTES : mm.readBytes((int) length);
+            fieldValues[i] = convert(fields.get(i), text);
+        }
+    }
+
+    @Override
+    public ByteBuffer write(ByteBuffer bb, FrontendConnection c) {
+        int size = calcPacketSize();
+        bb = c.checkWriteBuffer(bb, c.getPacketHeaderSize() + 1 + nullBitMap.length);
+        BufferUtil.writeUB3(bb, size);
+        bb.put(packetId);
+        bb.put(PACKET_HEADER);
+        bb.put(nullBitMap);
+        for (int i = 0; i < fieldCount; i++) {
+            byte[] fv = fieldValues[i];
+            if (fv != null) {
+                bb = c.writeToBuffer(fv, bb);
+            }
+        }
+        return bb;
+    }
+
+    @Override
+    public int calcPacketSize() {
+        int size = 1 + nullBitMap.length;
+        for (int i = 0; i < fieldCount; i++) {
+            byte[] fv = fieldValues[i];
+            if (fv != null) {
+                size += fv.length;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    protected String getPacketInfo() {
+        return "MySQL Binary RowData Packet";
+    }
+
+    private static byte[] convert(FieldPacket field, byte[] text) {
+        switch (field.type) {
+        case Fields.FIELD_TYPE_TINY:
+            return new byte[] { (byte) parseLong(text) };
+        case Fields.FIELD_TYPE_SHORT:
+        case Fields.FIELD_TYPE_YEAR: {
+            long v = parseLong(text);
+            return new byte[] { (byte) v, (byte) (v >>> 8) };
+        }
+        case Fields.FIELD_TYPE_LONG:
+        case Fields.FIELD_TYPE_INT24:
+            return toBytes(parseLong(text), 4);
+        case Fields.FIELD_TYPE_LONGLONG:
+            return toBytes(parseLong(text), 8);
+        case Fields.FIELD_TYPE_FLOAT:
+            return toBytes(Float.floatToIntBits(Float.parseFloat(new String(text))), 4);
+        case Fields.FIELD_TYPE_DOUBLE:
+            return toBytes(Double.doubleToLongBits(Double.parseDouble(new String(text))), 8);
+        case Fields.FIELD_TYPE_DATE:
+        case Fields.FIELD_TYPE_DATETIME:
+        case Fields.FIELD_TYPE_TIMESTAMP:
+            return convertDateTime(text);
+        case Fields.FIELD_TYPE_TIME:
+            return convertTime(text);
+        default:
+            byte[] ab = new byte[BufferUtil.getLength(text)];
+            BufferUtil.writeWithLength(ByteBuffer.wrap(ab), text);
+            return ab;
+        }
+    }
+
+    private static long parseLong(byte[] text) {
+        String s = new String(text);
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            // BIGINT UNSIGNED超出long范围时按位保留
+            return new BigInteger(s).longValue();
+        }
+    }
+
+    private static byte[] toBytes(long v, int length) {
+        byte[] ab = new byte[length];
+        for (int i = 0; i < length; i++) {
+            ab[i] = (byte) (v >>> (i * 8));
+        }
+        return ab;
+    }
+
+    /**
+     * 格式: YYYY-MM-DD[ hh:mm:ss[.ffffff]]
+     */
+    private static byte[] convertDateTime(byte[] text) {
+        int[] v = new int[7];
+        int n = parseNumbers(text, 0, v);
+        int year = v[0], month = v[1], day = v[2];
+        int hour = n > 3 ? v[3] : 0, minute = n > 4 ? v[4] : 0, second = n > 5 ? v[5] : 0;
+        int micro = n > 6 ? v[6] : 0;
+        ByteBuffer bb;
+        if (micro != 0) {
+            bb = ByteBuffer.allocate(12);
+            bb.put((byte) 11);
+        } else if (hour != 0 || minute != 0 || second != 0) {
+            bb = ByteBuffer.allocate(8);
+            bb.put((byte) 7);
+        } else if (year != 0 || month != 0 || day != 0) {
+            bb = ByteBuffer.allocate(5);
+            bb.put((byte) 4);
+        } else {
+            return new byte[] { 0 };
+        }
+        BufferUtil.writeUB2(bb, year);
+        bb.put((byte) month);
+        bb.put((byte) day);
+        if (bb.remaining() > 0) {
+            bb.put((byte) hour);
+            bb.put((byte) minute);
+            bb.put((byte) second);
+        }
+        if (bb.remaining() > 0) {
+            BufferUtil.writeUB4(bb, micro);
+        }
+        return bb.array();
+    }
+
+    /**
+     * 格式: [-]hhh:mm:ss[.ffffff]
+     */
+    private static byte[] convertTime(byte[] text) {
+        boolean negative = text.length > 0 && text[0] == '-';
+        int[] v = new int[4];
+        int n = parseNumbers(text, negative ? 1 : 0, v);
+        int hours = v[0], minute = n > 1 ? v[1] : 0, second = n > 2 ? v[2] : 0;
+        int micro = n > 3 ? v[3] : 0;
+        ByteBuffer bb;
+        if (micro != 0) {
+            bb = ByteBuffer.allocate(13);
+            bb.put((byte) 12);
+        } else if (hours != 0 || minute != 0 || second != 0) {
+            bb = ByteBuffer.allocate(9);
+            bb.put((byte) 8);
+        } else {
+            return new byte[] { 0 };
+        }
+        bb.put((byte) (negative ? 1 : 0));
+        BufferUtil.writeUB4(bb, hours / 24);
+        bb.put((byte) (hours % 24));
+        bb.put((byte) minute);
+        bb.put((byte) second);
+        if (bb.remaining() > 0) {
+            BufferUtil.writeUB4(bb, micro);
+        }
+        return bb.array();
+    }
+
+    /**
+     * 依次解析以非数字字符分隔的整数，小数点后的部分按微秒解析。
+     * 
+     * @return 解析出的数字个数
+     */
+    private static int parseNumbers(byte[] text, int offset, int[] values) {
+        int n = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (int i = offset; i < text.length && n < values.length; i++) {
+            byte b = text[i];
+            if (b >= '0' && b <= '9') {
+                if (!fraction || digits < 6) {
+                    values[n] = values[n] * 10 + (b - '0');
+                }
+                ++digits;
+            } else {
+                if (digits > 0) {
+                    ++n;
+                }
+                fraction = b == '.';
+                digits = 0;
+            }
+        }
+        if (digits > 0 && n < values.length) {
+            if (fraction) {
+                for (; digits < 6; digits++) {
+                    values[n] *= 10;
+                }
+            }
+            ++n;
+        }
+        return n;
+    }
+
+}
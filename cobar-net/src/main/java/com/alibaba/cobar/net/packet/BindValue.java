@@ -0,0 +1,46 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.packet;
+
+/**
+ * 预处理语句执行时绑定的参数值
+ * 
+ * @author xianmao.hexm
+ */
+public class BindValue {
+
+    /** 参数类型，取值见{@link com.alibaba.cobar.Fields} */
+    public int type;
+    /** 是否为无符号整数 */
+    public boolean isUnsigned;
+    public boolean isNull;
+    /**
+     * 整数为Long，浮点数为Float或Double，时间类型为格式化后的字符串，其余类型为原始字节。
+     */
+    public Object value;
+
+    @Override
+    public String toString() {
+        if (isNull) {
+            return "NULL";
+        }
+        if (value instanceof byte[]) {
+            return new StringBuilder().append("byte[").append(((byte[]) value).length).append(']').toString();
+        }
+        return String.valueOf(value);
+    }
+
+}
@@ -103,12 +103,18 @@ public class CommandPacket extends MySQLPacket {
 
     @Override
     public void write(BackendConnection c) {
-        ByteBuffer buffer = c.allocate();
+        c.write(write(c.allocate(), c));
+    }
+
+    /**
+     * 追加到buffer中，用于把多个命令一次写出。
+     */
+    public ByteBuffer write(ByteBuffer buffer, BackendConnection c) {
+        buffer = c.checkWriteBuffer(buffer, c.getPacketHeaderSize() + 1);
         BufferUtil.writeUB3(buffer, calcPacketSize());
         buffer.put(packetId);
         buffer.put(command);
-        buffer = c.writeToBuffer(arg, buffer);
-        c.write(buffer);
+        return c.writeToBuffer(arg, buffer);
     }
 
     @Override
@@ -0,0 +1,230 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.packet;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.util.MySQLMessage;
+
+/**
+ * From client to server, executes a prepared statement.
+ * 
+ * <pre>
+ * Bytes                      Name
+ * -----                      ----
+ * 1                          code
+ * 4                          statement_id
+ * 1                          flags
+ * 4                          iteration_count
+ *   if param_count > 0:
+ * (param_count+7)/8          null_bit_map
+ * 1                          new_parameter_bound_flag
+ *   if new_params_bound == 1:
+ * n*2                        type of parameters
+ * n                          values for the parameters
+ * 
+ * @see http://dev.mysql.com/doc/internals/en/com-stmt-execute.html
+ * </pre>
+ * 
+ * @author xianmao.hexm
+ */
+public class ExecutePacket extends MySQLPacket {
+    private static final int UNSIGNED_MASK = 0x8000;
+
+    public byte code;
+    public long statementId;
+    public byte flags;
+    public long iterationCount;
+    public byte[] nullBitMap;
+    public byte newParameterBoundFlag;
+    public final BindValue[] values;
+
+    /** 参数类型，未重新绑定类型时沿用上一次执行的类型 */
+    private final int[] parameterTypes;
+
+    public ExecutePacket(int[] parameterTypes) {
+        this.parameterTypes = parameterTypes;
+        this.values = new BindValue[parameterTypes.length];
+    }
+
+    /**
+     * 取得执行包中的语句标识
+     */
+    public static long getStatementId(byte[] data) {
+        MySQLMessage mm = new MySQLMessage(data);
+        mm.position(5);
+        return mm.readUB4();
+    }
+
+    public void read(byte[] data) {
+        MySQLMessage mm = new MySQLMessage(data);
+        packetLength = mm.readUB3();
+        packetId = mm.read();
+        code = mm.read();
+        statementId = mm.readUB4();
+        flags = mm.read();
+        iterationCount = mm.readUB4();
+
+        int parameterCount = values.length;
+        if (parameterCount <= 0) {
+            return;
+        }
+
+        // 读取NULL指示位图
+        nullBitMap = mm.readBytes((parameterCount + 7) / 8);
+
+        // 当newParameterBoundFlag==1时，更新参数类型。
+        newParameterBoundFlag = mm.read();
+        if (newParameterBoundFlag == (byte) 1) {
+            for (int i = 0; i < parameterCount; i++) {
+                parameterTypes[i] = mm.readUB2();
+            }
+        }
+
+        // 读取参数值
+        for (int i = 0; i < parameterCount; i++) {
+            BindValue bv = new BindValue();
+            bv.type = parameterTypes[i] & 0xff;
+            bv.isUnsigned = (parameterTypes[i] & UNSIGNED_MASK) != 0;
+            if ((nullBitMap[i / 8] & (1 << (i & 7))) != 0) {
+                bv.isNull = true;
+            } else {
+                read(mm, bv);
+            }
+            values[i] = bv;
+        }
+    }
+
+    private static void read(MySQLMessage mm, BindValue bv) {
+        switch (bv.type) {
+        case Fields.FIELD_TYPE_NULL:
+            bv.isNull = true;
+            break;
+        case Fields.FIELD_TYPE_TINY:
+            bv.value = Long.valueOf(bv.isUnsigned ? mm.read() & 0xff : mm.read());
+            break;
+        case Fields.FIELD_TYPE_SHORT:
+        case Fields.FIELD_TYPE_YEAR:
+            bv.value = Long.valueOf(bv.isUnsigned ? mm.readUB2() : (short) mm.readUB2());
+            break;
+        case Fields.FIELD_TYPE_LONG:
+        case Fields.FIELD_TYPE_INT24:
+            bv.value = Long.valueOf(bv.isUnsigned ? mm.readUB4() : mm.readInt());
+            break;
+        case Fields.FIELD_TYPE_LONGLONG:
+            bv.value = Long.valueOf(mm.readLong());
+            break;
+        case Fields.FIELD_TYPE_FLOAT:
+            bv.value = Float.valueOf(mm.readFloat());
+            break;
+        case Fields.FIELD_TYPE_DOUBLE:
+            bv.value = Double.valueOf(mm.readDouble());
+            break;
+        case Fields.FIELD_TYPE_DATE:
+        case Fields.FIELD_TYPE_DATETIME:
+        case Fields.FIELD_TYPE_TIMESTAMP:
+            bv.value = readDateTime(mm, bv.type == Fields.FIELD_TYPE_DATE);
+            break;
+        case Fields.FIELD_TYPE_TIME:
+            bv.value = readTime(mm);
+            break;
+        default:
+            bv.value = mm.readBytesWithLength();
+        }
+    }
+
+    private static String readDateTime(MySQLMessage mm, boolean dateOnly) {
+        int length = mm.read() & 0xff;
+        int year = 0, month = 0, day = 0, hour = 0, minute = 0, second = 0;
+        long micro = 0;
+        if (length >= 4) {
+            year = mm.readUB2();
+            month = mm.read();
+            day = mm.read();
+        }
+        if (length >= 7) {
+            hour = mm.read();
+            minute = mm.read();
+            second = mm.read();
+        }
+        if (length >= 11) {
+            micro = mm.readUB4();
+        }
+        StringBuilder s = new StringBuilder(26);
+        pad(s, year, 4).append('-');
+        pad(s, month, 2).append('-');
+        pad(s, day, 2);
+        if (!dateOnly) {
+            s.append(' ');
+            pad(s, hour, 2).append(':');
+            pad(s, minute, 2).append(':');
+            pad(s, second, 2);
+            if (micro > 0) {
+                pad(s.append('.'), (int) micro, 6);
+            }
+        }
+        return s.toString();
+    }
+
+    private static String readTime(MySQLMessage mm) {
+        int length = mm.read() & 0xff;
+        boolean negative = false;
+        long hours = 0;
+        int minute = 0, second = 0;
+        long micro = 0;
+        if (length >= 8) {
+            negative = mm.read() == 1;
+            hours = mm.readUB4() * 24 + mm.read();
+            minute = mm.read();
+            second = mm.read();
+        }
+        if (length >= 12) {
+            micro = mm.readUB4();
+        }
+        StringBuilder s = new StringBuilder(20);
+        if (negative) {
+            s.append('-');
+        }
+        if (hours < 10) {
+            s.append('0');
+        }
+        s.append(hours).append(':');
+        pad(s, minute, 2).append(':');
+        pad(s, second, 2);
+        if (micro > 0) {
+            pad(s.append('.'), (int) micro, 6);
+        }
+        return s.toString();
+    }
+
+    private static StringBuilder pad(StringBuilder s, int value, int width) {
+        String v = String.valueOf(value);
+        for (int i = v.length(); i < width; i++) {
+            s.append('0');
+        }
+        return s.append(v);
+    }
+
+    @Override
+    public int calcPacketSize() {
+        return packetLength;
+    }
+
+    @Override
+    protected String getPacketInfo() {
+        return "MySQL Execute Packet";
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package com.alibaba.cobar.net.util;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -24,6 +25,9 @@ import java.util.Map;
 public class CharsetUtil {
     private static final String[] INDEX_TO_CHARSET = new String[99];
     private static final Map<String, Integer> CHARSET_TO_INDEX = new HashMap<String, Integer>();
+    /** 二进制排序规则（binary及各字符集的_bin）的序号，按升序排列 */
+    private static final int[] BINARY_COLLATIONS = { 43, 46, 47, 50, 53, 55, 58, 61, 62, 63, 64, 65, 66, 67, 68, 69, 70,
+            71, 72, 73, 74, 75, 77, 78, 79, 80, 81, 82, 83, 84, 85, 86, 87, 88, 89, 90, 91, 93, 96, 98, 249, 309 };
     static {
         // index --> charset
         INDEX_TO_CHARSET[1] = "big5";
@@ -130,8 +134,18 @@ public class CharsetUtil {
         CHARSET_TO_INDEX.put("utf-8", 33);
     }
 
+    /**
+     * @return null if unknown
+     */
     public static final String getCharset(int index) {
-        return INDEX_TO_CHARSET[index];
+        return index >= 0 && index < INDEX_TO_CHARSET.length ? INDEX_TO_CHARSET[index] : null;
+    }
+
+    /**
+     * 该序号的排序规则是否按字节比较
+     */
+    public static final boolean isBinaryCollation(int index) {
+        return Arrays.binarySearch(BINARY_COLLATIONS, index) >= 0;
     }
 
     public static final int getIndex(String charset) {
@@ -0,0 +1,128 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 无锁的空闲资源栈：后进先出，使常用的资源保持活跃，长期不用的沉在栈底等待空闲超时回收。
+ * 节点只能被取出一次，{@link #remove(Matcher)}在栈中原地取出节点，不影响并发的存取。
+ * 
+ * @author xianmao.hexm
+ */
+public final class IdleStack<T> {
+
+    private final AtomicReference<Node<T>> head = new AtomicReference<Node<T>>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public void push(T item) {
+        Node<T> node = new Node<T>(item);
+        Node<T> h;
+        do {
+            h = head.get();
+            node.next = h;
+        } while (!head.compareAndSet(h, node));
+        size.incrementAndGet();
+    }
+
+    /**
+     * @return 栈为空时返回null
+     */
+    public T pop() {
+        for (;;) {
+            Node<T> h = head.get();
+            if (h == null) {
+                return null;
+            }
+            if (head.compareAndSet(h, h.next) && h.take()) {
+                size.decrementAndGet();
+                return h.item;
+            }
+        }
+    }
+
+    /**
+     * 一次取出所有资源，按从栈顶到栈底的顺序返回。
+     */
+    public List<T> drain() {
+        Node<T> h = head.getAndSet(null);
+        List<T> list = new ArrayList<T>();
+        for (; h != null; h = h.next) {
+            if (h.take()) {
+                list.add(h.item);
+            }
+        }
+        size.addAndGet(-list.size());
+        return list;
+    }
+
+    /**
+     * 原地取出所有满足条件的资源，其余资源保持原有顺序留在栈中，期间可以正常存取。
+     * 
+     * @return 按从栈顶到栈底的顺序返回取出的资源
+     */
+    public List<T> remove(Matcher<T> matcher) {
+        List<T> list = new ArrayList<T>();
+        Node<T> prev = null;
+        for (Node<T> n = head.get(); n != null; n = n.next) {
+            if (!n.taken.get() && matcher.match(n.item) && n.take()) {
+                list.add(n.item);
+                // 摘除已取出的节点，栈顶节点留给pop()跳过；并发摘除失败时节点同样被跳过。
+                if (prev != null) {
+                    prev.next = n.next;
+                }
+                continue;
+            }
+            prev = n;
+        }
+        size.addAndGet(-list.size());
+        return list;
+    }
+
+    /**
+     * 并发修改时不是精确值
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public static interface Matcher<T> {
+        boolean match(T item);
+    }
+
+    private static final class Node<T> {
+        private final T item;
+        private final AtomicBoolean taken;
+        private volatile Node<T> next;
+
+        private Node(T item) {
+            this.item = item;
+            this.taken = new AtomicBoolean(false);
+        }
+
+        /**
+         * 出栈、清空和原地取出竞争同一个节点，只有一方能成功
+         */
+        private boolean take() {
+            return taken.compareAndSet(false, true);
+        }
+    }
+
+}
@@ -16,11 +16,15 @@
 package com.alibaba.cobar.net.util;
 
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 import com.alibaba.cobar.ErrorCode;
 import com.alibaba.cobar.net.packet.BinaryPacket;
 import com.alibaba.cobar.net.packet.ErrorPacket;
 import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.net.packet.MySQLPacket;
 import com.alibaba.cobar.net.packet.ResultSetHeaderPacket;
 
 /**
@@ -80,4 +84,37 @@ public class PacketUtil {
         return field;
     }
 
+    /**
+     * 同{@link #getField(BinaryPacket, String)}，src是包含包头的完整数据包。
+     */
+    public static final FieldPacket getField(byte[] src, String fieldName) {
+        FieldPacket field = new FieldPacket();
+        field.read(src);
+        field.name = encode(fieldName, CODE_PAGE_1252);
+        field.packetLength = field.calcPacketSize();
+        return field;
+    }
+
+    /**
+     * 从结果集头部数据包(HEADER|FIELDS)中取得字段定义
+     */
+    public static final List<FieldPacket> getFields(List<MySQLPacket> headerList) {
+        List<FieldPacket> fields = new ArrayList<FieldPacket>(headerList.size());
+        Iterator<MySQLPacket> it = headerList.iterator();
+        if (it.hasNext()) {
+            it.next();
+        }
+        while (it.hasNext()) {
+            MySQLPacket packet = it.next();
+            if (packet instanceof FieldPacket) {
+                fields.add((FieldPacket) packet);
+            } else {
+                FieldPacket field = new FieldPacket();
+                field.read((BinaryPacket) packet);
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 分段计数器：无竞争时只累加base，发生竞争后按线程分散到多个计数单元，读取时求和。
+ * 
+ * @author xianmao.hexm
+ */
+public final class StripedCounter {
+    private static final AtomicLongFieldUpdater<StripedCounter> BASE_UPDATER = AtomicLongFieldUpdater.newUpdater(
+            StripedCounter.class, "base");
+    private static final int CELL_COUNT = cellCount(Runtime.getRuntime().availableProcessors());
+
+    /** 相邻计数单元间隔的long个数，避免落在同一缓存行 */
+    private static final int CELL_STRIDE = 8;
+
+    private volatile long base;
+    private volatile AtomicLongArray cells;
+    private long rateTime;
+    private long rateSum;
+    private long rate;
+
+    public StripedCounter() {
+        this.rateTime = System.currentTimeMillis();
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void add(long x) {
+        AtomicLongArray cells = this.cells;
+        if (cells == null) {
+            long b = base;
+            if (BASE_UPDATER.compareAndSet(this, b, b + x)) {
+                return;
+            }
+            cells = initCells();
+        }
+        cells.getAndAdd(index(), x);
+    }
+
+    /**
+     * 当前累计值，并发累加时不是精确快照。
+     */
+    public long sum() {
+        long sum = base;
+        AtomicLongArray cells = this.cells;
+        if (cells != null) {
+            for (int i = 0, n = cells.length(); i < n; i += CELL_STRIDE) {
+                sum += cells.get(i);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 距上次采样以来的平均每秒增量，两次采样间隔不足1秒时返回上次的结果。
+     */
+    public synchronized long rate() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - rateTime;
+        if (elapsed >= 1000L) {
+            long sum = sum();
+            rate = (sum - rateSum) * 1000L / elapsed;
+            rateSum = sum;
+            rateTime = now;
+        }
+        return rate;
+    }
+
+    private AtomicLongArray initCells() {
+        synchronized (this) {
+            AtomicLongArray cells = this.cells;
+            if (cells == null) {
+                cells = this.cells = new AtomicLongArray(CELL_COUNT * CELL_STRIDE);
+            }
+            return cells;
+        }
+    }
+
+    private static int index() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((h >>> 16) & (CELL_COUNT - 1)) * CELL_STRIDE;
+    }
+
+    private static int cellCount(int n) {
+        int count = 1;
+        while (count < n) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+}
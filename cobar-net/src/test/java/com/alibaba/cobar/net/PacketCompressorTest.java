@@ -0,0 +1,96 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author xianmao.hexm
+ */
+public class PacketCompressorTest {
+
+    @Test
+    public void testCompress() throws Exception {
+        PacketCompressor compressor = new PacketCompressor(false, 50);
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 10);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        buffer.put(data);
+        int length = compressor.compress(buffer);
+        Assert.assertTrue(length < data.length);
+
+        ByteBuffer frame = ByteBuffer.wrap(compressor.getOutput(), 0, length).slice();
+        Assert.assertEquals(length - PacketCompressor.HEADER_SIZE, PacketCompressor.getLength(frame, 0));
+        Assert.assertEquals(data.length, PacketCompressor.getPlainLength(frame, 0));
+        Assert.assertEquals(0, frame.get(3));
+
+        ByteBuffer dst = ByteBuffer.allocate(4096);
+        new PacketCompressor(true, 50).decompress(frame, 0, dst);
+        Assert.assertEquals(data.length, dst.position());
+        dst.flip();
+        byte[] plain = new byte[data.length];
+        dst.get(plain);
+        Assert.assertArrayEquals(data, plain);
+    }
+
+    @Test
+    public void testUnderThreshold() throws Exception {
+        PacketCompressor compressor = new PacketCompressor(false, 50);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(new byte[] { 1, 0, 0, 0, 9 });
+        int length = compressor.compress(buffer);
+        Assert.assertEquals(PacketCompressor.HEADER_SIZE + 5, length);
+
+        // 第二帧序号递增，压缩前长度为0表示未压缩
+        length = compressor.compress(buffer);
+        ByteBuffer frame = ByteBuffer.wrap(compressor.getOutput(), 0, length).slice();
+        Assert.assertEquals(1, frame.get(3));
+        Assert.assertEquals(5, PacketCompressor.getPlainLength(frame, 0));
+        Assert.assertEquals(0, PacketCompressor.getLength(frame, 4));
+    }
+
+    @Test
+    public void testCompressAfterEnd() throws Exception {
+        PacketCompressor compressor = new PacketCompressor(false, 1);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(new byte[] { 1, 0, 0, 0, 9 });
+        compressor.end();
+        Assert.assertEquals(-1, compressor.compress(buffer));
+    }
+
+    @Test
+    public void testClientSequence() throws Exception {
+        PacketCompressor server = new PacketCompressor(false, 1024);
+        PacketCompressor client = new PacketCompressor(true, 1024);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(new byte[] { 1, 0, 0, 0, 3 });
+
+        // 客户端收到响应后，下一个命令的压缩序号从0开始
+        client.compress(buffer);
+        server.decompress(ByteBuffer.wrap(client.getOutput()), 0, ByteBuffer.allocate(64));
+        int length = server.compress(buffer);
+        Assert.assertEquals(1, server.getOutput()[3]);
+        client.decompress(ByteBuffer.wrap(server.getOutput(), 0, length).slice(), 0, ByteBuffer.allocate(64));
+        client.compress(buffer);
+        Assert.assertEquals(0, client.getOutput()[3]);
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.buffer;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author xianmao.hexm
+ */
+public class BufferArenaTest {
+
+    @Test
+    public void testAllocateBySize() {
+        BufferArena arena = new BufferArena(new int[] { 1024, 4096 }, new int[] { 4096, 8192 }, true);
+        Assert.assertEquals(6, arena.capacity());
+        Assert.assertEquals(1024, arena.allocate().capacity());
+        Assert.assertEquals(4096, arena.allocate(2000).capacity());
+        Assert.assertTrue(arena.allocate(2000).isDirect());
+        Assert.assertEquals(0, arena.getNewCount());
+
+        ByteBuffer huge = arena.allocate(10000);
+        Assert.assertEquals(10000, huge.capacity());
+        Assert.assertFalse(huge.isDirect());
+        Assert.assertEquals(1, arena.getNewCount());
+    }
+
+    @Test
+    public void testRecycle() {
+        BufferArena arena = new BufferArena(new int[] { 1024, 4096 }, new int[] { 4096, 8192 }, false);
+        ByteBuffer buffer = arena.allocate(4096);
+        Assert.assertEquals(5, arena.size());
+        buffer.put((byte) 1);
+        arena.recycle(buffer);
+        Assert.assertEquals(6, arena.size());
+        Assert.assertEquals(0, buffer.position());
+
+        // 非池内规格和内存类型不一致的缓存不回收
+        arena.recycle(ByteBuffer.allocate(2048));
+        arena.recycle(ByteBuffer.allocateDirect(1024));
+        Assert.assertEquals(6, arena.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testChunkSizesNotIncreasing() {
+        new BufferArena(new int[] { 4096, 1024 }, new int[] { 4096, 4096 }, false);
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * BufferPool 多线程争用性能测试，对比原有的全局锁实现
+ * 
+ * @author xianmao.hexm
+ */
+public class BufferPoolPerfMain {
+
+    private static final int BUFFER_SIZE = 1024 * 1024 * 16;
+    private static final int CHUNK_SIZE = 4096;
+    private static final int COUNT = 2000000;
+    private static final int HOLD = 4;
+
+    public static void main(String[] args) throws Exception {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < 3; i++) {
+            tLockPool(threads);
+            tBufferPool(threads);
+        }
+    }
+
+    public static void tBufferPool(int threads) throws InterruptedException {
+        final BufferPool pool = new BufferPool(BUFFER_SIZE, CHUNK_SIZE);
+        long t = run(threads, new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer[] hold = new ByteBuffer[HOLD];
+                for (int i = 0; i < COUNT; i++) {
+                    for (int j = 0; j < HOLD; j++) {
+                        hold[j] = pool.allocate();
+                    }
+                    for (int j = 0; j < HOLD; j++) {
+                        pool.recycle(hold[j]);
+                    }
+                }
+            }
+        });
+        print("BufferPool", threads, t, pool.getNewCount());
+    }
+
+    public static void tLockPool(int threads) throws InterruptedException {
+        final LockPool pool = new LockPool(BUFFER_SIZE, CHUNK_SIZE);
+        long t = run(threads, new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer[] hold = new ByteBuffer[HOLD];
+                for (int i = 0; i < COUNT; i++) {
+                    for (int j = 0; j < HOLD; j++) {
+                        hold[j] = pool.allocate();
+                    }
+                    for (int j = 0; j < HOLD; j++) {
+                        pool.recycle(hold[j]);
+                    }
+                }
+            }
+        });
+        print("LockPool", threads, t, pool.newCount);
+    }
+
+    private static long run(int threads, final Runnable task) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        task.run();
+                    } catch (InterruptedException e) {
+                    } finally {
+                        end.countDown();
+                    }
+                }
+            }.start();
+        }
+        long t1 = System.currentTimeMillis();
+        start.countDown();
+        end.await();
+        return System.currentTimeMillis() - t1;
+    }
+
+    private static void print(String name, int threads, long time, int newCount) {
+        long ops = (long) threads * COUNT * HOLD * 2;
+        System.out.println(name + " threads:" + threads + " take time:" + time + " ms, " + (ops * 1000L / Math.max(1L, time))
+                + " ops/s, newCount:" + newCount);
+    }
+
+    /**
+     * 原有的全局锁实现
+     */
+    private static final class LockPool {
+        private final int chunkSize;
+        private final ByteBuffer[] items;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int putIndex;
+        private int takeIndex;
+        private int count;
+        private volatile int newCount;
+
+        LockPool(int bufferSize, int chunkSize) {
+            this.chunkSize = chunkSize;
+            this.items = new ByteBuffer[bufferSize / chunkSize];
+            for (int i = 0; i < items.length; i++) {
+                insert(ByteBuffer.allocate(chunkSize));
+            }
+        }
+
+        ByteBuffer allocate() {
+            ByteBuffer node = null;
+            lock.lock();
+            try {
+                node = (count == 0) ? null : extract();
+            } finally {
+                lock.unlock();
+            }
+            if (node == null) {
+                ++newCount;
+                return ByteBuffer.allocate(chunkSize);
+            }
+            return node;
+        }
+
+        void recycle(ByteBuffer buffer) {
+            lock.lock();
+            try {
+                if (count != items.length) {
+                    buffer.clear();
+                    insert(buffer);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void insert(ByteBuffer buffer) {
+            items[putIndex] = buffer;
+            putIndex = (++putIndex == items.length) ? 0 : putIndex;
+            ++count;
+        }
+
+        private ByteBuffer extract() {
+            ByteBuffer item = items[takeIndex];
+            items[takeIndex] = null;
+            takeIndex = (++takeIndex == items.length) ? 0 : takeIndex;
+            --count;
+            return item;
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author xianmao.hexm
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testCapacityBound() {
+        BufferPool pool = new BufferPool(1024 * 64, 1024);
+        List<ByteBuffer> list = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < 100; i++) {
+            list.add(pool.allocate());
+        }
+        Assert.assertEquals(0, pool.size());
+        Assert.assertEquals(36, pool.getNewCount());
+
+        // 超出capacity的缓存回收时直接丢弃
+        for (ByteBuffer buffer : list) {
+            pool.recycle(buffer);
+        }
+        Assert.assertEquals(64, pool.size());
+    }
+
+    @Test
+    public void testReapDeadThread() throws Exception {
+        final BufferPool pool = new BufferPool(1024 * 64, 1024);
+        final List<ByteBuffer> list = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < 64; i++) {
+            list.add(pool.allocate());
+        }
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                for (ByteBuffer buffer : list) {
+                    pool.recycle(buffer);
+                }
+            }
+        };
+        t.start();
+        t.join();
+        Assert.assertEquals(64, pool.size());
+
+        // 退出线程的弹夹已归还仓库，其他线程可以全部取回而无需新建
+        for (int i = 0; i < 64; i++) {
+            pool.allocate();
+        }
+        Assert.assertEquals(0, pool.getNewCount());
+        Assert.assertEquals(0, pool.size());
+    }
+
+}
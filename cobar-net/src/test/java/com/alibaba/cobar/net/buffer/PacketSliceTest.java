@@ -0,0 +1,61 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.buffer;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author xianmao.hexm
+ */
+public class PacketSliceTest {
+
+    @Test
+    public void testSlice() {
+        BufferArena arena = new BufferArena(4096, 1024);
+        ByteBuffer buffer = arena.allocate();
+        buffer.put(new byte[] { 1, 2, 3, 4, 5, 6 });
+        BufferReference ref = new BufferReference(buffer, arena);
+        ref.retain();
+        PacketSlice slice = new PacketSlice(ref, 2, 3);
+        Assert.assertEquals(3, slice.length());
+        Assert.assertEquals(4, slice.get(1));
+        Assert.assertArrayEquals(new byte[] { 3, 4, 5 }, slice.getBytes());
+
+        slice.set(0, (byte) 9);
+        ByteBuffer dst = ByteBuffer.allocate(8);
+        slice.writeTo(dst, 0, 2);
+        Assert.assertEquals(2, dst.position());
+        Assert.assertEquals(9, dst.get(0));
+        Assert.assertEquals(6, buffer.position());
+    }
+
+    @Test
+    public void testRelease() {
+        BufferArena arena = new BufferArena(4096, 1024);
+        BufferReference ref = new BufferReference(arena.allocate(), arena);
+        Assert.assertEquals(3, arena.size());
+        ref.retain();
+        PacketSlice slice = new PacketSlice(ref, 0, 4);
+        ref.release();
+        Assert.assertEquals(3, arena.size());
+        slice.release();
+        Assert.assertEquals(4, arena.size());
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.packet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.util.BufferUtil;
+
+/**
+ * @author xianmao.hexm
+ */
+public class BinaryProtocolTest {
+
+    @Test
+    public void testExecutePacket() {
+        ByteBuffer bb = ByteBuffer.allocate(128);
+        BufferUtil.writeUB3(bb, 0);
+        bb.put((byte) 0);
+        bb.put((byte) 23);
+        BufferUtil.writeUB4(bb, 9);
+        bb.put((byte) 0);
+        BufferUtil.writeUB4(bb, 1);
+        bb.put((byte) 0x04);// null bit map: 3rd parameter
+        bb.put((byte) 1);
+        BufferUtil.writeUB2(bb, Fields.FIELD_TYPE_LONGLONG);
+        BufferUtil.writeUB2(bb, Fields.FIELD_TYPE_VAR_STRING);
+        BufferUtil.writeUB2(bb, Fields.FIELD_TYPE_LONG);
+        BufferUtil.writeUB2(bb, Fields.FIELD_TYPE_DATETIME);
+        BufferUtil.writeLong(bb, -5L);
+        BufferUtil.writeWithLength(bb, "abc".getBytes());
+        bb.put((byte) 7);
+        BufferUtil.writeUB2(bb, 2012);
+        bb.put((byte) 3);
+        bb.put((byte) 4);
+        bb.put((byte) 5);
+        bb.put((byte) 6);
+        bb.put((byte) 7);
+        byte[] data = new byte[bb.position()];
+        bb.flip();
+        bb.get(data);
+
+        Assert.assertEquals(9L, ExecutePacket.getStatementId(data));
+        int[] types = new int[4];
+        ExecutePacket packet = new ExecutePacket(types);
+        packet.read(data);
+        Assert.assertEquals(Fields.FIELD_TYPE_VAR_STRING, types[1]);
+        Assert.assertEquals(Long.valueOf(-5L), packet.values[0].value);
+        Assert.assertArrayEquals("abc".getBytes(), (byte[]) packet.values[1].value);
+        Assert.assertTrue(packet.values[2].isNull);
+        Assert.assertEquals("2012-03-04 05:06:07", packet.values[3].value);
+    }
+
+    @Test
+    public void testBinaryRowData() {
+        List<FieldPacket> fields = new ArrayList<FieldPacket>();
+        fields.add(field(Fields.FIELD_TYPE_LONG));
+        fields.add(field(Fields.FIELD_TYPE_VAR_STRING));
+        fields.add(field(Fields.FIELD_TYPE_DATETIME));
+        fields.add(field(Fields.FIELD_TYPE_TIME));
+        fields.add(field(Fields.FIELD_TYPE_DOUBLE));
+
+        ByteBuffer bb = ByteBuffer.allocate(128);
+        BufferUtil.writeWithLength(bb, "-2".getBytes());
+        bb.put((byte) 251);
+        BufferUtil.writeWithLength(bb, "2012-03-04 05:06:07.5".getBytes());
+        BufferUtil.writeWithLength(bb, "-26:00:01".getBytes());
+        BufferUtil.writeWithLength(bb, "1.5".getBytes());
+        BinaryPacket text = new BinaryPacket();
+        text.data = new byte[bb.position()];
+        bb.flip();
+        bb.get(text.data);
+
+        BinaryRowDataPacket row = new BinaryRowDataPacket();
+        row.read(fields, text);
+        Assert.assertEquals(1, row.nullBitMap.length);
+        Assert.assertEquals(1 << 3, row.nullBitMap[0]);
+        Assert.assertArrayEquals(new byte[] { -2, -1, -1, -1 }, row.fieldValues[0]);
+        Assert.assertNull(row.fieldValues[1]);
+        Assert.assertArrayEquals(new byte[] { 11, (byte) 0xdc, 0x07, 3, 4, 5, 6, 7, 0x20, (byte) 0xa1, 0x07, 0 },
+                                 row.fieldValues[2]);
+        Assert.assertArrayEquals(new byte[] { 8, 1, 1, 0, 0, 0, 2, 0, 1 }, row.fieldValues[3]);
+        Assert.assertEquals(8, row.fieldValues[4].length);
+        Assert.assertEquals(1 + 1 + 4 + 12 + 9 + 8, row.calcPacketSize());
+    }
+
+    private static FieldPacket field(int type) {
+        FieldPacket field = new FieldPacket();
+        field.type = type;
+        return field;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.util;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author xianmao.hexm
+ */
+public class IdleStackTest {
+
+    @Test
+    public void testPushPop() {
+        IdleStack<Integer> stack = new IdleStack<Integer>();
+        Assert.assertNull(stack.pop());
+        stack.push(1);
+        stack.push(2);
+        stack.push(3);
+        Assert.assertEquals(3, stack.size());
+        Assert.assertEquals(Integer.valueOf(3), stack.pop());
+        List<Integer> list = stack.drain();
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals(Integer.valueOf(2), list.get(0));
+        Assert.assertEquals(Integer.valueOf(1), list.get(1));
+        Assert.assertEquals(0, stack.size());
+        Assert.assertNull(stack.pop());
+    }
+
+    @Test
+    public void testRemove() {
+        IdleStack<Integer> stack = new IdleStack<Integer>();
+        for (int i = 1; i <= 5; i++) {
+            stack.push(i);
+        }
+        List<Integer> removed = stack.remove(new IdleStack.Matcher<Integer>() {
+            @Override
+            public boolean match(Integer item) {
+                return item % 2 == 1;
+            }
+        });
+        Assert.assertEquals(3, removed.size());
+        Assert.assertEquals(Integer.valueOf(5), removed.get(0));
+        Assert.assertEquals(2, stack.size());
+
+        // 栈顶被取出的节点在出栈时跳过，其余资源保持原有顺序
+        Assert.assertEquals(Integer.valueOf(4), stack.pop());
+        Assert.assertEquals(Integer.valueOf(2), stack.pop());
+        Assert.assertNull(stack.pop());
+        Assert.assertEquals(0, stack.size());
+    }
+
+    @Test
+    public void testConcurrentRemovePop() throws InterruptedException {
+        final IdleStack<Integer> stack = new IdleStack<Integer>();
+        final int count = 100000;
+        for (int i = 0; i < count; i++) {
+            stack.push(i);
+        }
+        final AtomicInteger popped = new AtomicInteger();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                while (stack.pop() != null) {
+                    popped.incrementAndGet();
+                }
+            }
+        };
+        t.start();
+        List<Integer> removed = stack.remove(new IdleStack.Matcher<Integer>() {
+            @Override
+            public boolean match(Integer item) {
+                return item % 3 == 0;
+            }
+        });
+        t.join();
+        Assert.assertEquals(count, popped.get() + removed.size());
+        Assert.assertEquals(0, stack.size());
+    }
+
+    @Test
+    public void testConcurrentPushPop() throws InterruptedException {
+        final IdleStack<Integer> stack = new IdleStack<Integer>();
+        final int threads = 8;
+        final int loop = 100000;
+        final AtomicInteger popped = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < loop; j++) {
+                        stack.push(j);
+                        if (stack.pop() != null) {
+                            popped.incrementAndGet();
+                        }
+                    }
+                    latch.countDown();
+                }
+            }.start();
+        }
+        latch.await();
+        Assert.assertEquals(threads * loop, popped.get());
+        Assert.assertEquals(0, stack.size());
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.net.util;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author xianmao.hexm
+ */
+public class StripedCounterTest {
+
+    @Test
+    public void testAdd() {
+        StripedCounter counter = new StripedCounter();
+        counter.increment();
+        counter.add(10L);
+        counter.add(-3L);
+        Assert.assertEquals(8L, counter.sum());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        final int threads = 8;
+        final int loop = 100000;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < loop; j++) {
+                        counter.increment();
+                    }
+                    latch.countDown();
+                }
+            }.start();
+        }
+        latch.await();
+        Assert.assertEquals((long) threads * loop, counter.sum());
+    }
+
+}
@@ -82,8 +82,25 @@ public class Limit implements ASTNode {
         return size == null ? sizeP : size;
     }
 
+    private Limit replaceLimit;
+
+    /**
+     * 输出SQL时以replaceLimit代替
+     */
+    public void setReplaceLimit(Limit replaceLimit) {
+        this.replaceLimit = replaceLimit;
+    }
+
+    public void clearReplaceLimit() {
+        this.replaceLimit = null;
+    }
+
     @Override
     public void accept(SQLASTVisitor visitor) {
-        visitor.visit(this);
+        if (replaceLimit == null) {
+            visitor.visit(this);
+        } else {
+            replaceLimit.accept(visitor);
+        }
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.route;
+
+/**
+ * 跨节点COUNT(DISTINCT)的合并计划：各节点返回去重后的参数列，合并时再去重计数，
+ * 近似模式下以HyperLogLog估算。
+ * 
+ * @author xianmao.hexm
+ */
+public final class CountDistinctPlan {
+
+    private final String name;
+    private final int columnCount;
+    private final boolean approximate;
+
+    public CountDistinctPlan(String name, int columnCount, boolean approximate) {
+        this.name = name;
+        this.columnCount = columnCount;
+        this.approximate = approximate;
+    }
+
+    /**
+     * @return 返回给客户端的列名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return COUNT(DISTINCT)的参数个数，即节点结果集的列数
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+}
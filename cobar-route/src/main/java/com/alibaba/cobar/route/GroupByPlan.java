@@ -0,0 +1,107 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.route;
+
+/**
+ * 跨节点GROUP BY的合并计划：各节点执行去掉HAVING、ORDER BY和LIMIT的部分聚合语句，
+ * 合并时按分组键汇总，再依次执行HAVING、排序和LIMIT。
+ * <p>
+ * 输出列依次为选择列和为HAVING、排序、分组键补充的隐藏列，列序号指向节点结果集中的列。
+ * 
+ * @author xianmao.hexm
+ */
+public final class GroupByPlan {
+
+    private final int[] keys;
+    private final MergeColumn[] columns;
+    private final int visibleCount;
+    private final MergeCondition having;
+    private final MergeColumn[] orderBy;
+    private final long limitOffset;
+    private final long limitSize;
+
+    public GroupByPlan(int[] keys, MergeColumn[] columns, int visibleCount, MergeCondition having,
+                       MergeColumn[] orderBy, long limitOffset, long limitSize) {
+        this.keys = keys;
+        this.columns = columns;
+        this.visibleCount = visibleCount;
+        this.having = having;
+        this.orderBy = orderBy;
+        this.limitOffset = limitOffset;
+        this.limitSize = limitSize;
+    }
+
+    /**
+     * @return 分组键在节点结果集中的列序号
+     */
+    public int[] getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return 输出列，类型为AGG_*
+     */
+    public MergeColumn[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return 返回给客户端的输出列数
+     */
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * @return null if no HAVING
+     */
+    public MergeCondition getHaving() {
+        return having;
+    }
+
+    /**
+     * @return 排序列，序号指向输出列，null if no order
+     */
+    public MergeColumn[] getOrderBy() {
+        return orderBy;
+    }
+
+    public long getLimitOffset() {
+        return limitOffset;
+    }
+
+    /**
+     * @return -1 if no limit
+     */
+    public long getLimitSize() {
+        return limitSize;
+    }
+
+    /**
+     * @return 节点结果集的列数
+     */
+    public int getColumnCount() {
+        int max = 0;
+        for (int key : keys) {
+            max = Math.max(max, key + 1);
+        }
+        for (MergeColumn col : columns) {
+            max = Math.max(max, Math.max(col.getIndex(), col.getCountIndex()) + 1);
+        }
+        return max;
+    }
+
+}
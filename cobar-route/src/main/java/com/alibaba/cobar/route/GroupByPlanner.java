@@ -0,0 +1,414 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.route;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alibaba.cobar.parser.ast.expression.BinaryOperatorExpression;
+import com.alibaba.cobar.parser.ast.expression.Expression;
+import com.alibaba.cobar.parser.ast.expression.arithmeic.MinusExpression;
+import com.alibaba.cobar.parser.ast.expression.comparison.ComparisionEqualsExpression;
+import com.alibaba.cobar.parser.ast.expression.comparison.ComparisionGreaterThanExpression;
+import com.alibaba.cobar.parser.ast.expression.comparison.ComparisionGreaterThanOrEqualsExpression;
+import com.alibaba.cobar.parser.ast.expression.comparison.ComparisionIsExpression;
+import com.alibaba.cobar.parser.ast.expression.comparison.ComparisionLessOrGreaterThanExpression;
+import com.alibaba.cobar.parser.ast.expression.comparison.ComparisionLessThanExpression;
+import com.alibaba.cobar.parser.ast.expression.comparison.ComparisionLessThanOrEqualsExpression;
+import com.alibaba.cobar.parser.ast.expression.comparison.ComparisionNotEqualsExpression;
+import com.alibaba.cobar.parser.ast.expression.logical.LogicalAndExpression;
+import com.alibaba.cobar.parser.ast.expression.logical.LogicalNotExpression;
+import com.alibaba.cobar.parser.ast.expression.logical.LogicalOrExpression;
+import com.alibaba.cobar.parser.ast.expression.primary.Identifier;
+import com.alibaba.cobar.parser.ast.expression.primary.Wildcard;
+import com.alibaba.cobar.parser.ast.expression.primary.function.FunctionExpression;
+import com.alibaba.cobar.parser.ast.expression.primary.function.groupby.Avg;
+import com.alibaba.cobar.parser.ast.expression.primary.function.groupby.Count;
+import com.alibaba.cobar.parser.ast.expression.primary.function.groupby.Max;
+import com.alibaba.cobar.parser.ast.expression.primary.function.groupby.Min;
+import com.alibaba.cobar.parser.ast.expression.primary.function.groupby.Sum;
+import com.alibaba.cobar.parser.ast.expression.primary.literal.LiteralNull;
+import com.alibaba.cobar.parser.ast.expression.primary.literal.LiteralNumber;
+import com.alibaba.cobar.parser.ast.expression.primary.literal.LiteralString;
+import com.alibaba.cobar.parser.ast.fragment.GroupBy;
+import com.alibaba.cobar.parser.ast.fragment.Limit;
+import com.alibaba.cobar.parser.ast.fragment.OrderBy;
+import com.alibaba.cobar.parser.ast.fragment.SortOrder;
+import com.alibaba.cobar.parser.ast.stmt.dml.DMLSelectStatement;
+import com.alibaba.cobar.parser.ast.stmt.dml.DMLSelectStatement.SelectDuplicationStrategy;
+import com.alibaba.cobar.parser.util.Pair;
+import com.alibaba.cobar.parser.visitor.EmptySQLASTVisitor;
+
+/**
+ * 生成跨节点GROUP BY的{@link GroupByPlan}和下推到各节点的部分聚合语句：AVG改写为SUM和COUNT，
+ * HAVING、排序和分组键中不在选择列表里的表达式作为隐藏列追加在选择列之后。
+ * 没有GROUP BY的SELECT DISTINCT按全部选择列分组合并。
+ * 
+ * @author xianmao.hexm
+ */
+final class GroupByPlanner {
+
+    private final DMLSelectStatement select;
+    private final List<Pair<Expression, String>> pushed = new ArrayList<Pair<Expression, String>>();
+    private final List<Expression> outputs = new ArrayList<Expression>();
+    private final List<MergeColumn> columns = new ArrayList<MergeColumn>();
+    private final List<Integer> pendingAvgs = new ArrayList<Integer>();
+    private GroupByPlan plan;
+
+    GroupByPlanner(DMLSelectStatement select) {
+        this.select = select;
+    }
+
+    GroupByPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return 下推到各节点的语句，null if the groups can not be merged
+     */
+    DMLSelectStatement plan() {
+        GroupBy group = select.getGroup();
+        boolean distinct = select.getOption().resultDup != SelectDuplicationStrategy.ALL;
+        if (group == null ? !distinct || select.getHaving() != null : group.isWithRollup() || distinct) {
+            return null;
+        }
+        // 选择列保持原来的位置，AVG对应的COUNT在选择列之后追加
+        for (Pair<Expression, String> item : select.getSelectExprList()) {
+            if (item.getKey() instanceof Wildcard || addOutput(item.getKey(), item.getValue(), true) < 0) {
+                return null;
+            }
+        }
+        int visibleCount = columns.size();
+        for (Integer i : pendingAvgs) {
+            MergeColumn col = columns.get(i);
+            Avg avg = (Avg) outputs.get(i);
+            int countIndex = push(new Count(avg.getArguments().get(0)), null);
+            columns.set(i, new MergeColumn(col.getName(), col.getIndex(), MergeColumn.AGG_AVG, countIndex));
+        }
+
+        int[] keys;
+        int[] keyOutputs;
+        if (distinct) {
+            keys = new int[visibleCount];
+            keyOutputs = new int[visibleCount];
+            for (int i = 0; i < visibleCount; ++i) {
+                if (columns.get(i).getType() != MergeColumn.AGG_ANY) {
+                    return null;
+                }
+                keyOutputs[i] = i;
+                keys[i] = columns.get(i).getIndex();
+            }
+        } else {
+            List<Pair<Expression, SortOrder>> groupList = group.getOrderByList();
+            keys = new int[groupList.size()];
+            keyOutputs = new int[groupList.size()];
+            for (int i = 0; i < keys.length; ++i) {
+                int out = resolve(groupList.get(i).getKey(), true);
+                if (out < 0 || columns.get(out).getType() != MergeColumn.AGG_ANY) {
+                    return null;
+                }
+                keyOutputs[i] = out;
+                keys[i] = columns.get(out).getIndex();
+            }
+        }
+
+        MergeCondition having = null;
+        if (select.getHaving() != null) {
+            having = toCondition(select.getHaving());
+            if (having == null) {
+                return null;
+            }
+        }
+
+        // 没有ORDER BY时与MySQL一致按分组键排序，ORDER BY NULL表示不排序
+        MergeColumn[] orderBy;
+        OrderBy order = select.getOrder();
+        if (order == null && distinct) {
+            orderBy = null;
+        } else if (order == null) {
+            List<Pair<Expression, SortOrder>> groupList = group.getOrderByList();
+            orderBy = new MergeColumn[keys.length];
+            for (int i = 0; i < keys.length; ++i) {
+                orderBy[i] = new MergeColumn(null, keyOutputs[i], getOrderType(groupList.get(i).getValue()));
+            }
+        } else if (order.getOrderByList().size() == 1 && order.getOrderByList().get(0).getKey() instanceof LiteralNull) {
+            orderBy = null;
+        } else {
+            List<Pair<Expression, SortOrder>> orderList = order.getOrderByList();
+            orderBy = new MergeColumn[orderList.size()];
+            for (int i = 0; i < orderBy.length; ++i) {
+                int out = resolve(orderList.get(i).getKey(), true);
+                // 去重时隐藏的排序列会影响去重的结果
+                if (out < 0 || (distinct && out >= visibleCount)) {
+                    return null;
+                }
+                orderBy[i] = new MergeColumn(null, out, getOrderType(orderList.get(i).getValue()));
+            }
+        }
+
+        long offset = 0;
+        long size = -1;
+        Limit limit = select.getLimit();
+        if (limit != null) {
+            if (!(limit.getOffset() instanceof Number) || !(limit.getSize() instanceof Number)) {
+                return null;
+            }
+            offset = ((Number) limit.getOffset()).longValue();
+            size = ((Number) limit.getSize()).longValue();
+            // 超出long的行数表示取到末尾
+            size = size < 0 ? -1 : size;
+        }
+
+        plan = new GroupByPlan(keys, columns.toArray(new MergeColumn[columns.size()]), visibleCount, having,
+                orderBy, offset, size);
+        if (distinct) {
+            return new DMLSelectStatement(select.getOption(), pushed, select.getTables(), select.getWhere(), null,
+                    null, null, null);
+        }
+        // 各节点的分组结果由合并端重新排序，节点上不必排序
+        return new DMLSelectStatement(select.getOption(), pushed, select.getTables(), select.getWhere(), group, null,
+                new OrderBy(new LiteralNull(), SortOrder.ASC), null);
+    }
+
+    /**
+     * 按序号（仅限GROUP BY和ORDER BY）、别名或相同的表达式查找输出列，找不到时追加为隐藏列。
+     * 
+     * @return -1 if the expression can not be merged
+     */
+    private int resolve(Expression expr, boolean position) {
+        if (expr instanceof LiteralNumber && position) {
+            int n = ((LiteralNumber) expr).getNumber().intValue();
+            return n >= 1 && n <= select.getSelectExprList().size() ? n - 1 : -1;
+        }
+        if (expr instanceof Identifier && ((Identifier) expr).getParent() == null) {
+            String name = Identifier.unescapeName(((Identifier) expr).getIdText());
+            List<Pair<Expression, String>> items = select.getSelectExprList();
+            for (int i = 0, len = items.size(); i < len; ++i) {
+                String alias = ServerRouter.unquoteAlias(items.get(i).getValue());
+                if (alias != null && alias.equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+        }
+        String text = ServerRouter.genSQL(expr);
+        for (int i = 0, len = outputs.size(); i < len; ++i) {
+            if (text.equalsIgnoreCase(ServerRouter.genSQL(outputs.get(i)))) {
+                return i;
+            }
+        }
+        return addOutput(expr, null, false);
+    }
+
+    /**
+     * @return 输出列序号，-1 if the expression can not be merged
+     */
+    private int addOutput(Expression expr, String alias, boolean visible) {
+        int type = getAggregateType(expr);
+        if (type < 0) {
+            return -1;
+        }
+        int out = columns.size();
+        String name = ServerRouter.unquoteAlias(alias);
+        if (name == null) {
+            name = expr instanceof Identifier ? Identifier.unescapeName(((Identifier) expr).getIdText())
+                    : ServerRouter.genSQL(expr);
+        }
+        if (type == MergeColumn.AGG_AVG) {
+            Expression arg = ((Avg) expr).getArguments().get(0);
+            // SUM沿用AVG的列名，客户端看到的字段名不变
+            int index = push(new Sum(arg, false), visible ? quoteAlias(name) : null);
+            if (visible) {
+                pendingAvgs.add(out);
+                columns.add(new MergeColumn(name, index, type));
+            } else {
+                int countIndex = push(new Count(arg), null);
+                columns.add(new MergeColumn(name, index, type, countIndex));
+            }
+        } else {
+            columns.add(new MergeColumn(name, push(expr, alias), type));
+        }
+        outputs.add(expr);
+        return out;
+    }
+
+    private int push(Expression expr, String alias) {
+        pushed.add(new Pair<Expression, String>(expr, alias));
+        return pushed.size() - 1;
+    }
+
+    private static String quoteAlias(String name) {
+        return '`' + name.replace("`", "``") + '`';
+    }
+
+    private static int getOrderType(SortOrder order) {
+        return order == SortOrder.DESC ? MergeColumn.ORDER_DESC : MergeColumn.ORDER_ASC;
+    }
+
+    /**
+     * @return -1 if not mergeable, such as DISTINCT aggregates and expressions over aggregates
+     */
+    private static int getAggregateType(Expression expr) {
+        if (expr instanceof Count) {
+            return ((Count) expr).isDistinct() ? -1 : MergeColumn.AGG_COUNT;
+        }
+        if (expr instanceof Sum) {
+            return ((Sum) expr).isDistinct() ? -1 : MergeColumn.AGG_SUM;
+        }
+        if (expr instanceof Avg) {
+            return ((Avg) expr).isDistinct() ? -1 : MergeColumn.AGG_AVG;
+        }
+        if (expr instanceof Min) {
+            return MergeColumn.AGG_MIN;
+        }
+        if (expr instanceof Max) {
+            return MergeColumn.AGG_MAX;
+        }
+        AggregateFinder finder = new AggregateFinder();
+        expr.accept(finder);
+        return finder.found ? -1 : MergeColumn.AGG_ANY;
+    }
+
+    /**
+     * 把HAVING转为合并结果上的过滤条件，只支持AND、OR、NOT组合的列与常量比较以及IS [NOT] NULL。
+     * 
+     * @return null if not supported
+     */
+    private MergeCondition toCondition(Expression expr) {
+        if (expr instanceof LogicalAndExpression || expr instanceof LogicalOrExpression) {
+            BinaryOperatorExpression bin = (BinaryOperatorExpression) expr;
+            MergeCondition left = toCondition(bin.getLeftOprand());
+            MergeCondition right = left == null ? null : toCondition(bin.getRightOprand());
+            if (right == null) {
+                return null;
+            }
+            int type = expr instanceof LogicalAndExpression ? MergeCondition.AND : MergeCondition.OR;
+            return MergeCondition.logical(type, left, right);
+        }
+        if (expr instanceof LogicalNotExpression) {
+            MergeCondition operand = toCondition(((LogicalNotExpression) expr).getOperand());
+            return operand == null ? null : MergeCondition.logical(MergeCondition.NOT, operand);
+        }
+        if (expr instanceof ComparisionIsExpression) {
+            ComparisionIsExpression is = (ComparisionIsExpression) expr;
+            int type;
+            switch (is.getMode()) {
+            case ComparisionIsExpression.IS_NULL:
+                type = MergeCondition.IS_NULL;
+                break;
+            case ComparisionIsExpression.IS_NOT_NULL:
+                type = MergeCondition.IS_NOT_NULL;
+                break;
+            default:
+                return null;
+            }
+            int column = resolve(is.getOperand(), false);
+            return column < 0 ? null : MergeCondition.compare(type, column, null);
+        }
+        if (!(expr instanceof BinaryOperatorExpression)) {
+            return null;
+        }
+        int type = getCompareType(expr);
+        if (type < 0) {
+            return null;
+        }
+        BinaryOperatorExpression bin = (BinaryOperatorExpression) expr;
+        Expression operand = bin.getLeftOprand();
+        Object value = getLiteral(bin.getRightOprand());
+        if (value == null) {
+            // 常量在左边时交换比较方向
+            operand = bin.getRightOprand();
+            value = getLiteral(bin.getLeftOprand());
+            if (value == null) {
+                return null;
+            }
+            type = flip(type);
+        }
+        int column = resolve(operand, false);
+        return column < 0 ? null : MergeCondition.compare(type, column, value);
+    }
+
+    private static int getCompareType(Expression expr) {
+        if (expr instanceof ComparisionEqualsExpression) {
+            return MergeCondition.EQ;
+        }
+        if (expr instanceof ComparisionNotEqualsExpression || expr instanceof ComparisionLessOrGreaterThanExpression) {
+            return MergeCondition.NE;
+        }
+        if (expr instanceof ComparisionLessThanExpression) {
+            return MergeCondition.LT;
+        }
+        if (expr instanceof ComparisionLessThanOrEqualsExpression) {
+            return MergeCondition.LE;
+        }
+        if (expr instanceof ComparisionGreaterThanExpression) {
+            return MergeCondition.GT;
+        }
+        if (expr instanceof ComparisionGreaterThanOrEqualsExpression) {
+            return MergeCondition.GE;
+        }
+        return -1;
+    }
+
+    private static int flip(int type) {
+        switch (type) {
+        case MergeCondition.LT:
+            return MergeCondition.GT;
+        case MergeCondition.LE:
+            return MergeCondition.GE;
+        case MergeCondition.GT:
+            return MergeCondition.LT;
+        case MergeCondition.GE:
+            return MergeCondition.LE;
+        default:
+            return type;
+        }
+    }
+
+    /**
+     * @return Number或String，null if not a literal
+     */
+    private static Object getLiteral(Expression expr) {
+        if (expr instanceof LiteralNumber) {
+            return ((LiteralNumber) expr).getNumber();
+        }
+        if (expr instanceof LiteralString) {
+            return ((LiteralString) expr).getUnescapedString();
+        }
+        if (expr instanceof MinusExpression && ((MinusExpression) expr).getOperand() instanceof LiteralNumber) {
+            Number n = ((LiteralNumber) ((MinusExpression) expr).getOperand()).getNumber();
+            return new BigDecimal(n.toString()).negate();
+        }
+        return null;
+    }
+
+    /**
+     * 查找表达式中的聚合函数
+     */
+    private static final class AggregateFinder extends EmptySQLASTVisitor {
+        private boolean found;
+
+        @Override
+        public void visit(FunctionExpression node) {
+            if (node.getClass().getPackage() == Count.class.getPackage()) {
+                found = true;
+                return;
+            }
+            super.visit(node);
+        }
+    }
+
+}
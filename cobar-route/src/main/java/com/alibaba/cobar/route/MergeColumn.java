@@ -0,0 +1,78 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.route;
+
+/**
+ * 多节点结果集合并时参与运算的列，如排序列。
+ * 
+ * @author xianmao.hexm
+ */
+public final class MergeColumn {
+    public static final int ORDER_ASC = 1;
+    public static final int ORDER_DESC = 2;
+    public static final int AGG_COUNT = 3;
+    public static final int AGG_SUM = 4;
+    public static final int AGG_MIN = 5;
+    public static final int AGG_MAX = 6;
+    public static final int AGG_AVG = 7;
+    public static final int AGG_ANY = 8;
+
+    private final String name; // 列名或别名，在结果集字段中按名称定位
+    private final int index; // 在结果集中的列序号，未知时为-1
+    private final int type;
+    private final int countIndex; // AVG拆分为SUM和COUNT下推时COUNT列的序号
+
+    public MergeColumn(String name, int index, int type) {
+        this(name, index, type, -1);
+    }
+
+    public MergeColumn(String name, int index, int type, int countIndex) {
+        this.name = name;
+        this.index = index;
+        this.type = type;
+        this.countIndex = countIndex;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return -1 if unknown
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return -1 if not {@link #AGG_AVG}
+     */
+    public int getCountIndex() {
+        return countIndex;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(name == null ? "#" + index : name).append(':').append(type);
+        return s.toString();
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.route;
+
+/**
+ * 合并后的结果集上执行的过滤条件，如跨节点GROUP BY的HAVING，列序号指向合并后的输出列。
+ * 
+ * @author xianmao.hexm
+ */
+public final class MergeCondition {
+    public static final int AND = 1;
+    public static final int OR = 2;
+    public static final int NOT = 3;
+    public static final int EQ = 4;
+    public static final int NE = 5;
+    public static final int LT = 6;
+    public static final int LE = 7;
+    public static final int GT = 8;
+    public static final int GE = 9;
+    public static final int IS_NULL = 10;
+    public static final int IS_NOT_NULL = 11;
+
+    private final int type;
+    private final int column;
+    private final Object value; // Number或String
+    private final MergeCondition[] operands;
+
+    private MergeCondition(int type, int column, Object value, MergeCondition[] operands) {
+        this.type = type;
+        this.column = column;
+        this.value = value;
+        this.operands = operands;
+    }
+
+    /**
+     * @param type {@link #AND}, {@link #OR} or {@link #NOT}
+     */
+    public static MergeCondition logical(int type, MergeCondition... operands) {
+        return new MergeCondition(type, -1, null, operands);
+    }
+
+    /**
+     * 列与常量比较，IS NULL和IS NOT NULL时value为null
+     */
+    public static MergeCondition compare(int type, int column, Object value) {
+        return new MergeCondition(type, column, value, null);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public MergeCondition[] getOperands() {
+        return operands;
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.route;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alibaba.cobar.parser.ast.stmt.SQLStatement;
+import com.alibaba.cobar.route.config.SchemaConfig;
+import com.alibaba.cobar.route.config.TableConfig;
+import com.alibaba.cobar.route.config.TableRuleConfig.RuleConfig;
+
+/**
+ * 预处理语句的路由计划：语法解析和拆分规则匹配在预处理时完成，执行时只需绑定参数和计算规则。
+ * 无法在预处理时确定路由方式的语句，执行时按绑定参数后的完整语句路由。
+ * 
+ * @author xianmao.hexm
+ */
+public final class PreparedRoute {
+
+    private final SchemaConfig schema;
+    private final String statement;
+    private final int[] paramOffsets;
+    private SQLStatement ast;
+    private int readLock;
+
+    /** 生成计划时的配置版本，版本变化后计划中的schema和拆分规则已过期 */
+    private long generation;
+
+    /** 不依赖参数的固定路由节点 */
+    private String dataNode;
+
+    /** 依赖拆分键的路由，ruleValues与rule的列一一对应，取值为常量或参数序号(ParamIndex) */
+    private TableConfig table;
+    private RuleConfig rule;
+    private Object[] ruleValues;
+
+    public PreparedRoute(SchemaConfig schema, String statement) {
+        this.schema = schema;
+        this.statement = statement;
+        this.paramOffsets = indexOfParams(statement);
+    }
+
+    public SchemaConfig getSchema() {
+        return schema;
+    }
+
+    public String getStatement() {
+        return statement;
+    }
+
+    public int getParameterCount() {
+        return paramOffsets.length;
+    }
+
+    public SQLStatement getAst() {
+        return ast;
+    }
+
+    void setAst(SQLStatement ast) {
+        this.ast = ast;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    int getReadLock() {
+        return readLock;
+    }
+
+    void setReadLock(int readLock) {
+        this.readLock = readLock;
+    }
+
+    String getDataNode() {
+        return dataNode;
+    }
+
+    void setDataNode(String dataNode) {
+        this.dataNode = dataNode;
+    }
+
+    TableConfig getTable() {
+        return table;
+    }
+
+    RuleConfig getRule() {
+        return rule;
+    }
+
+    Object[] getRuleValues() {
+        return ruleValues;
+    }
+
+    void setRule(TableConfig table, RuleConfig rule, Object[] ruleValues) {
+        this.table = table;
+        this.rule = rule;
+        this.ruleValues = ruleValues;
+    }
+
+    /**
+     * 是否不经过语法解析即可完成路由
+     */
+    public boolean isFastRoute() {
+        return dataNode != null || rule != null;
+    }
+
+    /**
+     * 把参数的字面量依次代入语句中的占位符
+     * 
+     * @param params SQL字面量，长度与参数个数相同
+     */
+    public String bind(String[] params) {
+        if (params.length != paramOffsets.length) {
+            throw new IllegalArgumentException("parameter count mismatch: expect "
+                                               + paramOffsets.length
+                                               + " but "
+                                               + params.length);
+        }
+        if (params.length == 0) {
+            return statement;
+        }
+        int size = statement.length();
+        for (String p : params) {
+            size += p.length();
+        }
+        StringBuilder s = new StringBuilder(size);
+        int start = 0;
+        for (int i = 0; i < paramOffsets.length; ++i) {
+            s.append(statement, start, paramOffsets[i]).append(params[i]);
+            start = paramOffsets[i] + 1;
+        }
+        return s.append(statement, start, statement.length()).toString();
+    }
+
+    /**
+     * 拆分键取值中的参数序号，从1开始。
+     */
+    static final class ParamIndex {
+        final int index;
+
+        ParamIndex(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * 找出语句中占位符'?'的位置，跳过字符串、标识符和注释。
+     */
+    static int[] indexOfParams(String sql) {
+        List<Integer> list = null;
+        final int length = sql.length();
+        for (int i = 0; i < length; ++i) {
+            char c = sql.charAt(i);
+            switch (c) {
+            case '\'':
+            case '"':
+            case '`':
+                i = skipQuoted(sql, i, c);
+                break;
+            case '#':
+                i = skipLine(sql, i);
+                break;
+            case '-':
+                if (i + 2 < length && sql.charAt(i + 1) == '-' && Character.isWhitespace(sql.charAt(i + 2))) {
+                    i = skipLine(sql, i);
+                }
+                break;
+            case '/':
+                // 可执行注释"/*!...*/"中的内容按语句处理
+                if (i + 1 < length && sql.charAt(i + 1) == '*' && (i + 2 >= length || sql.charAt(i + 2) != '!')) {
+                    int end = sql.indexOf("*/", i + 2);
+                    i = end < 0 ? length : end + 1;
+                }
+                break;
+            case '?':
+                if (list == null) {
+                    list = new ArrayList<Integer>();
+                }
+                list.add(i);
+                break;
+            }
+        }
+        if (list == null) {
+            return new int[0];
+        }
+        int[] offsets = new int[list.size()];
+        for (int i = 0; i < offsets.length; ++i) {
+            offsets[i] = list.get(i);
+        }
+        return offsets;
+    }
+
+    private static int skipQuoted(String sql, int offset, char quote) {
+        final int length = sql.length();
+        for (int i = offset + 1; i < length; ++i) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote != '`') {
+                ++i;
+            } else if (c == quote) {
+                if (i + 1 < length && sql.charAt(i + 1) == quote) {
+                    ++i;
+                } else {
+                    return i;
+                }
+            }
+        }
+        return length;
+    }
+
+    private static int skipLine(String sql, int offset) {
+        int end = sql.indexOf('\n', offset);
+        return end < 0 ? sql.length() : end;
+    }
+
+}
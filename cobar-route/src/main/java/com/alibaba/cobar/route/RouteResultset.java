@@ -26,10 +26,20 @@ public final class RouteResultset {
     public static final int MAX_FLAG = 3;
     public static final int REWRITE_FIELD = 4;
 
+    public static final int READ_LOCK_UNKNOWN = 0;
+    public static final int READ_LOCK_NONE = 1;
+    public static final int READ_LOCK_HELD = 2;
+
     private final String statement; //原始语句
     private RouteResultsetNode[] nodes; //路由结果节点
     private int flag; //结果集的处理标识，比如：合并，相加等。
     private long limitSize;
+    private long limitOffset; //节点语句改写为从0开始后，合并时需要跳过的行数
+    private MergeColumn[] orderBy; //多节点结果集的排序列
+    private MergeColumn[] aggregates; //多节点结果集按列聚合，与选择列一一对应
+    private GroupByPlan groupBy; //多节点结果集按分组合并
+    private CountDistinctPlan countDistinct; //多节点结果集去重计数
+    private int readLock; //语句是否带锁读取，路由时未经语法解析或非SELECT语句为READ_LOCK_UNKNOWN
 
     public RouteResultset(String stmt) {
         this.statement = stmt;
@@ -67,6 +77,66 @@ public final class RouteResultset {
         this.limitSize = limitSize;
     }
 
+    public long getLimitOffset() {
+        return limitOffset;
+    }
+
+    public void setLimitOffset(long limitOffset) {
+        this.limitOffset = limitOffset;
+    }
+
+    /**
+     * @return null if no need to merge by order
+     */
+    public MergeColumn[] getOrderBy() {
+        return orderBy;
+    }
+
+    public void setOrderBy(MergeColumn[] orderBy) {
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * @return null if no need to aggregate
+     */
+    public MergeColumn[] getAggregates() {
+        return aggregates;
+    }
+
+    public void setAggregates(MergeColumn[] aggregates) {
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * @return null if no need to merge by group
+     */
+    public GroupByPlan getGroupBy() {
+        return groupBy;
+    }
+
+    public void setGroupBy(GroupByPlan groupBy) {
+        this.groupBy = groupBy;
+    }
+
+    /**
+     * @return null if no need to count distinct values
+     */
+    public CountDistinctPlan getCountDistinct() {
+        return countDistinct;
+    }
+
+    public void setCountDistinct(CountDistinctPlan countDistinct) {
+        this.countDistinct = countDistinct;
+    }
+
+    public int getReadLock() {
+        return readLock;
+    }
+
+    public void setReadLock(int readLock) {
+        this.readLock = readLock;
+    }
+
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
@@ -36,26 +36,45 @@ import org.apache.log4j.Logger;
 import com.alibaba.cobar.parser.ast.ASTNode;
 import com.alibaba.cobar.parser.ast.expression.Expression;
 import com.alibaba.cobar.parser.ast.expression.ReplacableExpression;
+import com.alibaba.cobar.parser.ast.expression.comparison.ComparisionEqualsExpression;
+import com.alibaba.cobar.parser.ast.expression.comparison.ComparisionNullSafeEqualsExpression;
 import com.alibaba.cobar.parser.ast.expression.comparison.InExpression;
 import com.alibaba.cobar.parser.ast.expression.misc.InExpressionList;
 import com.alibaba.cobar.parser.ast.expression.primary.Identifier;
+import com.alibaba.cobar.parser.ast.expression.primary.ParamMarker;
 import com.alibaba.cobar.parser.ast.expression.primary.RowExpression;
+import com.alibaba.cobar.parser.ast.expression.primary.Wildcard;
+import com.alibaba.cobar.parser.ast.expression.primary.function.groupby.Count;
+import com.alibaba.cobar.parser.ast.expression.primary.function.groupby.Max;
+import com.alibaba.cobar.parser.ast.expression.primary.function.groupby.Min;
+import com.alibaba.cobar.parser.ast.expression.primary.function.groupby.Sum;
+import com.alibaba.cobar.parser.ast.expression.primary.literal.LiteralNumber;
+import com.alibaba.cobar.parser.ast.fragment.GroupBy;
+import com.alibaba.cobar.parser.ast.fragment.Limit;
+import com.alibaba.cobar.parser.ast.fragment.OrderBy;
+import com.alibaba.cobar.parser.ast.fragment.SortOrder;
 import com.alibaba.cobar.parser.ast.stmt.SQLStatement;
 import com.alibaba.cobar.parser.ast.stmt.dal.DALShowStatement;
 import com.alibaba.cobar.parser.ast.stmt.dml.DMLInsertReplaceStatement;
 import com.alibaba.cobar.parser.ast.stmt.dml.DMLSelectStatement;
+import com.alibaba.cobar.parser.ast.stmt.dml.DMLSelectStatement.SelectDuplicationStrategy;
+import com.alibaba.cobar.parser.ast.stmt.dml.DMLSelectStatement.SelectOption;
 import com.alibaba.cobar.parser.ast.stmt.dml.DMLSelectUnionStatement;
 import com.alibaba.cobar.parser.ast.stmt.dml.DMLUpdateStatement;
 import com.alibaba.cobar.parser.recognizer.SQLParserDelegate;
+import com.alibaba.cobar.parser.recognizer.lexer.SQLLexer;
+import com.alibaba.cobar.parser.recognizer.syntax.SQLExprParser;
 import com.alibaba.cobar.parser.recognizer.syntax.SQLParser;
 import com.alibaba.cobar.parser.util.ArrayUtil;
 import com.alibaba.cobar.parser.util.Pair;
+import com.alibaba.cobar.parser.visitor.EmptySQLASTVisitor;
 import com.alibaba.cobar.parser.visitor.MySQLOutputASTVisitor;
 import com.alibaba.cobar.route.config.SchemaConfig;
 import com.alibaba.cobar.route.config.TableConfig;
 import com.alibaba.cobar.route.config.TableRuleConfig;
 import com.alibaba.cobar.route.config.TableRuleConfig.RuleConfig;
 import com.alibaba.cobar.route.hint.CobarHint;
+import com.alibaba.cobar.route.visitor.LockingReadVisitor;
 import com.alibaba.cobar.route.visitor.PartitionKeyVisitor;
 import com.alibaba.cobar.util.CollectionUtil;
 
@@ -84,6 +103,7 @@ public final class ServerRouter {
                 PartitionKeyVisitor visitor = new PartitionKeyVisitor(schema.getTables());
                 visitor.setTrimSchema(schema.getName());
                 ast.accept(visitor);
+                rrs.setReadLock(readLockOf(ast));
                 if (visitor.isSchemaTrimmed()) {
                     stmt = genSQL(ast, stmt);
                 }
@@ -99,6 +119,7 @@ public final class ServerRouter {
         PartitionKeyVisitor visitor = new PartitionKeyVisitor(schema.getTables());
         visitor.setTrimSchema(schema.isKeepSqlSchema() ? schema.getName() : null);
         ast.accept(visitor);
+        rrs.setReadLock(readLockOf(ast));
 
         // 如果sql包含用户自定义的schema，则路由到default节点
         if (schema.isKeepSqlSchema() && visitor.isCustomedSchema()) {
@@ -121,43 +142,10 @@ public final class ServerRouter {
         }
 
         // 匹配规则
-        TableConfig matchedTable = null;
-        RuleConfig rule = null;
-        Map<String, List<Object>> columnValues = null;
-        Map<String, Map<String, List<Object>>> astExt = visitor.getColumnValue();
-        Map<String, TableConfig> tables = schema.getTables();
-        ft: for (Entry<String, Map<String, List<Object>>> e : astExt.entrySet()) {
-            Map<String, List<Object>> col2Val = e.getValue();
-
-            // 增加正则支持
-            // TableConfig tc = tables.get(e.getKey());
-            TableConfig tc = RegexUtil.get(tables, e.getKey());
-
-            if (tc == null) {
-                continue;
-            }
-            if (matchedTable == null) {
-                matchedTable = tc;
-            }
-            if (col2Val == null || col2Val.isEmpty()) {
-                continue;
-            }
-            TableRuleConfig tr = tc.getRule();
-            if (tr != null) {
-                for (RuleConfig rc : tr.getRules()) {
-                    boolean match = true;
-                    for (String ruleColumn : rc.getColumns()) {
-                        match &= col2Val.containsKey(ruleColumn);
-                    }
-                    if (match) {
-                        columnValues = col2Val;
-                        rule = rc;
-                        matchedTable = tc;
-                        break ft;
-                    }
-                }
-            }
-        }
+        RuleMatch rm = matchRule(schema, visitor);
+        TableConfig matchedTable = rm.table;
+        RuleConfig rule = rm.rule;
+        Map<String, List<Object>> columnValues = rm.columnValues;
 
         // 规则匹配处理，表级别和列级别。
         if (matchedTable == null) {
@@ -179,13 +167,24 @@ public final class ServerRouter {
                                                    + stmt);
             }
             String[] dataNodes = matchedTable.getDataNodes();
-            String sql = visitor.isSchemaTrimmed() ? genSQL(ast, stmt) : stmt;
+            SQLStatement nodeAST = dataNodes.length > 1 ? planGroupBy(rrs, ast, matchedTable) : ast;
+            Limit rewrittenLimit = nodeAST == ast && dataNodes.length > 1 ? rewriteLimit(rrs, ast) : null;
+            boolean rewritten = nodeAST != ast || rewrittenLimit != null;
+            String sql;
+            try {
+                sql = visitor.isSchemaTrimmed() || rewritten ? genSQL(nodeAST, stmt) : stmt;
+            } finally {
+                if (rewrittenLimit != null) {
+                    rewrittenLimit.clearReplaceLimit();
+                }
+            }
             RouteResultsetNode[] rn = new RouteResultsetNode[dataNodes.length];
             for (int i = 0; i < dataNodes.length; ++i) {
                 rn[i] = new RouteResultsetNode(dataNodes[i], sql);
             }
             rrs.setNodes(rn);
             setGroupFlagAndLimit(rrs, visitor);
+            setMergeColumns(rrs, ast);
             return rrs;
         }
 
@@ -209,15 +208,274 @@ public final class ServerRouter {
                 DMLInsertReplaceStatement ir = (DMLInsertReplaceStatement) ast;
                 dispatchInsertReplace(rn, ir, rule.getColumns(), dnMap, matchedTable, stmt, visitor);
             } else {
-                dispatchWhereBasedStmt(rn, ast, rule.getColumns(), dnMap, matchedTable, stmt, visitor);
+                SQLStatement nodeAST = planGroupBy(rrs, ast, matchedTable);
+                Limit rewrittenLimit = nodeAST == ast ? rewriteLimit(rrs, ast) : null;
+                boolean rewritten = nodeAST != ast || rewrittenLimit != null;
+                try {
+                    dispatchWhereBasedStmt(rn, nodeAST, rule.getColumns(), dnMap, matchedTable, stmt, visitor, rewritten);
+                } finally {
+                    if (rewrittenLimit != null) {
+                        rewrittenLimit.clearReplaceLimit();
+                    }
+                }
             }
             rrs.setNodes(rn);
             setGroupFlagAndLimit(rrs, visitor);
+            setMergeColumns(rrs, ast);
+        }
+
+        return rrs;
+    }
+
+    /**
+     * 生成预处理语句的路由计划。参数在求值时以{@link PreparedRoute.ParamIndex}代入，
+     * 拆分键的取值只由常量或直接比较的参数构成时，执行阶段可以不经过语法解析完成路由。
+     */
+    public static PreparedRoute prepare(SchemaConfig schema, String stmt, String charset)
+            throws SQLNonTransientException {
+        PreparedRoute plan = new PreparedRoute(schema, stmt);
+
+        // 含有cobar hint的语句在执行时路由
+        if (HintRouter.indexOfPrefix(stmt) >= 0) {
+            return plan;
+        }
+        if (schema.isNoSharding() && !schema.isKeepSqlSchema()) {
+            plan.setDataNode(schema.getDataNode());
+            return plan;
+        }
+
+        // 生成AST并检查参数个数
+        charset = charset == null ? SQLParser.DEFAULT_CHARSET : charset;
+        SQLLexer lexer = new SQLLexer(stmt);
+        SQLStatement ast = SQLParserDelegate.parse(lexer, charset);
+        if (lexer.paramIndex() != plan.getParameterCount()) {
+            throw new SQLSyntaxErrorException("parameter count mismatch: " + stmt);
+        }
+        plan.setAst(ast);
+        plan.setReadLock(readLockOf(ast));
+
+        // 参数参与运算时无法预先求值，执行时再路由。
+        PartitionKeyVisitor visitor = prepareVisitor(schema, ast, plan.getParameterCount());
+        if (visitor == null || visitor.isSchemaTrimmed()) {
+            return plan;
+        }
+        if (schema.isNoSharding() || (schema.isKeepSqlSchema() && visitor.isCustomedSchema())) {
+            plan.setDataNode(schema.getDataNode());
+            return plan;
+        }
+        if (visitor.isTableMetaRead()) {
+            return plan;
+        }
+
+        RuleMatch rm = matchRule(schema, visitor);
+        if (rm.table == null) {
+            if (!"".equals(schema.getDataNode()) || !isSystemReadSQL(ast)) {
+                plan.setDataNode(schema.getDataNode());
+            }
+            return plan;
+        }
+        if (rm.rule == null) {
+            return plan;
+        }
+        validateAST(ast, rm.table, rm.rule, visitor);
+
+        // 参数值经过函数或运算得到的拆分键取值不可信，只接受直接比较的参数；
+        // 所有参数都是直接比较时，常量取值才与参数无关。
+        DirectParamVisitor params = new DirectParamVisitor();
+        ast.accept(params);
+        boolean allDirect = params.direct.size() == plan.getParameterCount();
+        String[] cols = rm.rule.getColumns();
+        Object[] ruleValues = new Object[cols.length];
+        for (int i = 0; i < cols.length; ++i) {
+            List<Object> values = rm.columnValues.get(cols[i]);
+            if (values == null || values.size() != 1) {
+                return plan;
+            }
+            Object value = values.get(0);
+            if (value instanceof PreparedRoute.ParamIndex) {
+                if (!params.direct.contains(((PreparedRoute.ParamIndex) value).index)) {
+                    return plan;
+                }
+            } else if (value == null || !allDirect) {
+                return plan;
+            }
+            ruleValues[i] = value;
         }
+        plan.setRule(rm.table, rm.rule, ruleValues);
+        return plan;
+    }
 
+    /**
+     * 按预处理语句的路由计划计算路由
+     * 
+     * @param params 参数的SQL字面量
+     */
+    public static RouteResultset route(PreparedRoute plan, String[] params, String charset, Object info)
+            throws SQLNonTransientException {
+        String stmt = plan.bind(params);
+        String dataNode = plan.getDataNode();
+        if (dataNode != null) {
+            RouteResultset rrs = new RouteResultset(stmt);
+            rrs.setNodes(new RouteResultsetNode[] { new RouteResultsetNode(dataNode, stmt) });
+            rrs.setReadLock(plan.getReadLock());
+            return rrs;
+        }
+        RuleConfig rule = plan.getRule();
+        if (rule == null) {
+            return route(plan.getSchema(), stmt, charset, info);
+        }
+
+        // 计算拆分键的取值，参数以单个字面量的求值结果代入。
+        charset = charset == null ? SQLParser.DEFAULT_CHARSET : charset;
+        String[] cols = rule.getColumns();
+        Object[] ruleValues = plan.getRuleValues();
+        Map<String, List<Object>> columnValues = new HashMap<String, List<Object>>(cols.length, 1);
+        for (int i = 0; i < cols.length; ++i) {
+            Object value = ruleValues[i];
+            if (value instanceof PreparedRoute.ParamIndex) {
+                String literal = params[((PreparedRoute.ParamIndex) value).index - 1];
+                value = new SQLExprParser(new SQLLexer(literal), charset).expression()
+                                                                       .evaluation(Collections.emptyMap());
+                if (value == null || value == Expression.UNEVALUATABLE) {
+                    return route(plan.getSchema(), stmt, charset, info);
+                }
+            }
+            List<Object> list = new ArrayList<Object>(1);
+            list.add(value);
+            columnValues.put(cols[i], list);
+        }
+        TableConfig table = plan.getTable();
+        Map<Integer, List<Object[]>> dnMap = ruleCalculate(table, rule, columnValues);
+        if (dnMap == null || dnMap.isEmpty()) {
+            throw new IllegalArgumentException("No target dataNode for rule " + rule);
+        }
+        if (dnMap.size() != 1) {
+            return route(plan.getSchema(), stmt, charset, info);
+        }
+        RouteResultset rrs = new RouteResultset(stmt);
+        dataNode = table.getDataNodes()[dnMap.keySet().iterator().next()];
+        rrs.setNodes(new RouteResultsetNode[] { new RouteResultsetNode(dataNode, stmt) });
+        rrs.setReadLock(plan.getReadLock());
         return rrs;
     }
 
+    /**
+     * @return null表示求值过程中出现异常，比如参数参与了运算
+     */
+    private static PartitionKeyVisitor prepareVisitor(SchemaConfig schema, SQLStatement ast, int paramCount) {
+        Map<Integer, Object> params = new HashMap<Integer, Object>(paramCount << 1);
+        for (int i = 1; i <= paramCount; ++i) {
+            params.put(i, new PreparedRoute.ParamIndex(i));
+        }
+        PartitionKeyVisitor visitor = new PartitionKeyVisitor(schema.getTables());
+        visitor.setTrimSchema(schema.isKeepSqlSchema() ? schema.getName() : null);
+        visitor.setEvaluationParameter(params);
+        try {
+            ast.accept(visitor);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return visitor;
+    }
+
+    /**
+     * 找出作为比较操作数、IN列表元素、VALUES行元素或LIMIT直接出现的参数
+     */
+    private static final class DirectParamVisitor extends EmptySQLASTVisitor {
+        final Set<Integer> direct = new HashSet<Integer>();
+
+        private void check(Object expr) {
+            if (expr instanceof ParamMarker) {
+                direct.add(((ParamMarker) expr).getParamIndex());
+            }
+        }
+
+        @Override
+        public void visit(ComparisionEqualsExpression node) {
+            check(node.getLeftOprand());
+            check(node.getRightOprand());
+            super.visit(node);
+        }
+
+        @Override
+        public void visit(ComparisionNullSafeEqualsExpression node) {
+            check(node.getLeftOprand());
+            check(node.getRightOprand());
+            super.visit(node);
+        }
+
+        @Override
+        public void visit(InExpressionList node) {
+            for (Expression expr : node.getList()) {
+                check(expr);
+            }
+            super.visit(node);
+        }
+
+        @Override
+        public void visit(RowExpression node) {
+            for (Expression expr : node.getRowExprList()) {
+                check(expr);
+            }
+            super.visit(node);
+        }
+
+        @Override
+        public void visit(Limit node) {
+            check(node.getOffset());
+            check(node.getSize());
+            super.visit(node);
+        }
+    }
+
+    /**
+     * 规则匹配结果
+     */
+    private static final class RuleMatch {
+        TableConfig table;
+        RuleConfig rule;
+        Map<String, List<Object>> columnValues;
+    }
+
+    private static RuleMatch matchRule(SchemaConfig schema, PartitionKeyVisitor visitor) {
+        RuleMatch rm = new RuleMatch();
+        Map<String, Map<String, List<Object>>> astExt = visitor.getColumnValue();
+        Map<String, TableConfig> tables = schema.getTables();
+        for (Entry<String, Map<String, List<Object>>> e : astExt.entrySet()) {
+            Map<String, List<Object>> col2Val = e.getValue();
+
+            // 增加正则支持
+            // TableConfig tc = tables.get(e.getKey());
+            TableConfig tc = RegexUtil.get(tables, e.getKey());
+
+            if (tc == null) {
+                continue;
+            }
+            if (rm.table == null) {
+                rm.table = tc;
+            }
+            if (col2Val == null || col2Val.isEmpty()) {
+                continue;
+            }
+            TableRuleConfig tr = tc.getRule();
+            if (tr != null) {
+                for (RuleConfig rc : tr.getRules()) {
+                    boolean match = true;
+                    for (String ruleColumn : rc.getColumns()) {
+                        match &= col2Val.containsKey(ruleColumn);
+                    }
+                    if (match) {
+                        rm.columnValues = col2Val;
+                        rm.rule = rc;
+                        rm.table = tc;
+                        return rm;
+                    }
+                }
+            }
+        }
+        return rm;
+    }
+
     private static class HintRouter {
         public static int indexOfPrefix(String sql) {
             int i = 0;
@@ -529,6 +787,290 @@ public final class ServerRouter {
         }
     }
 
+    /**
+     * 语句是否带锁读取，只对SELECT判断，其余语句为{@link RouteResultset#READ_LOCK_UNKNOWN}。
+     */
+    private static int readLockOf(SQLStatement ast) {
+        if (!(ast instanceof DMLSelectStatement) && !(ast instanceof DMLSelectUnionStatement)) {
+            return RouteResultset.READ_LOCK_UNKNOWN;
+        }
+        return LockingReadVisitor.isLockingRead(ast) ? RouteResultset.READ_LOCK_HELD : RouteResultset.READ_LOCK_NONE;
+    }
+
+    /**
+     * 多节点的分页查询各节点改写为LIMIT 0, offset+size，合并时再跳过offset行。
+     * 有排序时每个排序列都须在选择列表中按序号定位，否则合并端无法归并排序，跳过的行不确定。
+     * 改写只作用于节点语句的生成，调用方生成完毕后须调用{@link Limit#clearReplaceLimit()}还原AST。
+     * 
+     * @return 设置了改写的Limit，未改写返回null
+     */
+    private static Limit rewriteLimit(RouteResultset rrs, SQLStatement ast) {
+        if (!(ast instanceof DMLSelectStatement)) {
+            return null;
+        }
+        DMLSelectStatement select = (DMLSelectStatement) ast;
+        Limit limit = select.getLimit();
+        if (limit == null || !(limit.getOffset() instanceof Number) || !(limit.getSize() instanceof Number)) {
+            return null;
+        }
+        long offset = ((Number) limit.getOffset()).longValue();
+        if (offset <= 0 || getAggregates(select) != null || !isOrderMergeable(select)) {
+            return null;
+        }
+        Number size = (Number) limit.getSize();
+        long count = size.longValue();
+        // 超出long的行数(如18446744073709551615)表示取到末尾，保持原值
+        if (count >= 0 && count <= Long.MAX_VALUE - offset) {
+            size = Long.valueOf(offset + count);
+        }
+        limit.setReplaceLimit(new Limit(0, size));
+        rrs.setLimitOffset(offset);
+        return limit;
+    }
+
+    /**
+     * @return 没有排序或全部排序列都能在选择列表中按序号定位时返回true
+     */
+    private static boolean isOrderMergeable(DMLSelectStatement select) {
+        OrderBy order = select.getOrder();
+        if (order == null) {
+            return true;
+        }
+        for (Pair<Expression, SortOrder> p : order.getOrderByList()) {
+            MergeColumn col = getMergeColumn(select, p.getKey(), MergeColumn.ORDER_ASC);
+            if (col == null || col.getIndex() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 跨节点的GROUP BY和DISTINCT：分组列或去重列包含某个拆分规则的全部拆分键时各节点的结果互不重复，直接输出；
+     * 否则各节点执行部分聚合或去重，按{@link GroupByPlan}合并，无法合并时保持原语句。
+     * 
+     * @return 用于生成节点语句的AST
+     */
+    private static SQLStatement planGroupBy(RouteResultset rrs, SQLStatement ast, TableConfig table) {
+        if (!(ast instanceof DMLSelectStatement)) {
+            return ast;
+        }
+        DMLSelectStatement select = (DMLSelectStatement) ast;
+        GroupBy group = select.getGroup();
+        List<Expression> keys;
+        if (group != null) {
+            keys = new ArrayList<Expression>(group.getOrderByList().size());
+            for (Pair<Expression, SortOrder> p : group.getOrderByList()) {
+                keys.add(p.getKey());
+            }
+        } else if (select.getOption().resultDup != SelectDuplicationStrategy.ALL) {
+            keys = select.getSelectExprListWithoutAlias();
+        } else {
+            return planCountDistinct(rrs, select, table);
+        }
+        if (isPartitionKeyIncluded(keys, table.getRule())) {
+            return ast;
+        }
+        GroupByPlanner planner = new GroupByPlanner(select);
+        DMLSelectStatement nodeAST = planner.plan();
+        if (nodeAST == null) {
+            LOGGER.debug("group by can not be merged: " + rrs.getStatement());
+            return ast;
+        }
+        rrs.setGroupBy(planner.getPlan());
+        return nodeAST;
+    }
+
+    /**
+     * 没有GROUP BY的单个COUNT(DISTINCT)：参数包含拆分键时各节点的取值互不重复，按列求和；
+     * 否则各节点返回去重后的参数列，按{@link CountDistinctPlan}合并计数。
+     * 
+     * @return 用于生成节点语句的AST
+     */
+    private static SQLStatement planCountDistinct(RouteResultset rrs, DMLSelectStatement select, TableConfig table) {
+        List<Pair<Expression, String>> items = select.getSelectExprList();
+        if (items.size() != 1 || select.getHaving() != null) {
+            return select;
+        }
+        Expression expr = items.get(0).getKey();
+        if (!(expr instanceof Count) || !((Count) expr).isDistinct()) {
+            return select;
+        }
+        Limit limit = select.getLimit();
+        if (limit != null
+            && (!(limit.getOffset() instanceof Number) || ((Number) limit.getOffset()).longValue() != 0
+                || !(limit.getSize() instanceof Number) || ((Number) limit.getSize()).longValue() == 0)) {
+            return select;
+        }
+        String alias = unquoteAlias(items.get(0).getValue());
+        String name = alias != null ? alias : genSQL(expr);
+        List<Expression> args = ((Count) expr).getArguments();
+        if (isPartitionKeyIncluded(args, table.getRule())) {
+            rrs.setAggregates(new MergeColumn[] { new MergeColumn(name, 0, MergeColumn.AGG_COUNT) });
+            return select;
+        }
+        List<Pair<Expression, String>> pushed = new ArrayList<Pair<Expression, String>>(args.size());
+        for (Expression arg : args) {
+            pushed.add(new Pair<Expression, String>(arg, null));
+        }
+        SelectOption option = new SelectOption();
+        option.resultDup = SelectDuplicationStrategy.DISTINCT;
+        option.lockMode = select.getOption().lockMode;
+        rrs.setCountDistinct(new CountDistinctPlan(name, args.size(), table.isApproximateDistinct()));
+        return new DMLSelectStatement(option, pushed, select.getTables(), select.getWhere(), null, null, null, null);
+    }
+
+    private static boolean isPartitionKeyIncluded(List<Expression> exprs, TableRuleConfig tableRule) {
+        if (tableRule == null) {
+            return false;
+        }
+        for (RuleConfig rule : tableRule.getRules()) {
+            if (containsAll(exprs, rule.getColumns())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsAll(List<Expression> exprs, String[] columns) {
+        for (String column : columns) {
+            boolean found = false;
+            for (Expression expr : exprs) {
+                if (expr instanceof Identifier
+                    && column.equalsIgnoreCase(Identifier.unescapeName(((Identifier) expr).getIdText()))) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 多节点查询结果集的合并信息：按列聚合以及排序列，排序列无法在结果集中定位时不做合并排序。
+     */
+    private static void setMergeColumns(RouteResultset rrs, SQLStatement ast) {
+        if (!(ast instanceof DMLSelectStatement) || rrs.getNodes().length <= 1 || rrs.getGroupBy() != null
+            || rrs.getCountDistinct() != null) {
+            return;
+        }
+        DMLSelectStatement select = (DMLSelectStatement) ast;
+        MergeColumn[] aggregates = getAggregates(select);
+        if (aggregates != null) {
+            rrs.setAggregates(aggregates);
+        }
+        OrderBy order = select.getOrder();
+        if (order == null) {
+            return;
+        }
+        List<Pair<Expression, SortOrder>> list = order.getOrderByList();
+        MergeColumn[] orderBy = new MergeColumn[list.size()];
+        int i = 0;
+        for (Pair<Expression, SortOrder> p : list) {
+            int type = p.getValue() == SortOrder.DESC ? MergeColumn.ORDER_DESC : MergeColumn.ORDER_ASC;
+            MergeColumn col = getMergeColumn(select, p.getKey(), type);
+            if (col == null) {
+                LOGGER.debug("order by column is not in select list: " + rrs.getStatement());
+                return;
+            }
+            orderBy[i++] = col;
+        }
+        rrs.setOrderBy(orderBy);
+    }
+
+    /**
+     * 没有GROUP BY且选择列全部是COUNT、SUM、MIN、MAX时，各节点的单行结果按列聚合。
+     * 
+     * @return null if not aggregatable
+     */
+    private static MergeColumn[] getAggregates(DMLSelectStatement select) {
+        List<Pair<Expression, String>> items = select.getSelectExprList();
+        if (select.getGroup() != null || items.isEmpty()) {
+            return null;
+        }
+        MergeColumn[] aggregates = new MergeColumn[items.size()];
+        for (int i = 0, len = items.size(); i < len; ++i) {
+            Expression expr = items.get(i).getKey();
+            int type;
+            if (expr instanceof Count && !((Count) expr).isDistinct()) {
+                type = MergeColumn.AGG_COUNT;
+            } else if (expr instanceof Sum && !((Sum) expr).isDistinct()) {
+                type = MergeColumn.AGG_SUM;
+            } else if (expr instanceof Min) {
+                type = MergeColumn.AGG_MIN;
+            } else if (expr instanceof Max) {
+                type = MergeColumn.AGG_MAX;
+            } else {
+                return null;
+            }
+            aggregates[i] = new MergeColumn(unquoteAlias(items.get(i).getValue()), i, type);
+        }
+        return aggregates;
+    }
+
+    /**
+     * 在选择列表中查找表达式对应的列：按序号、别名或相同的表达式匹配，通配符之后的列只能按名称定位。
+     * 
+     * @return null if not found
+     */
+    private static MergeColumn getMergeColumn(DMLSelectStatement select, Expression expr, int type) {
+        List<Pair<Expression, String>> items = select.getSelectExprList();
+        if (expr instanceof LiteralNumber) {
+            int n = ((LiteralNumber) expr).getNumber().intValue();
+            for (Pair<Expression, String> item : items) {
+                if (item.getKey() instanceof Wildcard) {
+                    return null;
+                }
+            }
+            return n >= 1 && n <= items.size() ? new MergeColumn(null, n - 1, type) : null;
+        }
+        String name = null;
+        if (expr instanceof Identifier && ((Identifier) expr).getParent() == null) {
+            name = Identifier.unescapeName(((Identifier) expr).getIdText());
+        }
+        String text = genSQL(expr);
+        boolean wildcard = false;
+        for (int i = 0, len = items.size(); i < len; ++i) {
+            Pair<Expression, String> item = items.get(i);
+            Expression key = item.getKey();
+            if (key instanceof Wildcard) {
+                wildcard = true;
+                continue;
+            }
+            String alias = unquoteAlias(item.getValue());
+            if ((alias != null && alias.equalsIgnoreCase(name)) || text.equalsIgnoreCase(genSQL(key))) {
+                if (alias == null) {
+                    alias = key instanceof Identifier ? Identifier.unescapeName(((Identifier) key).getIdText()) : text;
+                }
+                return new MergeColumn(alias, wildcard ? -1 : i, type);
+            }
+        }
+        if (expr instanceof Identifier) {
+            return new MergeColumn(Identifier.unescapeName(((Identifier) expr).getIdText()), -1, type);
+        }
+        return null;
+    }
+
+    static String unquoteAlias(String alias) {
+        if (alias == null || alias.length() < 2) {
+            return alias;
+        }
+        char c = alias.charAt(0);
+        if ((c == '`' || c == '\'' || c == '"') && alias.charAt(alias.length() - 1) == c) {
+            return alias.substring(1, alias.length() - 1);
+        }
+        return alias;
+    }
+
+    static String genSQL(Expression expr) {
+        StringBuilder s = new StringBuilder();
+        expr.accept(new MySQLOutputASTVisitor(s));
+        return s.toString();
+    }
+
     /**
      * @return dataNodeIndex -&gt; [partitionKeysValueTuple+]
      */
@@ -585,11 +1127,12 @@ public final class ServerRouter {
                                                Map<Integer, List<Object[]>> dataNodeMap,
                                                TableConfig matchedTable,
                                                String originalSQL,
-                                               PartitionKeyVisitor visitor) {
+                                               PartitionKeyVisitor visitor,
+                                               boolean limitRewritten) {
         // [perf tag] 11.617 us: sharding multivalue
         if (ruleColumns.length > 1) {
             String sql;
-            if (visitor.isSchemaTrimmed()) {
+            if (visitor.isSchemaTrimmed() || limitRewritten) {
                 sql = genSQL(stmtAST, originalSQL);
             } else {
                 sql = originalSQL;
@@ -707,7 +1250,7 @@ public final class ServerRouter {
                                               String originalSQL,
                                               PartitionKeyVisitor visitor) {
         if (stmt.getSelect() != null) {
-            dispatchWhereBasedStmt(rn, stmt, ruleColumns, dataNodeMap, matchedTable, originalSQL, visitor);
+            dispatchWhereBasedStmt(rn, stmt, ruleColumns, dataNodeMap, matchedTable, originalSQL, visitor, false);
             return;
         }
         Map<String, Map<Object, Set<Pair<Expression, ASTNode>>>> colsIndex =
@@ -36,8 +36,17 @@ public final class TableConfig {
     private final TableRuleConfig rule;
     private final Set<String> columnIndex;
     private final boolean ruleRequired;
+    private final boolean approximateDistinct;
 
     public TableConfig(String name, String dataNode, TableRuleConfig rule, boolean ruleRequired) {
+        this(name, dataNode, rule, ruleRequired, false);
+    }
+
+    /**
+     * @param approximateDistinct 跨节点的COUNT(DISTINCT)是否以HyperLogLog近似计数
+     */
+    public TableConfig(String name, String dataNode, TableRuleConfig rule, boolean ruleRequired,
+                       boolean approximateDistinct) {
         this.name = name;
         this.dataNodes = SplitUtil.split(dataNode, ',', '$', '-', '[', ']');
         if (this.dataNodes == null || this.dataNodes.length <= 0) {
@@ -46,6 +55,7 @@ public final class TableConfig {
         this.rule = rule;
         this.columnIndex = buildColumnIndex(rule);
         this.ruleRequired = ruleRequired;
+        this.approximateDistinct = approximateDistinct;
     }
 
     public boolean existsColumn(String columnNameUp) {
@@ -64,6 +74,10 @@ public final class TableConfig {
         return ruleRequired;
     }
 
+    public boolean isApproximateDistinct() {
+        return approximateDistinct;
+    }
+
     public TableRuleConfig getRule() {
         return rule;
     }
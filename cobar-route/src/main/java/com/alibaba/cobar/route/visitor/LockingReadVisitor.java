@@ -0,0 +1,67 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.route.visitor;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.alibaba.cobar.parser.ast.expression.primary.function.FunctionExpression;
+import com.alibaba.cobar.parser.ast.stmt.SQLStatement;
+import com.alibaba.cobar.parser.ast.stmt.dml.DMLSelectStatement;
+import com.alibaba.cobar.parser.visitor.EmptySQLASTVisitor;
+
+/**
+ * 判断语句是否带锁读取：SELECT ... FOR UPDATE、LOCK IN SHARE MODE(含子查询和UNION)以及用户锁函数，
+ * 这类语句须在主库执行。
+ * 
+ * @author xianmao.hexm
+ */
+public final class LockingReadVisitor extends EmptySQLASTVisitor {
+    private static final Set<String> LOCK_FUNCTIONS = new HashSet<String>();
+    static {
+        LOCK_FUNCTIONS.add("GET_LOCK");
+        LOCK_FUNCTIONS.add("RELEASE_LOCK");
+        LOCK_FUNCTIONS.add("RELEASE_ALL_LOCKS");
+        LOCK_FUNCTIONS.add("IS_FREE_LOCK");
+        LOCK_FUNCTIONS.add("IS_USED_LOCK");
+    }
+
+    private boolean locking;
+
+    public static boolean isLockingRead(SQLStatement ast) {
+        LockingReadVisitor visitor = new LockingReadVisitor();
+        ast.accept(visitor);
+        return visitor.locking;
+    }
+
+    @Override
+    public void visit(DMLSelectStatement node) {
+        if (node.getOption().lockMode != DMLSelectStatement.LockMode.UNDEF) {
+            locking = true;
+            return;
+        }
+        super.visit(node);
+    }
+
+    @Override
+    public void visit(FunctionExpression node) {
+        if (LOCK_FUNCTIONS.contains(node.getFunctionName())) {
+            locking = true;
+            return;
+        }
+        super.visit(node);
+    }
+}
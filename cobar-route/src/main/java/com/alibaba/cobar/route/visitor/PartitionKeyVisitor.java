@@ -373,7 +373,7 @@ public final class PartitionKeyVisitor implements SQLASTVisitor {
     }
 
     //---temp state------------------------------------------------------------------
-    private final Map<Object, Object> evaluationParameter = Collections.emptyMap();
+    private Map<? extends Object, ? extends Object> evaluationParameter = Collections.emptyMap();
     private final Map<String, TableConfig> tablesRuleConfig;
     private boolean verdictColumn = true;
     private int idLevel = 2;
@@ -394,6 +394,16 @@ public final class PartitionKeyVisitor implements SQLASTVisitor {
         return this;
     }
 
+    /**
+     * 设置求值参数，用于给{@link ParamMarker}提供取值。
+     */
+    public PartitionKeyVisitor setEvaluationParameter(Map<? extends Object, ? extends Object> evaluationParameter) {
+        if (evaluationParameter != null) {
+            this.evaluationParameter = evaluationParameter;
+        }
+        return this;
+    }
+
     private boolean isRuledColumn(String tableNameUp, String columnNameUp) {
         if (tableNameUp == null) {
             return false;
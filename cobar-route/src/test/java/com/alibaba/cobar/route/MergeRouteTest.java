@@ -0,0 +1,256 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.route;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.parser.ast.expression.Expression;
+import com.alibaba.cobar.parser.ast.expression.primary.PlaceHolder;
+import com.alibaba.cobar.parser.util.ListUtil;
+import com.alibaba.cobar.route.config.SchemaConfig;
+import com.alibaba.cobar.route.config.TableConfig;
+import com.alibaba.cobar.route.config.TableRuleConfig;
+import com.alibaba.cobar.route.config.TableRuleConfig.RuleConfig;
+import com.alibaba.cobar.route.function.PartitionByMod;
+
+/**
+ * 多节点结果集合并信息的路由测试
+ * 
+ * @author xianmao.hexm
+ */
+public class MergeRouteTest extends TestCase {
+
+    private SchemaConfig schema;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void setUp() throws Exception {
+        PartitionByMod mod =
+                new PartitionByMod("mod", (List<Expression>) ListUtil.createList(new PlaceHolder(
+                        "member_id",
+                        "MEMBER_ID").setCacheEvalRst(false)));
+        mod.setCacheEvalRst(false);
+        mod.setPartitionCount("4");
+        RuleConfig rule = new RuleConfig(new String[] { "MEMBER_ID" }, mod);
+        TableRuleConfig tr = new TableRuleConfig("offer_rule", new RuleConfig[] { rule });
+        Map<String, TableConfig> tables = new HashMap<String, TableConfig>();
+        tables.put("OFFER", new TableConfig("OFFER", "dn$0-3", tr, false));
+        schema = new SchemaConfig("cndb", "dn_default", null, false, tables);
+    }
+
+    public void testOrderBy() throws Exception {
+        RouteResultset rrs = ServerRouter.route(schema, "select id, name from offer order by name desc, id", null, null);
+        Assert.assertEquals(4, rrs.getNodes().length);
+        MergeColumn[] orderBy = rrs.getOrderBy();
+        Assert.assertEquals(2, orderBy.length);
+        Assert.assertEquals(1, orderBy[0].getIndex());
+        Assert.assertEquals(MergeColumn.ORDER_DESC, orderBy[0].getType());
+        Assert.assertEquals(0, orderBy[1].getIndex());
+        Assert.assertEquals(MergeColumn.ORDER_ASC, orderBy[1].getType());
+
+        rrs = ServerRouter.route(schema, "select id, gmt_create + 1 as t from offer order by t, 1", null, null);
+        orderBy = rrs.getOrderBy();
+        Assert.assertEquals(1, orderBy[0].getIndex());
+        Assert.assertTrue("t".equalsIgnoreCase(orderBy[0].getName()));
+        Assert.assertEquals(0, orderBy[1].getIndex());
+
+        rrs = ServerRouter.route(schema, "select o.*, count from offer o order by o.name, count", null, null);
+        orderBy = rrs.getOrderBy();
+        Assert.assertEquals(-1, orderBy[0].getIndex());
+        Assert.assertEquals("name", orderBy[0].getName());
+        Assert.assertEquals(-1, orderBy[1].getIndex());
+        Assert.assertEquals("count", orderBy[1].getName());
+
+        // 排序表达式不在选择列表中
+        rrs = ServerRouter.route(schema, "select id from offer order by id + 1", null, null);
+        Assert.assertNull(rrs.getOrderBy());
+
+        // 单节点不需要合并
+        rrs = ServerRouter.route(schema, "select id from offer where member_id = 1 order by id", null, null);
+        Assert.assertEquals(1, rrs.getNodes().length);
+        Assert.assertNull(rrs.getOrderBy());
+    }
+
+    public void testLimit() throws Exception {
+        RouteResultset rrs = ServerRouter.route(schema, "select * from offer limit 20", null, null);
+        Assert.assertEquals(4, rrs.getNodes().length);
+        Assert.assertEquals(20L, rrs.getLimitSize());
+        Assert.assertEquals(0L, rrs.getLimitOffset());
+        rrs = ServerRouter.route(schema, "select * from offer order by id desc limit 5, 10", null, null);
+        Assert.assertEquals(10L, rrs.getLimitSize());
+        Assert.assertEquals(MergeColumn.ORDER_DESC, rrs.getOrderBy()[0].getType());
+        rrs = ServerRouter.route(schema, "select * from offer", null, null);
+        Assert.assertEquals(-1L, rrs.getLimitSize());
+    }
+
+    public void testLimitOffset() throws Exception {
+        RouteResultset rrs = ServerRouter.route(schema, "select id, name from offer order by id limit 1000, 20",
+                null, null);
+        Assert.assertEquals(1000L, rrs.getLimitOffset());
+        Assert.assertEquals(20L, rrs.getLimitSize());
+        for (RouteResultsetNode node : rrs.getNodes()) {
+            Assert.assertTrue(node.getStatement().endsWith("LIMIT 0, 1020"));
+        }
+        rrs = ServerRouter.route(schema, "select id, name from offer order by 2 desc, id limit 10, 5", null, null);
+        Assert.assertEquals(10L, rrs.getLimitOffset());
+        rrs = ServerRouter.route(schema, "select * from offer where member_id in (1, 2) limit 10, 5", null, null);
+        Assert.assertEquals(2, rrs.getNodes().length);
+        Assert.assertEquals(10L, rrs.getLimitOffset());
+        Assert.assertTrue(rrs.getNodes()[0].getStatement().endsWith("LIMIT 0, 15"));
+
+        rrs = ServerRouter.route(schema, "select count(*) from offer limit 1, 1", null, null);
+        Assert.assertEquals(0L, rrs.getLimitOffset());
+        rrs = ServerRouter.route(schema, "select * from offer where member_id = 1 limit 10, 5", null, null);
+        Assert.assertEquals(0L, rrs.getLimitOffset());
+        Assert.assertTrue(rrs.getNodes()[0].getStatement().endsWith("limit 10, 5"));
+
+        // 排序列不能在选择列表中按序号定位时合并端可能无法归并排序，不改写
+        rrs = ServerRouter.route(schema, "select name from offer order by id limit 100, 10", null, null);
+        Assert.assertEquals(0L, rrs.getLimitOffset());
+        Assert.assertEquals(10L, rrs.getLimitSize());
+        Assert.assertEquals(-1, rrs.getOrderBy()[0].getIndex());
+        for (RouteResultsetNode node : rrs.getNodes()) {
+            Assert.assertTrue(node.getStatement().endsWith("limit 100, 10"));
+        }
+        rrs = ServerRouter.route(schema, "select * from offer order by id limit 1000, 20", null, null);
+        Assert.assertEquals(0L, rrs.getLimitOffset());
+        rrs = ServerRouter.route(schema, "select id from offer order by id + 1 limit 10, 5", null, null);
+        Assert.assertEquals(0L, rrs.getLimitOffset());
+        Assert.assertNull(rrs.getOrderBy());
+    }
+
+    public void testReadLock() throws Exception {
+        RouteResultset rrs = ServerRouter.route(schema, "select * from offer where member_id = 1", null, null);
+        Assert.assertEquals(RouteResultset.READ_LOCK_NONE, rrs.getReadLock());
+        rrs = ServerRouter.route(schema, "select * from offer where member_id = 1 for update", null, null);
+        Assert.assertEquals(RouteResultset.READ_LOCK_HELD, rrs.getReadLock());
+        rrs = ServerRouter.route(schema, "select id from offer where id in (select id from offer lock in share mode)",
+                null, null);
+        Assert.assertEquals(RouteResultset.READ_LOCK_HELD, rrs.getReadLock());
+        rrs = ServerRouter.route(schema, "select get_lock('a', 1), id from offer", null, null);
+        Assert.assertEquals(RouteResultset.READ_LOCK_HELD, rrs.getReadLock());
+        rrs = ServerRouter.route(schema, "update offer set name = 'a' where member_id = 1", null, null);
+        Assert.assertEquals(RouteResultset.READ_LOCK_UNKNOWN, rrs.getReadLock());
+
+        rrs = ServerRouter.route(schema, "select 1", null, null);
+        Assert.assertEquals(RouteResultset.READ_LOCK_NONE, rrs.getReadLock());
+        rrs = ServerRouter.route(schema, "select is_free_lock('a')", null, null);
+        Assert.assertEquals(RouteResultset.READ_LOCK_HELD, rrs.getReadLock());
+
+        // 预处理语句的快速路由沿用预处理时的判断
+        PreparedRoute plan = ServerRouter.prepare(schema, "select * from offer where member_id = ? for update", null);
+        Assert.assertTrue(plan.isFastRoute());
+        rrs = ServerRouter.route(plan, new String[] { "1" }, null, null);
+        Assert.assertEquals(RouteResultset.READ_LOCK_HELD, rrs.getReadLock());
+        plan = ServerRouter.prepare(schema, "select * from offer where member_id = ?", null);
+        rrs = ServerRouter.route(plan, new String[] { "1" }, null, null);
+        Assert.assertEquals(RouteResultset.READ_LOCK_NONE, rrs.getReadLock());
+    }
+
+    public void testAggregates() throws Exception {
+        RouteResultset rrs = ServerRouter.route(schema, "select count(*), sum(price) s, min(id), max(name) from offer",
+                null, null);
+        MergeColumn[] aggregates = rrs.getAggregates();
+        Assert.assertEquals(4, aggregates.length);
+        Assert.assertEquals(MergeColumn.AGG_COUNT, aggregates[0].getType());
+        Assert.assertEquals(MergeColumn.AGG_SUM, aggregates[1].getType());
+        Assert.assertEquals(1, aggregates[1].getIndex());
+        Assert.assertEquals(MergeColumn.AGG_MIN, aggregates[2].getType());
+        Assert.assertEquals(MergeColumn.AGG_MAX, aggregates[3].getType());
+
+        rrs = ServerRouter.route(schema, "select count(distinct id) from offer", null, null);
+        Assert.assertNull(rrs.getAggregates());
+        rrs = ServerRouter.route(schema, "select count(*), name from offer", null, null);
+        Assert.assertNull(rrs.getAggregates());
+        rrs = ServerRouter.route(schema, "select count(*) from offer group by name", null, null);
+        Assert.assertNull(rrs.getAggregates());
+        rrs = ServerRouter.route(schema, "select count(*) from offer where member_id = 1", null, null);
+        Assert.assertNull(rrs.getAggregates());
+    }
+
+    public void testGroupBy() throws Exception {
+        RouteResultset rrs = ServerRouter.route(schema, "select name, count(*) c, avg(price) from offer "
+                + "group by name having c > 2 and max(id) < 100 order by 3 desc limit 10, 5", null, null);
+        GroupByPlan plan = rrs.getGroupBy();
+        Assert.assertNotNull(plan);
+        Assert.assertEquals(3, plan.getVisibleCount());
+        Assert.assertEquals(5, plan.getColumnCount());
+        Assert.assertEquals(0, plan.getKeys()[0]);
+        MergeColumn avg = plan.getColumns()[2];
+        Assert.assertEquals(MergeColumn.AGG_AVG, avg.getType());
+        Assert.assertEquals(2, avg.getIndex());
+        Assert.assertEquals(3, avg.getCountIndex());
+        Assert.assertEquals(MergeColumn.AGG_MAX, plan.getColumns()[3].getType());
+        Assert.assertEquals(MergeCondition.AND, plan.getHaving().getType());
+        Assert.assertEquals(2, plan.getOrderBy()[0].getIndex());
+        Assert.assertEquals(10L, plan.getLimitOffset());
+        Assert.assertEquals(5L, plan.getLimitSize());
+        Assert.assertEquals(0L, rrs.getLimitOffset());
+        Assert.assertNull(rrs.getOrderBy());
+        String sql = rrs.getNodes()[0].getStatement().toUpperCase();
+        Assert.assertTrue(sql, sql.contains("SUM(PRICE) AS `AVG(PRICE)`, COUNT(PRICE), MAX(ID)"));
+        Assert.assertFalse(sql, sql.contains("HAVING") || sql.contains("LIMIT"));
+
+        // 没有ORDER BY时按分组键排序
+        rrs = ServerRouter.route(schema, "select count(*) from offer group by name desc", null, null);
+        plan = rrs.getGroupBy();
+        Assert.assertEquals(1, plan.getVisibleCount());
+        Assert.assertEquals(1, plan.getKeys()[0]);
+        Assert.assertEquals(1, plan.getOrderBy()[0].getIndex());
+        Assert.assertEquals(MergeColumn.ORDER_DESC, plan.getOrderBy()[0].getType());
+
+        // 分组键包含拆分键，无法合并的聚合
+        rrs = ServerRouter.route(schema, "select member_id, count(*) from offer group by member_id", null, null);
+        Assert.assertNull(rrs.getGroupBy());
+        rrs = ServerRouter.route(schema, "select name, count(distinct id) from offer group by name", null, null);
+        Assert.assertNull(rrs.getGroupBy());
+        rrs = ServerRouter.route(schema, "select name, sum(id) / count(*) from offer group by name", null, null);
+        Assert.assertNull(rrs.getGroupBy());
+    }
+
+    public void testDistinct() throws Exception {
+        RouteResultset rrs = ServerRouter.route(schema, "select distinct name, id from offer order by id", null, null);
+        GroupByPlan plan = rrs.getGroupBy();
+        Assert.assertNotNull(plan);
+        Assert.assertEquals(2, plan.getKeys().length);
+        Assert.assertEquals(1, plan.getOrderBy()[0].getIndex());
+        String sql = rrs.getNodes()[0].getStatement().toUpperCase();
+        Assert.assertTrue(sql, sql.startsWith("SELECT DISTINCT NAME, ID FROM OFFER"));
+        Assert.assertFalse(sql, sql.contains("ORDER BY"));
+
+        rrs = ServerRouter.route(schema, "select count(distinct name, id) from offer", null, null);
+        CountDistinctPlan count = rrs.getCountDistinct();
+        Assert.assertNotNull(count);
+        Assert.assertEquals(2, count.getColumnCount());
+        Assert.assertFalse(count.isApproximate());
+        Assert.assertNull(rrs.getAggregates());
+        sql = rrs.getNodes()[0].getStatement().toUpperCase();
+        Assert.assertTrue(sql, sql.startsWith("SELECT DISTINCT NAME, ID FROM OFFER"));
+
+        // 参数包含拆分键时各节点的去重结果互不相交，直接相加
+        rrs = ServerRouter.route(schema, "select count(distinct member_id) from offer", null, null);
+        Assert.assertNull(rrs.getCountDistinct());
+        Assert.assertEquals(MergeColumn.AGG_COUNT, rrs.getAggregates()[0].getType());
+        rrs = ServerRouter.route(schema, "select count(distinct name) from offer having count(*) > 1", null, null);
+        Assert.assertNull(rrs.getCountDistinct());
+    }
+
+}
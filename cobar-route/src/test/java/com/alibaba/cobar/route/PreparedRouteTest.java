@@ -0,0 +1,116 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.route;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.parser.ast.expression.Expression;
+import com.alibaba.cobar.parser.ast.expression.primary.PlaceHolder;
+import com.alibaba.cobar.parser.util.ListUtil;
+import com.alibaba.cobar.route.config.SchemaConfig;
+import com.alibaba.cobar.route.config.TableConfig;
+import com.alibaba.cobar.route.config.TableRuleConfig;
+import com.alibaba.cobar.route.config.TableRuleConfig.RuleConfig;
+import com.alibaba.cobar.route.function.PartitionByMod;
+
+/**
+ * @author xianmao.hexm
+ */
+public class PreparedRouteTest extends TestCase {
+
+    private SchemaConfig schema;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void setUp() throws Exception {
+        PartitionByMod mod =
+                new PartitionByMod("mod", (List<Expression>) ListUtil.createList(new PlaceHolder(
+                        "member_id",
+                        "MEMBER_ID").setCacheEvalRst(false)));
+        mod.setCacheEvalRst(false);
+        mod.setPartitionCount("4");
+        RuleConfig rule = new RuleConfig(new String[] { "MEMBER_ID" }, mod);
+        TableRuleConfig tr = new TableRuleConfig("offer_rule", new RuleConfig[] { rule });
+        Map<String, TableConfig> tables = new HashMap<String, TableConfig>();
+        tables.put("OFFER", new TableConfig("OFFER", "dn$0-3", tr, false));
+        schema = new SchemaConfig("cndb", "dn_default", null, false, tables);
+    }
+
+    public void testIndexOfParams() {
+        String sql = "select '?', `?`, ? from t where a=? -- ?\n and b = \"\\\"?\" /* ? */ and c=? # ?";
+        int[] offsets = PreparedRoute.indexOfParams(sql);
+        Assert.assertEquals(3, offsets.length);
+        Assert.assertEquals(sql.indexOf("? from"), offsets[0]);
+        Assert.assertEquals(sql.indexOf("a=?") + 2, offsets[1]);
+        Assert.assertEquals(sql.indexOf("c=?") + 2, offsets[2]);
+
+        PreparedRoute plan = new PreparedRoute(schema, "update t set a = ? where b = ?");
+        Assert.assertEquals("update t set a = 'x' where b = 2", plan.bind(new String[] { "'x'", "2" }));
+    }
+
+    public void testFastRoute() throws Exception {
+        String sql = "select * from offer where member_id = ? and name = ?";
+        PreparedRoute plan = ServerRouter.prepare(schema, sql, null);
+        Assert.assertTrue(plan.isFastRoute());
+        RouteResultset rrs = ServerRouter.route(plan, new String[] { "7", "'a'" }, null, null);
+        RouteResultset expect = ServerRouter.route(schema, "select * from offer where member_id = 7 and name = 'a'", null, null);
+        Assert.assertEquals(1, rrs.getNodes().length);
+        Assert.assertEquals("dn[3]", rrs.getNodes()[0].getName());
+        Assert.assertEquals(expect.getNodes()[0].getName(), rrs.getNodes()[0].getName());
+        Assert.assertEquals(expect.getNodes()[0].getStatement(), rrs.getNodes()[0].getStatement());
+
+        plan = ServerRouter.prepare(schema, "insert into offer (name, member_id) values (?, ?)", null);
+        Assert.assertTrue(plan.isFastRoute());
+        rrs = ServerRouter.route(plan, new String[] { "'a'", "'6'" }, null, null);
+        Assert.assertEquals("dn[2]", rrs.getNodes()[0].getName());
+
+        plan = ServerRouter.prepare(schema, "select * from offer where member_id = 5 limit ?", null);
+        Assert.assertTrue(plan.isFastRoute());
+        rrs = ServerRouter.route(plan, new String[] { "10" }, null, null);
+        Assert.assertEquals("dn[1]", rrs.getNodes()[0].getName());
+
+        plan = ServerRouter.prepare(schema, "select * from t where id = ?", null);
+        Assert.assertTrue(plan.isFastRoute());
+        rrs = ServerRouter.route(plan, new String[] { "1" }, null, null);
+        Assert.assertEquals("dn_default", rrs.getNodes()[0].getName());
+    }
+
+    public void testFallbackRoute() throws Exception {
+        PreparedRoute plan = ServerRouter.prepare(schema, "select * from offer where member_id = ? + 1", null);
+        Assert.assertFalse(plan.isFastRoute());
+        RouteResultset rrs = ServerRouter.route(plan, new String[] { "7" }, null, null);
+        Assert.assertEquals(1, rrs.getNodes().length);
+        Assert.assertEquals("dn[0]", rrs.getNodes()[0].getName());
+
+        plan = ServerRouter.prepare(schema, "select * from offer where member_id = 5 and id = abs(?)", null);
+        Assert.assertFalse(plan.isFastRoute());
+
+        plan = ServerRouter.prepare(schema, "select * from offer where member_id in (?, ?)", null);
+        Assert.assertFalse(plan.isFastRoute());
+        rrs = ServerRouter.route(plan, new String[] { "1", "2" }, null, null);
+        Assert.assertEquals(2, rrs.getNodes().length);
+
+        plan = ServerRouter.prepare(schema, "select * from offer where member_id = ?", null);
+        rrs = ServerRouter.route(plan, new String[] { "NULL" }, null, null);
+        Assert.assertEquals(4, rrs.getNodes().length);
+    }
+
+}
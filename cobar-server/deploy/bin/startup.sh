@@ -36,6 +36,8 @@ fi
 
 #set JAVA_OPTS
 JAVA_OPTS="-server -Xms1024m -Xmx1024m -Xmn256m -Xss256k"
+#direct memory Options: processorBufferDirect=true needs processors * sum(processorBufferSizes) plus headroom
+#JAVA_OPTS="$JAVA_OPTS -XX:MaxDirectMemorySize=256m"
 #performance Options
 JAVA_OPTS="$JAVA_OPTS -XX:+AggressiveOpts"
 JAVA_OPTS="$JAVA_OPTS -XX:+UseBiasedLocking"
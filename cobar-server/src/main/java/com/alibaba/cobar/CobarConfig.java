@@ -49,6 +49,7 @@ public class CobarConfig {
     private volatile Map<String, MySQLDataNode> _dataNodes;
     private volatile Map<String, DataSourceConfig> dataSources;
     private volatile Map<String, DataSourceConfig> _dataSources;
+    private volatile long generation;
     private long reloadTime;
     private long rollbackTime;
     private int status;
@@ -125,6 +126,13 @@ public class CobarConfig {
         return lock;
     }
 
+    /**
+     * 配置版本，每次重新加载或回滚配置后递增。先读取版本再读取配置，版本不变时读到的配置不会比版本旧。
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
     public long getReloadTime() {
         return reloadTime;
     }
@@ -227,6 +235,7 @@ public class CobarConfig {
             this.dataSources = dataSources;
             this.cluster = cluster;
             this.quarantine = quarantine;
+            this.generation = generation + 1L;
         } finally {
             lock.unlock();
         }
@@ -31,6 +31,8 @@ import com.alibaba.cobar.net.FrontendConnection;
 import com.alibaba.cobar.net.NIOAcceptor;
 import com.alibaba.cobar.net.NIOConnector;
 import com.alibaba.cobar.net.NIOProcessor;
+import com.alibaba.cobar.net.ProcessorSelectors;
+import com.alibaba.cobar.net.buffer.BufferArena;
 import com.alibaba.cobar.net.util.ExecutorUtil;
 import com.alibaba.cobar.net.util.NameableExecutor;
 import com.alibaba.cobar.net.util.TimeUtil;
@@ -38,9 +40,11 @@ import com.alibaba.cobar.parser.recognizer.lexer.SQLLexer;
 import com.alibaba.cobar.server.ServerConnectionFactory;
 import com.alibaba.cobar.server.config.SystemConfig;
 import com.alibaba.cobar.server.node.CobarNode;
+import com.alibaba.cobar.server.node.DataNodeInitializer;
 import com.alibaba.cobar.server.node.MySQLDataNode;
 import com.alibaba.cobar.server.statistics.SQLRecorder;
 import com.alibaba.cobar.util.LogUtil;
+import com.alibaba.cobar.util.SplitUtil;
 
 /**
  * @author xianmao.hexm 2011-4-19 下午02:58:59
@@ -50,6 +54,8 @@ public class CobarServer {
     public static final String VERSION = "5.1.48-cobar-1.2.6";
     private static final long LOG_WATCH_DELAY = 60000L;
     private static final long TIME_UPDATE_PERIOD = 20L;
+    private static final long POOL_CHECK_PERIOD = 1000L;
+    private static final long DATANODE_INIT_RETRY_PERIOD = 30 * 1000L;
     private static final CobarServer INSTANCE = new CobarServer();
     private static final Logger LOGGER = Logger.getLogger(CobarServer.class);
 
@@ -62,6 +68,7 @@ public class CobarServer {
     private final NameableExecutor managerExecutor;
     private final NameableExecutor timerExecutor;
     private final NameableExecutor initExecutor;
+    private final NameableExecutor dataNodeInitExecutor;
     private final SQLRecorder sqlRecorder;
     private final AtomicBoolean isOnline;
     private final long startupTime;
@@ -69,6 +76,8 @@ public class CobarServer {
     private NIOConnector connector;
     private NIOAcceptor manager;
     private NIOAcceptor server;
+    private volatile DataNodeInitializer dataNodeInit;
+    private volatile DataNodeInitializer failedDataNodeInit;
 
     private CobarServer() {
         this.config = new CobarConfig();
@@ -77,6 +86,7 @@ public class CobarServer {
         FrontendConnection.setServerVersion(VERSION);
         this.timer = new Timer(NAME + "Timer", true);
         this.initExecutor = ExecutorUtil.create("InitExecutor", system.getInitExecutor());
+        this.dataNodeInitExecutor = ExecutorUtil.create("DataNodeInitExecutor", system.getInitExecutor());
         this.timerExecutor = ExecutorUtil.create("TimerExecutor", system.getTimerExecutor());
         this.managerExecutor = ExecutorUtil.create("ManagerExecutor", system.getManagerExecutor());
         this.sqlRecorder = new SQLRecorder(system.getSqlRecordCount());
@@ -109,9 +119,12 @@ public class CobarServer {
         LOGGER.info("Startup processors ...");
         int handler = system.getProcessorHandler();
         int executor = system.getProcessorExecutor();
+        int[] chunks = toIntArray(system.getProcessorBufferChunks());
+        int[] sizes = toIntArray(system.getProcessorBufferSizes());
         processors = new NIOProcessor[system.getProcessors()];
         for (int i = 0; i < processors.length; i++) {
-            processors[i] = new NIOProcessor("Processor" + i, handler, executor);
+            BufferArena arena = new BufferArena(chunks, sizes, system.isProcessorBufferDirect());
+            processors[i] = new NIOProcessor("Processor" + i, arena, handler, executor);
             processors[i].startup();
         }
         timer.schedule(processorCheck(), 0L, system.getProcessorCheckPeriod());
@@ -120,23 +133,30 @@ public class CobarServer {
         LOGGER.info("Startup connector ...");
         connector = new NIOConnector(NAME + "Connector");
         connector.setProcessors(processors);
+        connector.setProcessorSelector(ProcessorSelectors.get(system.getProcessorSelector()));
         connector.start();
 
         // init dataNodes
         Map<String, MySQLDataNode> dataNodes = config.getDataNodes();
         LOGGER.info("Initialize dataNodes ...");
-        for (MySQLDataNode node : dataNodes.values()) {
-            node.init(1, 0);
+        dataNodeInit = new DataNodeInitializer("startup", dataNodes, null, dataNodeInitExecutor);
+        if (!dataNodeInit.init(system.getDataNodeInitTimeout())) {
+            LOGGER.warn("Initialize dataNodes unfinished: " + dataNodeInit.getFailures() + ", retry in background.");
         }
+        timer.schedule(dataNodeInitRetry(), DATANODE_INIT_RETRY_PERIOD, DATANODE_INIT_RETRY_PERIOD);
         timer.schedule(dataNodeIdleCheck(), 0L, system.getDataNodeIdleCheckPeriod());
         timer.schedule(dataNodeHeartbeat(), 0L, system.getDataNodeHeartbeatPeriod());
+        timer.schedule(dataNodePoolCheck(), 0L, POOL_CHECK_PERIOD);
 
         // startup manager
         ManagerConnectionFactory mf = new ManagerConnectionFactory();
         mf.setCharset(system.getCharset());
         mf.setIdleTimeout(system.getIdleTimeout());
+        mf.setWriteGatherSize(system.getWriteGatherSize());
+        mf.setWriteThrough(system.isWriteThrough());
         manager = new NIOAcceptor(NAME + "Manager", system.getManagerPort(), mf);
         manager.setProcessors(processors);
+        manager.setProcessorSelector(ProcessorSelectors.get(system.getProcessorSelector()));
         manager.start();
         LOGGER.info(manager.getName() + " is started and listening on " + manager.getPort());
 
@@ -144,8 +164,16 @@ public class CobarServer {
         ServerConnectionFactory sf = new ServerConnectionFactory();
         sf.setCharset(system.getCharset());
         sf.setIdleTimeout(system.getIdleTimeout());
+        sf.setWriteGatherSize(system.getWriteGatherSize());
+        sf.setWriteThrough(system.isWriteThrough());
+        sf.setWriteHighWatermark(system.getFrontendWriteHighWatermark());
+        sf.setWriteLowWatermark(system.getFrontendWriteLowWatermark());
+        sf.setCompress(system.isFrontendCompress());
+        sf.setCompressThreshold(system.getCompressThreshold());
         server = new NIOAcceptor(NAME + "Server", system.getServerPort(), sf);
         server.setProcessors(processors);
+        server.setProcessorSelector(ProcessorSelectors.get(system.getProcessorSelector()));
+        server.setAcceptors(system.getServerAcceptors());
         server.start();
         timer.schedule(clusterHeartbeat(), 0L, system.getClusterHeartbeatPeriod());
 
@@ -174,6 +202,35 @@ public class CobarServer {
         return initExecutor;
     }
 
+    /**
+     * 数据节点初始化的执行线程池，与{@link #getInitExecutor()}分开，避免初始化任务占满线程后等不到建连任务。
+     */
+    public NameableExecutor getDataNodeInitExecutor() {
+        return dataNodeInitExecutor;
+    }
+
+    /**
+     * 最近一次生效的数据节点初始化，启动或重载配置时更新。
+     */
+    public DataNodeInitializer getDataNodeInit() {
+        return dataNodeInit;
+    }
+
+    public void setDataNodeInit(DataNodeInitializer dataNodeInit) {
+        this.dataNodeInit = dataNodeInit;
+    }
+
+    /**
+     * 最近一次失败并已放弃的重载初始化，保留供查看失败的节点，重载成功后清除。
+     */
+    public DataNodeInitializer getFailedDataNodeInit() {
+        return failedDataNodeInit;
+    }
+
+    public void setFailedDataNodeInit(DataNodeInitializer failedDataNodeInit) {
+        this.failedDataNodeInit = failedDataNodeInit;
+    }
+
     public SQLRecorder getSqlRecorder() {
         return sqlRecorder;
     }
@@ -194,6 +251,15 @@ public class CobarServer {
         isOnline.set(true);
     }
 
+    private static int[] toIntArray(String value) {
+        String[] items = SplitUtil.split(value, ',', true);
+        int[] array = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            array[i] = Integer.parseInt(items[i]);
+        }
+        return array;
+    }
+
     // 系统时间定时更新任务
     private TimerTask updateTime() {
         return new TimerTask() {
@@ -245,6 +311,43 @@ public class CobarServer {
         };
     }
 
+    // 数据节点连接池定时检查任务：等待超时和最少空闲连接
+    private TimerTask dataNodePoolCheck() {
+        return new TimerTask() {
+            @Override
+            public void run() {
+                timerExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean nioBackend = config.getSystem().isNioBackend();
+                        Map<String, MySQLDataNode> nodes = config.getDataNodes();
+                        for (MySQLDataNode node : nodes.values()) {
+                            node.poolCheck(nioBackend);
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    // 数据节点初始化失败定时重试任务
+    private TimerTask dataNodeInitRetry() {
+        return new TimerTask() {
+            @Override
+            public void run() {
+                timerExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        DataNodeInitializer init = dataNodeInit;
+                        if (init != null) {
+                            init.retry();
+                        }
+                    }
+                });
+            }
+        };
+    }
+
     // 数据节点定时心跳任务
     private TimerTask dataNodeHeartbeat() {
         return new TimerTask() {
@@ -44,8 +44,8 @@ public final class ConfigLoader {
 
     public ConfigLoader() {
         ServerLoader serverLoader = new ServerLoader();
-        SchemaLoader schemaLoader = new SchemaLoader();
         this.system = serverLoader.getSystem();
+        SchemaLoader schemaLoader = new SchemaLoader(system);
         this.users = serverLoader.getUsers();
         this.cluster = serverLoader.getCluster();
         this.quarantine = serverLoader.getQuarantine();
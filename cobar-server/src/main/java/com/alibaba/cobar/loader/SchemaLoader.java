@@ -34,6 +34,8 @@ import com.alibaba.cobar.route.config.TableConfig;
 import com.alibaba.cobar.route.config.TableRuleConfig;
 import com.alibaba.cobar.server.config.DataNodeConfig;
 import com.alibaba.cobar.server.config.DataSourceConfig;
+import com.alibaba.cobar.server.config.SystemConfig;
+import com.alibaba.cobar.server.mysql.MySQLConnectionPool;
 import com.alibaba.cobar.server.node.MySQLDataNode;
 import com.alibaba.cobar.server.node.MySQLDataSource;
 import com.alibaba.cobar.util.SplitUtil;
@@ -47,8 +49,17 @@ public final class SchemaLoader {
     private final Map<String, DataSourceConfig> dataSources;
     private final Map<String, MySQLDataNode> dataNodes;
     private final Map<String, SchemaConfig> schemas;
+    private final SystemConfig system;
 
     public SchemaLoader() {
+        this(new SystemConfig());
+    }
+
+    /**
+     * @param system 后端连接池的公共设置，如压缩协议
+     */
+    public SchemaLoader(SystemConfig system) {
+        this.system = system;
         this.tableRules = new RuleLoader().getTableRules();
         this.dataSources = new HashMap<String, DataSourceConfig>();
         this.dataNodes = new HashMap<String, MySQLDataNode>();
@@ -271,11 +282,15 @@ public final class SchemaLoader {
             if (tableElement.hasAttribute("ruleRequired")) {
                 ruleRequired = Boolean.parseBoolean(tableElement.getAttribute("ruleRequired"));
             }
+            boolean approximateDistinct = false;
+            if (tableElement.hasAttribute("approximateDistinct")) {
+                approximateDistinct = Boolean.parseBoolean(tableElement.getAttribute("approximateDistinct"));
+            }
 
             // 移除 , 分割表
             //String[] tableNames = SplitUtil.split(name, ',', true);
             //for (String tableName : tableNames) {
-            TableConfig table = new TableConfig(name, dataNode, tableRule, ruleRequired);
+            TableConfig table = new TableConfig(name, dataNode, tableRule, ruleRequired, approximateDistinct);
             checkDataNodeExists(table.getDataNodes());
             if (tables.containsKey(table.getName())) {
                 throw new ConfigException("table " + name + " duplicated!");
@@ -300,14 +315,21 @@ public final class SchemaLoader {
     private MySQLDataNode getDataNode(DataNodeConfig dnc) {
         String[] dsNames = SplitUtil.split(dnc.getDataSource(), ',');
         checkDataSourceExists(dsNames);
+        int[] weights = dnc.getReadWeights();
+        if (weights != null && weights.length != dsNames.length) {
+            throw new ConfigException("readWeight number of dataNode " + dnc.getName() + " not equals dataSource number!");
+        }
         MySQLDataNode node = new MySQLDataNode(dnc);
         MySQLDataSource[] dsList = new MySQLDataSource[dsNames.length];
+        MySQLConnectionPool[] poolList = new MySQLConnectionPool[dsNames.length];
         int size = dnc.getPoolSize();
         for (int i = 0; i < dsList.length; i++) {
             DataSourceConfig dsc = dataSources.get(dsNames[i]);
             dsList[i] = new MySQLDataSource(node, i, dsc, size);
+            poolList[i] = new MySQLConnectionPool(dsList[i], system);
         }
         node.setSources(dsList);
+        node.setDataSources(poolList);
         return node;
     }
 
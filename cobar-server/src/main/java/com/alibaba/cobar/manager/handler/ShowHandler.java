@@ -24,6 +24,7 @@ import com.alibaba.cobar.manager.response.ShowCommand;
 import com.alibaba.cobar.manager.response.ShowConnection;
 import com.alibaba.cobar.manager.response.ShowConnectionSQL;
 import com.alibaba.cobar.manager.response.ShowDataNode;
+import com.alibaba.cobar.manager.response.ShowDataNodeInit;
 import com.alibaba.cobar.manager.response.ShowDataSource;
 import com.alibaba.cobar.manager.response.ShowDatabase;
 import com.alibaba.cobar.manager.response.ShowHeartbeat;
@@ -73,6 +74,9 @@ public final class ShowHandler {
         case ManagerParseShow.DATANODE:
             ShowDataNode.execute(c, null);
             break;
+        case ManagerParseShow.DATANODE_INIT:
+            ShowDataNodeInit.execute(c);
+            break;
         case ManagerParseShow.DATANODE_WHERE: {
             String name = stmt.substring(rs >>> 8).trim();
             if (StringUtil.isEmpty(name)) {
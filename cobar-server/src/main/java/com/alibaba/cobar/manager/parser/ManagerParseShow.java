@@ -50,6 +50,7 @@ public final class ManagerParseShow {
     public static final int SLOW_DATANODE = 25;
     public static final int SLOW_SCHEMA = 26;
     public static final int BACKEND = 27;
+    public static final int DATANODE_INIT = 28;
 
     public static int parse(String stmt, int offset) {
         int i = offset;
@@ -573,6 +574,9 @@ public final class ManagerParseShow {
             char c2 = stmt.charAt(++offset);
             char c3 = stmt.charAt(++offset);
             if ((c1 == 'O' || c1 == 'o') && (c2 == 'D' || c2 == 'd') && (c3 == 'E' || c3 == 'e')) {
+                if (stmt.length() > offset + 1 && stmt.charAt(offset + 1) == '.') {
+                    return show2DataNInitCheck(stmt, offset + 1);
+                }
                 while (stmt.length() > ++offset) {
                     switch (stmt.charAt(offset)) {
                     case ' ':
@@ -590,6 +594,24 @@ public final class ManagerParseShow {
         return OTHER;
     }
 
+    // SHOW @@DATANODE.INIT
+    static int show2DataNInitCheck(String stmt, int offset) {
+        if (stmt.length() > offset + "INIT".length()) {
+            char c1 = stmt.charAt(++offset);
+            char c2 = stmt.charAt(++offset);
+            char c3 = stmt.charAt(++offset);
+            char c4 = stmt.charAt(++offset);
+            if ((c1 == 'I' || c1 == 'i')
+                && (c2 == 'N' || c2 == 'n')
+                && (c3 == 'I' || c3 == 'i')
+                && (c4 == 'T' || c4 == 't')
+                && (stmt.length() == ++offset || ParseUtil.isEOF(stmt.charAt(offset)))) {
+                return DATANODE_INIT;
+            }
+        }
+        return OTHER;
+    }
+
     // SHOW @@DATANODE WHERE 
     static int show2DataNWhereCheck(String stmt, int offset) {
         if (stmt.length() > offset + "HERE".length()) {
@@ -15,6 +15,7 @@
  */
 package com.alibaba.cobar.manager.response;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -31,6 +32,7 @@ import com.alibaba.cobar.server.config.ClusterConfig;
 import com.alibaba.cobar.server.config.DataSourceConfig;
 import com.alibaba.cobar.server.config.QuarantineConfig;
 import com.alibaba.cobar.server.config.UserConfig;
+import com.alibaba.cobar.server.node.DataNodeInitializer;
 import com.alibaba.cobar.server.node.MySQLDataNode;
 import com.alibaba.cobar.server.node.MySQLDataSource;
 
@@ -76,31 +78,31 @@ public final class ReloadConfig {
         CobarConfig conf = CobarServer.getInstance().getConfig();
 
         // 如果重载已经存在的数据节点，初始化连接数参考空闲连接数，否则为1。
-        boolean reloadStatus = true;
         Map<String, MySQLDataNode> cNodes = conf.getDataNodes();
+        Map<String, Integer> sizes = new HashMap<String, Integer>();
         for (MySQLDataNode dn : dataNodes.values()) {
             MySQLDataNode cdn = cNodes.get(dn.getName());
             if (cdn != null && cdn.getSource() != null) {
                 int size = Math.min(cdn.getSource().getIdleCount(), dn.getConfig().getPoolSize());
-                dn.init(size > 0 ? size : 1, 0);
-            } else {
-                dn.init(1, 0);
-            }
-            if (!dn.isInitSuccess()) {
-                reloadStatus = false;
-                break;
+                sizes.put(dn.getName(), size > 0 ? size : 1);
             }
         }
-        // 如果重载不成功，则清理已初始化的资源。
-        if (!reloadStatus) {
-            for (MySQLDataNode dn : dataNodes.values()) {
-                MySQLDataSource ds = dn.getSource();
-                if (ds != null) {
-                    ds.clear();
-                }
-            }
+
+        // 并行初始化，进度可通过show @@datanode.init查看
+        CobarServer server = CobarServer.getInstance();
+        DataNodeInitializer last = server.getDataNodeInit();
+        DataNodeInitializer init = new DataNodeInitializer("reload", dataNodes, sizes,
+                                                           server.getDataNodeInitExecutor());
+        server.setDataNodeInit(init);
+        // 如果重载不成功，则清理已初始化的资源，失败的初始化保留供查看，定时重试仍针对当前生效的初始化。
+        if (!init.init(conf.getSystem().getDataNodeInitTimeout())) {
+            init.cancel();
+            server.setFailedDataNodeInit(init);
+            server.setDataNodeInit(last);
+            LOGGER.warn("Reload config dataNodes init failure: " + init.getFailures());
             return false;
         }
+        server.setFailedDataNodeInit(null);
 
         // 应用重载
         conf.reload(users, schemas, dataNodes, dataSources, cluster, quarantine);
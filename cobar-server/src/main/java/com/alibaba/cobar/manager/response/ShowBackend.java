@@ -32,6 +32,7 @@ import com.alibaba.cobar.server.heartbeat.CobarDetector;
 import com.alibaba.cobar.server.heartbeat.CobarHeartbeat;
 import com.alibaba.cobar.server.heartbeat.MySQLDetector;
 import com.alibaba.cobar.server.heartbeat.MySQLHeartbeat;
+import com.alibaba.cobar.server.mysql.MySQLConnection;
 import com.alibaba.cobar.util.IntegerUtil;
 import com.alibaba.cobar.util.LongUtil;
 import com.alibaba.cobar.util.StringUtil;
@@ -43,7 +44,7 @@ import com.alibaba.cobar.util.StringUtil;
  */
 public class ShowBackend {
 
-    private static final int FIELD_COUNT = 14;
+    private static final int FIELD_COUNT = 15;
     private static final ResultSetHeaderPacket header = PacketUtil.getHeader(FIELD_COUNT);
     private static final FieldPacket[] fields = new FieldPacket[FIELD_COUNT];
     private static final EOFPacket eof = new EOFPacket();
@@ -79,6 +80,8 @@ public class ShowBackend {
         fields[i++].packetId = ++packetId;
         fields[i] = PacketUtil.getField("status", Fields.FIELD_TYPE_LONGLONG);
         fields[i++].packetId = ++packetId;
+        fields[i] = PacketUtil.getField("queue", Fields.FIELD_TYPE_LONG);
+        fields[i++].packetId = ++packetId;
         eof.packetId = ++packetId;
     }
 
@@ -140,6 +143,11 @@ public class ShowBackend {
             row.add(null);
             row.add(null);
         }
+        if (c instanceof MySQLConnection) {
+            row.add(IntegerUtil.toBytes(((MySQLConnection) c).getQueueSize()));
+        } else {
+            row.add(null);
+        }
         return row;
     }
 
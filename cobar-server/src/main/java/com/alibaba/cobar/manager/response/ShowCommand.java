@@ -37,7 +37,7 @@ import com.alibaba.cobar.util.LongUtil;
  */
 public final class ShowCommand {
 
-    private static final int FIELD_COUNT = 10;
+    private static final int FIELD_COUNT = 12;
     private static final ResultSetHeaderPacket header = PacketUtil.getHeader(FIELD_COUNT);
     private static final FieldPacket[] fields = new FieldPacket[FIELD_COUNT];
     private static final EOFPacket eof = new EOFPacket();
@@ -76,6 +76,12 @@ public final class ShowCommand {
         fields[i] = PacketUtil.getField("OTHER", Fields.FIELD_TYPE_LONGLONG);
         fields[i++].packetId = ++packetId;
 
+        fields[i] = PacketUtil.getField("QUERY_RATE", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("STMT_EXECUTE_RATE", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
         eof.packetId = ++packetId;
     }
 
@@ -123,6 +129,8 @@ public final class ShowCommand {
         row.add(LongUtil.toBytes(cc.killCount()));
         row.add(LongUtil.toBytes(cc.quitCount()));
         row.add(LongUtil.toBytes(cc.otherCount()));
+        row.add(LongUtil.toBytes(cc.queryRate()));
+        row.add(LongUtil.toBytes(cc.stmtExecuteRate()));
         return row;
     }
 
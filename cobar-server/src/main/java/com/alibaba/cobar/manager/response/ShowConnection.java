@@ -151,7 +151,7 @@ public final class ShowConnection {
         row.add(IntegerUtil.toBytes(bq == null ? 0 : bq.size()));
         if (c instanceof ServerConnection) {
             ServerConnection sc = (ServerConnection) c;
-            row.add(IntegerUtil.toBytes(sc.getSession().getTarget().size()));
+            row.add(IntegerUtil.toBytes(sc.getSession().getTargetCount()));
         } else {
             row.add(null);
         }
@@ -52,7 +52,7 @@ import com.alibaba.cobar.util.StringUtil;
 public final class ShowDataNode {
 
     private static final NumberFormat nf = DecimalFormat.getInstance();
-    private static final int FIELD_COUNT = 12;
+    private static final int FIELD_COUNT = 18;
     private static final ResultSetHeaderPacket header = PacketUtil.getHeader(FIELD_COUNT);
     private static final FieldPacket[] fields = new FieldPacket[FIELD_COUNT];
     private static final EOFPacket eof = new EOFPacket();
@@ -99,6 +99,24 @@ public final class ShowDataNode {
         fields[i] = PacketUtil.getField("RECOVERY_TIME", Fields.FIELD_TYPE_LONGLONG);
         fields[i++].packetId = ++packetId;
 
+        fields[i] = PacketUtil.getField("WAIT", Fields.FIELD_TYPE_VAR_STRING);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("WAIT_TIMEOUT", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("SYNC_HIT", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("SYNC_MISS", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("AFFINITY_HIT", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("AFFINITY_MISS", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
         eof.packetId = ++packetId;
     }
 
@@ -169,6 +187,21 @@ public final class ShowDataNode {
         row.add(LongUtil.toBytes(0));
         long recoveryTime = node.getHeartbeatRecoveryTime() - TimeUtil.currentTimeMillis();
         row.add(LongUtil.toBytes(recoveryTime > 0 ? recoveryTime / 1000L : -1L));
+        if (ds != null) {
+            row.add(StringUtil.encode(ds.getWaitRecorder().get(), charset));
+            row.add(LongUtil.toBytes(ds.getWaitRecorder().getTimeoutCount()));
+            row.add(LongUtil.toBytes(ds.getCount().getSyncHit()));
+            row.add(LongUtil.toBytes(ds.getCount().getSyncMiss()));
+            row.add(LongUtil.toBytes(ds.getCount().getAffinityHit()));
+            row.add(LongUtil.toBytes(ds.getCount().getAffinityMiss()));
+        } else {
+            row.add(null);
+            row.add(null);
+            row.add(null);
+            row.add(null);
+            row.add(null);
+            row.add(null);
+        }
         return row;
     }
 
@@ -0,0 +1,153 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.manager.response;
+
+import java.nio.ByteBuffer;
+
+import com.alibaba.cobar.CobarServer;
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.manager.ManagerConnection;
+import com.alibaba.cobar.net.packet.EOFPacket;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.net.packet.ResultSetHeaderPacket;
+import com.alibaba.cobar.net.packet.RowDataPacket;
+import com.alibaba.cobar.net.util.PacketUtil;
+import com.alibaba.cobar.server.node.DataNodeInitializer;
+import com.alibaba.cobar.server.node.DataNodeInitializer.Progress;
+import com.alibaba.cobar.util.IntegerUtil;
+import com.alibaba.cobar.util.LongUtil;
+import com.alibaba.cobar.util.StringUtil;
+
+/**
+ * 查询数据节点初始化进度，包括当前生效的初始化和最近一次失败的重载初始化
+ * 
+ * @author xianmao.hexm
+ */
+public final class ShowDataNodeInit {
+
+    private static final int FIELD_COUNT = 6;
+    private static final ResultSetHeaderPacket header = PacketUtil.getHeader(FIELD_COUNT);
+    private static final FieldPacket[] fields = new FieldPacket[FIELD_COUNT];
+    private static final EOFPacket eof = new EOFPacket();
+    static {
+        int i = 0;
+        byte packetId = 0;
+        header.packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("INIT", Fields.FIELD_TYPE_VAR_STRING);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("NAME", Fields.FIELD_TYPE_VAR_STRING);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("STATUS", Fields.FIELD_TYPE_VAR_STRING);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("ACTIVE", Fields.FIELD_TYPE_LONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("RETRY", Fields.FIELD_TYPE_LONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("TIME", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        eof.packetId = ++packetId;
+    }
+
+    public static void execute(ManagerConnection c) {
+        ByteBuffer buffer = c.allocate();
+
+        // write header
+        buffer = header.write(buffer, c);
+
+        // write fields
+        for (FieldPacket field : fields) {
+            buffer = field.write(buffer, c);
+        }
+
+        // write eof
+        buffer = eof.write(buffer, c);
+
+        // write rows
+        byte packetId = eof.packetId;
+        String charset = c.getCharset();
+        CobarServer server = CobarServer.getInstance();
+        DataNodeInitializer[] inits = { server.getDataNodeInit(), server.getFailedDataNodeInit() };
+        for (DataNodeInitializer init : inits) {
+            if (init == null) {
+                continue;
+            }
+            for (Progress p : init.getProgresses()) {
+                RowDataPacket row = getRow(init, p, charset);
+                row.packetId = ++packetId;
+                buffer = row.write(buffer, c);
+            }
+        }
+
+        // write last eof
+        EOFPacket lastEof = new EOFPacket();
+        lastEof.packetId = ++packetId;
+        buffer = lastEof.write(buffer, c);
+
+        // post write
+        c.write(buffer);
+    }
+
+    private static RowDataPacket getRow(DataNodeInitializer init, Progress p, String charset) {
+        RowDataPacket row = new RowDataPacket(FIELD_COUNT);
+        row.add(StringUtil.encode(init.getName(), charset));
+        row.add(StringUtil.encode(p.getNode().getName(), charset));
+        row.add(StringUtil.encode(getStatus(p), charset));
+        row.add(IntegerUtil.toBytes(p.getNode().getActivedIndex()));
+        row.add(IntegerUtil.toBytes(p.getRetry()));
+        row.add(LongUtil.toBytes(p.getTime()));
+        return row;
+    }
+
+    /**
+     * 被取消的节点附带取消前的结果，比如CANCELLED(FAILURE)，取消时尚未完成为CANCELLED(TIMEOUT)。
+     */
+    private static String getStatus(Progress p) {
+        int status = p.getStatus();
+        if (status != DataNodeInitializer.CANCELLED) {
+            return getStatus(status);
+        }
+        if (p.isUnfinished()) {
+            return "CANCELLED(TIMEOUT)";
+        }
+        int result = p.getResult();
+        return result == DataNodeInitializer.PENDING ? "CANCELLED" : "CANCELLED(" + getStatus(result) + ")";
+    }
+
+    private static String getStatus(int status) {
+        switch (status) {
+        case DataNodeInitializer.PENDING:
+            return "PENDING";
+        case DataNodeInitializer.RUNNING:
+            return "RUNNING";
+        case DataNodeInitializer.SUCCESS:
+            return "SUCCESS";
+        case DataNodeInitializer.FAILURE:
+            return "FAILURE";
+        case DataNodeInitializer.CANCELLED:
+            return "CANCELLED";
+        default:
+            return "UNKNOWN";
+        }
+    }
+
+}
@@ -107,6 +107,7 @@ public final class ShowHelp {
         helps.put("show @@database", "Report databases");
         helps.put("show @@datanode", "Report dataNodes");
         helps.put("show @@datanode where schema = ?", "Report dataNodes");
+        helps.put("show @@datanode.init", "Report dataNodes initialization progress");
         helps.put("show @@datasource where dataNode = ?", "Report dataSources");
         helps.put("show @@datasource", "Report dataSources");
         helps.put("show @@processor", "Report processor status");
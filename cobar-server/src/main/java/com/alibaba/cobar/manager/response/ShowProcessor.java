@@ -16,6 +16,8 @@
 package com.alibaba.cobar.manager.response;
 
 import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
 
 import com.alibaba.cobar.CobarServer;
 import com.alibaba.cobar.Fields;
@@ -28,6 +30,7 @@ import com.alibaba.cobar.net.packet.RowDataPacket;
 import com.alibaba.cobar.net.util.PacketUtil;
 import com.alibaba.cobar.util.IntegerUtil;
 import com.alibaba.cobar.util.LongUtil;
+import com.alibaba.cobar.util.StringUtil;
 
 /**
  * 查看处理器状态
@@ -37,7 +40,7 @@ import com.alibaba.cobar.util.LongUtil;
  */
 public final class ShowProcessor {
 
-    private static final int FIELD_COUNT = 10;
+    private static final int FIELD_COUNT = 15;
     private static final ResultSetHeaderPacket header = PacketUtil.getHeader(FIELD_COUNT);
     private static final FieldPacket[] fields = new FieldPacket[FIELD_COUNT];
     private static final EOFPacket eof = new EOFPacket();
@@ -55,6 +58,12 @@ public final class ShowProcessor {
         fields[i] = PacketUtil.getField("NET_OUT", Fields.FIELD_TYPE_LONGLONG);
         fields[i++].packetId = ++packetId;
 
+        fields[i] = PacketUtil.getField("NET_IN_RATE", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("NET_OUT_RATE", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
         fields[i] = PacketUtil.getField("REACT_COUNT", Fields.FIELD_TYPE_LONGLONG);
         fields[i++].packetId = ++packetId;
 
@@ -76,6 +85,15 @@ public final class ShowProcessor {
         fields[i] = PacketUtil.getField("BC_COUNT", Fields.FIELD_TYPE_LONG);
         fields[i++].packetId = ++packetId;
 
+        fields[i] = PacketUtil.getField("W_COUNT", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("W_RATE", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("W_AVG_BUFFERS", Fields.FIELD_TYPE_DOUBLE);
+        fields[i++].packetId = ++packetId;
+
         eof.packetId = ++packetId;
     }
 
@@ -110,18 +128,28 @@ public final class ShowProcessor {
         c.write(buffer);
     }
 
+    private static final NumberFormat nf = DecimalFormat.getInstance();
+    static {
+        nf.setMaximumFractionDigits(3);
+    }
+
     private static RowDataPacket getRow(NIOProcessor processor, String charset) {
         RowDataPacket row = new RowDataPacket(FIELD_COUNT);
         row.add(processor.getName().getBytes());
         row.add(LongUtil.toBytes(processor.getNetInBytes()));
         row.add(LongUtil.toBytes(processor.getNetOutBytes()));
+        row.add(LongUtil.toBytes(processor.getNetInRate()));
+        row.add(LongUtil.toBytes(processor.getNetOutRate()));
         row.add(LongUtil.toBytes(processor.getReactCount()));
         row.add(IntegerUtil.toBytes(processor.getRegisterQueueSize()));
         row.add(IntegerUtil.toBytes(processor.getWriteQueueSize()));
-        row.add(IntegerUtil.toBytes(processor.getBufferPool().size()));
-        row.add(IntegerUtil.toBytes(processor.getBufferPool().capacity()));
+        row.add(IntegerUtil.toBytes(processor.getBufferArena().size()));
+        row.add(IntegerUtil.toBytes(processor.getBufferArena().capacity()));
         row.add(IntegerUtil.toBytes(processor.getFrontends().size()));
         row.add(IntegerUtil.toBytes(processor.getBackends().size()));
+        row.add(LongUtil.toBytes(processor.getWriteCount()));
+        row.add(LongUtil.toBytes(processor.getWriteRate()));
+        row.add(StringUtil.encode(nf.format(processor.getAvgWriteBuffers()), charset));
         return row;
     }
 
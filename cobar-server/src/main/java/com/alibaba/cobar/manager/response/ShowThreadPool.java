@@ -120,6 +120,7 @@ public final class ShowThreadPool {
         List<NameableExecutor> list = new LinkedList<NameableExecutor>();
         CobarServer server = CobarServer.getInstance();
         list.add(server.getInitExecutor());
+        list.add(server.getDataNodeInitExecutor());
         list.add(server.getTimerExecutor());
         list.add(server.getManagerExecutor());
         for (NIOProcessor p : server.getProcessors()) {
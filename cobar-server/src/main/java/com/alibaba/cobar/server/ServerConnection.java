@@ -15,22 +15,38 @@
  */
 package com.alibaba.cobar.server;
 
+import static com.alibaba.cobar.route.RouteResultsetNode.DEFAULT_REPLICA_INDEX;
+
 import java.io.EOFException;
+import java.io.UnsupportedEncodingException;
 import java.nio.channels.SocketChannel;
 import java.sql.SQLNonTransientException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
 import com.alibaba.cobar.CobarServer;
 import com.alibaba.cobar.ErrorCode;
 import com.alibaba.cobar.net.FrontendConnection;
+import com.alibaba.cobar.net.packet.ExecutePacket;
+import com.alibaba.cobar.net.packet.OkPacket;
+import com.alibaba.cobar.net.util.MySQLMessage;
 import com.alibaba.cobar.net.util.TimeUtil;
+import com.alibaba.cobar.route.PreparedRoute;
 import com.alibaba.cobar.route.RouteResultset;
+import com.alibaba.cobar.route.RouteResultsetNode;
 import com.alibaba.cobar.route.ServerRouter;
 import com.alibaba.cobar.route.config.SchemaConfig;
+import com.alibaba.cobar.server.node.MySQLDataNode;
+import com.alibaba.cobar.server.parser.ServerParse;
+import com.alibaba.cobar.server.parser.ServerParseSelect;
+import com.alibaba.cobar.server.prepare.BindValueUtil;
+import com.alibaba.cobar.server.prepare.PreparedStatement;
 import com.alibaba.cobar.server.response.Heartbeat;
 import com.alibaba.cobar.server.response.Ping;
-import com.alibaba.cobar.server.session.ServerSession;
+import com.alibaba.cobar.server.response.PreparedStmt;
+import com.alibaba.cobar.server.session.Session;
 
 /**
  * @author xianmao.hexm 2011-4-21 上午11:22:57
@@ -38,17 +54,22 @@ import com.alibaba.cobar.server.session.ServerSession;
 public final class ServerConnection extends FrontendConnection {
     private static final Logger LOGGER = Logger.getLogger(ServerConnection.class);
     private static final long AUTH_TIMEOUT = 15 * 1000L;
+    private static final String UNSUPPORTED_PS = "This command is not supported in the prepared statement protocol yet";
 
     private volatile int txIsolation;
     private volatile boolean autocommit;
     private volatile boolean txInterrupted;
     private long lastInsertId;
-    private ServerSession session;
+    private Session session;
+    private long pstmtId;
+    private final Map<Long, PreparedStatement> pstmts;
+    private int maxPreparedStmtCount;
 
     public ServerConnection(SocketChannel channel) {
         super(channel);
         this.txInterrupted = false;
         this.autocommit = true;
+        this.pstmts = new ConcurrentHashMap<Long, PreparedStatement>();
     }
 
     @Override
@@ -76,6 +97,10 @@ public final class ServerConnection extends FrontendConnection {
         this.autocommit = autocommit;
     }
 
+    public void setMaxPreparedStmtCount(int maxPreparedStmtCount) {
+        this.maxPreparedStmtCount = maxPreparedStmtCount;
+    }
+
     public long getLastInsertId() {
         return lastInsertId;
     }
@@ -93,11 +118,11 @@ public final class ServerConnection extends FrontendConnection {
         }
     }
 
-    public ServerSession getSession() {
+    public Session getSession() {
         return session;
     }
 
-    public void setSession(ServerSession session) {
+    public void setSession(Session session) {
         this.session = session;
     }
 
@@ -119,14 +144,8 @@ public final class ServerConnection extends FrontendConnection {
         }
 
         // 取得SCHEMA
-        String db = this.schema;
-        if (db == null) {
-            writeErrMessage(ErrorCode.ER_NO_DB_ERROR, "No database selected");
-            return;
-        }
-        SchemaConfig schema = CobarServer.getInstance().getConfig().getSchemas().get(db);
+        SchemaConfig schema = getSchemaConfig();
         if (schema == null) {
-            writeErrMessage(ErrorCode.ER_BAD_DB_ERROR, "Unknown database '" + db + "'");
             return;
         }
 
@@ -141,11 +160,250 @@ public final class ServerConnection extends FrontendConnection {
             writeErrMessage(ErrorCode.ER_PARSE_ERROR, msg == null ? e.getClass().getSimpleName() : msg);
             return;
         }
+        if (!checkLimitOffset(rrs)) {
+            return;
+        }
 
         // session执行
+        routeRead(rrs, type);
         session.execute(rrs, type);
     }
 
+    @Override
+    public void stmtPrepare(byte[] data) {
+        // 取得语句
+        MySQLMessage mm = new MySQLMessage(data);
+        mm.position(5);
+        String sql = null;
+        try {
+            sql = mm.readString(charset);
+        } catch (UnsupportedEncodingException e) {
+            writeErrMessage(ErrorCode.ER_UNKNOWN_CHARACTER_SET, "Unknown charset '" + charset + "'");
+            return;
+        }
+        if (sql == null || sql.length() == 0) {
+            writeErrMessage(ErrorCode.ER_NOT_ALLOWED_COMMAND, "Empty SQL");
+            return;
+        }
+        long generation = CobarServer.getInstance().getConfig().getGeneration();
+        SchemaConfig schema = getSchemaConfig();
+        if (schema == null) {
+            return;
+        }
+        if (pstmts.size() >= maxPreparedStmtCount) {
+            writeErrMessage(ErrorCode.ER_MAX_PREPARED_STMT_COUNT_REACHED,
+                            "Can't create more than max_prepared_stmt_count statements (current value: "
+                                    + maxPreparedStmtCount + ")");
+            return;
+        }
+
+        // 只支持需要路由到数据节点的DML语句
+        int rs = ServerParse.parse(sql);
+        int type = rs & 0xff;
+        switch (type) {
+        case ServerParse.SELECT:
+            if (ServerParseSelect.parse(sql, rs >>> 8) != ServerParseSelect.OTHER) {
+                writeErrMessage(ErrorCode.ER_UNSUPPORTED_PS, UNSUPPORTED_PS);
+                return;
+            }
+            break;
+        case ServerParse.INSERT:
+        case ServerParse.UPDATE:
+        case ServerParse.DELETE:
+        case ServerParse.REPLACE:
+            break;
+        default:
+            writeErrMessage(ErrorCode.ER_UNSUPPORTED_PS, UNSUPPORTED_PS);
+            return;
+        }
+
+        // 解析语句并生成路由计划
+        PreparedRoute route = null;
+        try {
+            route = ServerRouter.prepare(schema, sql, this.charset);
+            route.setGeneration(generation);
+        } catch (SQLNonTransientException e) {
+            StringBuilder s = new StringBuilder();
+            LOGGER.warn(s.append(this).append(sql).toString(), e);
+            String msg = e.getMessage();
+            writeErrMessage(ErrorCode.ER_PARSE_ERROR, msg == null ? e.getClass().getSimpleName() : msg);
+            return;
+        }
+        PreparedStatement pstmt = new PreparedStatement(++pstmtId, sql, type, route);
+        pstmts.put(pstmt.getId(), pstmt);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(new StringBuilder().append(this).append(pstmt).toString());
+        }
+        PreparedStmt.response(this, pstmt);
+    }
+
+    @Override
+    public void stmtExecute(byte[] data) {
+        long id = ExecutePacket.getStatementId(data);
+        PreparedStatement pstmt = pstmts.get(id);
+        if (pstmt == null) {
+            writeErrMessage(ErrorCode.ER_UNKNOWN_STMT_HANDLER, "Unknown prepared statement handler (" + id
+                                                               + ") given to mysqld_stmt_execute");
+            return;
+        }
+        if (pstmt.isLongData()) {
+            pstmt.setLongData(false);
+            writeErrMessage(ErrorCode.ER_UNSUPPORTED_PS, "Sending long data is not supported");
+            return;
+        }
+
+        // 绑定参数
+        ExecutePacket packet = new ExecutePacket(pstmt.getParameterTypes());
+        packet.read(data);
+        String[] params = null;
+        try {
+            params = BindValueUtil.toLiterals(packet.values, charset);
+        } catch (UnsupportedEncodingException e) {
+            writeErrMessage(ErrorCode.ER_UNKNOWN_CHARACTER_SET, "Unknown charset '" + charset + "'");
+            return;
+        } catch (IllegalArgumentException e) {
+            writeErrMessage(ErrorCode.ER_WRONG_ARGUMENTS, e.getMessage());
+            return;
+        }
+        execute(pstmt, params);
+    }
+
+    @Override
+    public void stmtClose(byte[] data) {
+        // COM_STMT_CLOSE没有响应包
+        pstmts.remove(ExecutePacket.getStatementId(data));
+    }
+
+    @Override
+    public void stmtReset(byte[] data) {
+        long id = ExecutePacket.getStatementId(data);
+        PreparedStatement pstmt = pstmts.get(id);
+        if (pstmt == null) {
+            writeErrMessage(ErrorCode.ER_UNKNOWN_STMT_HANDLER, "Unknown prepared statement handler (" + id
+                                                               + ") given to mysqld_stmt_reset");
+            return;
+        }
+        pstmt.setLongData(false);
+        write(writeToBuffer(OkPacket.OK, allocate()));
+    }
+
+    @Override
+    public void stmtSendLongData(byte[] data) {
+        // COM_STMT_SEND_LONG_DATA没有响应包，错误在执行时返回。
+        PreparedStatement pstmt = pstmts.get(ExecutePacket.getStatementId(data));
+        if (pstmt != null) {
+            pstmt.setLongData(true);
+        }
+    }
+
+    /**
+     * 执行预处理语句，结果集以二进制协议返回。
+     */
+    public void execute(PreparedStatement pstmt, String[] params) {
+        // 状态检查
+        if (txInterrupted) {
+            writeErrMessage(ErrorCode.ER_YES, "Transaction error, need to rollback.");
+            return;
+        }
+
+        // 取得SCHEMA
+        long generation = CobarServer.getInstance().getConfig().getGeneration();
+        SchemaConfig schema = getSchemaConfig();
+        if (schema == null) {
+            return;
+        }
+
+        // 路由计算，配置重新加载、回滚或切换SCHEMA后重建路由计划。
+        RouteResultset rrs = null;
+        PreparedRoute route = pstmt.getRoute();
+        try {
+            if (route.getGeneration() != generation || route.getSchema() != schema) {
+                route = ServerRouter.prepare(schema, pstmt.getStatement(), this.charset);
+                route.setGeneration(generation);
+                pstmt.setRoute(route);
+            }
+            rrs = ServerRouter.route(route, params, this.charset, this);
+        } catch (SQLNonTransientException e) {
+            StringBuilder s = new StringBuilder();
+            LOGGER.warn(s.append(this).append(pstmt.getStatement()).toString(), e);
+            String msg = e.getMessage();
+            writeErrMessage(ErrorCode.ER_PARSE_ERROR, msg == null ? e.getClass().getSimpleName() : msg);
+            return;
+        }
+        if (!checkLimitOffset(rrs)) {
+            return;
+        }
+
+        // session执行
+        routeRead(rrs, pstmt.getSqlType());
+        session.execute(rrs, pstmt.getSqlType(), true);
+    }
+
+    /**
+     * 跨节点分页的offset行都要取回到代理上跳过，超过maxLimitOffset时拒绝执行。
+     */
+    private boolean checkLimitOffset(RouteResultset rrs) {
+        int max = CobarServer.getInstance().getConfig().getSystem().getMaxLimitOffset();
+        long offset = rrs.getLimitOffset();
+        if (max > 0 && offset > max) {
+            StringBuilder s = new StringBuilder();
+            s.append("LIMIT offset ").append(offset).append(" exceeds maxLimitOffset ").append(max);
+            writeErrMessage(ErrorCode.ER_TOO_BIG_SELECT, s.append(" for cross-node query").toString());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 读写分离：非事务中不加锁的SELECT按数据节点的读权重选择数据源，已由注释指定数据源的节点不参与。
+     * 是否加锁取路由时语法解析的结果，路由时未经解析的语句(注释路由、无拆分库)不做读写分离。
+     */
+    private void routeRead(RouteResultset rrs, int type) {
+        if (type != ServerParse.SELECT || !autocommit || rrs.getReadLock() != RouteResultset.READ_LOCK_NONE) {
+            return;
+        }
+        RouteResultsetNode[] nodes = rrs.getNodes();
+        if (nodes == null) {
+            return;
+        }
+        Map<String, MySQLDataNode> dataNodes = CobarServer.getInstance().getConfig().getDataNodes();
+        RouteResultsetNode[] reads = null;
+        for (int i = 0; i < nodes.length; ++i) {
+            RouteResultsetNode rrn = nodes[i];
+            if (rrn.getReplicaIndex() != DEFAULT_REPLICA_INDEX) {
+                continue;
+            }
+            MySQLDataNode dn = dataNodes.get(rrn.getName());
+            if (dn == null || dn.getConfig().getReadWeights() == null) {
+                continue;
+            }
+            if (reads == null) {
+                reads = nodes.clone();
+            }
+            reads[i] = new RouteResultsetNode(rrn.getName(), dn.getReadIndex(), rrn.getStatement());
+        }
+        if (reads != null) {
+            rrs.setNodes(reads);
+        }
+    }
+
+    /**
+     * 取得当前SCHEMA的配置，不存在时返回错误信息。
+     */
+    private SchemaConfig getSchemaConfig() {
+        String db = this.schema;
+        if (db == null) {
+            writeErrMessage(ErrorCode.ER_NO_DB_ERROR, "No database selected");
+            return null;
+        }
+        SchemaConfig schema = CobarServer.getInstance().getConfig().getSchemas().get(db);
+        if (schema == null) {
+            writeErrMessage(ErrorCode.ER_BAD_DB_ERROR, "Unknown database '" + db + "'");
+            return null;
+        }
+        return schema;
+    }
+
     /**
      * 提交事务
      */
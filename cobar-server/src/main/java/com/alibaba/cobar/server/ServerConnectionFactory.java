@@ -22,6 +22,7 @@ import com.alibaba.cobar.CobarServer;
 import com.alibaba.cobar.net.FrontendConnection;
 import com.alibaba.cobar.net.factory.FrontendConnectionFactory;
 import com.alibaba.cobar.server.config.SystemConfig;
+import com.alibaba.cobar.server.session.ServerNIOSession;
 import com.alibaba.cobar.server.session.ServerSession;
 
 /**
@@ -36,7 +37,12 @@ public class ServerConnectionFactory extends FrontendConnectionFactory {
         c.setPrivileges(new CobarPrivileges());
         c.setQueryHandler(new ServerQueryHandler(c));
         c.setTxIsolation(sys.getTxIsolation());
-        c.setSession(new ServerSession(c));
+        c.setMaxPreparedStmtCount(sys.getMaxPreparedStmtCount());
+        if (sys.isNioBackend()) {
+            c.setSession(new ServerNIOSession(c));
+        } else {
+            c.setSession(new ServerSession(c));
+        }
         return c;
     }
 
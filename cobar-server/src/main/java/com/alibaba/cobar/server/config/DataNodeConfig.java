@@ -41,13 +41,20 @@ public final class DataNodeConfig {
     private static final long DEFAULT_IDLE_TIMEOUT = 10 * 60 * 1000L;
     private static final long DEFAULT_HEARTBEAT_TIMEOUT = 30 * 1000L;
     private static final int DEFAULT_HEARTBEAT_RETRY = 10;
+    private static final long DEFAULT_MAX_REPLICA_LAG = 10L;
 
     private String name;
     private String dataSource;
     private int poolSize = DEFAULT_POOL_SIZE;//保持后端数据通道的默认最大值
+    private int minIdle;//后台保持的最少空闲连接数
     private long waitTimeout = DEFAULT_WAIT_TIMEOUT; //取得新连接的等待超时时间
     private long idleTimeout = DEFAULT_IDLE_TIMEOUT; //连接池中连接空闲超时时间
 
+    // read/write splitting config
+    private String readWeight;//各数据源的读权重，如"0,1,1"，为空时读写都使用当前数据源
+    private int[] readWeights;
+    private long maxReplicaLag = DEFAULT_MAX_REPLICA_LAG; //备库复制延迟超过该秒数时不再分担读
+
     // heartbeat config
     private long heartbeatTimeout = DEFAULT_HEARTBEAT_TIMEOUT; //心跳超时时间
     private int heartbeatRetry = DEFAULT_HEARTBEAT_RETRY; //检查连接发生异常到切换，重试次数
@@ -79,6 +86,14 @@ public final class DataNodeConfig {
         this.poolSize = poolSize;
     }
 
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
     public long getWaitTimeout() {
         return waitTimeout;
     }
@@ -95,6 +110,42 @@ public final class DataNodeConfig {
         this.idleTimeout = idleTimeout;
     }
 
+    public String getReadWeight() {
+        return readWeight;
+    }
+
+    public void setReadWeight(String readWeight) {
+        String[] weights = readWeight.split(",");
+        int[] values = new int[weights.length];
+        try {
+            for (int i = 0; i < weights.length; ++i) {
+                values[i] = Integer.parseInt(weights[i].trim());
+                if (values[i] < 0) {
+                    throw new ConfigException("negative readWeight: " + readWeight);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new ConfigException("readWeight format err: " + readWeight, e);
+        }
+        this.readWeight = readWeight;
+        this.readWeights = values;
+    }
+
+    /**
+     * @return null if read/write splitting is disabled
+     */
+    public int[] getReadWeights() {
+        return readWeights;
+    }
+
+    public long getMaxReplicaLag() {
+        return maxReplicaLag;
+    }
+
+    public void setMaxReplicaLag(long maxReplicaLag) {
+        this.maxReplicaLag = maxReplicaLag;
+    }
+
     public long getHeartbeatTimeout() {
         return heartbeatTimeout;
     }
@@ -32,6 +32,7 @@ public final class SystemConfig {
     private static final long DEFAULT_PROCESSOR_CHECK_PERIOD = 15 * 1000L;
     private static final long DEFAULT_DATANODE_IDLE_CHECK_PERIOD = 60 * 1000L;
     private static final long DEFAULT_DATANODE_HEARTBEAT_PERIOD = 10 * 1000L;
+    private static final long DEFAULT_DATANODE_INIT_TIMEOUT = 60 * 1000L;
     private static final long DEFAULT_CLUSTER_HEARTBEAT_PERIOD = 5 * 1000L;
     private static final long DEFAULT_CLUSTER_HEARTBEAT_TIMEOUT = 10 * 1000L;
     private static final int DEFAULT_CLUSTER_HEARTBEAT_RETRY = 10;
@@ -39,11 +40,27 @@ public final class SystemConfig {
     private static final String DEFAULT_CLUSTER_HEARTBEAT_PASS = "_HEARTBEAT_PASS_";
     private static final int DEFAULT_PARSER_COMMENT_VERSION = 50148;
     private static final int DEFAULT_SQL_RECORD_COUNT = 10;
+    private static final int DEFAULT_WRITE_GATHER_SIZE = 16;
+    private static final int DEFAULT_COMPRESS_THRESHOLD = 256;
+    private static final int DEFAULT_FRONTEND_WRITE_HIGH_WATERMARK = 12;
+    private static final int DEFAULT_FRONTEND_WRITE_LOW_WATERMARK = 4;
+    private static final int DEFAULT_BACKEND_QUEUE_HIGH_WATERMARK = 512;
+    private static final int DEFAULT_BACKEND_QUEUE_LOW_WATERMARK = 128;
+    private static final int DEFAULT_MERGE_WINDOW_SIZE = 256;
+    private static final int DEFAULT_MAX_LIMIT_OFFSET = 10000;
+    private static final int DEFAULT_MAX_PREPARED_STMT_COUNT = 1024;
+    private static final int DEFAULT_GROUP_SPILL_THRESHOLD = 100000;
+    private static final int DEFAULT_DISTINCT_MEMORY_LIMIT = 32 * 1024 * 1024;
+    private static final String DEFAULT_PROCESSOR_SELECTOR = "roundRobin";
+    private static final String DEFAULT_PROCESSOR_BUFFER_CHUNKS = "4096,16384,65536,1048576";
+    private static final String DEFAULT_PROCESSOR_BUFFER_SIZES = "16777216,1048576,1048576,2097152";
 
     private int serverPort;
     private int managerPort;
     private String charset;
     private int processors;
+    private String processorSelector;
+    private int serverAcceptors;
     private int processorHandler;
     private int processorExecutor;
     private int initExecutor;
@@ -53,6 +70,7 @@ public final class SystemConfig {
     private long processorCheckPeriod;
     private long dataNodeIdleCheckPeriod;
     private long dataNodeHeartbeatPeriod;
+    private long dataNodeInitTimeout;
     private String clusterHeartbeatUser;
     private String clusterHeartbeatPass;
     private long clusterHeartbeatPeriod;
@@ -61,12 +79,33 @@ public final class SystemConfig {
     private int txIsolation;
     private int parserCommentVersion;
     private int sqlRecordCount;
+    private int writeGatherSize;
+    private boolean writeThrough;
+    private int frontendWriteHighWatermark;
+    private int frontendWriteLowWatermark;
+    private int backendQueueHighWatermark;
+    private int backendQueueLowWatermark;
+    private int mergeWindowSize;
+    private int maxLimitOffset;
+    private int maxPreparedStmtCount;
+    private int groupSpillThreshold;
+    private int distinctMemoryLimit;
+    private boolean frontendCompress;
+    private boolean backendCompress;
+    private boolean nioBackend;
+    private boolean backendAffinity;
+    private int compressThreshold;
+    private String processorBufferChunks;
+    private String processorBufferSizes;
+    private boolean processorBufferDirect;
 
     public SystemConfig() {
         this.serverPort = DEFAULT_PORT;
         this.managerPort = DEFAULT_MANAGER_PORT;
         this.charset = DEFAULT_CHARSET;
         this.processors = DEFAULT_PROCESSORS;
+        this.processorSelector = DEFAULT_PROCESSOR_SELECTOR;
+        this.serverAcceptors = 1;
         this.processorHandler = DEFAULT_PROCESSORS;
         this.processorExecutor = DEFAULT_PROCESSORS;
         this.managerExecutor = DEFAULT_PROCESSORS;
@@ -76,6 +115,7 @@ public final class SystemConfig {
         this.processorCheckPeriod = DEFAULT_PROCESSOR_CHECK_PERIOD;
         this.dataNodeIdleCheckPeriod = DEFAULT_DATANODE_IDLE_CHECK_PERIOD;
         this.dataNodeHeartbeatPeriod = DEFAULT_DATANODE_HEARTBEAT_PERIOD;
+        this.dataNodeInitTimeout = DEFAULT_DATANODE_INIT_TIMEOUT;
         this.clusterHeartbeatUser = DEFAULT_CLUSTER_HEARTBEAT_USER;
         this.clusterHeartbeatPass = DEFAULT_CLUSTER_HEARTBEAT_PASS;
         this.clusterHeartbeatPeriod = DEFAULT_CLUSTER_HEARTBEAT_PERIOD;
@@ -84,6 +124,21 @@ public final class SystemConfig {
         this.txIsolation = Isolations.REPEATED_READ;
         this.parserCommentVersion = DEFAULT_PARSER_COMMENT_VERSION;
         this.sqlRecordCount = DEFAULT_SQL_RECORD_COUNT;
+        this.writeGatherSize = DEFAULT_WRITE_GATHER_SIZE;
+        this.compressThreshold = DEFAULT_COMPRESS_THRESHOLD;
+        this.frontendWriteHighWatermark = DEFAULT_FRONTEND_WRITE_HIGH_WATERMARK;
+        this.frontendWriteLowWatermark = DEFAULT_FRONTEND_WRITE_LOW_WATERMARK;
+        this.backendQueueHighWatermark = DEFAULT_BACKEND_QUEUE_HIGH_WATERMARK;
+        this.backendQueueLowWatermark = DEFAULT_BACKEND_QUEUE_LOW_WATERMARK;
+        this.mergeWindowSize = DEFAULT_MERGE_WINDOW_SIZE;
+        this.maxLimitOffset = DEFAULT_MAX_LIMIT_OFFSET;
+        this.maxPreparedStmtCount = DEFAULT_MAX_PREPARED_STMT_COUNT;
+        this.groupSpillThreshold = DEFAULT_GROUP_SPILL_THRESHOLD;
+        this.distinctMemoryLimit = DEFAULT_DISTINCT_MEMORY_LIMIT;
+        this.processorBufferChunks = DEFAULT_PROCESSOR_BUFFER_CHUNKS;
+        this.processorBufferSizes = DEFAULT_PROCESSOR_BUFFER_SIZES;
+        this.processorBufferDirect = false;
+        this.backendAffinity = true;
     }
 
     public String getCharset() {
@@ -190,6 +245,17 @@ public final class SystemConfig {
         this.dataNodeHeartbeatPeriod = dataNodeHeartbeatPeriod;
     }
 
+    /**
+     * 启动和重载配置时等待数据节点并行初始化的最长时间(毫秒)
+     */
+    public long getDataNodeInitTimeout() {
+        return dataNodeInitTimeout;
+    }
+
+    public void setDataNodeInitTimeout(long dataNodeInitTimeout) {
+        this.dataNodeInitTimeout = dataNodeInitTimeout;
+    }
+
     public String getClusterHeartbeatUser() {
         return clusterHeartbeatUser;
     }
@@ -254,4 +320,178 @@ public final class SystemConfig {
         this.sqlRecordCount = sqlRecordCount;
     }
 
+    public int getWriteGatherSize() {
+        return writeGatherSize;
+    }
+
+    public void setWriteGatherSize(int writeGatherSize) {
+        this.writeGatherSize = writeGatherSize;
+    }
+
+    public String getProcessorSelector() {
+        return processorSelector;
+    }
+
+    public void setProcessorSelector(String processorSelector) {
+        this.processorSelector = processorSelector;
+    }
+
+    public int getServerAcceptors() {
+        return serverAcceptors;
+    }
+
+    public void setServerAcceptors(int serverAcceptors) {
+        this.serverAcceptors = serverAcceptors;
+    }
+
+    public boolean isWriteThrough() {
+        return writeThrough;
+    }
+
+    public void setWriteThrough(boolean writeThrough) {
+        this.writeThrough = writeThrough;
+    }
+
+    public int getFrontendWriteHighWatermark() {
+        return frontendWriteHighWatermark;
+    }
+
+    public void setFrontendWriteHighWatermark(int frontendWriteHighWatermark) {
+        this.frontendWriteHighWatermark = frontendWriteHighWatermark;
+    }
+
+    public int getFrontendWriteLowWatermark() {
+        return frontendWriteLowWatermark;
+    }
+
+    public void setFrontendWriteLowWatermark(int frontendWriteLowWatermark) {
+        this.frontendWriteLowWatermark = frontendWriteLowWatermark;
+    }
+
+    public int getBackendQueueHighWatermark() {
+        return backendQueueHighWatermark;
+    }
+
+    public void setBackendQueueHighWatermark(int backendQueueHighWatermark) {
+        this.backendQueueHighWatermark = backendQueueHighWatermark;
+    }
+
+    public int getBackendQueueLowWatermark() {
+        return backendQueueLowWatermark;
+    }
+
+    public void setBackendQueueLowWatermark(int backendQueueLowWatermark) {
+        this.backendQueueLowWatermark = backendQueueLowWatermark;
+    }
+
+    public int getMergeWindowSize() {
+        return mergeWindowSize;
+    }
+
+    public void setMergeWindowSize(int mergeWindowSize) {
+        this.mergeWindowSize = mergeWindowSize;
+    }
+
+    /**
+     * 每个前端连接最多同时保留的预处理语句个数
+     */
+    public int getMaxPreparedStmtCount() {
+        return maxPreparedStmtCount;
+    }
+
+    public void setMaxPreparedStmtCount(int maxPreparedStmtCount) {
+        this.maxPreparedStmtCount = maxPreparedStmtCount;
+    }
+
+    public int getMaxLimitOffset() {
+        return maxLimitOffset;
+    }
+
+    public void setMaxLimitOffset(int maxLimitOffset) {
+        this.maxLimitOffset = maxLimitOffset;
+    }
+
+    public int getGroupSpillThreshold() {
+        return groupSpillThreshold;
+    }
+
+    public void setGroupSpillThreshold(int groupSpillThreshold) {
+        this.groupSpillThreshold = groupSpillThreshold;
+    }
+
+    public int getDistinctMemoryLimit() {
+        return distinctMemoryLimit;
+    }
+
+    public void setDistinctMemoryLimit(int distinctMemoryLimit) {
+        this.distinctMemoryLimit = distinctMemoryLimit;
+    }
+
+    public boolean isFrontendCompress() {
+        return frontendCompress;
+    }
+
+    public void setFrontendCompress(boolean frontendCompress) {
+        this.frontendCompress = frontendCompress;
+    }
+
+    public boolean isBackendCompress() {
+        return backendCompress;
+    }
+
+    public void setBackendCompress(boolean backendCompress) {
+        this.backendCompress = backendCompress;
+    }
+
+    public boolean isNioBackend() {
+        return nioBackend;
+    }
+
+    public void setNioBackend(boolean nioBackend) {
+        this.nioBackend = nioBackend;
+    }
+
+    /**
+     * NIO后端连接是否优先与前端连接使用同一个处理器
+     */
+    public boolean isBackendAffinity() {
+        return backendAffinity;
+    }
+
+    public void setBackendAffinity(boolean backendAffinity) {
+        this.backendAffinity = backendAffinity;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public String getProcessorBufferChunks() {
+        return processorBufferChunks;
+    }
+
+    public void setProcessorBufferChunks(String processorBufferChunks) {
+        this.processorBufferChunks = processorBufferChunks;
+    }
+
+    public String getProcessorBufferSizes() {
+        return processorBufferSizes;
+    }
+
+    public void setProcessorBufferSizes(String processorBufferSizes) {
+        this.processorBufferSizes = processorBufferSizes;
+    }
+
+    public boolean isProcessorBufferDirect() {
+        return processorBufferDirect;
+    }
+
+    public void setProcessorBufferDirect(boolean processorBufferDirect) {
+        this.processorBufferDirect = processorBufferDirect;
+    }
+
 }
@@ -32,20 +32,37 @@ import org.apache.log4j.Logger;
 import com.alibaba.cobar.CobarConfig;
 import com.alibaba.cobar.CobarServer;
 import com.alibaba.cobar.ErrorCode;
+import com.alibaba.cobar.net.buffer.BufferArena;
+import com.alibaba.cobar.net.buffer.PacketSlice;
 import com.alibaba.cobar.net.packet.BinaryPacket;
+import com.alibaba.cobar.net.packet.BinaryRowDataPacket;
 import com.alibaba.cobar.net.packet.EOFPacket;
 import com.alibaba.cobar.net.packet.ErrorPacket;
 import com.alibaba.cobar.net.packet.FieldPacket;
 import com.alibaba.cobar.net.packet.MySQLPacket;
 import com.alibaba.cobar.net.packet.OkPacket;
+import com.alibaba.cobar.net.packet.ResultSetHeaderPacket;
 import com.alibaba.cobar.net.util.PacketUtil;
+import com.alibaba.cobar.route.CountDistinctPlan;
+import com.alibaba.cobar.route.GroupByPlan;
+import com.alibaba.cobar.route.MergeColumn;
 import com.alibaba.cobar.route.RouteResultset;
 import com.alibaba.cobar.route.RouteResultsetNode;
 import com.alibaba.cobar.server.ServerConnection;
 import com.alibaba.cobar.server.UnknownDataNodeException;
+import com.alibaba.cobar.server.config.SystemConfig;
+import com.alibaba.cobar.server.merge.AggregateMerger;
+import com.alibaba.cobar.server.merge.DistinctCounter;
+import com.alibaba.cobar.server.merge.GroupMerger;
+import com.alibaba.cobar.server.merge.OrderedMerger;
+import com.alibaba.cobar.server.merge.ResultMerger;
+import com.alibaba.cobar.server.merge.RowFunnel;
+import com.alibaba.cobar.server.merge.RowLimit;
+import com.alibaba.cobar.server.merge.SortKey;
 import com.alibaba.cobar.server.node.Channel;
 import com.alibaba.cobar.server.node.MySQLChannel;
 import com.alibaba.cobar.server.node.MySQLDataNode;
+import com.alibaba.cobar.server.node.StatusIdleStack;
 import com.alibaba.cobar.server.session.ServerSession;
 import com.alibaba.cobar.util.StringUtil;
 
@@ -65,6 +82,21 @@ public final class MultiNodeExecutor extends NodeExecutor {
     private String errMessage;
     private boolean fieldEOF;
     private byte packetId;
+    private boolean binary;
+    private List<FieldPacket> fields;
+    private RouteResultsetNode[] nodes;
+    private MergeColumn[] orderBy;
+    private MergeColumn[] aggregates;
+    private OrderedMerger merger;
+    private AggregateMerger aggregator;
+    private GroupByPlan groupBy;
+    private CountDistinctPlan countDistinct;
+    private ResultMerger resultMerger;
+    private IOException mergeError;
+    private RowFunnel funnel;
+    private RowLimit rows;
+    private boolean stoppable;
+    private boolean stopped;
     private long affectedRows;
     private long insertId;
     private ByteBuffer buffer;
@@ -123,9 +155,13 @@ public final class MultiNodeExecutor extends NodeExecutor {
     /**
      * 多数据节点执行
      * 
-     * @param nodes never null
+     * @param rrs nodes never null
+     * @param binary 是否以二进制协议返回行数据，用于预处理语句的执行结果
      */
-    public void execute(RouteResultsetNode[] nodes, final boolean autocommit, final ServerSession ss, final int flag) {
+    public void execute(RouteResultset rrs, final boolean autocommit, final ServerSession ss, boolean binary) {
+        RouteResultsetNode[] nodes = rrs.getNodes();
+        final int flag = rrs.getFlag();
+
         // 初始化
         final ReentrantLock lock = this.lock;
         lock.lock();
@@ -136,6 +172,22 @@ public final class MultiNodeExecutor extends NodeExecutor {
             this.errMessage = null;
             this.fieldEOF = false;
             this.packetId = 0;
+            this.binary = binary;
+            this.fields = null;
+            this.nodes = nodes;
+            this.orderBy = rrs.getOrderBy();
+            this.aggregates = rrs.getAggregates();
+            this.merger = null;
+            this.aggregator = null;
+            this.groupBy = rrs.getGroupBy();
+            this.countDistinct = rrs.getCountDistinct();
+            this.resultMerger = null;
+            this.mergeError = null;
+            this.funnel = null;
+            this.rows = new RowLimit(rrs);
+            // 非事务的查询才能在达到LIMIT后提前结束
+            this.stoppable = autocommit && ss.getSource().isAutocommit();
+            this.stopped = false;
             this.affectedRows = 0L;
             this.insertId = 0L;
             this.buffer = ss.getSource().allocate();
@@ -201,9 +253,10 @@ public final class MultiNodeExecutor extends NodeExecutor {
             public void run() {
                 // 取得数据通道
                 int i = rrn.getReplicaIndex();
+                int status = StatusIdleStack.status(sc.getCharsetIndex(), sc.getTxIsolation(), autocommit);
                 Channel c = null;
                 try {
-                    c = (i == DEFAULT_REPLICA_INDEX) ? dn.getChannel() : dn.getChannel(i);
+                    c = dn.getChannel((i == DEFAULT_REPLICA_INDEX) ? dn.getActivedIndex() : i, status);
                 } catch (final Exception e) {
                     handleFailure(ss, rrn, new SimpleErrInfo(e, ErrorCode.ER_BAD_DB_ERROR, sc, rrn));
                     return;
@@ -231,6 +284,21 @@ public final class MultiNodeExecutor extends NodeExecutor {
             handleFailure(ss, rrn, null);
             return;
         }
+        boolean drained;
+        lock.lock();
+        try {
+            drained = stopped;
+            if (drained && ss.getTarget().remove(rrn, c)) {
+                c.setRunning(false);
+                c.release();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (drained) {
+            finishAtLimit(ss);
+            return;
+        }
 
         try {
             // 执行并等待返回
@@ -240,6 +308,10 @@ public final class MultiNodeExecutor extends NodeExecutor {
             final ReentrantLock lock = MultiNodeExecutor.this.lock;
             lock.lock();
             try {
+                if (stopped) {
+                    finishAtLimit(ss);
+                    return;
+                }
                 switch (bin.data[0]) {
                 case ErrorPacket.FIELD_COUNT:
                     c.setRunning(false);
@@ -285,13 +357,22 @@ public final class MultiNodeExecutor extends NodeExecutor {
                                 handleFailure(ss, rrn, new BinaryErrInfo(mc, bin, sc, rrn));
                                 return;
                             case EOFPacket.FIELD_COUNT:
-                                bin.packetId = ++packetId;//FIELD_EOF
-                                for (MySQLPacket packet : headerList) {
-                                    buffer = packet.write(buffer, sc);
+                                if (binary || orderBy != null || aggregates != null || groupBy != null || countDistinct != null) {
+                                    fields = PacketUtil.getFields(headerList);
+                                }
+                                if (!startResultMerge(sc)) {
+                                    for (MySQLPacket packet : headerList) {
+                                        buffer = packet.write(buffer, sc);
+                                    }
                                 }
                                 headerList = null;
+                                bin.packetId = ++packetId;//FIELD_EOF
                                 buffer = bin.write(buffer, sc);
                                 fieldEOF = true;
+                                initMerger(sc);
+                                if (resultMerger == null && aggregator == null && merger == null) {
+                                    funnel = new RowFunnel();
+                                }
                                 handleRowData(rrn, c, ss);
                                 return;
                             default:
@@ -311,7 +392,7 @@ public final class MultiNodeExecutor extends NodeExecutor {
                     }
                 }
             } finally {
-                lock.unlock();
+                unlockAndFlush(ss);
             }
         } catch (final IOException e) {
             c.close();
@@ -326,6 +407,14 @@ public final class MultiNodeExecutor extends NodeExecutor {
      * 处理RowData数据
      */
     private void handleRowData(final RouteResultsetNode rrn, Channel c, ServerSession ss) throws IOException {
+        if (stopped) {
+            finishAtLimit(ss);
+            return;
+        }
+        if (funnel != null) {
+            funnelRowData(rrn, c, ss);
+            return;
+        }
         final ServerConnection source = ss.getSource();
         BinaryPacket bin = null;
         int size = 0;
@@ -333,31 +422,47 @@ public final class MultiNodeExecutor extends NodeExecutor {
             bin = ((MySQLChannel) c).receive();
             switch (bin.data[0]) {
             case ErrorPacket.FIELD_COUNT:
-                c.setRunning(false);
-                handleFailure(ss, rrn, new BinaryErrInfo(((MySQLChannel) c), bin, source, rrn));
-                return;
             case EOFPacket.FIELD_COUNT:
-                c.setRunning(false);
-                if (source.isAutocommit()) {
-                    c = ss.getTarget().remove(rrn);
-                    if (c != null) {
-                        if (isFail.get() || source.isClosed()) {
-                            /**
-                             * this {@link Channel} might be closed by other
-                             * thread in this condition, so that do not release
-                             * this channel
-                             */
-                            c.close();
-                        } else {
-                            c.release();
+                handleRowEnd(rrn, c, ss, bin);
+                return;
+            default:
+                ByteBuffer last = buffer;
+                if (resultMerger != null) {
+                    if (mergeError == null) {
+                        try {
+                            resultMerger.add(bin.getBytes());
+                        } catch (IOException e) {
+                            mergeError = e;
+                            resultMerger.close();
                         }
                     }
+                } else if (aggregator != null) {
+                    aggregator.add(bin.getBytes());
+                } else if (merger != null) {
+                    if (merger.offer(rrn, bin.getBytes()) && !rows.isReached()) {
+                        parkNext(rrn, c, ss);
+                        return;
+                    }
+                } else if (rows.accept()) {
+                    bin.packetId = ++packetId;//ROWS
+                    if (binary) {
+                        BinaryRowDataPacket row = new BinaryRowDataPacket();
+                        row.read(fields, bin);
+                        buffer = row.write(buffer, source);
+                    } else {
+                        buffer = bin.write(buffer, source);
+                    }
+                }
+                // 已返回LIMIT行数据时终止其余节点的执行
+                if (rows.isReached() && stopAtLimit(ss)) {
+                    finishAtLimit(ss);
+                    return;
+                }
+                // 前端发送队列超过高水位时释放锁并暂停接收，降到低水位后再调度执行。
+                if (buffer != last && !source.isWritable()) {
+                    suspendNext(rrn, c, ss);
+                    return;
                 }
-                handleSuccessEOF(ss, bin);
-                return;
-            default:
-                bin.packetId = ++packetId;//ROWS
-                buffer = bin.write(buffer, source);
                 size += bin.packetLength;
                 if (size > RECEIVE_CHUNK_SIZE) {
                     handleNext(rrn, c, ss);
@@ -367,6 +472,330 @@ public final class MultiNodeExecutor extends NodeExecutor {
         }
     }
 
+    /**
+     * 不需要合并的行数据：在锁外接收并积累到节点自己的块中，每满一块交给汇聚通道，由取得锁的线程统一写往前端。
+     * 调用者持有锁，接收期间释放。
+     */
+    private void funnelRowData(final RouteResultsetNode rrn, Channel c, ServerSession ss) throws IOException {
+        final ReentrantLock lock = this.lock;
+        final MySQLChannel mc = (MySQLChannel) c;
+        final BufferArena arena = ss.getSource().getProcessor().getBufferArena();
+        RowFunnel.Chunk chunk = new RowFunnel.Chunk(arena.allocate(RECEIVE_CHUNK_SIZE), arena);
+        BinaryPacket bin = null;
+        lock.unlock();
+        try {
+            for (;;) {
+                bin = mc.receive();
+                byte type = bin.data[0];
+                if (type == ErrorPacket.FIELD_COUNT || type == EOFPacket.FIELD_COUNT) {
+                    break;
+                }
+                if (!chunk.add(bin)) {
+                    // 块已满，连同放不下的一行交给汇聚通道后让出执行线程
+                    if (chunk.count() > 0) {
+                        funnel.offer(chunk);
+                    } else {
+                        chunk.release();
+                    }
+                    int size = Math.max(RECEIVE_CHUNK_SIZE, 4 + bin.calcPacketSize());
+                    chunk = new RowFunnel.Chunk(arena.allocate(size), arena);
+                    chunk.add(bin);
+                    funnel.offer(chunk);
+                    chunk = null;
+                    if (flushFunnel(ss)) {
+                        finishAtLimit(ss);
+                    } else if (!ss.getSource().isWritable()) {
+                        suspendNext(rrn, c, ss);
+                    } else {
+                        handleNext(rrn, c, ss);
+                    }
+                    return;
+                }
+            }
+            if (chunk.count() > 0) {
+                funnel.offer(chunk);
+            } else {
+                chunk.release();
+            }
+            chunk = null;
+        } finally {
+            if (chunk != null) {
+                chunk.release();
+            }
+            lock.lock();
+        }
+        drainFunnel(ss.getSource());
+        handleRowEnd(rrn, c, ss, bin);
+    }
+
+    /**
+     * 未持有锁时尝试取出汇聚通道中的行数据。取不到锁时块留在通道中，由持锁者释放锁后再次调用本方法取出。
+     * 
+     * @return true if stopped at limit
+     */
+    private boolean flushFunnel(ServerSession ss) {
+        final ReentrantLock lock = this.lock;
+        while (!funnel.isEmpty() && lock.tryLock()) {
+            try {
+                drainFunnel(ss.getSource());
+                if (rows.isReached() && stopAtLimit(ss)) {
+                    return true;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按交付顺序分配包序号并写入前端缓存，调用者持有锁。
+     */
+    private void drainFunnel(ServerConnection sc) {
+        RowFunnel.Chunk chunk = funnel.poll();
+        while (chunk != null) {
+            for (int i = 0, n = chunk.count(); i < n && !rows.isReached(); ++i) {
+                if (rows.accept()) {
+                    PacketSlice row = chunk.get(i);
+                    if (binary) {
+                        writeRow(row.getBytes(), sc);
+                    } else {
+                        row.set(3, ++packetId);//ROWS
+                        buffer = sc.writeToBuffer(row, buffer);
+                    }
+                }
+            }
+            RowFunnel.Chunk next = chunk.next();
+            chunk.release();
+            chunk = next;
+        }
+    }
+
+    /**
+     * 释放锁后再次取出汇聚通道中的块：其他节点在持锁期间交付时取不到锁，块会留在通道中。
+     * 达到LIMIT时各节点在下一次调度时自行结束。
+     */
+    private void unlockAndFlush(ServerSession ss) {
+        RowFunnel funnel = this.funnel;
+        lock.unlock();
+        if (funnel != null) {
+            flushFunnel(ss);
+        }
+    }
+
+    /**
+     * 节点的行数据以EOF或错误结束
+     */
+    private void handleRowEnd(RouteResultsetNode rrn, Channel c, ServerSession ss, BinaryPacket bin) {
+        final ServerConnection source = ss.getSource();
+        if (bin.data[0] == ErrorPacket.FIELD_COUNT) {
+            c.setRunning(false);
+            handleFailure(ss, rrn, new BinaryErrInfo(((MySQLChannel) c), bin, source, rrn));
+            return;
+        }
+        if (merger != null) {
+            merger.finish(rrn);
+        }
+        c.setRunning(false);
+        if (rows.isReached()) {
+            stopAtLimit(ss);
+        }
+        if (source.isAutocommit()) {
+            c = ss.getTarget().remove(rrn);
+            if (c != null) {
+                if (isFail.get() || source.isClosed()) {
+                    /**
+                     * this {@link Channel} might be closed by other thread in
+                     * this condition, so that do not release this channel
+                     */
+                    c.close();
+                } else {
+                    c.release();
+                }
+            }
+        }
+        handleSuccessEOF(ss, bin);
+    }
+
+    /**
+     * 聚合查询按列合并各节点的结果，有排序的查询以流式归并输出行数据。
+     */
+    private void initMerger(final ServerConnection sc) {
+        if (resultMerger != null) {
+            return;
+        }
+        if (aggregates != null) {
+            aggregator = AggregateMerger.create(aggregates, fields);
+            if (aggregator != null) {
+                return;
+            }
+        }
+        if (orderBy == null) {
+            return;
+        }
+        SortKey key = SortKey.create(orderBy, fields);
+        if (key == null) {
+            // 无法归并排序时按到达顺序输出，仍按LIMIT截断
+            return;
+        }
+        int window = CobarServer.getInstance().getConfig().getSystem().getMergeWindowSize();
+        merger = new OrderedMerger(key, nodes.length, window) {
+            @Override
+            protected void output(byte[] row) {
+                if (rows.accept()) {
+                    writeRow(row, sc);
+                }
+            }
+        };
+    }
+
+    /**
+     * 按分组或去重计数合并时以合并后的字段代替节点结果集的字段返回。
+     * 
+     * @return false if the result set is not merged
+     */
+    private boolean startResultMerge(final ServerConnection sc) {
+        SystemConfig system = CobarServer.getInstance().getConfig().getSystem();
+        if (groupBy != null) {
+            if (!GroupMerger.isMergeable(groupBy, fields)) {
+                logger.warn("result set does not match the group by plan: " + sc);
+                return false;
+            }
+            resultMerger = new GroupMerger(groupBy, fields, system.getGroupSpillThreshold()) {
+                @Override
+                protected void output(byte[] row) {
+                    writeRow(row, sc);
+                }
+            };
+        } else if (countDistinct != null) {
+            if (!DistinctCounter.isMergeable(countDistinct, fields)) {
+                logger.warn("result set does not match the count distinct plan: " + sc);
+                return false;
+            }
+            resultMerger = new DistinctCounter(countDistinct, fields, system.getDistinctMemoryLimit()) {
+                @Override
+                protected void output(byte[] row) {
+                    writeRow(row, sc);
+                }
+            };
+        } else {
+            return false;
+        }
+        fields = resultMerger.getFields();
+        packetId = 0;
+        ResultSetHeaderPacket header = new ResultSetHeaderPacket();
+        header.fieldCount = fields.size();
+        header.packetId = ++packetId;//HEADER
+        buffer = header.write(buffer, sc);
+        for (FieldPacket field : fields) {
+            field.packetId = ++packetId;//FIELDS
+            buffer = field.write(buffer, sc);
+        }
+        return true;
+    }
+
+    /**
+     * 所有节点结束后输出合并的结果，失败时向前端返回错误。
+     * 
+     * @return false if failed
+     */
+    private boolean finishResultMerge(ServerConnection sc) {
+        try {
+            if (mergeError == null) {
+                resultMerger.finish();
+            }
+        } catch (IOException e) {
+            mergeError = e;
+        } finally {
+            resultMerger.close();
+        }
+        if (mergeError == null) {
+            return true;
+        }
+        logger.warn("result merge failed: " + sc, mergeError);
+        ErrorPacket err = new ErrorPacket();
+        err.packetId = ++packetId;//ERROR_PACKET
+        err.errno = ErrorCode.ER_YES;
+        err.message = StringUtil.encode("result merge failed: " + mergeError.getMessage(), sc.getCharset());
+        sc.write(err.write(buffer, sc));
+        return false;
+    }
+
+    /**
+     * 已返回LIMIT行数据：解除执行中的通道的绑定并终止，阻塞在这些通道上的任务随之结束。
+     * 事务中或已有节点出错时只停止合并，等待各节点自然结束。
+     * 
+     * @return true if stopped
+     */
+    private boolean stopAtLimit(ServerSession ss) {
+        if (merger != null) {
+            merger.abort();
+        }
+        if (stopped || !stoppable || isFail.get()) {
+            return false;
+        }
+        stopped = true;
+        ConcurrentMap<RouteResultsetNode, Channel> target = ss.getTarget();
+        ThreadPoolExecutor exec = ss.getSource().getProcessor().getExecutor();
+        for (RouteResultsetNode rrn : nodes) {
+            final Channel c = target.get(rrn);
+            if (c != null && c.isRunning() && target.remove(rrn, c)) {
+                exec.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        c.kill();
+                    }
+                });
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 提前结束的节点，最后一个结束时返回EOF。
+     */
+    private void finishAtLimit(ServerSession ss) {
+        handleSuccessEOF(ss, new EOFPacket());
+    }
+
+    /**
+     * 把含包头的行数据写入前端缓存，二进制协议时转换格式。
+     */
+    private void writeRow(byte[] row, ServerConnection sc) {
+        row[3] = ++packetId;//ROWS
+        if (binary) {
+            BinaryRowDataPacket packet = new BinaryRowDataPacket();
+            packet.read(fields, row);
+            buffer = packet.write(buffer, sc);
+        } else {
+            buffer = sc.writeToBuffer(row, buffer);
+        }
+    }
+
+    /**
+     * 合并窗口已满时暂停接收，窗口降到低水位后再提交下一个任务
+     */
+    private void parkNext(final RouteResultsetNode rrn, final Channel c, final ServerSession ss) {
+        merger.onAvailable(rrn, new Runnable() {
+            @Override
+            public void run() {
+                handleNext(rrn, c, ss);
+            }
+        });
+    }
+
+    /**
+     * 前端发送队列降到低水位后再提交下一个任务
+     */
+    private void suspendNext(final RouteResultsetNode rrn, final Channel c, final ServerSession ss) {
+        ss.getSource().onWritable(new Runnable() {
+            @Override
+            public void run() {
+                handleNext(rrn, c, ss);
+            }
+        });
+    }
+
     /**
      * 处理下一个任务
      */
@@ -386,7 +815,7 @@ public final class MultiNodeExecutor extends NodeExecutor {
                     c.close();
                     handleFailure(ss, rrn, new SimpleErrInfo(e, ErrorCode.ER_YES, sc, rrn));
                 } finally {
-                    lock.unlock();
+                    unlockAndFlush(ss);
                 }
             }
         });
@@ -395,22 +824,38 @@ public final class MultiNodeExecutor extends NodeExecutor {
     /**
      * @throws nothing never throws any exception
      */
-    private void handleSuccessEOF(ServerSession ss, BinaryPacket bin) {
+    private void handleSuccessEOF(ServerSession ss, MySQLPacket bin) {
         if (decrementCountAndIsZero()) {
             if (isFail.get()) {
                 notifyFailure(ss);
                 return;
             }
+            final ReentrantLock lock = this.lock;
+            lock.lock();
             try {
                 ServerConnection source = ss.getSource();
                 if (source.isAutocommit()) {
                     ss.release();
                 }
 
+                if (funnel != null) {
+                    drainFunnel(source);
+                }
+                if (resultMerger != null && !finishResultMerge(source)) {
+                    return;
+                }
+                if (aggregator != null) {
+                    byte[] row = aggregator.getRow();
+                    if (row != null) {
+                        writeRow(row, source);
+                    }
+                }
                 bin.packetId = ++packetId;//LAST_EOF
                 source.write(bin.write(buffer, source));
             } catch (Exception e) {
                 logger.warn("exception happens in success notification: " + ss.getSource(), e);
+            } finally {
+                lock.unlock();
             }
         }
     }
@@ -452,6 +897,23 @@ public final class MultiNodeExecutor extends NodeExecutor {
     }
 
     private void handleFailure(ServerSession ss, RouteResultsetNode rrn, ErrInfo errInfo) {
+        // 中止合并，恢复被暂停的节点使其能够结束
+        final ReentrantLock lock = this.lock;
+        boolean drained;
+        lock.lock();
+        try {
+            drained = stopped;
+            if (merger != null) {
+                merger.abort();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (drained) {
+            // 已返回LIMIT行数据，被终止的通道不再报错
+            finishAtLimit(ss);
+            return;
+        }
         try {
             // 标记为执行失败，并记录第一次异常信息。
             if (!isFail.getAndSet(true) && errInfo != null) {
@@ -476,6 +938,9 @@ public final class MultiNodeExecutor extends NodeExecutor {
         try {
             // 清理
             ss.clear();
+            if (resultMerger != null) {
+                resultMerger.close();
+            }
 
             ServerConnection sc = ss.getSource();
             sc.setTxInterrupt();
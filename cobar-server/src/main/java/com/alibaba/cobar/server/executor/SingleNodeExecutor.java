@@ -30,6 +30,7 @@ import com.alibaba.cobar.CobarConfig;
 import com.alibaba.cobar.CobarServer;
 import com.alibaba.cobar.ErrorCode;
 import com.alibaba.cobar.net.packet.BinaryPacket;
+import com.alibaba.cobar.net.packet.BinaryRowDataPacket;
 import com.alibaba.cobar.net.packet.EOFPacket;
 import com.alibaba.cobar.net.packet.ErrorPacket;
 import com.alibaba.cobar.net.packet.FieldPacket;
@@ -43,6 +44,7 @@ import com.alibaba.cobar.server.UnknownDataNodeException;
 import com.alibaba.cobar.server.node.Channel;
 import com.alibaba.cobar.server.node.MySQLChannel;
 import com.alibaba.cobar.server.node.MySQLDataNode;
+import com.alibaba.cobar.server.node.StatusIdleStack;
 import com.alibaba.cobar.server.session.ServerSession;
 import com.alibaba.cobar.util.StringUtil;
 
@@ -57,6 +59,8 @@ public final class SingleNodeExecutor extends NodeExecutor {
     private static final int RECEIVE_CHUNK_SIZE = 64 * 1024;
 
     private byte packetId;
+    private boolean binary;
+    private List<FieldPacket> fields;
     private boolean isRunning = false;
     private final ReentrantLock lock = new ReentrantLock();
     private final Condition taskFinished = lock.newCondition();
@@ -76,13 +80,17 @@ public final class SingleNodeExecutor extends NodeExecutor {
 
     /**
      * 单数据节点执行
+     * 
+     * @param binary 是否以二进制协议返回行数据，用于预处理语句的执行结果
      */
-    public void execute(RouteResultsetNode rrn, ServerSession ss, int flag) {
+    public void execute(RouteResultsetNode rrn, ServerSession ss, int flag, boolean binary) {
         // 初始化
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
             this.packetId = 0;
+            this.binary = binary;
+            this.fields = null;
             this.isRunning = true;
         } finally {
             lock.unlock();
@@ -137,9 +145,10 @@ public final class SingleNodeExecutor extends NodeExecutor {
             public void run() {
                 // 取得数据通道
                 int i = rrn.getReplicaIndex();
+                int status = StatusIdleStack.status(sc.getCharsetIndex(), sc.getTxIsolation(), sc.isAutocommit());
                 Channel c = null;
                 try {
-                    c = (i == DEFAULT_REPLICA_INDEX) ? dn.getChannel() : dn.getChannel(i);
+                    c = dn.getChannel((i == DEFAULT_REPLICA_INDEX) ? dn.getActivedIndex() : i, status);
                 } catch (Exception e) {
                     logger.warn(new StringBuilder().append(sc).append(rrn).toString(), e);
                     String msg = e.getMessage();
@@ -258,6 +267,9 @@ public final class SingleNodeExecutor extends NodeExecutor {
                     bb = packet.write(bb, sc);
                 }
                 bb = bin.write(bb, sc);
+                if (binary) {
+                    fields = PacketUtil.getFields(headerList);
+                }
                 headerList = null;
                 handleRowData(rrn, ss, mc, bb, packetId);
                 return;
@@ -314,7 +326,19 @@ public final class SingleNodeExecutor extends NodeExecutor {
                     return;
                 default:
                     bin.packetId = ++packetId;//ROWS
-                    bb = bin.write(bb, sc);
+                    ByteBuffer last = bb;
+                    if (binary) {
+                        BinaryRowDataPacket row = new BinaryRowDataPacket();
+                        row.read(fields, bin);
+                        bb = row.write(bb, sc);
+                    } else {
+                        bb = bin.write(bb, sc);
+                    }
+                    // 前端发送队列超过高水位时暂停接收，降到低水位后再调度执行，不占用执行线程。
+                    if (bb != last && !sc.isWritable()) {
+                        suspendNext(rrn, ss, mc, bb, packetId);
+                        return;
+                    }
                     size += bin.packetLength;
                     if (size > RECEIVE_CHUNK_SIZE) {
                         handleNext(rrn, ss, mc, bb, packetId);
@@ -328,6 +352,22 @@ public final class SingleNodeExecutor extends NodeExecutor {
         }
     }
 
+    /**
+     * 前端发送队列降到低水位后再提交下一个数据接收任务
+     */
+    private void suspendNext(final RouteResultsetNode rrn,
+                             final ServerSession ss,
+                             final MySQLChannel mc,
+                             final ByteBuffer bb,
+                             final byte id) {
+        ss.getSource().onWritable(new Runnable() {
+            @Override
+            public void run() {
+                handleNext(rrn, ss, mc, bb, id);
+            }
+        });
+    }
+
     /**
      * 下一个数据接收任务
      */
@@ -147,7 +147,10 @@ public final class MySQLDetector extends BackendConnection {
 
     public void heartbeat() {
         if (isAuthenticated) {
-            String sql = heartbeat.getSource().getNode().getConfig().getHeartbeat();
+            String sql = MySQLHeartbeat.REPLICA_HEARTBEAT;
+            if (!heartbeat.isReplica()) {
+                sql = heartbeat.getSource().getNode().getConfig().getHeartbeat();
+            }
             if (sql != null) {
                 CommandPacket packet = new CommandPacket();
                 packet.packetId = 0;
@@ -164,7 +167,7 @@ public final class MySQLDetector extends BackendConnection {
         if (isQuit.compareAndSet(false, true)) {
             if (isAuthenticated) {
                 write(writeToBuffer(QuitPacket.QUIT, allocate()));
-                write(processor.getBufferPool().allocate());
+                write(processor.getBufferArena().allocate());
             } else {
                 close();
             }
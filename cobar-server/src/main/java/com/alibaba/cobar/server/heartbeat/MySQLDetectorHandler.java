@@ -24,7 +24,9 @@ import org.apache.log4j.Logger;
 import com.alibaba.cobar.net.handler.NIOHandler;
 import com.alibaba.cobar.net.packet.EOFPacket;
 import com.alibaba.cobar.net.packet.ErrorPacket;
+import com.alibaba.cobar.net.packet.FieldPacket;
 import com.alibaba.cobar.net.packet.OkPacket;
+import com.alibaba.cobar.net.packet.RowDataPacket;
 import com.alibaba.cobar.server.HeartbeatException;
 
 /**
@@ -32,12 +34,16 @@ import com.alibaba.cobar.server.HeartbeatException;
  */
 public class MySQLDetectorHandler implements NIOHandler {
     private static final Logger LOGGER = Logger.getLogger(MySQLDetectorHandler.class);
+    private static final String LAG_COLUMN = "Seconds_Behind_Master";
 
     private final MySQLDetector detector;
     private final BlockingQueue<byte[]> dataQueue;
     private final AtomicBoolean handleStatus;
     private boolean isFirstPacket = true;
     private int eofPacketCount = 0;
+    private int fieldCount = 0;
+    private int lagIndex = -1;
+    private long lag = -1L;
 
     public MySQLDetectorHandler(MySQLDetector detector) {
         this.detector = detector;
@@ -50,8 +56,7 @@ public class MySQLDetectorHandler implements NIOHandler {
         if (dataQueue.offer(data)) {
             handleQueue();
         } else {
-            this.isFirstPacket = true;
-            this.eofPacketCount = 0;
+            reset();
             throw new HeartbeatException("Add data to queue failure");
         }
     }
@@ -124,18 +129,40 @@ public class MySQLDetectorHandler implements NIOHandler {
             throw new HeartbeatException(new String(err.message));
         case EOFPacket.FIELD_COUNT:
             if (++eofPacketCount == 2) {//end
+                detector.getHeartbeat().setLag(lagIndex < 0 ? -1L : lag);
                 setStatus(MySQLHeartbeat.OK_STATUS);
             }
             break;
+        default:
+            if (eofPacketCount == 0) {//fields
+                FieldPacket field = new FieldPacket();
+                field.read(data);
+                if (field.name != null && LAG_COLUMN.equals(new String(field.name))) {
+                    lagIndex = fieldCount;
+                }
+                ++fieldCount;
+            } else if (lagIndex >= 0) {//rows
+                RowDataPacket row = new RowDataPacket(fieldCount);
+                row.read(data);
+                byte[] value = row.fieldValues.get(lagIndex);
+                lag = (value == null) ? -1L : Long.parseLong(new String(value));
+            }
         }
     }
 
+    private void reset() {
+        isFirstPacket = true;
+        eofPacketCount = 0;
+        fieldCount = 0;
+        lagIndex = -1;
+        lag = -1L;
+    }
+
     /**
      * 设置判定结果状态
      */
     private void setStatus(int status) {
-        isFirstPacket = true;
-        eofPacketCount = 0;
+        reset();
         detector.getHeartbeat().setResult(status, detector, false);
     }
 
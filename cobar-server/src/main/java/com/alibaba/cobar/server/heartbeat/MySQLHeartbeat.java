@@ -32,6 +32,8 @@ import com.alibaba.cobar.server.statistics.HeartbeatRecorder;
 public class MySQLHeartbeat {
     public static final int OK_STATUS = 1;
     public static final int ERROR_STATUS = -1;
+    /** 分担读的备库以复制状态作为心跳 */
+    public static final String REPLICA_HEARTBEAT = "SHOW SLAVE STATUS";
     private static final int TIMEOUT_STATUS = -2;
     private static final int INIT_STATUS = 0;
     private static final int MAX_RETRY_COUNT = 5;
@@ -46,6 +48,7 @@ public class MySQLHeartbeat {
     private final int maxRetryCount;
     private int errorCount;
     private volatile int status;
+    private volatile long lag;
     private MySQLDetector detector;
 
     public MySQLHeartbeat(MySQLDataSource source) {
@@ -57,6 +60,7 @@ public class MySQLHeartbeat {
         this.lock = new ReentrantLock(false);
         this.maxRetryCount = MAX_RETRY_COUNT;
         this.status = INIT_STATUS;
+        this.lag = -1L;
     }
 
     public MySQLDataSource getSource() {
@@ -71,6 +75,24 @@ public class MySQLHeartbeat {
         return status;
     }
 
+    /**
+     * @return 复制延迟秒数，未知或复制中断时为-1
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    public void setLag(long lag) {
+        this.lag = lag;
+    }
+
+    /**
+     * 非当前数据源的心跳只检查其能否分担读，出错时不切换数据节点
+     */
+    public boolean isReplica() {
+        return source.getIndex() != source.getNode().getActivedIndex();
+    }
+
     public int getErrorCount() {
         return errorCount;
     }
@@ -248,7 +270,7 @@ public class MySQLHeartbeat {
      * switch data source
      */
     private void switchSource(String reason) {
-        if (!isStop.get()) {
+        if (!isStop.get() && !isReplica()) {
             MySQLDataNode node = source.getNode();
             int i = node.next(source.getIndex());
             node.switchSource(i, true, reason);
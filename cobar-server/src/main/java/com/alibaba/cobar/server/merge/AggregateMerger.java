@@ -0,0 +1,161 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.route.MergeColumn;
+
+/**
+ * 把各节点聚合查询（COUNT、SUM、MIN、MAX）的单行结果按列合并为一行。
+ * <p>
+ * 非线程安全，由调用者在结果集处理的锁内使用。
+ * 
+ * @author xianmao.hexm
+ */
+public final class AggregateMerger {
+
+    private final MergeColumn[] columns;
+    private final FieldPacket[] fields;
+    private final Charset[] charsets;
+    private final Object[] values;
+    private final byte[][] raws;
+    private int rowCount;
+
+    private AggregateMerger(MergeColumn[] columns, FieldPacket[] fields) {
+        this.columns = columns;
+        this.fields = fields;
+        this.charsets = new Charset[fields.length];
+        for (int i = 0; i < fields.length; ++i) {
+            charsets[i] = RowDataUtil.getCharset(fields[i]);
+        }
+        this.values = new Object[columns.length];
+        this.raws = new byte[columns.length][];
+    }
+
+    /**
+     * @return null if the result set does not match the aggregate columns
+     */
+    public static AggregateMerger create(MergeColumn[] aggregates, List<FieldPacket> fieldList) {
+        if (aggregates == null || fieldList == null || aggregates.length != fieldList.size()) {
+            return null;
+        }
+        return new AggregateMerger(aggregates, fieldList.toArray(new FieldPacket[fieldList.size()]));
+    }
+
+    /**
+     * 合并一个节点的行数据（含包头）
+     */
+    public void add(byte[] row) {
+        byte[][] data = RowDataUtil.read(row, columns.length);
+        for (int i = 0; i < columns.length; ++i) {
+            byte[] raw = data[i];
+            if (raw == null) {
+                continue;
+            }
+            Object value = RowDataUtil.parse(raw, fields[i], charsets[i]);
+            Object old = values[i];
+            switch (columns[i].getType()) {
+            case MergeColumn.AGG_COUNT:
+            case MergeColumn.AGG_SUM:
+                values[i] = old == null ? value : add(old, value);
+                break;
+            case MergeColumn.AGG_MIN:
+                if (old == null || RowDataUtil.compare(value, old) < 0) {
+                    values[i] = value;
+                    raws[i] = raw;
+                }
+                break;
+            case MergeColumn.AGG_MAX:
+                if (old == null || RowDataUtil.compare(value, old) > 0) {
+                    values[i] = value;
+                    raws[i] = raw;
+                }
+                break;
+            }
+        }
+        ++rowCount;
+    }
+
+    /**
+     * @return 合并后的行数据包（含包头，包序号为0），没有任何节点返回行数据时为null
+     */
+    public byte[] getRow() {
+        if (rowCount == 0) {
+            return null;
+        }
+        byte[][] data = new byte[columns.length][];
+        for (int i = 0; i < columns.length; ++i) {
+            Object value = values[i];
+            switch (columns[i].getType()) {
+            case MergeColumn.AGG_COUNT:
+                data[i] = value == null ? "0".getBytes() : format(value, fields[i]);
+                break;
+            case MergeColumn.AGG_SUM:
+                data[i] = value == null ? null : format(value, fields[i]);
+                break;
+            default:
+                data[i] = raws[i];
+            }
+        }
+        return RowDataUtil.toPacket(data);
+    }
+
+    /**
+     * 求和：浮点数按double，其余按BigDecimal精确计算，与MySQL的SUM结果类型一致。
+     */
+    static Object add(Object v1, Object v2) {
+        if (v1 instanceof Double || v2 instanceof Double) {
+            return ((Number) v1).doubleValue() + ((Number) v2).doubleValue();
+        }
+        return toDecimal(v1).add(toDecimal(v2));
+    }
+
+    static BigDecimal toDecimal(Object v) {
+        if (v instanceof BigDecimal) {
+            return (BigDecimal) v;
+        }
+        if (v instanceof Long) {
+            return BigDecimal.valueOf((Long) v);
+        }
+        return new BigDecimal(v.toString());
+    }
+
+    static byte[] format(Object value, FieldPacket field) {
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                return Long.toString((long) d).getBytes();
+            }
+            return Double.toString(d).getBytes();
+        }
+        BigDecimal decimal = toDecimal(value);
+        switch (field.type) {
+        case Fields.FIELD_TYPE_DECIMAL:
+        case Fields.FIELD_TYPE_NEW_DECIMAL:
+            if (decimal.scale() < field.decimals) {
+                decimal = decimal.setScale(field.decimals);
+            }
+            break;
+        }
+        return decimal.toPlainString().getBytes();
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.net.util.PacketUtil;
+import com.alibaba.cobar.route.CountDistinctPlan;
+
+/**
+ * 跨节点COUNT(DISTINCT)的合并：各节点返回去重后的参数列，合并时跳过含NULL的行，按编码后的键再次去重计数。
+ * <p>
+ * 精确模式下键保存在有上限的{@link DistinctSet}中，超过上限时按散列值把键写入{@value #PARTITIONS}个临时文件，
+ * 结束时逐个分区去重计数；近似模式下只维护{@link HyperLogLog}寄存器。
+ * 
+ * @author xianmao.hexm
+ */
+public abstract class DistinctCounter extends ResultMerger {
+    private static final int PARTITIONS = 16;
+
+    private final int[] indexes;
+    private final Charset[] charsets;
+    private final List<FieldPacket> outputFields;
+    private final HyperLogLog hll;
+    private DistinctSet set;
+    private File[] partitions;
+    private DataOutputStream[] spills;
+
+    /**
+     * @param fieldList 节点结果集的字段，列数必须与{@link CountDistinctPlan#getColumnCount()}一致
+     * @param memoryLimit 精确模式下去重集合占用的最大字节数
+     */
+    public DistinctCounter(CountDistinctPlan plan, List<FieldPacket> fieldList, int memoryLimit) {
+        if (!isMergeable(plan, fieldList)) {
+            throw new IllegalArgumentException("result set does not match the count distinct plan");
+        }
+        int count = fieldList.size();
+        this.indexes = new int[count];
+        this.charsets = new Charset[count];
+        for (int i = 0; i < count; ++i) {
+            indexes[i] = i;
+            charsets[i] = RowDataUtil.getCharset(fieldList.get(i));
+        }
+        FieldPacket field = PacketUtil.getField(plan.getName(), Fields.FIELD_TYPE_LONGLONG);
+        field.length = 21;
+        this.outputFields = Collections.singletonList(field);
+        if (plan.isApproximate()) {
+            this.hll = new HyperLogLog();
+        } else {
+            this.hll = null;
+            this.set = new DistinctSet(memoryLimit);
+        }
+    }
+
+    public static boolean isMergeable(CountDistinctPlan plan, List<FieldPacket> fieldList) {
+        return plan != null && fieldList != null && fieldList.size() == plan.getColumnCount();
+    }
+
+    @Override
+    public List<FieldPacket> getFields() {
+        return outputFields;
+    }
+
+    @Override
+    public void add(byte[] row) throws IOException {
+        byte[][] data = RowDataUtil.read(row, indexes.length);
+        for (byte[] v : data) {
+            if (v == null) {
+                return;
+            }
+        }
+        byte[] key = RowDataUtil.encodeKey(data, indexes, charsets);
+        long hash = GroupTable.hash(key);
+        if (hll != null) {
+            hll.add(hash);
+        } else if (!set.add(key, hash)) {
+            spill();
+            set.add(key, hash);
+        }
+    }
+
+    /**
+     * 输出计数结果
+     */
+    @Override
+    public void finish() throws IOException {
+        long count;
+        if (hll != null) {
+            count = hll.estimate();
+        } else if (partitions == null) {
+            count = set.size();
+        } else {
+            spill();
+            for (DataOutputStream out : spills) {
+                out.close();
+            }
+            spills = null;
+            count = 0;
+            for (File f : partitions) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+                try {
+                    for (byte[] key = read(in); key != null; key = read(in)) {
+                        if (!set.add(key, GroupTable.hash(key))) {
+                            throw new IOException("distinct values of one partition exceed the memory limit");
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+                f.delete();
+                count += set.size();
+                set.clear();
+            }
+        }
+        set = null;
+        output(RowDataUtil.toPacket(new byte[][] { Long.toString(count).getBytes() }));
+    }
+
+    /**
+     * 删除临时文件
+     */
+    @Override
+    public void close() {
+        set = null;
+        if (spills != null) {
+            for (DataOutputStream out : spills) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+            spills = null;
+        }
+        if (partitions != null) {
+            for (File f : partitions) {
+                f.delete();
+            }
+            partitions = null;
+        }
+    }
+
+    /**
+     * 把集合中的键按散列值写入分区文件，各分区的键互不相同，计数可以相加
+     */
+    private void spill() throws IOException {
+        if (partitions == null) {
+            partitions = new File[PARTITIONS];
+            spills = new DataOutputStream[PARTITIONS];
+            for (int i = 0; i < PARTITIONS; ++i) {
+                partitions[i] = File.createTempFile("cobar-distinct-", ".tmp");
+                spills[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partitions[i])));
+            }
+        }
+        for (int i = 0, len = set.slots(); i < len; ++i) {
+            byte[] key = set.key(i);
+            if (key != null) {
+                DataOutputStream out = spills[(int) (set.hash(i) >>> 60)];
+                out.writeInt(key.length);
+                out.write(key);
+            }
+        }
+        set.clear();
+    }
+
+    /**
+     * @return null at the end of file
+     */
+    private static byte[] read(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+}
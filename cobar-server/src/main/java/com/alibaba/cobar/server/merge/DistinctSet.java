@@ -0,0 +1,175 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 有上限的去重集合：键的字节以带长度的形式顺序存放在堆内缓存中，散列表只保存键的64位散列值和偏移量。
+ * 键和散列表占用的空间超过上限时拒绝加入新键，由调用者溢出到磁盘。
+ * <p>
+ * 非线程安全。
+ * 
+ * @author xianmao.hexm
+ */
+final class DistinctSet {
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_DATA_SIZE = 64 * 1024;
+    private static final int SLOT_SIZE = 12;
+
+    private final int maxBytes;
+    private ByteBuffer data;
+    private long[] hashes;
+    private int[] offsets; // 键在data中的偏移量加1，0表示空
+    private int size;
+
+    DistinctSet(int maxBytes) {
+        this.maxBytes = maxBytes;
+        this.data = ByteBuffer.allocate(Math.min(INITIAL_DATA_SIZE, Math.max(maxBytes / 2, 1)));
+        this.hashes = new long[INITIAL_SLOTS];
+        this.offsets = new int[INITIAL_SLOTS];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return false if the set is full and the key is not added
+     */
+    boolean add(byte[] key, long hash) {
+        int slot = find(key, hash);
+        if (offsets[slot] != 0) {
+            return true;
+        }
+        if (size + 1 > offsets.length - (offsets.length >> 2)) {
+            if (!resizeTable()) {
+                return false;
+            }
+            slot = find(key, hash);
+        }
+        int need = 4 + key.length;
+        if (data.remaining() < need && !resizeData(need)) {
+            return false;
+        }
+        int offset = data.position();
+        data.putInt(key.length);
+        data.put(key);
+        hashes[slot] = hash;
+        offsets[slot] = offset + 1;
+        ++size;
+        return true;
+    }
+
+    /**
+     * @return 散列表的槽数，配合{@link #key(int)}遍历
+     */
+    int slots() {
+        return offsets.length;
+    }
+
+    /**
+     * @return null if the slot is empty
+     */
+    byte[] key(int slot) {
+        int offset = offsets[slot];
+        if (offset == 0) {
+            return null;
+        }
+        ByteBuffer buf = data.duplicate();
+        buf.position(offset - 1);
+        byte[] key = new byte[buf.getInt()];
+        buf.get(key);
+        return key;
+    }
+
+    long hash(int slot) {
+        return hashes[slot];
+    }
+
+    /**
+     * 清空，保留已分配的空间
+     */
+    void clear() {
+        data.clear();
+        Arrays.fill(offsets, 0);
+        size = 0;
+    }
+
+    private int find(byte[] key, long hash) {
+        int mask = offsets.length - 1;
+        int i = (int) (hash ^ (hash >>> 32)) & mask;
+        while (offsets[i] != 0) {
+            if (hashes[i] == hash && equalsAt(offsets[i] - 1, key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private boolean equalsAt(int offset, byte[] key) {
+        if (data.getInt(offset) != key.length) {
+            return false;
+        }
+        offset += 4;
+        for (int i = 0; i < key.length; ++i) {
+            if (data.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean resizeTable() {
+        int n = offsets.length << 1;
+        if ((long) n * SLOT_SIZE + data.capacity() > maxBytes) {
+            return false;
+        }
+        long[] oldHashes = hashes;
+        int[] oldOffsets = offsets;
+        hashes = new long[n];
+        offsets = new int[n];
+        int mask = n - 1;
+        for (int j = 0; j < oldOffsets.length; ++j) {
+            if (oldOffsets[j] != 0) {
+                int i = (int) (oldHashes[j] ^ (oldHashes[j] >>> 32)) & mask;
+                while (offsets[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                hashes[i] = oldHashes[j];
+                offsets[i] = oldOffsets[j];
+            }
+        }
+        return true;
+    }
+
+    private boolean resizeData(int need) {
+        long tableBytes = (long) offsets.length * SLOT_SIZE;
+        long capacity = Math.max((long) data.capacity() << 1, (long) data.position() + need);
+        capacity = Math.min(capacity, maxBytes - tableBytes);
+        if (capacity < (long) data.position() + need) {
+            return false;
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) capacity);
+        data.flip();
+        buf.put(data);
+        data = buf;
+        return true;
+    }
+
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.route.GroupByPlan;
+import com.alibaba.cobar.route.MergeColumn;
+import com.alibaba.cobar.route.MergeCondition;
+
+/**
+ * 跨节点GROUP BY的合并：各节点返回部分聚合的分组结果，按分组键汇总后依次执行HAVING、排序和LIMIT。
+ * <p>
+ * 分组数超过阈值时按分组键的散列值把部分聚合结果写入{@value #PARTITIONS}个临时文件，
+ * 结束时逐个分区重新汇总；需要排序时每个分区排序后写成有序文件，再多路归并输出。
+ * <p>
+ * 非线程安全，由调用者在结果集处理的锁内使用。
+ * 
+ * @author xianmao.hexm
+ */
+public abstract class GroupMerger extends ResultMerger {
+    private static final int PARTITIONS = 16;
+    private static final byte[] ZERO = "0".getBytes();
+
+    private final GroupByPlan plan;
+    private final MergeColumn[] columns;
+    private final int[] keys;
+    private final int[] types;
+    private final FieldPacket[] fields;
+    private final Charset[] charsets;
+    private final FieldPacket[] outputFields;
+    private final Charset[] outputCharsets;
+    private final SortKey sortKey;
+    private final int spillThreshold;
+    private GroupTable<Group> table;
+    private File[] partitions;
+    private DataOutputStream[] spills;
+    private final List<File> runs;
+    private final List<DataInputStream> readers;
+    private long skip;
+    private long remaining;
+
+    /**
+     * @param fieldList 节点结果集的字段，列数必须与{@link GroupByPlan#getColumnCount()}一致
+     * @param spillThreshold 内存中保留的最大分组数
+     */
+    public GroupMerger(GroupByPlan plan, List<FieldPacket> fieldList, int spillThreshold) {
+        if (!isMergeable(plan, fieldList)) {
+            throw new IllegalArgumentException("result set does not match the group by plan");
+        }
+        this.plan = plan;
+        this.columns = plan.getColumns();
+        this.keys = plan.getKeys();
+        this.fields = fieldList.toArray(new FieldPacket[fieldList.size()]);
+        this.charsets = new Charset[fields.length];
+        for (int i = 0; i < fields.length; ++i) {
+            charsets[i] = RowDataUtil.getCharset(fields[i]);
+        }
+        // 节点结果集各列的合并方式，AVG拆分为SUM和COUNT两列
+        this.types = new int[fields.length];
+        Arrays.fill(types, MergeColumn.AGG_ANY);
+        for (MergeColumn col : columns) {
+            if (col.getType() == MergeColumn.AGG_AVG) {
+                types[col.getIndex()] = MergeColumn.AGG_SUM;
+                types[col.getCountIndex()] = MergeColumn.AGG_COUNT;
+            } else {
+                types[col.getIndex()] = col.getType();
+            }
+        }
+        this.outputFields = new FieldPacket[columns.length];
+        this.outputCharsets = new Charset[columns.length];
+        for (int i = 0; i < columns.length; ++i) {
+            FieldPacket field = fields[columns[i].getIndex()];
+            if (columns[i].getType() == MergeColumn.AGG_AVG && isDecimal(field)) {
+                // 与MySQL一致，AVG比SUM多4位小数
+                field = copy(field);
+                int decimals = Math.min(field.decimals + 4, 30);
+                field.length += decimals - field.decimals;
+                field.decimals = (byte) decimals;
+            }
+            outputFields[i] = field;
+            outputCharsets[i] = RowDataUtil.getCharset(field);
+        }
+        this.sortKey = plan.getOrderBy() == null ? null : SortKey.create(plan.getOrderBy(), Arrays.asList(outputFields));
+        this.spillThreshold = spillThreshold;
+        this.table = new GroupTable<Group>();
+        this.runs = new ArrayList<File>();
+        this.readers = new ArrayList<DataInputStream>();
+        this.skip = plan.getLimitOffset();
+        this.remaining = plan.getLimitSize();
+    }
+
+    public static boolean isMergeable(GroupByPlan plan, List<FieldPacket> fieldList) {
+        return plan != null && fieldList != null && fieldList.size() == plan.getColumnCount();
+    }
+
+    @Override
+    public List<FieldPacket> getFields() {
+        return Arrays.asList(outputFields).subList(0, plan.getVisibleCount());
+    }
+
+    @Override
+    public void add(byte[] row) throws IOException {
+        add(table, row);
+        if (table.size() > spillThreshold) {
+            spill();
+        }
+    }
+
+    /**
+     * 按排序和LIMIT输出合并结果
+     */
+    @Override
+    public void finish() throws IOException {
+        if (partitions == null) {
+            List<Row> rows = getRows(table.values());
+            table = null;
+            if (sortKey != null) {
+                sort(rows);
+            }
+            emit(rows);
+            return;
+        }
+        spill();
+        table = null;
+        for (DataOutputStream out : spills) {
+            out.close();
+        }
+        spills = null;
+        for (int i = 0; i < PARTITIONS && remaining != 0; ++i) {
+            GroupTable<Group> t = new GroupTable<Group>();
+            DataInputStream in = open(partitions[i]);
+            try {
+                for (byte[] row = read(in); row != null; row = read(in)) {
+                    add(t, row);
+                }
+            } finally {
+                in.close();
+            }
+            partitions[i].delete();
+            List<Row> rows = getRows(t.values());
+            if (sortKey == null) {
+                emit(rows);
+            } else if (!rows.isEmpty()) {
+                sort(rows);
+                writeRun(rows);
+            }
+        }
+        if (sortKey != null) {
+            mergeRuns();
+        }
+    }
+
+    /**
+     * 删除临时文件
+     */
+    @Override
+    public void close() {
+        table = null;
+        if (spills != null) {
+            for (DataOutputStream out : spills) {
+                closeQuietly(out);
+            }
+            spills = null;
+        }
+        for (DataInputStream in : readers) {
+            closeQuietly(in);
+        }
+        readers.clear();
+        if (partitions != null) {
+            for (File f : partitions) {
+                f.delete();
+            }
+            partitions = null;
+        }
+        for (File f : runs) {
+            f.delete();
+        }
+        runs.clear();
+    }
+
+    private void add(GroupTable<Group> t, byte[] row) {
+        byte[][] data = RowDataUtil.read(row, fields.length);
+        byte[] key = RowDataUtil.encodeKey(data, keys, charsets);
+        long hash = GroupTable.hash(key);
+        Group g = t.get(key, hash);
+        if (g == null) {
+            g = new Group(hash, fields.length);
+            t.put(key, hash, g);
+        }
+        for (int i = 0; i < fields.length; ++i) {
+            byte[] raw = data[i];
+            if (raw == null) {
+                continue;
+            }
+            int type = types[i];
+            if (type == MergeColumn.AGG_ANY) {
+                if (g.raws[i] == null) {
+                    g.raws[i] = raw;
+                }
+                continue;
+            }
+            Object value = RowDataUtil.parse(raw, fields[i], charsets[i]);
+            Object old = g.values[i];
+            switch (type) {
+            case MergeColumn.AGG_COUNT:
+            case MergeColumn.AGG_SUM:
+                g.values[i] = old == null ? value : AggregateMerger.add(old, value);
+                break;
+            case MergeColumn.AGG_MIN:
+                if (old == null || RowDataUtil.compare(value, old) < 0) {
+                    g.values[i] = value;
+                    g.raws[i] = raw;
+                }
+                break;
+            case MergeColumn.AGG_MAX:
+                if (old == null || RowDataUtil.compare(value, old) > 0) {
+                    g.values[i] = value;
+                    g.raws[i] = raw;
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 把内存中的分组以部分聚合结果的形式按散列值写入分区文件
+     */
+    private void spill() throws IOException {
+        if (partitions == null) {
+            partitions = new File[PARTITIONS];
+            spills = new DataOutputStream[PARTITIONS];
+            for (int i = 0; i < PARTITIONS; ++i) {
+                partitions[i] = File.createTempFile("cobar-group-", ".tmp");
+                spills[i] = create(partitions[i]);
+            }
+        }
+        for (Group g : table.values()) {
+            byte[][] data = new byte[fields.length][];
+            for (int i = 0; i < fields.length; ++i) {
+                switch (types[i]) {
+                case MergeColumn.AGG_COUNT:
+                case MergeColumn.AGG_SUM:
+                    data[i] = g.values[i] == null ? null : AggregateMerger.format(g.values[i], fields[i]);
+                    break;
+                default:
+                    data[i] = g.raws[i];
+                }
+            }
+            write(spills[(int) (g.hash >>> 60)], RowDataUtil.toPacket(data));
+        }
+        table.clear();
+    }
+
+    /**
+     * 计算各分组的输出列并执行HAVING
+     */
+    private List<Row> getRows(List<Group> groups) {
+        List<Row> rows = new ArrayList<Row>(groups.size());
+        MergeCondition having = plan.getHaving();
+        for (Group g : groups) {
+            byte[][] data = new byte[columns.length][];
+            for (int i = 0; i < columns.length; ++i) {
+                MergeColumn col = columns[i];
+                int index = col.getIndex();
+                switch (col.getType()) {
+                case MergeColumn.AGG_COUNT:
+                    data[i] = g.values[index] == null ? ZERO : AggregateMerger.format(g.values[index], fields[index]);
+                    break;
+                case MergeColumn.AGG_SUM:
+                    data[i] = g.values[index] == null ? null : AggregateMerger.format(g.values[index], fields[index]);
+                    break;
+                case MergeColumn.AGG_AVG:
+                    data[i] = average(g.values[index], g.values[col.getCountIndex()], outputFields[i]);
+                    break;
+                default:
+                    data[i] = g.raws[index];
+                }
+            }
+            if (having != null && !Boolean.TRUE.equals(test(having, data))) {
+                continue;
+            }
+            byte[] packet = RowDataUtil.toPacket(data);
+            rows.add(new Row(packet, sortKey == null ? null : sortKey.getKey(packet)));
+        }
+        return rows;
+    }
+
+    private static byte[] average(Object sum, Object count, FieldPacket field) {
+        if (sum == null || count == null) {
+            return null;
+        }
+        BigDecimal n = AggregateMerger.toDecimal(count);
+        if (n.signum() == 0) {
+            return null;
+        }
+        if (sum instanceof Double) {
+            return AggregateMerger.format((Double) sum / n.doubleValue(), field);
+        }
+        int scale = isDecimal(field) ? field.decimals : 4;
+        return AggregateMerger.format(AggregateMerger.toDecimal(sum).divide(n, scale, RoundingMode.HALF_UP), field);
+    }
+
+    /**
+     * 按SQL的三值逻辑求值，null表示UNKNOWN
+     */
+    private Boolean test(MergeCondition cond, byte[][] data) {
+        switch (cond.getType()) {
+        case MergeCondition.AND:
+        case MergeCondition.OR: {
+            boolean and = cond.getType() == MergeCondition.AND;
+            Boolean result = and;
+            for (MergeCondition operand : cond.getOperands()) {
+                Boolean b = test(operand, data);
+                if (b == null) {
+                    result = null;
+                } else if (b != and) {
+                    return b;
+                }
+            }
+            return result;
+        }
+        case MergeCondition.NOT: {
+            Boolean b = test(cond.getOperands()[0], data);
+            return b == null ? null : !b;
+        }
+        case MergeCondition.IS_NULL:
+            return data[cond.getColumn()] == null;
+        case MergeCondition.IS_NOT_NULL:
+            return data[cond.getColumn()] != null;
+        default:
+            int i = cond.getColumn();
+            Object value = RowDataUtil.parse(data[i], outputFields[i], outputCharsets[i]);
+            if (value == null) {
+                return null;
+            }
+            int c = compareLiteral(value, cond.getValue());
+            switch (cond.getType()) {
+            case MergeCondition.EQ:
+                return c == 0;
+            case MergeCondition.NE:
+                return c != 0;
+            case MergeCondition.LT:
+                return c < 0;
+            case MergeCondition.LE:
+                return c <= 0;
+            case MergeCondition.GT:
+                return c > 0;
+            default:
+                return c >= 0;
+            }
+        }
+    }
+
+    /**
+     * 数值与常量按数值比较，字符与字符常量不区分大小写比较，二进制排序规则的列区分大小写。
+     */
+    private static int compareLiteral(Object value, Object literal) {
+        if (value instanceof byte[]) {
+            value = new String((byte[]) value);
+            if (literal instanceof String) {
+                return ((String) value).compareTo((String) literal);
+            }
+        }
+        if (value instanceof String && literal instanceof String) {
+            return ((String) value).compareToIgnoreCase((String) literal);
+        }
+        return toNumber(value).compareTo(toNumber(literal));
+    }
+
+    private static BigDecimal toNumber(Object v) {
+        if (v instanceof Double) {
+            return BigDecimal.valueOf((Double) v);
+        }
+        try {
+            return new BigDecimal(v.toString().trim());
+        } catch (NumberFormatException e) {
+            // MySQL把非数值的字符串当作0
+            return BigDecimal.ZERO;
+        }
+    }
+
+    private void sort(List<Row> rows) {
+        Collections.sort(rows, new Comparator<Row>() {
+            @Override
+            public int compare(Row r1, Row r2) {
+                return sortKey.compare(r1.key, r2.key);
+            }
+        });
+    }
+
+    private void writeRun(List<Row> rows) throws IOException {
+        File f = File.createTempFile("cobar-group-", ".run");
+        runs.add(f);
+        DataOutputStream out = create(f);
+        try {
+            for (Row r : rows) {
+                write(out, r.data);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 多路归并各分区的有序文件
+     */
+    private void mergeRuns() throws IOException {
+        PriorityQueue<Run> heap = new PriorityQueue<Run>(Math.max(runs.size(), 1), new Comparator<Run>() {
+            @Override
+            public int compare(Run r1, Run r2) {
+                int c = sortKey.compare(r1.head.key, r2.head.key);
+                return c != 0 ? c : r1.seq - r2.seq;
+            }
+        });
+        for (int i = 0, len = runs.size(); i < len; ++i) {
+            DataInputStream in = open(runs.get(i));
+            readers.add(in);
+            Run run = new Run(i, in);
+            if (next(run)) {
+                heap.offer(run);
+            }
+        }
+        while (remaining != 0 && !heap.isEmpty()) {
+            Run run = heap.poll();
+            emit(run.head);
+            if (next(run)) {
+                heap.offer(run);
+            }
+        }
+    }
+
+    private boolean next(Run run) throws IOException {
+        byte[] data = read(run.in);
+        run.head = data == null ? null : new Row(data, sortKey.getKey(data));
+        return data != null;
+    }
+
+    private void emit(List<Row> rows) {
+        for (int i = 0, len = rows.size(); i < len && remaining != 0; ++i) {
+            emit(rows.get(i));
+        }
+    }
+
+    private void emit(Row row) {
+        if (skip > 0) {
+            --skip;
+            return;
+        }
+        if (remaining > 0) {
+            --remaining;
+        }
+        int visible = plan.getVisibleCount();
+        if (visible == columns.length) {
+            output(row.data);
+        } else {
+            output(RowDataUtil.toPacket(RowDataUtil.read(row.data, visible)));
+        }
+    }
+
+    private static boolean isDecimal(FieldPacket field) {
+        return field.type == Fields.FIELD_TYPE_DECIMAL || field.type == Fields.FIELD_TYPE_NEW_DECIMAL;
+    }
+
+    private static FieldPacket copy(FieldPacket field) {
+        FieldPacket f = new FieldPacket();
+        f.catalog = field.catalog;
+        f.db = field.db;
+        f.table = field.table;
+        f.orgTable = field.orgTable;
+        f.name = field.name;
+        f.orgName = field.orgName;
+        f.charsetIndex = field.charsetIndex;
+        f.length = field.length;
+        f.type = field.type;
+        f.flags = field.flags;
+        f.decimals = field.decimals;
+        f.definition = field.definition;
+        return f;
+    }
+
+    private static DataOutputStream create(File f) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+    }
+
+    private static DataInputStream open(File f) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+    }
+
+    private static void write(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    /**
+     * @return null at the end of file
+     */
+    private static byte[] read(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static final class Group {
+        private final long hash;
+        private final Object[] values;
+        private final byte[][] raws;
+
+        private Group(long hash, int columnCount) {
+            this.hash = hash;
+            this.values = new Object[columnCount];
+            this.raws = new byte[columnCount][];
+        }
+    }
+
+    private static final class Row {
+        private final byte[] data;
+        private final Object[] key;
+
+        private Row(byte[] data, Object[] key) {
+            this.data = data;
+            this.key = key;
+        }
+    }
+
+    private static final class Run {
+        private final int seq;
+        private final DataInputStream in;
+        private Row head;
+
+        private Run(int seq, DataInputStream in) {
+            this.seq = seq;
+            this.in = in;
+        }
+    }
+
+}
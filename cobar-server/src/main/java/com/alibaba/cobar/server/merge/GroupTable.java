@@ -0,0 +1,135 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 以编码后的分组键为键的开放寻址散列表，键的64位散列值保存在long数组中，比较时先比散列值再比字节。
+ * <p>
+ * 非线程安全。
+ * 
+ * @author xianmao.hexm
+ */
+final class GroupTable<V> {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long[] hashes;
+    private byte[][] keys;
+    private Object[] values;
+    private int size;
+    private int threshold;
+
+    GroupTable() {
+        init(INITIAL_CAPACITY);
+    }
+
+    /**
+     * 64位FNV-1a散列
+     */
+    static long hash(byte[] key) {
+        long h = FNV_OFFSET;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(byte[] key, long hash) {
+        int mask = keys.length - 1;
+        for (int i = slot(hash, mask); keys[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && Arrays.equals(keys[i], key)) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 加入一个不存在的键
+     */
+    void put(byte[] key, long hash, V value) {
+        if (size >= threshold) {
+            resize();
+        }
+        insert(key, hash, value);
+        ++size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        List<V> list = new ArrayList<V>(size);
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] != null) {
+                list.add((V) values[i]);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 清空并释放占用的空间
+     */
+    void clear() {
+        init(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    private void init(int capacity) {
+        hashes = new long[capacity];
+        keys = new byte[capacity][];
+        values = new Object[capacity];
+        threshold = capacity - (capacity >> 2);
+    }
+
+    private void resize() {
+        long[] oldHashes = hashes;
+        byte[][] oldKeys = keys;
+        Object[] oldValues = values;
+        init(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldHashes[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void insert(byte[] key, long hash, Object value) {
+        int mask = keys.length - 1;
+        int i = slot(hash, mask);
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        hashes[i] = hash;
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    private static int slot(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+}
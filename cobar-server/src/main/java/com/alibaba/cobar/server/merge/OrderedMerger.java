@@ -0,0 +1,195 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 多节点有序结果集的流式归并：每个节点保留一个有界的行窗口，所有未结束的节点都有待输出行时，
+ * 通过堆取出排序键最小的行输出。窗口满的节点由调用者暂停接收，窗口降到一半后通过回调恢复。
+ * <p>
+ * 非线程安全，由调用者在结果集处理的锁内使用。
+ * 
+ * @author xianmao.hexm
+ */
+public abstract class OrderedMerger {
+
+    private final SortKey sortKey;
+    private final int shardCount;
+    private final int window;
+    private final int lowWindow;
+    private final Map<Object, Shard> shards;
+    private final PriorityQueue<Shard> heap;
+    /** 尚未结束且没有待输出行的节点数，为0时才能输出 */
+    private int pending;
+    private boolean aborted;
+
+    public OrderedMerger(SortKey sortKey, int shardCount, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        this.sortKey = sortKey;
+        this.shardCount = shardCount;
+        this.window = window;
+        this.lowWindow = window >> 1;
+        this.shards = new HashMap<Object, Shard>(shardCount << 1);
+        this.heap = new PriorityQueue<Shard>(shardCount, new Comparator<Shard>() {
+            @Override
+            public int compare(Shard s1, Shard s2) {
+                int c = OrderedMerger.this.sortKey.compare(s1.rows.peek().key, s2.rows.peek().key);
+                return c != 0 ? c : s1.seq - s2.seq;
+            }
+        });
+        this.pending = shardCount;
+    }
+
+    /**
+     * 按排序输出一行数据
+     */
+    protected abstract void output(byte[] row);
+
+    /**
+     * 接收节点的一行数据（含包头）
+     * 
+     * @return true表示该节点的窗口已满，调用者应暂停接收并通过{@link #onAvailable}恢复
+     */
+    public boolean offer(Object shardId, byte[] row) {
+        if (aborted) {
+            return false;
+        }
+        Shard shard = getShard(shardId);
+        Row r = new Row(row, sortKey.getKey(row));
+        if (shard.rows.isEmpty()) {
+            shard.rows.offer(r);
+            --pending;
+            heap.offer(shard);
+            merge();
+        } else {
+            shard.rows.offer(r);
+        }
+        return shard.rows.size() >= window;
+    }
+
+    /**
+     * 节点的结果集结束
+     */
+    public void finish(Object shardId) {
+        if (aborted) {
+            return;
+        }
+        Shard shard = getShard(shardId);
+        if (shard.finished) {
+            return;
+        }
+        shard.finished = true;
+        shard.task = null;
+        if (shard.rows.isEmpty()) {
+            --pending;
+        }
+        merge();
+    }
+
+    /**
+     * 节点窗口降到低水位（或合并中止）后执行task，当前已满足条件时立即执行。
+     */
+    public void onAvailable(Object shardId, Runnable task) {
+        Shard shard = getShard(shardId);
+        if (aborted || shard.rows.size() <= lowWindow) {
+            task.run();
+        } else {
+            shard.task = task;
+        }
+    }
+
+    /**
+     * 中止合并，丢弃缓存的行并恢复所有被暂停的节点，使其能够读完结果集。
+     */
+    public void abort() {
+        if (aborted) {
+            return;
+        }
+        aborted = true;
+        heap.clear();
+        for (Shard shard : shards.values()) {
+            shard.rows.clear();
+            Runnable task = shard.task;
+            if (task != null) {
+                shard.task = null;
+                task.run();
+            }
+        }
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    private Shard getShard(Object shardId) {
+        Shard shard = shards.get(shardId);
+        if (shard == null) {
+            if (shards.size() >= shardCount) {
+                throw new IllegalStateException("too many shards: " + shardId);
+            }
+            shard = new Shard(shards.size());
+            shards.put(shardId, shard);
+        }
+        return shard;
+    }
+
+    private void merge() {
+        while (pending == 0 && !heap.isEmpty()) {
+            Shard shard = heap.poll();
+            Row r = shard.rows.poll();
+            output(r.data);
+            if (!shard.rows.isEmpty()) {
+                heap.offer(shard);
+            } else if (!shard.finished) {
+                ++pending;
+            }
+            Runnable task = shard.task;
+            if (task != null && shard.rows.size() <= lowWindow) {
+                shard.task = null;
+                task.run();
+            }
+        }
+    }
+
+    private static final class Shard {
+        private final int seq;
+        private final ArrayDeque<Row> rows = new ArrayDeque<Row>();
+        private boolean finished;
+        private Runnable task;
+
+        private Shard(int seq) {
+            this.seq = seq;
+        }
+    }
+
+    private static final class Row {
+        private final byte[] data;
+        private final Object[] key;
+
+        private Row(byte[] data, Object[] key) {
+            this.data = data;
+            this.key = key;
+        }
+    }
+
+}
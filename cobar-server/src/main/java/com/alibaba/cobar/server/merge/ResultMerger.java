@@ -0,0 +1,57 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.alibaba.cobar.net.packet.FieldPacket;
+
+/**
+ * 读完所有节点的结果集后才输出的合并，如分组合并和去重计数，返回给客户端的字段由合并决定。
+ * <p>
+ * 非线程安全，由调用者在结果集处理的锁内使用。
+ * 
+ * @author xianmao.hexm
+ */
+public abstract class ResultMerger {
+
+    /**
+     * 输出一行数据（含包头，包序号为0）
+     */
+    protected abstract void output(byte[] row);
+
+    /**
+     * @return 返回给客户端的字段
+     */
+    public abstract List<FieldPacket> getFields();
+
+    /**
+     * 合并一个节点的行数据（含包头）
+     */
+    public abstract void add(byte[] row) throws IOException;
+
+    /**
+     * 所有节点的结果集结束，输出合并结果。
+     */
+    public abstract void finish() throws IOException;
+
+    /**
+     * 释放占用的资源，可以重复调用。
+     */
+    public abstract void close();
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.net.util.BufferUtil;
+import com.alibaba.cobar.net.util.CharsetUtil;
+import com.alibaba.cobar.net.util.MySQLMessage;
+import com.alibaba.cobar.route.MergeColumn;
+
+/**
+ * 文本协议行数据的解析和比较，用于多节点结果集的合并。
+ * 
+ * @author xianmao.hexm
+ */
+public final class RowDataUtil {
+    private static final byte NULL_MARK = (byte) 251;
+
+    /**
+     * 合并列在结果集中的序号，优先使用路由时确定的序号，否则按字段名称或原始列名匹配。
+     * 
+     * @return -1 if not found
+     */
+    public static int indexOf(List<FieldPacket> fields, MergeColumn col) {
+        int index = col.getIndex();
+        if (index >= 0) {
+            return index < fields.size() ? index : -1;
+        }
+        String name = col.getName();
+        if (name == null) {
+            return -1;
+        }
+        for (int i = 0, len = fields.size(); i < len; ++i) {
+            FieldPacket field = fields.get(i);
+            if (field.name != null && name.equalsIgnoreCase(new String(field.name))) {
+                return i;
+            }
+        }
+        for (int i = 0, len = fields.size(); i < len; ++i) {
+            FieldPacket field = fields.get(i);
+            if (field.orgName != null && name.equalsIgnoreCase(new String(field.orgName))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 读取行数据包（含包头）的前count列，NULL值以null表示。
+     */
+    public static byte[][] read(byte[] row, int count) {
+        byte[][] values = new byte[count][];
+        MySQLMessage mm = new MySQLMessage(row);
+        mm.position(4);
+        for (int i = 0; i < count; ++i) {
+            long length = mm.readLength();
+            if (length == MySQLMessage.NULL_LENGTH) {
+                continue;
+            }
+            values[i] = mm.readBytes((int) length);
+        }
+        return values;
+    }
+
+    /**
+     * 把列值编码为文本协议的行数据包（含包头，包序号为0），null表示NULL值。
+     */
+    public static byte[] toPacket(byte[][] values) {
+        int size = 0;
+        for (byte[] v : values) {
+            size += v == null ? 1 : BufferUtil.getLength(v);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + size);
+        BufferUtil.writeUB3(buffer, size);
+        buffer.put((byte) 0);
+        for (byte[] v : values) {
+            BufferUtil.writeWithLength(buffer, v, NULL_MARK);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 把若干列编码为用于判断相等的键：各列带长度，不区分大小写的字符列统一转为大写，NULL的长度为-1。
+     * 
+     * @param charsets 各列的字符集，见{@link #getCharset(FieldPacket)}
+     */
+    public static byte[] encodeKey(byte[][] values, int[] indexes, Charset[] charsets) {
+        byte[][] parts = new byte[indexes.length][];
+        int size = indexes.length << 2;
+        for (int i = 0; i < indexes.length; ++i) {
+            int k = indexes[i];
+            byte[] raw = values[k];
+            if (raw != null && charsets[k] != null) {
+                raw = new String(raw, charsets[k]).toUpperCase().getBytes(charsets[k]);
+            }
+            parts[i] = raw;
+            size += raw == null ? 0 : raw.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[] part : parts) {
+            if (part == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(part.length);
+                buffer.put(part);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 字符类型的列返回用于比较的字符集；二进制类型和二进制排序规则（_bin）的列返回null，按字节比较。
+     */
+    public static Charset getCharset(FieldPacket field) {
+        switch (field.type) {
+        case Fields.FIELD_TYPE_VARCHAR:
+        case Fields.FIELD_TYPE_VAR_STRING:
+        case Fields.FIELD_TYPE_STRING:
+        case Fields.FIELD_TYPE_ENUM:
+        case Fields.FIELD_TYPE_SET:
+        case Fields.FIELD_TYPE_TINY_BLOB:
+        case Fields.FIELD_TYPE_MEDIUM_BLOB:
+        case Fields.FIELD_TYPE_LONG_BLOB:
+        case Fields.FIELD_TYPE_BLOB:
+            if ((field.flags & Fields.BINARY_FLAG) != 0 || CharsetUtil.isBinaryCollation(field.charsetIndex)) {
+                return null;
+            }
+            String charset = CharsetUtil.getCharset(field.charsetIndex);
+            return charset != null && Charset.isSupported(charset) ? Charset.forName(charset) : null;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * 把文本协议的列值转为可比较的对象：数值为Long或BigDecimal或Double，字符为String，其余为byte[]。
+     * 
+     * @param charset 字符类型列的字符集，见{@link #getCharset(FieldPacket)}
+     */
+    public static Object parse(byte[] value, FieldPacket field, Charset charset) {
+        if (value == null) {
+            return null;
+        }
+        switch (field.type) {
+        case Fields.FIELD_TYPE_TINY:
+        case Fields.FIELD_TYPE_SHORT:
+        case Fields.FIELD_TYPE_LONG:
+        case Fields.FIELD_TYPE_INT24:
+        case Fields.FIELD_TYPE_LONGLONG:
+        case Fields.FIELD_TYPE_YEAR:
+            String s = new String(value);
+            try {
+                return Long.valueOf(s);
+            } catch (NumberFormatException e) {
+                return new BigDecimal(s);
+            }
+        case Fields.FIELD_TYPE_DECIMAL:
+        case Fields.FIELD_TYPE_NEW_DECIMAL:
+            return new BigDecimal(new String(value));
+        case Fields.FIELD_TYPE_FLOAT:
+        case Fields.FIELD_TYPE_DOUBLE:
+            return Double.valueOf(new String(value));
+        default:
+            if (charset != null) {
+                return new String(value, charset);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * 按MySQL的规则比较两个列值：NULL最小，字符不区分大小写，二进制和二进制排序规则的字符按无符号字节比较。
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static int compare(Object v1, Object v2) {
+        if (v1 == v2) {
+            return 0;
+        }
+        if (v1 == null) {
+            return -1;
+        }
+        if (v2 == null) {
+            return 1;
+        }
+        if (v1 instanceof String) {
+            return ((String) v1).compareToIgnoreCase((String) v2);
+        }
+        if (v1 instanceof byte[]) {
+            return compare((byte[]) v1, (byte[]) v2);
+        }
+        if (v1 instanceof Long && v2 instanceof BigDecimal) {
+            return BigDecimal.valueOf((Long) v1).compareTo((BigDecimal) v2);
+        }
+        if (v1 instanceof BigDecimal && v2 instanceof Long) {
+            return ((BigDecimal) v1).compareTo(BigDecimal.valueOf((Long) v2));
+        }
+        return ((Comparable) v1).compareTo(v2);
+    }
+
+    private static int compare(byte[] b1, byte[] b2) {
+        int len = Math.min(b1.length, b2.length);
+        for (int i = 0; i < len; ++i) {
+            int c = (b1[i] & 0xff) - (b2[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return b1.length - b2.length;
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.alibaba.cobar.net.buffer.BufferArena;
+import com.alibaba.cobar.net.buffer.BufferReference;
+import com.alibaba.cobar.net.buffer.PacketSlice;
+import com.alibaba.cobar.net.packet.BinaryPacket;
+import com.alibaba.cobar.net.util.BufferUtil;
+
+/**
+ * 多节点行数据的汇聚通道：每个节点在自己的{@link Chunk}中积累行数据，积累到一定大小后无锁地交给通道，
+ * 由唯一的消费者批量取出后分配包序号写往前端。
+ * <p>
+ * 生产者之间以CAS入栈，消费者一次取走全部并反转为先进先出的顺序，同一生产者交付的块保持原有顺序。
+ * 
+ * @author xianmao.hexm
+ */
+public final class RowFunnel {
+    private final AtomicReference<Chunk> top = new AtomicReference<Chunk>();
+
+    /**
+     * 多个生产者可以并发调用
+     */
+    public void offer(Chunk chunk) {
+        final AtomicReference<Chunk> top = this.top;
+        Chunk t;
+        do {
+            t = top.get();
+            chunk.next = t;
+        } while (!top.compareAndSet(t, chunk));
+    }
+
+    public boolean isEmpty() {
+        return top.get() == null;
+    }
+
+    /**
+     * 取出已交付的全部块，同一时刻只能有一个消费者调用。
+     * 
+     * @return 按交付顺序以{@link Chunk#next()}串联的第一个块，没有时为null
+     */
+    public Chunk poll() {
+        Chunk c = top.getAndSet(null);
+        Chunk head = null;
+        while (c != null) {
+            Chunk next = c.next;
+            c.next = head;
+            head = c;
+            c = next;
+        }
+        return head;
+    }
+
+    /**
+     * 一个节点连续的若干行数据，含包头依次复制到同一个缓存块中，交付前只由该节点的处理线程访问。
+     * 取出写往前端后须调用{@link #release()}归还缓存块。
+     */
+    public static final class Chunk {
+        private static final int INITIAL_CAPACITY = 32;
+
+        private final BufferReference reference;
+        private final ByteBuffer buffer;
+        private int[] offsets = new int[INITIAL_CAPACITY];
+        private int count;
+        private Chunk next;
+
+        /**
+         * @param arena 缓存块所属的BufferArena，为null时不回收
+         */
+        public Chunk(ByteBuffer buffer, BufferArena arena) {
+            buffer.clear();
+            this.reference = new BufferReference(buffer, arena);
+            this.buffer = buffer;
+        }
+
+        /**
+         * @param row 含包头的行数据
+         * @return false if the chunk has no room for the row
+         */
+        public boolean add(byte[] row) {
+            if (buffer.remaining() < row.length) {
+                return false;
+            }
+            mark();
+            buffer.put(row);
+            return true;
+        }
+
+        /**
+         * @param row 含包头的行数据切片
+         * @return false if the chunk has no room for the row
+         */
+        public boolean add(PacketSlice row) {
+            int length = row.length();
+            if (buffer.remaining() < length) {
+                return false;
+            }
+            mark();
+            row.writeTo(buffer, 0, length);
+            return true;
+        }
+
+        /**
+         * @return false if the chunk has no room for the row
+         */
+        public boolean add(BinaryPacket row) {
+            int size = row.calcPacketSize();
+            if (buffer.remaining() < 4 + size) {
+                return false;
+            }
+            mark();
+            BufferUtil.writeUB3(buffer, size);
+            buffer.put(row.packetId);
+            if (size > 0) {
+                buffer.put(row.data);
+            }
+            return true;
+        }
+
+        /**
+         * @return 引用缓存块的行数据切片，在{@link #release()}之前有效
+         */
+        public PacketSlice get(int index) {
+            int offset = offsets[index];
+            int end = (index + 1 < count) ? offsets[index + 1] : buffer.position();
+            return new PacketSlice(reference, offset, end - offset);
+        }
+
+        /**
+         * @return 行数
+         */
+        public int count() {
+            return count;
+        }
+
+        /**
+         * @return 行数据的总字节数
+         */
+        public int size() {
+            return buffer.position();
+        }
+
+        public Chunk next() {
+            return next;
+        }
+
+        public void release() {
+            reference.release();
+        }
+
+        private void mark() {
+            if (count == offsets.length) {
+                int[] a = new int[count << 1];
+                System.arraycopy(offsets, 0, a, 0, count);
+                offsets = a;
+            }
+            offsets[count++] = buffer.position();
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import com.alibaba.cobar.route.RouteResultset;
+
+/**
+ * 多节点查询返回行数的控制：先跳过改写LIMIT时下推的offset行，再返回至多LIMIT行。
+ * 能否归并排序都按同样的行数截断，无法归并时只是行的顺序不确定。
+ * 
+ * @author xianmao.hexm
+ */
+public final class RowLimit {
+
+    private final long limit;
+    private long skipCount;
+    private long rowCount;
+    private boolean reached;
+
+    /**
+     * 按列聚合、分组和去重计数合并的结果不按节点的行数截断
+     */
+    public RowLimit(RouteResultset rrs) {
+        boolean merged = rrs.getAggregates() != null || rrs.getGroupBy() != null || rrs.getCountDistinct() != null;
+        this.limit = merged ? -1L : rrs.getLimitSize();
+        this.skipCount = rrs.getLimitOffset();
+    }
+
+    /**
+     * @return 已返回LIMIT行数据，其余的行数据可以丢弃
+     */
+    public boolean isReached() {
+        return reached;
+    }
+
+    /**
+     * 对每一行按输出顺序调用一次
+     * 
+     * @return true表示返回这一行
+     */
+    public boolean accept() {
+        if (reached) {
+            return false;
+        }
+        if (skipCount > 0) {
+            --skipCount;
+            return false;
+        }
+        if (limit > 0 && ++rowCount >= limit) {
+            reached = true;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.route.MergeColumn;
+
+/**
+ * 按ORDER BY列从行数据中取出排序键并比较。
+ * 
+ * @author xianmao.hexm
+ */
+public final class SortKey {
+
+    private final int[] indexes;
+    private final boolean[] desc;
+    private final FieldPacket[] fields;
+    private final Charset[] charsets;
+    private final int columnCount;
+
+    private SortKey(int[] indexes, boolean[] desc, FieldPacket[] fields) {
+        this.indexes = indexes;
+        this.desc = desc;
+        this.fields = fields;
+        this.charsets = new Charset[fields.length];
+        int max = 0;
+        for (int i = 0; i < fields.length; ++i) {
+            charsets[i] = RowDataUtil.getCharset(fields[i]);
+            max = Math.max(max, indexes[i] + 1);
+        }
+        this.columnCount = max;
+    }
+
+    /**
+     * @return null if any order column is not in the result set
+     */
+    public static SortKey create(MergeColumn[] orderBy, List<FieldPacket> fieldList) {
+        if (orderBy == null || fieldList == null) {
+            return null;
+        }
+        int[] indexes = new int[orderBy.length];
+        boolean[] desc = new boolean[orderBy.length];
+        FieldPacket[] fields = new FieldPacket[orderBy.length];
+        for (int i = 0; i < orderBy.length; ++i) {
+            int index = RowDataUtil.indexOf(fieldList, orderBy[i]);
+            if (index < 0) {
+                return null;
+            }
+            indexes[i] = index;
+            desc[i] = orderBy[i].getType() == MergeColumn.ORDER_DESC;
+            fields[i] = fieldList.get(index);
+        }
+        return new SortKey(indexes, desc, fields);
+    }
+
+    /**
+     * 取出行数据包（含包头）的排序键
+     */
+    public Object[] getKey(byte[] row) {
+        byte[][] values = RowDataUtil.read(row, columnCount);
+        Object[] key = new Object[indexes.length];
+        for (int i = 0; i < indexes.length; ++i) {
+            key[i] = RowDataUtil.parse(values[indexes[i]], fields[i], charsets[i]);
+        }
+        return key;
+    }
+
+    public int compare(Object[] key1, Object[] key2) {
+        for (int i = 0; i < desc.length; ++i) {
+            int c = RowDataUtil.compare(key1[i], key2[i]);
+            if (c != 0) {
+                return desc[i] ? -c : c;
+            }
+        }
+        return 0;
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package com.alibaba.cobar.server.mysql;
 
+import com.alibaba.cobar.Capabilities;
 import com.alibaba.cobar.net.handler.NIOHandler;
 import com.alibaba.cobar.net.packet.EOFPacket;
 import com.alibaba.cobar.net.packet.ErrorPacket;
@@ -67,6 +68,9 @@ public class MySQLAuthenticator implements NIOHandler {
             } else { // 处理认证结果
                 switch (data[4]) {
                 case OkPacket.FIELD_COUNT:
+                    if ((source.getClientFlags() & Capabilities.CLIENT_COMPRESS) != 0) {
+                        source.startCompress(null, true);
+                    }
                     source.setHandler(new MySQLHandler(source));
                     source.setAuthenticated(true);
                     if (listener != null) {
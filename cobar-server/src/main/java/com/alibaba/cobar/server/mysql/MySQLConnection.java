@@ -15,10 +15,14 @@
  */
 package com.alibaba.cobar.server.mysql;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.log4j.Logger;
 
@@ -27,6 +31,7 @@ import com.alibaba.cobar.Commands;
 import com.alibaba.cobar.ErrorCode;
 import com.alibaba.cobar.Isolations;
 import com.alibaba.cobar.net.BackendConnection;
+import com.alibaba.cobar.net.handler.NIOHandler;
 import com.alibaba.cobar.net.packet.AuthPacket;
 import com.alibaba.cobar.net.packet.CommandPacket;
 import com.alibaba.cobar.net.packet.HandshakePacket;
@@ -38,6 +43,7 @@ import com.alibaba.cobar.route.RouteResultsetNode;
 import com.alibaba.cobar.server.ServerConnection;
 import com.alibaba.cobar.server.UnknownTxIsolationException;
 import com.alibaba.cobar.server.mysql.handler.ResponseHandler;
+import com.alibaba.cobar.server.node.StatusIdleStack;
 import com.alibaba.cobar.server.statistics.SQLRecord;
 import com.alibaba.cobar.server.statistics.SQLRecorder;
 
@@ -55,7 +61,7 @@ public final class MySQLConnection extends BackendConnection {
         flag |= Capabilities.CLIENT_LONG_FLAG;
         flag |= Capabilities.CLIENT_CONNECT_WITH_DB;
         // flag |= Capabilities.CLIENT_NO_SCHEMA;
-        // flag |= Capabilities.CLIENT_COMPRESS;
+        // flag |= Capabilities.CLIENT_COMPRESS; 由authenticate()按配置和服务端能力协商
         flag |= Capabilities.CLIENT_ODBC;
         // flag |= Capabilities.CLIENT_LOCAL_FILES;
         flag |= Capabilities.CLIENT_IGNORE_SPACE;
@@ -107,6 +113,13 @@ public final class MySQLConnection extends BackendConnection {
         _ROLLBACK.arg = "rollback".getBytes();
     }
 
+    /** 暂停读取的原因：前端发送队列超过高水位 */
+    public static final int SUSPEND_BY_FRONTEND = 1;
+    /** 暂停读取的原因：后端数据队列超过高水位 */
+    public static final int SUSPEND_BY_QUEUE = 2;
+    /** 暂停读取的原因：多节点合并窗口已满 */
+    public static final int SUSPEND_BY_MERGE = 4;
+
     private MySQLConnectionPool pool;
     private long threadId;
     private HandshakePacket handshake;
@@ -124,7 +137,19 @@ public final class MySQLConnection extends BackendConnection {
     private final AtomicBoolean isRunning;
     private long lastTime; //QS_TODO 
     private final AtomicBoolean isQuit;
+    /** 是否占用连接池的活跃名额 */
+    private final AtomicBoolean isBorrowed;
     private volatile StatusSync statusSync;
+    private int queueHighWatermark;
+    private int queueLowWatermark;
+    /** 暂停读取的原因位，受keyLock保护 */
+    private int readSuspends;
+    private final Runnable resumeRead = new Runnable() {
+        @Override
+        public void run() {
+            resumeRead(SUSPEND_BY_FRONTEND);
+        }
+    };
 
     public MySQLConnection(SocketChannel channel) {
         super(channel);
@@ -132,6 +157,7 @@ public final class MySQLConnection extends BackendConnection {
         this.lastTime = TimeUtil.currentTimeMillis();
         this.isRunning = new AtomicBoolean(false);
         this.isQuit = new AtomicBoolean(false);
+        this.isBorrowed = new AtomicBoolean(false);
         this.autocommit = true;
     }
 
@@ -163,6 +189,10 @@ public final class MySQLConnection extends BackendConnection {
         this.password = password;
     }
 
+    public long getClientFlags() {
+        return clientFlags;
+    }
+
     public HandshakePacket getHandshake() {
         return handshake;
     }
@@ -206,6 +236,9 @@ public final class MySQLConnection extends BackendConnection {
     public void authenticate() {
         AuthPacket packet = new AuthPacket();
         packet.packetId = 1;
+        if (compress && (handshake.serverCapabilities & Capabilities.CLIENT_COMPRESS) != 0) {
+            clientFlags |= Capabilities.CLIENT_COMPRESS;
+        }
         packet.clientFlags = clientFlags;
         packet.maxPacketSize = maxPacketSize;
         packet.charsetIndex = charsetIndex;
@@ -251,100 +284,221 @@ public final class MySQLConnection extends BackendConnection {
         return isClosed() || isQuit.get();
     }
 
+    public int getSessionStatus() {
+        return StatusIdleStack.status(charsetIndex, txIsolation, autocommit);
+    }
+
+    /**
+     * @return 状态发生变化时返回true
+     */
+    boolean setBorrowed(boolean borrowed) {
+        return isBorrowed.compareAndSet(!borrowed, borrowed);
+    }
+
+    /**
+     * 前端发送队列超过高水位时暂停读取后端数据，降到低水位后恢复读取。
+     */
+    public void checkWritable(ServerConnection source) {
+        if (!source.isWritable()) {
+            suspendRead(SUSPEND_BY_FRONTEND);
+            source.onWritable(resumeRead);
+        }
+    }
+
+    /**
+     * 因reason暂停读取，多个原因并存时需全部解除后才恢复读取。
+     */
+    public void suspendRead(int reason) {
+        final Lock lock = this.keyLock;
+        lock.lock();
+        try {
+            readSuspends |= reason;
+            SelectionKey key = this.processKey;
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 解除reason对应的暂停，没有其他暂停原因时恢复读取。
+     */
+    public void resumeRead(int reason) {
+        final Lock lock = this.keyLock;
+        lock.lock();
+        try {
+            readSuspends &= ~reason;
+            if (readSuspends != 0) {
+                return;
+            }
+            SelectionKey key = this.processKey;
+            if (!key.isValid()) {
+                return;
+            }
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        } finally {
+            lock.unlock();
+        }
+        processKey.selector().wakeup();
+    }
+
+    public int getQueueHighWatermark() {
+        return queueHighWatermark;
+    }
+
+    public void setQueueHighWatermark(int queueHighWatermark) {
+        this.queueHighWatermark = queueHighWatermark;
+    }
+
+    public int getQueueLowWatermark() {
+        return queueLowWatermark;
+    }
+
+    public void setQueueLowWatermark(int queueLowWatermark) {
+        this.queueLowWatermark = queueLowWatermark;
+    }
+
+    /**
+     * 后端数据队列中待处理的数据包个数
+     */
+    public int getQueueSize() {
+        NIOHandler h = handler;
+        return (h instanceof MySQLHandler) ? ((MySQLHandler) h).getQueueSize() : 0;
+    }
+
     public StatusSync getStatusSync() {
         return statusSync;
     }
 
+    /**
+     * 执行语句前同步后端连接的会话状态，SET语句的响应由{@link MySQLHandler}消费。
+     * 事务级别和递交模式的设置逐条发送，收到OK后再发送下一条，失败时语句不执行；
+     * 只有字符集设置与执行语句一次写出，压缩协议下也逐条发送。
+     * <p>
+     * 因此事务相关的状态不一致时仍需要多次往返。后端连接没有开启CLIENT_MULTI_STATEMENTS，
+     * 无法把SET和执行语句放在一个批次中由服务端在出错时停止；开启后客户端语句中的分号也会被执行成多条语句，
+     * 而响应处理只读取一个结果，连接会失去同步。状态分区的空闲连接池使多数请求不需要同步事务状态。
+     */
     public static class StatusSync {
         private final RouteResultsetNode rrn;
         private final MySQLConnection conn;
-        private CommandPacket charCmd;
-        private CommandPacket isoCmd;
-        private CommandPacket acCmd;
+        private final CommandPacket charCmd;
+        private final CommandPacket isoCmd;
+        private final CommandPacket acCmd;
+        private final CommandPacket[] cmds;
+        private final int count;
         private final int charIndex;
         private final int txIsolation;
         private final boolean autocommit;
+        private int received;
+        private boolean pipelined;
         private volatile boolean executed;
 
         public StatusSync(MySQLConnection conn, RouteResultsetNode rrn, ServerConnection sc, boolean autocommit) {
+            this(conn, rrn, sc.getCharsetIndex(), sc.getTxIsolation(), autocommit);
+        }
+
+        public StatusSync(MySQLConnection conn, RouteResultsetNode rrn, int charIndex, int txIsolation,
+                          boolean autocommit) {
             this.conn = conn;
             this.rrn = rrn;
-            this.charIndex = sc.getCharsetIndex();
+            this.charIndex = charIndex;
             this.charCmd = conn.charsetIndex != charIndex ? getCharsetCommand(charIndex) : null;
-            this.txIsolation = sc.getTxIsolation();
+            this.txIsolation = txIsolation;
             this.isoCmd = conn.txIsolation != txIsolation ? getTxIsolationCommand(txIsolation) : null;
             this.autocommit = autocommit;
             this.acCmd = conn.autocommit != autocommit ? (autocommit ? _AUTOCOMMIT_ON : _AUTOCOMMIT_OFF) : null;
-        }
 
-        private Runnable updater;
+            // 事务相关的设置失败时语句不能执行，须逐条确认；字符集设置放在最后与执行语句一起写出
+            this.cmds = new CommandPacket[3];
+            int n = 0;
+            if (isoCmd != null) {
+                cmds[n++] = isoCmd;
+            }
+            if (acCmd != null) {
+                cmds[n++] = acCmd;
+            }
+            if (charCmd != null) {
+                cmds[n++] = charCmd;
+            }
+            this.count = n;
+        }
 
+        /**
+         * @return SET语句的响应都已收到，之后的响应属于执行语句
+         */
         public boolean isExecuted() {
             return executed;
         }
 
+        /**
+         * @return 执行语句已随字符集设置一起写出，此时设置出错须关闭连接
+         */
+        public boolean isPipelined() {
+            return pipelined;
+        }
+
         public boolean isSync() {
-            return charCmd == null && isoCmd == null && acCmd == null;
+            return count == 0;
         }
 
-        public void update() {
-            Runnable updater = this.updater;
-            if (updater != null) {
-                updater.run();
+        public void execute() throws UnsupportedEncodingException {
+            if (count == 0) {
+                executed = true;
+                getStatementCommand().write(conn);
+                return;
             }
+            send(cmds[0]);
         }
 
-        public boolean sync() {
-            CommandPacket cmd;
-            if (charCmd != null) {
-                updater = new Runnable() {
-                    @Override
-                    public void run() {
-                        int ci = StatusSync.this.charIndex;
-                        conn.charsetIndex = ci;
-                        conn.charset = CharsetUtil.getCharset(ci);
-                    }
-                };
-                cmd = charCmd;
-                charCmd = null;
-                cmd.write(conn);
-                return true;
+        /**
+         * 收到一条SET语句的OK响应，更新连接状态。
+         */
+        public void update() throws UnsupportedEncodingException {
+            CommandPacket cmd = cmds[received++];
+            if (cmd == charCmd) {
+                conn.charsetIndex = charIndex;
+                conn.charset = CharsetUtil.getCharset(charIndex);
+            } else if (cmd == isoCmd) {
+                conn.txIsolation = txIsolation;
+            } else {
+                conn.autocommit = autocommit;
             }
-            if (isoCmd != null) {
-                updater = new Runnable() {
-                    @Override
-                    public void run() {
-                        conn.txIsolation = StatusSync.this.txIsolation;
-                    }
-                };
-                cmd = isoCmd;
-                isoCmd = null;
-                cmd.write(conn);
-                return true;
+            if (received < count) {
+                send(cmds[received]);
+            } else if (pipelined) {
+                executed = true;
+            } else {
+                executed = true;
+                getStatementCommand().write(conn);
             }
-            if (acCmd != null) {
-                updater = new Runnable() {
-                    @Override
-                    public void run() {
-                        conn.autocommit = StatusSync.this.autocommit;
-                    }
-                };
-                cmd = acCmd;
-                acCmd = null;
+        }
+
+        /**
+         * 字符集设置与执行语句一次写出，压缩协议下逐条发送。
+         */
+        private void send(CommandPacket cmd) throws UnsupportedEncodingException {
+            if (cmd != charCmd || conn.isCompressed()) {
                 cmd.write(conn);
-                return true;
+                return;
             }
-            return false;
+            pipelined = true;
+            ByteBuffer buffer = conn.allocate();
+            buffer = cmd.write(buffer, conn);
+            buffer = getStatementCommand().write(buffer, conn);
+            conn.write(buffer);
         }
 
-        public void execute() throws UnsupportedEncodingException {
-            executed = true;
+        private CommandPacket getStatementCommand() throws UnsupportedEncodingException {
+            String charset = (charCmd != null) ? CharsetUtil.getCharset(charIndex) : conn.getCharset();
             CommandPacket packet = new CommandPacket();
             packet.packetId = 0;
             packet.command = Commands.COM_QUERY;
-            packet.arg = rrn.getStatement().getBytes(conn.getCharset());
+            packet.arg = rrn.getStatement().getBytes(charset);
             conn.lastTime = TimeUtil.currentTimeMillis();
-            packet.write(conn);
+            return packet;
         }
 
         private static CommandPacket getTxIsolationCommand(int txIsolation) {
@@ -378,9 +532,17 @@ public final class MySQLConnection extends BackendConnection {
             throws UnsupportedEncodingException {
         StatusSync sync = new StatusSync(this, rrn, sc, autocommit);
         statusSync = sync;
-        if (sync.isSync() || !sync.sync()) {
-            sync.execute();
+        if (sync.isSync()) {
+            pool.getCount().syncHit();
+        } else {
+            pool.getCount().syncMiss();
         }
+        if (sc.getProcessor() == processor) {
+            pool.getCount().affinityHit();
+        } else {
+            pool.getCount().affinityMiss();
+        }
+        sync.execute();
     }
 
     public void quit() {
@@ -388,7 +550,7 @@ public final class MySQLConnection extends BackendConnection {
             if (isAuthenticated) {
                 //QS_TODO check
                 write(writeToBuffer(QuitPacket.QUIT, allocate()));
-                write(processor.getBufferPool().allocate());
+                write(processor.getBufferArena().allocate());
             } else {
                 close();
             }
@@ -400,7 +562,11 @@ public final class MySQLConnection extends BackendConnection {
         isQuit.set(true);
         boolean closed = super.close();
         if (closed) {
-            pool.deActive();
+            pool.deActive(this);
+            // 执行中的连接被关闭(如被KILL)时通知当前的handler，使其能够结束。
+            if (isRunning() && handler instanceof MySQLHandler) {
+                ((MySQLHandler) handler).connectionError(new IOException("connection closed: " + this));
+            }
         }
         return closed;
     }
@@ -431,10 +597,10 @@ public final class MySQLConnection extends BackendConnection {
             //QS_TODO
             break;
         default:
-            close();
             if (handler instanceof MySQLHandler) {
                 ((MySQLHandler) handler).connectionError(t);
             }
+            close();
         }
     }
 
@@ -19,8 +19,10 @@ import java.io.IOException;
 import java.nio.channels.SocketChannel;
 
 import com.alibaba.cobar.CobarServer;
+import com.alibaba.cobar.net.NIOProcessor;
 import com.alibaba.cobar.net.factory.BackendConnectionFactory;
 import com.alibaba.cobar.server.config.DataSourceConfig;
+import com.alibaba.cobar.server.config.SystemConfig;
 import com.alibaba.cobar.server.mysql.handler.ResponseHandler;
 
 /**
@@ -29,6 +31,14 @@ import com.alibaba.cobar.server.mysql.handler.ResponseHandler;
 public class MySQLConnectionFactory extends BackendConnectionFactory {
 
     public MySQLConnection make(MySQLConnectionPool pool, ResponseHandler handler) throws IOException {
+        return make(pool, handler, null);
+    }
+
+    /**
+     * @param affinity 连接建立后注册到的处理器，为空时由连接器选择
+     */
+    public MySQLConnection make(MySQLConnectionPool pool, ResponseHandler handler, NIOProcessor affinity)
+            throws IOException {
         SocketChannel channel = openSocketChannel();
         DataSourceConfig dsc = pool.getConfig();
         MySQLConnection c = new MySQLConnection(channel);
@@ -39,6 +49,10 @@ public class MySQLConnectionFactory extends BackendConnectionFactory {
         c.setSchema(dsc.getDatabase());
         c.setHandler(new MySQLAuthenticator(c, handler));
         c.setPool(pool);
+        c.setAffinity(affinity);
+        SystemConfig system = CobarServer.getInstance().getConfig().getSystem();
+        c.setQueueHighWatermark(system.getBackendQueueHighWatermark());
+        c.setQueueLowWatermark(system.getBackendQueueLowWatermark());
         postConnect(c, CobarServer.getInstance().getConnector());
         return c;
     }
@@ -18,16 +18,31 @@
  */
 package com.alibaba.cobar.server.mysql;
 
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
 import com.alibaba.cobar.CobarAlarms;
+import com.alibaba.cobar.net.NIOProcessor;
+import com.alibaba.cobar.net.buffer.PacketSlice;
+import com.alibaba.cobar.net.packet.ErrorPacket;
+import com.alibaba.cobar.net.util.IdleStack;
 import com.alibaba.cobar.net.util.TimeUtil;
 import com.alibaba.cobar.server.config.DataSourceConfig;
+import com.alibaba.cobar.server.config.SystemConfig;
 import com.alibaba.cobar.server.mysql.handler.DelegateResponseHandler;
 import com.alibaba.cobar.server.mysql.handler.ResponseHandler;
 import com.alibaba.cobar.server.node.MySQLDataNode;
+import com.alibaba.cobar.server.node.MySQLDataSource;
+import com.alibaba.cobar.server.node.PoolQuota;
+import com.alibaba.cobar.server.node.StatusIdleStack;
+import com.alibaba.cobar.server.statistics.DataSourceCount;
+import com.alibaba.cobar.server.statistics.PoolWaitRecorder;
 import com.alibaba.cobar.server.statistics.SQLRecorder;
 
 /**
@@ -35,29 +50,43 @@ import com.alibaba.cobar.server.statistics.SQLRecorder;
  */
 public class MySQLConnectionPool {
     private static final Logger alarm = Logger.getLogger("alarm");
+    private static final Logger logger = Logger.getLogger(MySQLConnectionPool.class);
 
     private final MySQLDataNode dataNode;
     private final int index;
     private final String name;
-    private final ReentrantLock lock = new ReentrantLock();
     private final MySQLConnectionFactory factory;
     private final DataSourceConfig config;
     private final int size;
 
-    private final MySQLConnection[] items;
-    private int activeCount;
-    private int idleCount;
+    /** 空闲连接按所在处理器分区 */
+    private final ConcurrentMap<NIOProcessor, StatusIdleStack<MySQLConnection>> idles;
+    private final PoolQuota<MySQLConnection> quota;
+    private final AtomicInteger creatingCount;
     private final SQLRecorder sqlRecorder;
+    private final PoolWaitRecorder waitRecorder;
+    private final DataSourceCount count;
 
-    public MySQLConnectionPool(MySQLDataNode node, int index, DataSourceConfig config, int size) {
-        this.dataNode = node;
-        this.size = size;
-        this.items = new MySQLConnection[size];
-        this.config = config;
+    /**
+     * 与阻塞式数据源source连接同一个库，共用其统计信息。
+     * 
+     * @param system 压缩协议等连接工厂的设置，在创建连接池时一次设定
+     */
+    public MySQLConnectionPool(MySQLDataSource source, SystemConfig system) {
+        this.dataNode = source.getNode();
+        this.size = source.size();
+        this.idles = new ConcurrentHashMap<NIOProcessor, StatusIdleStack<MySQLConnection>>();
+        this.quota = new PoolQuota<MySQLConnection>(size);
+        this.creatingCount = new AtomicInteger();
+        this.config = source.getConfig();
         this.name = config.getName();
-        this.index = index;
+        this.index = source.getIndex();
         this.factory = new MySQLConnectionFactory();
+        factory.setCompress(system.isBackendCompress());
+        factory.setCompressThreshold(system.getCompressThreshold());
         this.sqlRecorder = new SQLRecorder(config.getSqlRecordCount());
+        this.waitRecorder = source.getWaitRecorder();
+        this.count = source.getCount();
     }
 
     public int getIndex() {
@@ -68,101 +97,158 @@ public class MySQLConnectionPool {
         return name;
     }
 
-    public void getConnection(final ResponseHandler handler, final Object attachment) throws Exception {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            // too many active connections
-            if (activeCount >= size) {
-                StringBuilder s = new StringBuilder();
-                s.append(CobarAlarms.DEFAULT).append("[name=").append(name).append(",active=");
-                s.append(activeCount).append(",size=").append(size).append(']');
-                alarm.error(s.toString());
-            }
-
-            // get connection from pool
-            final MySQLConnection[] items = this.items;
-            for (int i = 0, len = items.length; idleCount > 0 && i < len; ++i) {
-                if (items[i] != null) {
-                    MySQLConnection conn = items[i];
-                    items[i] = null;
-                    --idleCount;
-                    if (conn.isClosedOrQuit()) {
-                        continue;
-                    } else {
-                        ++activeCount;
-                        conn.setAttachment(attachment);
-                        handler.connectionAcquired(conn);
-                        return;
-                    }
-                }
-            }
+    public int getActiveCount() {
+        return quota.getActiveCount();
+    }
 
-            ++activeCount;
-        } finally {
-            lock.unlock();
+    public int getIdleCount() {
+        int n = 0;
+        for (StatusIdleStack<MySQLConnection> idle : idles.values()) {
+            n += idle.size();
         }
+        return n;
+    }
 
-        // create connection
-        factory.make(this, new DelegateResponseHandler(handler) {
-            private boolean deactived;
+    /**
+     * 池满时排队，在数据节点的waitTimeout内有连接归还则回调handler，否则由{@link #waitCheck()}回调超时错误。
+     */
+    public void getConnection(ResponseHandler handler, Object attachment) throws Exception {
+        getConnection(handler, attachment, StatusIdleStack.ANY_STATUS, null, true);
+    }
 
-            @Override
-            public void connectionError(Throwable e, MySQLConnection conn) {
-                lock.lock();
-                try {
-                    if (!deactived) {
-                        --activeCount;
-                        deactived = true;
-                    }
-                } finally {
-                    lock.unlock();
-                }
-                handler.connectionError(e, conn);
-            }
+    /**
+     * @param status 优先取得该会话状态的空闲连接
+     */
+    public void getConnection(ResponseHandler handler, Object attachment, int status) throws Exception {
+        getConnection(handler, attachment, status, null, true);
+    }
 
-            @Override
-            public void connectionAcquired(MySQLConnection conn) {
-                conn.setAttachment(attachment);
-                handler.connectionAcquired(conn);
-            }
-        });
+    /**
+     * @param status 优先取得该会话状态的空闲连接
+     * @param processor 优先取得该处理器上的空闲连接，新建的连接也注册到该处理器
+     */
+    public void getConnection(ResponseHandler handler, Object attachment, int status, NIOProcessor processor)
+            throws Exception {
+        getConnection(handler, attachment, status, processor, true);
+    }
+
+    /**
+     * @param status 优先取得该会话状态的空闲连接
+     * @param bounded 为false时不受池大小限制，用于KILL等不能排队等待的操作。
+     */
+    public void getConnection(ResponseHandler handler, Object attachment, int status, boolean bounded)
+            throws Exception {
+        getConnection(handler, attachment, status, null, bounded);
+    }
+
+    public void getConnection(ResponseHandler handler, Object attachment, int status, NIOProcessor processor,
+                              boolean bounded) throws Exception {
+        if (!bounded) {
+            quota.forceActive();
+            acquire(handler, attachment, status, processor);
+            return;
+        }
+        if (quota.tryActive()) {
+            waitRecorder.record(0L);
+            acquire(handler, attachment, status, processor);
+            return;
+        }
+
+        // too many active connections
+        StringBuilder s = new StringBuilder();
+        s.append(CobarAlarms.DEFAULT).append("[name=").append(name).append(",active=");
+        s.append(quota.getActiveCount()).append(",size=").append(size).append(']');
+        alarm.error(s.toString());
+
+        Waiter w = new Waiter(handler, attachment, status, processor, dataNode.getConfig().getWaitTimeout());
+        if (quota.enqueue(w)) {
+            waitRecorder.record(w.elapsed());
+            acquire(handler, attachment, status, processor);
+        }
     }
 
     public void releaseChannel(MySQLConnection c) {
         if (c == null || c.isClosedOrQuit()) {
             return;
         }
+        c.setLastTime(TimeUtil.currentTimeMillis());
 
-        // release connection
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            final MySQLConnection[] items = this.items;
-            for (int i = 0; i < items.length; i++) {
-                if (items[i] == null) {
-                    ++idleCount;
-                    --activeCount;
-                    c.setLastTime(TimeUtil.currentTimeMillis());
-                    items[i] = c;
-                    return;
-                }
+        // 优先交给等待者，活跃名额随之转移
+        if (quota.handOff(c)) {
+            return;
+        }
+
+        // 连接已被关闭并归还了名额
+        if (!c.setBorrowed(false)) {
+            return;
+        }
+
+        // release connection, close excess connection
+        if (getIdleCount() < size) {
+            pushIdle(c);
+            quota.release();
+        } else {
+            quota.release();
+            c.quit();
+        }
+    }
+
+    public void deActive(MySQLConnection c) {
+        if (c.setBorrowed(false)) {
+            quota.release();
+        }
+    }
+
+    /**
+     * 关闭池中所有空闲连接，数据源切换时调用。
+     */
+    public void clear() {
+        for (MySQLConnection c : drainIdle()) {
+            c.quit();
+        }
+    }
+
+    /**
+     * 在空闲栈中原地取出超时和已关闭的连接，其余连接在检查期间仍可被取用。
+     */
+    public void idleCheck(long timeout) {
+        final long time = TimeUtil.currentTimeMillis() - timeout;
+        IdleStack.Matcher<MySQLConnection> expired = new IdleStack.Matcher<MySQLConnection>() {
+            @Override
+            public boolean match(MySQLConnection c) {
+                return time > c.getLastTime() || c.isClosedOrQuit();
+            }
+        };
+        for (StatusIdleStack<MySQLConnection> idle : idles.values()) {
+            for (MySQLConnection c : idle.remove(expired)) {
+                c.quit();
             }
-        } finally {
-            lock.unlock();
         }
+    }
 
-        // close excess connection
-        c.quit();
+    /**
+     * 回调等待超时的取连接请求，由定时任务调用。
+     */
+    public void waitCheck() {
+        quota.timeoutCheck();
     }
 
-    public void deActive() {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            --activeCount;
-        } finally {
-            lock.unlock();
+    /**
+     * 异步预先创建连接，使空闲连接数不少于minIdle，由定时任务调用。
+     */
+    public void fillIdle(int minIdle) {
+        int idleCount = getIdleCount();
+        int n = minIdle - idleCount - creatingCount.get();
+        int free = size - quota.getActiveCount() - idleCount - creatingCount.get();
+        for (int i = 0, len = Math.min(n, free); i < len; i++) {
+            creatingCount.incrementAndGet();
+            try {
+                factory.make(this, new IdleCreateHandler());
+            } catch (Exception e) {
+                creatingCount.decrementAndGet();
+                logger.warn(name + " fill idle error.", e);
+                return;
+            }
         }
     }
 
@@ -170,8 +256,195 @@ public class MySQLConnectionPool {
         return sqlRecorder;
     }
 
+    public PoolWaitRecorder getWaitRecorder() {
+        return waitRecorder;
+    }
+
+    public DataSourceCount getCount() {
+        return count;
+    }
+
     public DataSourceConfig getConfig() {
         return config;
     }
 
+    /**
+     * 已占用活跃名额，优先取空闲连接，否则新建连接。
+     */
+    private void acquire(final ResponseHandler handler, final Object attachment, int status, NIOProcessor processor)
+            throws Exception {
+        // get connection from pool
+        MySQLConnection conn;
+        while ((conn = popIdle(status, processor)) != null) {
+            if (!conn.isClosedOrQuit()) {
+                conn.setBorrowed(true);
+                conn.setAttachment(attachment);
+                handler.connectionAcquired(conn);
+                return;
+            }
+        }
+
+        // create connection
+        try {
+            factory.make(this, new DelegateResponseHandler(handler) {
+                private boolean settled;
+
+                @Override
+                public void connectionError(Throwable e, MySQLConnection conn) {
+                    if (!settled) {
+                        settled = true;
+                        quota.release();
+                    }
+                    handler.connectionError(e, conn);
+                }
+
+                @Override
+                public void connectionAcquired(MySQLConnection conn) {
+                    settled = true;
+                    conn.setBorrowed(true);
+                    conn.setAttachment(attachment);
+                    handler.connectionAcquired(conn);
+                }
+            }, processor);
+        } catch (Exception e) {
+            quota.release();
+            throw e;
+        }
+    }
+
+    private void pushIdle(MySQLConnection c) {
+        NIOProcessor p = c.getProcessor();
+        StatusIdleStack<MySQLConnection> idle = idles.get(p);
+        if (idle == null) {
+            StatusIdleStack<MySQLConnection> newIdle = new StatusIdleStack<MySQLConnection>();
+            idle = idles.putIfAbsent(p, newIdle);
+            if (idle == null) {
+                idle = newIdle;
+            }
+        }
+        idle.push(c.getSessionStatus(), c);
+    }
+
+    /**
+     * 先在所有处理器上找会话状态一致的空闲连接；没有时才接受状态不一致的连接，同等条件下优先取processor上的。
+     * 只差字符集时SET与语句一次写出，不增加往返；隔离级别和递交模式的SET各需一次往返，代价高于跨处理器搬运数据，
+     * 因此事务状态一致的连接优先于processor上的连接。
+     */
+    private MySQLConnection popIdle(int status, NIOProcessor processor) {
+        MySQLConnection c;
+        if ((c = popIdle(status, StatusIdleStack.MATCH_ALL, processor)) != null) {
+            return c;
+        }
+        if (status == StatusIdleStack.ANY_STATUS) {
+            return null;
+        }
+        if ((c = popIdle(status, StatusIdleStack.MATCH_TX, processor)) != null) {
+            return c;
+        }
+        return popIdle(status, StatusIdleStack.MATCH_NONE, processor);
+    }
+
+    /**
+     * 先取processor上的，其次取其他处理器上的。
+     */
+    private MySQLConnection popIdle(int status, int mask, NIOProcessor processor) {
+        MySQLConnection c;
+        StatusIdleStack<MySQLConnection> local = processor == null ? null : idles.get(processor);
+        if (local != null && (c = local.pop(status, mask)) != null) {
+            return c;
+        }
+        for (StatusIdleStack<MySQLConnection> idle : idles.values()) {
+            if (idle != local && (c = idle.pop(status, mask)) != null) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private List<MySQLConnection> drainIdle() {
+        List<MySQLConnection> list = new ArrayList<MySQLConnection>();
+        for (StatusIdleStack<MySQLConnection> idle : idles.values()) {
+            list.addAll(idle.drain());
+        }
+        return list;
+    }
+
+    /**
+     * 池满时排队的取连接请求，在转交者线程中回调handler，超时由{@link #waitCheck()}回调。
+     */
+    private final class Waiter extends PoolQuota.Waiter<MySQLConnection> {
+        private final ResponseHandler handler;
+        private final Object attachment;
+        private final int status;
+        private final NIOProcessor processor;
+
+        private Waiter(ResponseHandler handler, Object attachment, int status, NIOProcessor processor,
+                       long timeout) {
+            super(timeout);
+            this.handler = handler;
+            this.attachment = attachment;
+            this.status = status;
+            this.processor = processor;
+        }
+
+        @Override
+        protected void granted(MySQLConnection c) {
+            waitRecorder.record(elapsed());
+            if (c != null) {
+                c.setAttachment(attachment);
+                handler.connectionAcquired(c);
+                return;
+            }
+            try {
+                acquire(handler, attachment, status, processor);
+            } catch (Exception e) {
+                handler.connectionError(e, null);
+            }
+        }
+
+        @Override
+        protected void timeout() {
+            waitRecorder.timeout();
+            handler.connectionError(new TimeoutException("wait for connection timeout: " + name), null);
+        }
+    }
+
+    /**
+     * 预先创建的连接认证成功后直接放入空闲栈
+     */
+    private final class IdleCreateHandler implements ResponseHandler {
+        @Override
+        public void connectionAcquired(MySQLConnection conn) {
+            creatingCount.decrementAndGet();
+            conn.setLastTime(TimeUtil.currentTimeMillis());
+            pushIdle(conn);
+        }
+
+        @Override
+        public void connectionError(Throwable e, MySQLConnection conn) {
+            creatingCount.decrementAndGet();
+            logger.warn(name + " fill idle error.", e);
+        }
+
+        @Override
+        public void okPacket(byte[] ok, MySQLConnection conn) {
+        }
+
+        @Override
+        public void fieldsEnd(byte[] header, byte[][] fields, byte[] eof, MySQLConnection conn) {
+        }
+
+        @Override
+        public void rowAquired(PacketSlice row, MySQLConnection conn) {
+        }
+
+        @Override
+        public void rowEnd(byte[] eof, MySQLConnection conn) {
+        }
+
+        @Override
+        public void errorPacket(ErrorPacket err, MySQLConnection conn) {
+        }
+    }
+
 }
@@ -15,16 +15,19 @@
  */
 package com.alibaba.cobar.server.mysql;
 
+import java.io.UnsupportedEncodingException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import com.alibaba.cobar.net.handler.NIOHandler;
+import com.alibaba.cobar.net.buffer.PacketSlice;
+import com.alibaba.cobar.net.handler.NIOSliceHandler;
 import com.alibaba.cobar.net.packet.EOFPacket;
 import com.alibaba.cobar.net.packet.ErrorPacket;
 import com.alibaba.cobar.net.packet.OkPacket;
 import com.alibaba.cobar.net.util.ByteUtil;
+import com.alibaba.cobar.server.mysql.MySQLConnection.StatusSync;
 import com.alibaba.cobar.server.mysql.handler.ResponseHandler;
 
 /**
@@ -32,12 +35,18 @@ import com.alibaba.cobar.server.mysql.handler.ResponseHandler;
  * 
  * @author xianmao.hexm 2012-4-12
  */
-public class MySQLHandler implements NIOHandler {
+public class MySQLHandler implements NIOSliceHandler {
     //    private static final Logger logger = Logger.getLogger(MySQLHandler.class);
 
     private final MySQLConnection source;
-    private final BlockingQueue<byte[]> dataQueue;
+    private final BlockingQueue<PacketSlice> dataQueue;
+    private final int highWatermark;
+    private final int lowWatermark;
+    /** 是否因数据队列超过高水位而暂停了读取，只在flowLock内修改 */
+    private volatile boolean suspended;
+    private final Object flowLock = new Object();
     private final AtomicBoolean handleStatus;
+    private final AtomicBoolean errorNotified;
     /** always be negative number */
     private static final int RESULT_STATUS_INIT = -1;
     /** always equals 0 */
@@ -52,13 +61,19 @@ public class MySQLHandler implements NIOHandler {
     public MySQLHandler(MySQLConnection source) {
         this.source = source;
         //QS_TODO jsr166y.LinkedTransferQueue
-        this.dataQueue = new LinkedBlockingQueue<byte[]>();
+        this.dataQueue = new LinkedBlockingQueue<PacketSlice>();
+        this.highWatermark = source.getQueueHighWatermark();
+        this.lowWatermark = source.getQueueLowWatermark();
         this.handleStatus = new AtomicBoolean(false);
+        this.errorNotified = new AtomicBoolean(false);
         this.resultStatus = new AtomicInteger(RESULT_STATUS_INIT);
     }
 
     private void reset() {
-        dataQueue.clear();
+        PacketSlice slice = null;
+        while ((slice = dataQueue.poll()) != null) {
+            slice.release();
+        }
         handleStatus.set(false);
         header = null;
         fields = null;
@@ -79,23 +94,61 @@ public class MySQLHandler implements NIOHandler {
         return source;
     }
 
-    private boolean offerData(byte[] data) {
-        //QS_TODO data flow control
-        return dataQueue.offer(data);
+    public int getQueueSize() {
+        return dataQueue.size();
+    }
+
+    private boolean offerData(PacketSlice slice) {
+        if (!dataQueue.offer(slice)) {
+            return false;
+        }
+        if (highWatermark > 0 && !suspended && dataQueue.size() >= highWatermark) {
+            flowControl();
+        }
+        return true;
+    }
+
+    /**
+     * 数据队列流量控制：达到高水位时暂停读取后端数据，处理线程消化到低水位后恢复。
+     */
+    private void flowControl() {
+        synchronized (flowLock) {
+            int size = dataQueue.size();
+            if (suspended) {
+                if (size <= lowWatermark) {
+                    suspended = false;
+                    source.resumeRead(MySQLConnection.SUSPEND_BY_QUEUE);
+                }
+            } else if (highWatermark > 0 && size >= highWatermark) {
+                suspended = true;
+                source.suspendRead(MySQLConnection.SUSPEND_BY_QUEUE);
+            }
+        }
     }
 
     @Override
     public void handle(byte[] data) {
-        if (offerData(data)) {
+        handle(PacketSlice.wrap(data));
+    }
+
+    @Override
+    public void handle(PacketSlice slice) {
+        if (offerData(slice)) {
             handleQueue();
         } else {
+            slice.release();
             throw new RuntimeException("Add data to queue failure!");
         }
     }
 
+    /**
+     * 连接异常是终结性的，只通知一次。
+     */
     public void connectionError(Throwable e) {
-        connError = e;
-        handleQueue();
+        if (errorNotified.compareAndSet(false, true)) {
+            connError = e;
+            handleQueue();
+        }
     }
 
     /**
@@ -110,17 +163,30 @@ public class MySQLHandler implements NIOHandler {
             @Override
             public void run() {
                 try {
-                    byte[] data = null;
-                    while ((data = dataQueue.poll()) != null) {
-                        handleData(data);
+                    PacketSlice slice = null;
+                    while ((slice = dataQueue.poll()) != null) {
+                        try {
+                            handleSlice(slice);
+                        } finally {
+                            slice.release();
+                        }
+                        if (suspended) {
+                            flowControl();
+                        }
                     }
                     Throwable err = connError;
                     if (err != null) {
                         reset();
-                        responseHandler.connectionError(err, source);
+                        ResponseHandler handler = responseHandler;
+                        if (handler != null) {
+                            handler.connectionError(err, source);
+                        }
                     }
                 } finally {
                     handleStatus.set(false);
+                    if (suspended) {
+                        flowControl();
+                    }
                     if (dataQueue.size() > 0) {
                         handleQueue();
                     }
@@ -129,10 +195,37 @@ public class MySQLHandler implements NIOHandler {
         });
     }
 
+    /**
+     * 行数据以切片形式交给ResponseHandler，其余数据包复制后处理。
+     */
+    private void handleSlice(PacketSlice slice) {
+        if (resultStatus.get() == RESULT_STATUS_FIRST_EOF) {
+            switch (slice.get(4)) {
+            case ErrorPacket.FIELD_COUNT:
+            case EOFPacket.FIELD_COUNT:
+                break;
+            default://rows
+                responseHandler.rowAquired(slice, source);
+                return;
+            }
+        }
+        handleData(slice.getBytes());
+    }
+
     private void handleData(byte[] data) {
         if (resultStatus.get() == RESULT_STATUS_INIT) {
             switch (data[4]) {
             case OkPacket.FIELD_COUNT://end
+                StatusSync sync = source.getStatusSync();
+                if (sync != null && !sync.isExecuted()) {//SET语句的响应，后面还有执行语句的响应
+                    try {
+                        sync.update();
+                    } catch (UnsupportedEncodingException e) {
+                        reset();
+                        responseHandler.connectionError(e, source);
+                    }
+                    break;
+                }
                 reset();
                 byte[] ok = data;
                 responseHandler.okPacket(ok, source);
@@ -141,6 +234,12 @@ public class MySQLHandler implements NIOHandler {
                 reset();
                 ErrorPacket err = new ErrorPacket();
                 err.read(data);
+                sync = source.getStatusSync();
+                if (sync != null && !sync.isExecuted() && sync.isPipelined()) {
+                    // 已写出的执行语句的响应无法再交给处理器，关闭连接
+                    source.setRunning(false);
+                    source.close();
+                }
                 responseHandler.errorPacket(err, source);
                 break;
             default://rs_header
@@ -171,8 +270,7 @@ public class MySQLHandler implements NIOHandler {
                 if (resultStatus.get() >= RESULT_STATUS_HEADER) {//fields
                     fields[resultStatus.getAndIncrement()] = data;
                 } else {//rows
-                    byte[] row = data;
-                    responseHandler.rowAquired(row, source);
+                    responseHandler.rowAquired(PacketSlice.wrap(data), source);
                 }
             }
         }
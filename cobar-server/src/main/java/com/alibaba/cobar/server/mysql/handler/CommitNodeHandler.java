@@ -22,6 +22,7 @@ import java.util.concurrent.Executor;
 
 import org.apache.log4j.Logger;
 
+import com.alibaba.cobar.net.buffer.PacketSlice;
 import com.alibaba.cobar.net.packet.ErrorPacket;
 import com.alibaba.cobar.net.packet.OkPacket;
 import com.alibaba.cobar.route.RouteResultsetNode;
@@ -146,7 +147,7 @@ public class CommitNodeHandler extends MultiNodeHandler {
     }
 
     @Override
-    public void rowAquired(byte[] row, MySQLConnection conn) {
+    public void rowAquired(PacketSlice row, MySQLConnection conn) {
         logger.warn(new StringBuilder().append("unexpected packet for ")
                                        .append(conn)
                                        .append(" bound by ")
@@ -18,6 +18,7 @@
  */
 package com.alibaba.cobar.server.mysql.handler;
 
+import com.alibaba.cobar.net.buffer.PacketSlice;
 import com.alibaba.cobar.net.packet.ErrorPacket;
 import com.alibaba.cobar.server.mysql.MySQLConnection;
 
@@ -60,7 +61,7 @@ public class DelegateResponseHandler implements ResponseHandler {
     }
 
     @Override
-    public void rowAquired(byte[] row, MySQLConnection conn) {
+    public void rowAquired(PacketSlice row, MySQLConnection conn) {
         target.rowAquired(row, conn);
     }
 
@@ -24,6 +24,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.log4j.Logger;
 
 import com.alibaba.cobar.Commands;
+import com.alibaba.cobar.net.buffer.PacketSlice;
 import com.alibaba.cobar.net.packet.CommandPacket;
 import com.alibaba.cobar.net.packet.ErrorPacket;
 import com.alibaba.cobar.server.mysql.MySQLConnection;
@@ -35,13 +36,18 @@ import com.alibaba.cobar.server.session.ServerNIOSession;
 public class KillConnectionHandler implements ResponseHandler {
     private static final Logger logger = Logger.getLogger(KillConnectionHandler.class);
     private final MySQLConnection killee;
+    private final boolean query;
     private final ServerNIOSession session;
     private final Runnable finishHook;
     private final AtomicInteger counter;
 
-    public KillConnectionHandler(MySQLConnection killee, ServerNIOSession session, Runnable finishHook,
-                                 AtomicInteger counter) {
+    /**
+     * @param query 为true时执行KILL QUERY，只终止killee上执行中的语句，killee由其自身的handler处理。
+     */
+    public KillConnectionHandler(MySQLConnection killee, boolean query, ServerNIOSession session,
+                                 Runnable finishHook, AtomicInteger counter) {
         this.killee = killee;
+        this.query = query;
         this.session = session;
         this.finishHook = finishHook;
         this.counter = counter;
@@ -53,10 +59,17 @@ public class KillConnectionHandler implements ResponseHandler {
         CommandPacket killPacket = new CommandPacket();
         killPacket.packetId = 0;
         killPacket.command = Commands.COM_QUERY;
-        killPacket.arg = new StringBuilder("KILL ").append(killee.getThreadId()).toString().getBytes();
+        StringBuilder s = new StringBuilder(query ? "KILL QUERY " : "KILL ");
+        killPacket.arg = s.append(killee.getThreadId()).toString().getBytes();
         killPacket.write(conn);
     }
 
+    private void closeKillee() {
+        if (!query) {
+            killee.close();
+        }
+    }
+
     private void finished() {
         if (counter.decrementAndGet() <= 0) {
             finishHook.run();
@@ -68,14 +81,14 @@ public class KillConnectionHandler implements ResponseHandler {
         if (conn != null) {
             conn.close();
         }
-        killee.close();
+        closeKillee();
         finished();
     }
 
     @Override
     public void okPacket(byte[] ok, MySQLConnection conn) {
         conn.release();
-        killee.close();
+        closeKillee();
         finished();
     }
 
@@ -88,7 +101,7 @@ public class KillConnectionHandler implements ResponseHandler {
                                         .append(": field's eof")
                                         .toString());
         conn.quit();
-        killee.close();
+        closeKillee();
         finished();
     }
 
@@ -102,7 +115,7 @@ public class KillConnectionHandler implements ResponseHandler {
         }
         logger.warn("kill backend connection " + killee + " failed: " + msg);
         conn.release();
-        killee.close();
+        closeKillee();
         finished();
     }
 
@@ -111,7 +124,7 @@ public class KillConnectionHandler implements ResponseHandler {
     }
 
     @Override
-    public void rowAquired(byte[] row, MySQLConnection conn) {
+    public void rowAquired(PacketSlice row, MySQLConnection conn) {
     }
 
 }
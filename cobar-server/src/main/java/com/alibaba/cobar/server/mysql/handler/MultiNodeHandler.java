@@ -106,15 +106,24 @@ public abstract class MultiNodeHandler implements ResponseHandler, Terminatable
     }
 
     protected void backendConnError(MySQLConnection conn, String errMsg) {
+        backendConnError(conn, ErrorCode.ER_YES, errMsg);
+    }
+
+    protected void backendConnError(MySQLConnection conn, int errno, String errMsg) {
         ErrorPacket err = new ErrorPacket();
         err.packetId = 1;//ERROR_PACKET
-        err.errno = ErrorCode.ER_YES;
+        err.errno = errno;
         err.message = StringUtil.encode(errMsg, session.getSource().getCharset());
         backendConnError(conn, err);
     }
 
+    /**
+     * @param conn 取得连接失败时为null
+     */
     protected void backendConnError(MySQLConnection conn, ErrorPacket err) {
-        conn.setRunning(false);
+        if (conn != null) {
+            conn.setRunning(false);
+        }
         lock.lock();
         try {
             if (error == null) {
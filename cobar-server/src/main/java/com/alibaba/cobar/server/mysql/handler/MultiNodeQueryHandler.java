@@ -20,40 +20,91 @@ package com.alibaba.cobar.server.mysql.handler;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
 
 import com.alibaba.cobar.CobarConfig;
 import com.alibaba.cobar.CobarServer;
+import com.alibaba.cobar.ErrorCode;
+import com.alibaba.cobar.net.NIOProcessor;
+import com.alibaba.cobar.net.buffer.BufferArena;
+import com.alibaba.cobar.net.buffer.PacketSlice;
+import com.alibaba.cobar.net.packet.BinaryRowDataPacket;
+import com.alibaba.cobar.net.packet.EOFPacket;
 import com.alibaba.cobar.net.packet.ErrorPacket;
+import com.alibaba.cobar.net.packet.FieldPacket;
 import com.alibaba.cobar.net.packet.OkPacket;
+import com.alibaba.cobar.net.packet.ResultSetHeaderPacket;
+import com.alibaba.cobar.net.util.PacketUtil;
+import com.alibaba.cobar.route.CountDistinctPlan;
+import com.alibaba.cobar.route.GroupByPlan;
+import com.alibaba.cobar.route.MergeColumn;
+import com.alibaba.cobar.route.RouteResultset;
 import com.alibaba.cobar.route.RouteResultsetNode;
 import com.alibaba.cobar.server.ServerConnection;
+import com.alibaba.cobar.server.config.SystemConfig;
+import com.alibaba.cobar.server.merge.AggregateMerger;
+import com.alibaba.cobar.server.merge.DistinctCounter;
+import com.alibaba.cobar.server.merge.GroupMerger;
+import com.alibaba.cobar.server.merge.OrderedMerger;
+import com.alibaba.cobar.server.merge.ResultMerger;
+import com.alibaba.cobar.server.merge.RowFunnel;
+import com.alibaba.cobar.server.merge.RowLimit;
+import com.alibaba.cobar.server.merge.SortKey;
 import com.alibaba.cobar.server.mysql.MySQLConnection;
-import com.alibaba.cobar.server.mysql.MySQLConnection.StatusSync;
 import com.alibaba.cobar.server.node.MySQLDataNode;
+import com.alibaba.cobar.server.node.StatusIdleStack;
 import com.alibaba.cobar.server.session.ServerNIOSession;
+import com.alibaba.cobar.util.StringUtil;
 
 /**
  * @author <a href="mailto:shuo.qius@alibaba-inc.com">QIU Shuo</a>
  */
 public class MultiNodeQueryHandler extends MultiNodeHandler {
     private static final Logger logger = Logger.getLogger(MultiNodeQueryHandler.class);
+    private static final int FUNNEL_CHUNK_SIZE = 16 * 1024;
     private final RouteResultsetNode[] route;
     private final ServerNIOSession session;
     private final boolean autocommit;
+    private final int flag;
+    private final MergeColumn[] orderBy;
+    private final MergeColumn[] aggregates;
+    private final GroupByPlan groupBy;
+    private final CountDistinctPlan countDistinct;
+    private final RouteResultset rrs;
+    private final boolean stoppable;
+    private final boolean binary;
     private final CommitNodeHandler icHandler;
 
-    public MultiNodeQueryHandler(RouteResultsetNode[] route, boolean autocommit, ServerNIOSession session) {
+    /**
+     * @param binary 是否以二进制协议返回行数据，用于预处理语句的执行结果
+     */
+    public MultiNodeQueryHandler(RouteResultset rrs, boolean autocommit, boolean binary, ServerNIOSession session) {
         super(session);
-        if (route == null) {
+        if (rrs.getNodes() == null) {
             throw new IllegalArgumentException("routeNode is null!");
         }
         this.session = session;
-        this.route = route;
+        this.route = rrs.getNodes();
         this.autocommit = autocommit;
+        this.flag = rrs.getFlag();
+        this.orderBy = rrs.getOrderBy();
+        this.aggregates = rrs.getAggregates();
+        this.groupBy = rrs.getGroupBy();
+        this.countDistinct = rrs.getCountDistinct();
+        this.rrs = rrs;
+        // 非事务的查询才能在达到LIMIT后提前结束
+        this.stoppable = autocommit && session.getSource().isAutocommit();
+        this.binary = binary;
         this.lock = new ReentrantLock();
         this.icHandler = new CommitNodeHandler(session);
     }
@@ -63,13 +114,33 @@ public class MultiNodeQueryHandler extends MultiNodeHandler {
     private long insertId;
     private ByteBuffer buffer;
     private boolean fieldsReturned;
+    private List<FieldPacket> fieldList;
+    private OrderedMerger merger;
+    private AggregateMerger aggregator;
+    private ResultMerger resultMerger;
+    private IOException mergeError;
+    private volatile RowFunnel funnel;
+    private ConcurrentMap<MySQLConnection, RowFunnel.Chunk> chunks;
+    private RowLimit rows;
+    private boolean stopped;
+    private Map<MySQLConnection, AtomicInteger> drains;
 
-    public void execute() throws Exception {
+    public void execute() {
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
             this.reset(route.length);
             this.fieldsReturned = false;
+            this.fieldList = null;
+            this.merger = null;
+            this.aggregator = null;
+            this.resultMerger = null;
+            this.mergeError = null;
+            this.funnel = null;
+            this.chunks = null;
+            this.rows = new RowLimit(rrs);
+            this.stopped = false;
+            this.drains = null;
             this.affectedRows = 0L;
             this.insertId = 0L;
             this.buffer = session.getSource().allocate();
@@ -85,7 +156,11 @@ public class MultiNodeQueryHandler extends MultiNodeHandler {
 
         session.setConnectionRunning(route);
 
-        ThreadPoolExecutor executor = session.getSource().getProcessor().getExecutor();
+        ServerConnection sc = session.getSource();
+        ThreadPoolExecutor executor = sc.getProcessor().getExecutor();
+        int status = StatusIdleStack.status(sc.getCharsetIndex(), sc.getTxIsolation(), autocommit);
+        boolean affinity = CobarServer.getInstance().getConfig().getSystem().isBackendAffinity();
+        NIOProcessor processor = affinity ? sc.getProcessor() : null;
         for (final RouteResultsetNode node : route) {
             final MySQLConnection conn = session.getBoundConnection(node);
             if (conn != null) {
@@ -99,7 +174,20 @@ public class MultiNodeQueryHandler extends MultiNodeHandler {
             } else {
                 CobarConfig conf = CobarServer.getInstance().getConfig();
                 MySQLDataNode dn = conf.getDataNodes().get(node.getName());
-                dn.getConnection(this, node);
+                if (dn == null) {
+                    backendConnError(null, ErrorCode.ER_BAD_DB_ERROR, "Unknown dataNode '" + node.getName() + "'");
+                    continue;
+                }
+                int i = node.getReplicaIndex();
+                if (i == RouteResultsetNode.DEFAULT_REPLICA_INDEX) {
+                    i = dn.getActivedIndex();
+                }
+                try {
+                    dn.getConnection(this, node, i, status, processor);
+                } catch (Exception e) {
+                    String msg = e.getMessage();
+                    backendConnError(null, ErrorCode.ER_BAD_DB_ERROR, msg == null ? e.getClass().getSimpleName() : msg);
+                }
             }
         }
     }
@@ -122,18 +210,24 @@ public class MultiNodeQueryHandler extends MultiNodeHandler {
     @Override
     protected void recycleResources() {
         ByteBuffer buf;
+        ResultMerger g;
         lock.lock();
         try {
             buf = buffer;
             if (buf != null) {
                 buffer = null;
             }
+            g = resultMerger;
+            resultMerger = null;
         } finally {
             lock.unlock();
         }
         if (buf != null) {
             session.getSource().recycle(buf);
         }
+        if (g != null) {
+            g.close();
+        }
     }
 
     @Override
@@ -149,8 +243,23 @@ public class MultiNodeQueryHandler extends MultiNodeHandler {
             return;
         }
         final RouteResultsetNode node = (RouteResultsetNode) attachment;
-        conn.setRunning(true);
-        session.boundConnection(node, conn);
+        boolean drained;
+        lock.lock();
+        try {
+            drained = stopped;
+            if (!drained) {
+                conn.setRunning(true);
+                session.boundConnection(node, conn);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (drained) {
+            // 已返回足够的行数据，不再执行
+            conn.release();
+            decrementCountBy(1);
+            return;
+        }
         session.getSource().getProcessor().getExecutor().execute(new Runnable() {
             @Override
             public void run() {
@@ -159,8 +268,48 @@ public class MultiNodeQueryHandler extends MultiNodeHandler {
         });
     }
 
+    @Override
+    protected void backendConnError(MySQLConnection conn, ErrorPacket err) {
+        boolean drained;
+        RowFunnel.Chunk chunk = null;
+        lock.lock();
+        try {
+            drained = stopped;
+            if (merger != null) {
+                merger.abort();
+            }
+            if (conn != null && chunks != null) {
+                chunk = chunks.remove(conn);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (chunk != null) {
+            chunk.release();
+        }
+        if (drained) {
+            // 结果已结束，被KILL QUERY中断的语句不再报错
+            if (conn != null) {
+                drained(conn);
+            }
+            decrementCountBy(1);
+            return;
+        }
+        super.backendConnError(conn, err);
+    }
+
     @Override
     public void connectionError(Throwable e, MySQLConnection conn) {
+        if (conn != null) {
+            lock.lock();
+            try {
+                if (stopped) {
+                    conn.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
         backendConnError(conn, "connection err!");
     }
 
@@ -171,79 +320,103 @@ public class MultiNodeQueryHandler extends MultiNodeHandler {
 
     @Override
     public void okPacket(byte[] data, MySQLConnection conn) {
-        StatusSync sync = conn.getStatusSync();
-        if (!sync.isExecuted()) {
-            if (sync.isSync()) {
-                sync.update();
-                try {
-                    sync.execute();
-                } catch (IOException e) {
-                    connectionError(e, conn);
-                }
-            } else {
-                sync.update();
-                sync.sync();
-            }
+        ServerConnection source = session.getSource();
+        conn.setRunning(false);
+        Object attachment = conn.getAttachment();
+        if (attachment instanceof RouteResultsetNode) {
+            RouteResultsetNode node = (RouteResultsetNode) attachment;
+            conn.recordSql(source.getHost(), source.getSchema(), node.getStatement());
         } else {
-            ServerConnection source = session.getSource();
-            conn.setRunning(false);
-            Object attachment = conn.getAttachment();
-            if (attachment instanceof RouteResultsetNode) {
-                RouteResultsetNode node = (RouteResultsetNode) attachment;
-                conn.recordSql(source.getHost(), source.getSchema(), node.getStatement());
-            } else {
-                logger.warn(new StringBuilder().append("back-end conn: ")
-                                               .append(conn)
-                                               .append(" has wrong attachment: ")
-                                               .append(attachment)
-                                               .append(", for front-end conn: ")
-                                               .append(source));
-            }
-            OkPacket ok = new OkPacket();
-            ok.read(data);
-            lock.lock();
-            try {
-                affectedRows += ok.affectedRows;
-                if (ok.insertId > 0) {
-                    insertId = (insertId == 0) ? ok.insertId : Math.min(insertId, ok.insertId);
-                }
-            } finally {
-                lock.unlock();
+            logger.warn(new StringBuilder().append("back-end conn: ")
+                                           .append(conn)
+                                           .append(" has wrong attachment: ")
+                                           .append(attachment)
+                                           .append(", for front-end conn: ")
+                                           .append(source));
+        }
+        OkPacket ok = new OkPacket();
+        ok.read(data);
+        lock.lock();
+        try {
+            affectedRows += ok.affectedRows;
+            if (ok.insertId > 0) {
+                insertId = (insertId == 0) ? ok.insertId : Math.min(insertId, ok.insertId);
             }
-            if (decrementCountBy(1)) {
-                if (isFail.get()) {
-                    notifyError();
-                    return;
+        } finally {
+            lock.unlock();
+        }
+        if (decrementCountBy(1)) {
+            if (isFail.get()) {
+                notifyError();
+                return;
+            }
+            try {
+                recycleResources();
+                ok.packetId = ++packetId;//OK_PACKET
+                ok.affectedRows = affectedRows;
+                if (insertId > 0) {
+                    ok.insertId = insertId;
+                    source.setLastInsertId(insertId);
                 }
-                try {
-                    recycleResources();
-                    ok.packetId = ++packetId;//OK_PACKET
-                    ok.affectedRows = affectedRows;
-                    if (insertId > 0) {
-                        ok.insertId = insertId;
-                        source.setLastInsertId(insertId);
-                    }
 
-                    if (source.isAutocommit()) {
-                        if (!autocommit) { // 前端非事务模式，后端事务模式，则需要自动递交后端事务。 
-                            icHandler.commit();
-                        } else {
-                            session.releaseConnections();
-                            ok.write(source);
-                        }
+                if (source.isAutocommit()) {
+                    if (!autocommit) { // 前端非事务模式，后端事务模式，则需要自动递交后端事务。 
+                        icHandler.commit();
                     } else {
+                        session.releaseConnections();
                         ok.write(source);
                     }
-                } catch (Exception e) {
-                    logger.warn("exception happens in success notification: " + session.getSource(), e);
+                } else {
+                    ok.write(source);
                 }
+            } catch (Exception e) {
+                logger.warn("exception happens in success notification: " + session.getSource(), e);
             }
         }
     }
 
     @Override
     public void rowEnd(byte[] eof, MySQLConnection conn) {
-        conn.setRunning(false);
+        List<MySQLConnection> killees = null;
+        boolean drained = false;
+        if (funnel != null) {
+            RowFunnel.Chunk chunk = chunks.remove(conn);
+            if (chunk != null) {
+                funnel.offer(chunk);
+            }
+        }
+        lock.lock();
+        try {
+            if (stopped) {
+                drained = true;
+            } else {
+                if (funnel != null) {
+                    drainFunnel();
+                }
+                if (merger != null) {
+                    merger.finish(conn);
+                    conn.resumeRead(MySQLConnection.SUSPEND_BY_MERGE);
+                }
+                conn.setRunning(false);
+                if (rows.isReached()) {
+                    killees = stopAtLimit();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (funnel != null && killees == null) {
+            // 其他节点的行数据可能已在持锁期间交付
+            killees = flushFunnel();
+        }
+        if (drained) {
+            drained(conn);
+            decrementCountBy(1);
+            return;
+        }
+        if (killees != null) {
+            kill(killees);
+        }
         ServerConnection source = session.getSource();
         RouteResultsetNode node = null;
         Object attachment = conn.getAttachment();
@@ -259,18 +432,18 @@ public class MultiNodeQueryHandler extends MultiNodeHandler {
                                            .append(source));
         }
         if (source.isAutocommit()) {
-            if (node != null) {
-                conn = session.removeBoundConnection(node);
-                if (conn != null) {
-                    if (isFail.get() || session.closed()) {
-                        conn.quit();
-                    } else {
-                        conn.release();
-                    }
+            if (node != null && session.removeBoundConnection(node, conn)) {
+                if (isFail.get() || session.closed()) {
+                    conn.quit();
+                } else {
+                    conn.release();
                 }
             }
         }
         if (decrementCountBy(1)) {
+            if (killees != null) {
+                return;
+            }
             if (isFail.get()) {
                 notifyError();
                 recycleResources();
@@ -280,8 +453,17 @@ public class MultiNodeQueryHandler extends MultiNodeHandler {
                 if (source.isAutocommit()) {
                     session.releaseConnections();
                 }
+                if (resultMerger != null && !finishResultMerge()) {
+                    return;
+                }
+                if (aggregator != null) {
+                    byte[] row = aggregator.getRow();
+                    if (row != null) {
+                        row[3] = ++packetId;
+                        writeRow(row);
+                    }
+                }
                 eof[3] = ++packetId;
-
                 source.write(source.writeToBuffer(eof, buffer));
             } catch (Exception e) {
                 logger.warn("exception happens in success notification: " + session.getSource(), e);
@@ -297,30 +479,394 @@ public class MultiNodeQueryHandler extends MultiNodeHandler {
                 return;
             }
             fieldsReturned = true;
+            if ((groupBy != null || countDistinct != null) && startResultMerge(fields, eof)) {
+                return;
+            }
             header[3] = ++packetId;
             ServerConnection source = session.getSource();
+            boolean merge = orderBy != null || aggregates != null;
+            List<FieldPacket> list = (binary || merge) ? new ArrayList<FieldPacket>(fields.length) : null;
             buffer = source.writeToBuffer(header, buffer);
             for (int i = 0, len = fields.length; i < len; ++i) {
                 byte[] field = fields[i];
                 field[3] = ++packetId;
-                buffer = source.writeToBuffer(field, buffer);
+                if (flag == RouteResultset.REWRITE_FIELD) {
+                    StringBuilder fieldName = new StringBuilder();
+                    fieldName.append("Tables_in_").append(source.getSchema());
+                    FieldPacket packet = PacketUtil.getField(field, fieldName.toString());
+                    buffer = packet.write(buffer, source);
+                    if (list != null) {
+                        list.add(packet);
+                    }
+                } else {
+                    buffer = source.writeToBuffer(field, buffer);
+                    if (list != null) {
+                        FieldPacket packet = new FieldPacket();
+                        packet.read(field);
+                        list.add(packet);
+                    }
+                }
             }
             eof[3] = ++packetId;
             buffer = source.writeToBuffer(eof, buffer);
+            fieldList = list;
+            if (aggregates != null) {
+                aggregator = AggregateMerger.create(aggregates, list);
+            }
+            if (orderBy != null && aggregator == null) {
+                SortKey key = SortKey.create(orderBy, list);
+                if (key != null) {
+                    int window = CobarServer.getInstance().getConfig().getSystem().getMergeWindowSize();
+                    merger = new OrderedMerger(key, route.length, window) {
+                        @Override
+                        protected void output(byte[] row) {
+                            if (rows.accept()) {
+                                row[3] = ++packetId;
+                                writeRow(row);
+                            }
+                        }
+                    };
+                }
+            }
+            if (aggregator == null && merger == null) {
+                chunks = new ConcurrentHashMap<MySQLConnection, RowFunnel.Chunk>();
+                funnel = new RowFunnel();
+            }
         } finally {
             lock.unlock();
+            // 其他节点的行数据可能已在持锁期间交付
+            if (funnel != null) {
+                List<MySQLConnection> killees = flushFunnel();
+                if (killees != null) {
+                    kill(killees);
+                }
+            }
         }
     }
 
     @Override
-    public void rowAquired(byte[] row, MySQLConnection conn) {
+    public void rowAquired(PacketSlice row, final MySQLConnection conn) {
+        RowFunnel funnel = this.funnel;
+        if (funnel != null) {
+            funnelRow(funnel, row, conn);
+            return;
+        }
+        List<MySQLConnection> killees = null;
         lock.lock();
         try {
-            row[3] = ++packetId;
-            buffer = session.getSource().writeToBuffer(row, buffer);
+            if (rows.isReached()) {
+                return;
+            }
+            ServerConnection source = session.getSource();
+            ByteBuffer last = buffer;
+            if (resultMerger != null) {
+                if (mergeError == null) {
+                    try {
+                        resultMerger.add(row.getBytes());
+                    } catch (IOException e) {
+                        mergeError = e;
+                        resultMerger.close();
+                    }
+                }
+            } else if (aggregator != null) {
+                aggregator.add(row.getBytes());
+            } else if (merger != null) {
+                // 合并窗口已满时暂停读取该节点，窗口降到低水位后恢复
+                if (merger.offer(conn, row.getBytes())) {
+                    conn.suspendRead(MySQLConnection.SUSPEND_BY_MERGE);
+                    merger.onAvailable(conn, new Runnable() {
+                        @Override
+                        public void run() {
+                            conn.resumeRead(MySQLConnection.SUSPEND_BY_MERGE);
+                        }
+                    });
+                }
+            } else if (rows.accept()) {
+                row.set(3, ++packetId);
+                if (binary) {
+                    writeRow(row.getBytes());
+                } else {
+                    buffer = source.writeToBuffer(row, buffer);
+                }
+            }
+            if (rows.isReached()) {
+                killees = stopAtLimit();
+            } else if (buffer != last) {
+                conn.checkWritable(source);
+            }
         } finally {
             lock.unlock();
         }
+        if (killees != null) {
+            kill(killees);
+        }
+    }
+
+    /**
+     * 不需要合并的行数据先复制到连接自己的块中，块满或该连接暂无待处理的数据时交给汇聚通道，
+     * 取得锁的线程统一分配包序号写往前端，避免每行加锁。
+     */
+    private void funnelRow(RowFunnel funnel, PacketSlice row, MySQLConnection conn) {
+        boolean offered = false;
+        RowFunnel.Chunk chunk = chunks.get(conn);
+        if (chunk != null && !chunk.add(row)) {
+            chunks.remove(conn);
+            funnel.offer(chunk);
+            offered = true;
+            chunk = null;
+        }
+        if (chunk == null) {
+            chunk = newChunk(row.length());
+            chunk.add(row);
+            chunks.put(conn, chunk);
+        }
+        if (conn.getQueueSize() > 0) {
+            if (!offered) {
+                return;
+            }
+        } else {
+            chunks.remove(conn);
+            funnel.offer(chunk);
+        }
+
+        List<MySQLConnection> killees = flushFunnel();
+        if (killees != null) {
+            kill(killees);
+        } else {
+            conn.checkWritable(session.getSource());
+        }
+    }
+
+    private RowFunnel.Chunk newChunk(int rowSize) {
+        BufferArena arena = session.getSource().getProcessor().getBufferArena();
+        return new RowFunnel.Chunk(arena.allocate(Math.max(FUNNEL_CHUNK_SIZE, rowSize)), arena);
+    }
+
+    /**
+     * 未持有锁时取出汇聚通道中的块。取不到锁时块留在通道中，由持锁者释放锁后再次调用本方法取出。
+     * 
+     * @return 达到LIMIT时需要终止的连接
+     */
+    private List<MySQLConnection> flushFunnel() {
+        List<MySQLConnection> killees = null;
+        final RowFunnel funnel = this.funnel;
+        final ReentrantLock lock = this.lock;
+        while (!funnel.isEmpty() && lock.tryLock()) {
+            try {
+                drainFunnel();
+                if (rows.isReached() && killees == null) {
+                    killees = stopAtLimit();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return killees;
+    }
+
+    /**
+     * 按交付顺序分配包序号并写入前端缓存，写完的块归还缓存，调用者持有锁。
+     */
+    private void drainFunnel() {
+        ServerConnection source = session.getSource();
+        RowFunnel.Chunk chunk = funnel.poll();
+        while (chunk != null) {
+            for (int i = 0, n = chunk.count(); i < n && !rows.isReached(); ++i) {
+                if (rows.accept()) {
+                    PacketSlice row = chunk.get(i);
+                    row.set(3, ++packetId);
+                    if (binary) {
+                        writeRow(row.getBytes());
+                    } else {
+                        buffer = source.writeToBuffer(row, buffer);
+                    }
+                }
+            }
+            RowFunnel.Chunk next = chunk.next();
+            chunk.release();
+            chunk = next;
+        }
+    }
+
+    /**
+     * 按分组或去重计数合并时以合并后的字段代替节点结果集的字段返回。
+     * 
+     * @return false if the result set does not match the merge plan
+     */
+    private boolean startResultMerge(byte[][] fields, byte[] eof) {
+        List<FieldPacket> list = new ArrayList<FieldPacket>(fields.length);
+        for (byte[] field : fields) {
+            FieldPacket packet = new FieldPacket();
+            packet.read(field);
+            list.add(packet);
+        }
+        SystemConfig system = CobarServer.getInstance().getConfig().getSystem();
+        if (groupBy != null) {
+            if (!GroupMerger.isMergeable(groupBy, list)) {
+                logger.warn("result set does not match the group by plan: " + session.getSource());
+                return false;
+            }
+            resultMerger = new GroupMerger(groupBy, list, system.getGroupSpillThreshold()) {
+                @Override
+                protected void output(byte[] row) {
+                    row[3] = ++packetId;
+                    writeRow(row);
+                }
+            };
+        } else {
+            if (!DistinctCounter.isMergeable(countDistinct, list)) {
+                logger.warn("result set does not match the count distinct plan: " + session.getSource());
+                return false;
+            }
+            resultMerger = new DistinctCounter(countDistinct, list, system.getDistinctMemoryLimit()) {
+                @Override
+                protected void output(byte[] row) {
+                    row[3] = ++packetId;
+                    writeRow(row);
+                }
+            };
+        }
+        ServerConnection source = session.getSource();
+        List<FieldPacket> outputs = resultMerger.getFields();
+        ResultSetHeaderPacket header = new ResultSetHeaderPacket();
+        header.fieldCount = outputs.size();
+        header.packetId = ++packetId;
+        buffer = header.write(buffer, source);
+        for (FieldPacket field : outputs) {
+            field.packetId = ++packetId;
+            buffer = field.write(buffer, source);
+        }
+        eof[3] = ++packetId;
+        buffer = source.writeToBuffer(eof, buffer);
+        fieldList = outputs;
+        return true;
+    }
+
+    /**
+     * 所有节点结束后输出合并的结果，失败时向前端返回错误。
+     * 
+     * @return false if failed
+     */
+    private boolean finishResultMerge() {
+        try {
+            if (mergeError == null) {
+                resultMerger.finish();
+            }
+        } catch (IOException e) {
+            mergeError = e;
+        } finally {
+            resultMerger.close();
+        }
+        if (mergeError == null) {
+            return true;
+        }
+        logger.warn("result merge failed: " + session.getSource(), mergeError);
+        ServerConnection source = session.getSource();
+        ErrorPacket err = new ErrorPacket();
+        err.packetId = ++packetId;
+        err.errno = ErrorCode.ER_YES;
+        err.message = StringUtil.encode("result merge failed: " + mergeError.getMessage(), source.getCharset());
+        source.write(err.write(buffer, source));
+        return false;
+    }
+
+    /**
+     * 已返回LIMIT行数据：立即向前端返回EOF，解除执行中的后端连接的绑定并交给本handler排空。
+     * 事务中或已有节点出错时只停止合并，等待各节点自然结束。
+     * 
+     * @return 需要执行KILL QUERY的连接，不提前结束时为null
+     */
+    private List<MySQLConnection> stopAtLimit() {
+        ServerConnection source = session.getSource();
+        if (merger != null) {
+            merger.abort();
+        }
+        if (stopped || !stoppable || isFail.get()) {
+            return null;
+        }
+        stopped = true;
+        EOFPacket eof = new EOFPacket();
+        eof.packetId = ++packetId;
+        source.write(eof.write(buffer, source));
+        buffer = null;
+
+        List<MySQLConnection> killees = new ArrayList<MySQLConnection>(route.length);
+        drains = new HashMap<MySQLConnection, AtomicInteger>();
+        for (RouteResultsetNode node : route) {
+            MySQLConnection c = session.getBoundConnection(node);
+            if (c != null && c.isRunning() && session.removeBoundConnection(node, c)) {
+                // 语句结束和KILL QUERY完成后才能释放连接，避免KILL到复用该连接的其他语句
+                drains.put(c, new AtomicInteger(2));
+                killees.add(c);
+                c.resumeRead(MySQLConnection.SUSPEND_BY_MERGE);
+            }
+        }
+        return killees;
+    }
+
+    private void kill(List<MySQLConnection> killees) {
+        CobarConfig conf = CobarServer.getInstance().getConfig();
+        for (final MySQLConnection c : killees) {
+            Runnable hook = new Runnable() {
+                @Override
+                public void run() {
+                    drained(c);
+                }
+            };
+            KillConnectionHandler kill = new KillConnectionHandler(c, true, session, hook, new AtomicInteger(1));
+            RouteResultsetNode node = (RouteResultsetNode) c.getAttachment();
+            MySQLDataNode dn = conf.getDataNodes().get(node.getName());
+            try {
+                // KILL不受连接池大小限制
+                int i = node.getReplicaIndex();
+                if (i == RouteResultsetNode.DEFAULT_REPLICA_INDEX) {
+                    i = dn.getActivedIndex();
+                }
+                dn.getDataSources()[i].getConnection(kill, node, StatusIdleStack.ANY_STATUS, false);
+            } catch (Exception e) {
+                logger.warn("get killer connection failed for " + node, e);
+                kill.connectionError(e, null);
+            }
+        }
+    }
+
+    /**
+     * 被排空的连接上的语句结束或KILL QUERY完成，两者都完成后释放连接。
+     */
+    private void drained(MySQLConnection conn) {
+        AtomicInteger latch;
+        lock.lock();
+        try {
+            latch = drains == null ? null : drains.get(conn);
+        } finally {
+            lock.unlock();
+        }
+        if (latch != null && latch.decrementAndGet() > 0) {
+            return;
+        }
+        conn.setRunning(false);
+        if (conn.isClosedOrQuit()) {
+            return;
+        }
+        if (session.closed()) {
+            conn.quit();
+        } else {
+            conn.release();
+        }
+    }
+
+    /**
+     * 把含包头的行数据写入前端缓存，二进制协议时转换格式。
+     */
+    private void writeRow(byte[] row) {
+        ServerConnection source = session.getSource();
+        if (binary) {
+            BinaryRowDataPacket packet = new BinaryRowDataPacket();
+            packet.read(fieldList, row);
+            buffer = packet.write(buffer, source);
+        } else {
+            buffer = source.writeToBuffer(row, buffer);
+        }
     }
 
 }
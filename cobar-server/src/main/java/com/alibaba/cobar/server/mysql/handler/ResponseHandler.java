@@ -18,6 +18,7 @@
  */
 package com.alibaba.cobar.server.mysql.handler;
 
+import com.alibaba.cobar.net.buffer.PacketSlice;
 import com.alibaba.cobar.net.packet.ErrorPacket;
 import com.alibaba.cobar.server.mysql.MySQLConnection;
 
@@ -40,7 +41,10 @@ public interface ResponseHandler {
 
     void fieldsEnd(byte[] header, byte[][] fields, byte[] eof, MySQLConnection conn);
 
-    void rowAquired(byte[] row, MySQLConnection conn);
+    /**
+     * row直接引用后端连接的读缓存，只在本次调用期间有效，需要保留时用{@link PacketSlice#getBytes()}复制
+     */
+    void rowAquired(PacketSlice row, MySQLConnection conn);
 
     void rowEnd(byte[] eof, MySQLConnection conn);
 
@@ -22,6 +22,7 @@ import java.util.concurrent.Executor;
 
 import org.apache.log4j.Logger;
 
+import com.alibaba.cobar.net.buffer.PacketSlice;
 import com.alibaba.cobar.net.packet.ErrorPacket;
 import com.alibaba.cobar.route.RouteResultsetNode;
 import com.alibaba.cobar.server.mysql.MySQLConnection;
@@ -95,6 +96,7 @@ public class RollbackNodeHandler extends MultiNodeHandler {
             if (isFail.get() || session.closed()) {
                 notifyError((byte) 1);
             } else {
+                session.releaseConnections();
                 session.getSource().write(ok);
             }
         }
@@ -132,7 +134,7 @@ public class RollbackNodeHandler extends MultiNodeHandler {
     }
 
     @Override
-    public void rowAquired(byte[] row, MySQLConnection conn) {
+    public void rowAquired(PacketSlice row, MySQLConnection conn) {
         logger.error(new StringBuilder().append("unexpected packet for ")
                                         .append(conn)
                                         .append(" bound by ")
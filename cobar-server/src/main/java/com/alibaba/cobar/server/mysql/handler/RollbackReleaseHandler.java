@@ -20,6 +20,7 @@ package com.alibaba.cobar.server.mysql.handler;
 
 import org.apache.log4j.Logger;
 
+import com.alibaba.cobar.net.buffer.PacketSlice;
 import com.alibaba.cobar.net.packet.ErrorPacket;
 import com.alibaba.cobar.server.mysql.MySQLConnection;
 
@@ -59,7 +60,7 @@ public class RollbackReleaseHandler implements ResponseHandler {
     }
 
     @Override
-    public void rowAquired(byte[] row, MySQLConnection conn) {
+    public void rowAquired(PacketSlice row, MySQLConnection conn) {
     }
 
     @Override
@@ -18,20 +18,29 @@
  */
 package com.alibaba.cobar.server.mysql.handler;
 
+
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.alibaba.cobar.CobarConfig;
 import com.alibaba.cobar.CobarServer;
 import com.alibaba.cobar.ErrorCode;
+import com.alibaba.cobar.net.NIOProcessor;
+import com.alibaba.cobar.net.buffer.PacketSlice;
+import com.alibaba.cobar.net.packet.BinaryRowDataPacket;
 import com.alibaba.cobar.net.packet.ErrorPacket;
+import com.alibaba.cobar.net.packet.FieldPacket;
 import com.alibaba.cobar.net.packet.OkPacket;
+import com.alibaba.cobar.net.util.PacketUtil;
+import com.alibaba.cobar.route.RouteResultset;
 import com.alibaba.cobar.route.RouteResultsetNode;
 import com.alibaba.cobar.server.ServerConnection;
 import com.alibaba.cobar.server.mysql.MySQLConnection;
-import com.alibaba.cobar.server.mysql.MySQLConnection.StatusSync;
 import com.alibaba.cobar.server.node.MySQLDataNode;
+import com.alibaba.cobar.server.node.StatusIdleStack;
 import com.alibaba.cobar.server.session.ServerNIOSession;
 import com.alibaba.cobar.util.StringUtil;
 
@@ -40,14 +49,21 @@ import com.alibaba.cobar.util.StringUtil;
  */
 public class SingleNodeHandler implements ResponseHandler, Terminatable {
     private final RouteResultsetNode route;
+    private final int flag;
+    private final boolean binary;
     private final ServerNIOSession session;
     private byte packetId;
     private volatile ByteBuffer buffer;
+    private List<FieldPacket> fieldList;
     private ReentrantLock lock = new ReentrantLock();
     private boolean isRunning;
     private Runnable terminateCallBack;
 
-    public SingleNodeHandler(RouteResultsetNode route, ServerNIOSession session) {
+    /**
+     * @param flag 路由结果的标记，如{@link RouteResultset#REWRITE_FIELD}
+     * @param binary 是否以二进制协议返回行数据，用于预处理语句的执行结果
+     */
+    public SingleNodeHandler(RouteResultsetNode route, int flag, boolean binary, ServerNIOSession session) {
         if (route == null) {
             throw new IllegalArgumentException("routeNode is null!");
         }
@@ -56,6 +72,8 @@ public class SingleNodeHandler implements ResponseHandler, Terminatable {
         }
         this.session = session;
         this.route = route;
+        this.flag = flag;
+        this.binary = binary;
     }
 
     @Override
@@ -93,11 +111,12 @@ public class SingleNodeHandler implements ResponseHandler, Terminatable {
         }
     }
 
-    public void execute() throws Exception {
+    public void execute() {
         lock.lock();
         try {
             this.isRunning = true;
             this.packetId = 0;
+            this.fieldList = null;
             this.buffer = session.getSource().allocate();
         } finally {
             lock.unlock();
@@ -106,7 +125,23 @@ public class SingleNodeHandler implements ResponseHandler, Terminatable {
         if (conn == null) {
             CobarConfig conf = CobarServer.getInstance().getConfig();
             MySQLDataNode dn = conf.getDataNodes().get(route.getName());
-            dn.getConnection(this, null);
+            if (dn == null) {
+                executeError(ErrorCode.ER_BAD_DB_ERROR, "Unknown dataNode '" + route.getName() + "'");
+                return;
+            }
+            int i = route.getReplicaIndex();
+            if (i == RouteResultsetNode.DEFAULT_REPLICA_INDEX) {
+                i = dn.getActivedIndex();
+            }
+            ServerConnection sc = session.getSource();
+            int status = StatusIdleStack.status(sc.getCharsetIndex(), sc.getTxIsolation(), sc.isAutocommit());
+            NIOProcessor processor = conf.getSystem().isBackendAffinity() ? sc.getProcessor() : null;
+            try {
+                dn.getConnection(this, null, i, status, processor);
+            } catch (Exception e) {
+                String msg = e.getMessage();
+                executeError(ErrorCode.ER_BAD_DB_ERROR, msg == null ? e.getClass().getSimpleName() : msg);
+            }
         } else {
             conn.setRunning(true);
             session.getSource().getProcessor().getExecutor().execute(new Runnable() {
@@ -148,28 +183,27 @@ public class SingleNodeHandler implements ResponseHandler, Terminatable {
 
     private void executeException(MySQLConnection c) {
         c.setRunning(false);
-        endRunning();
         session.clearConnections();
+        executeError(ErrorCode.ER_YES, "unknown backend charset: " + c.getCharset());
+    }
+
+    private void executeError(int errno, String message) {
+        endRunning();
         ErrorPacket err = new ErrorPacket();
         err.packetId = ++packetId;
-        err.errno = ErrorCode.ER_YES;
-        err.message = StringUtil.encode("unknown backend charset: " + c.getCharset(), session.getSource().getCharset());
+        err.errno = errno;
+        err.message = StringUtil.encode(message, session.getSource().getCharset());
         ServerConnection source = session.getSource();
         source.write(err.write(buffer, source));
     }
 
     @Override
     public void connectionError(Throwable e, MySQLConnection conn) {
-        if (!session.closeConnection(route)) {
+        if (!session.closeConnection(route) && conn != null) {
             conn.close();
         }
-        endRunning();
-        ErrorPacket err = new ErrorPacket();
-        err.packetId = ++packetId;
-        err.errno = ErrorCode.ER_YES;
-        err.message = StringUtil.encode(e.getMessage(), session.getSource().getCharset());
-        ServerConnection source = session.getSource();
-        source.write(err.write(buffer, source));
+        String msg = e.getMessage();
+        executeError(ErrorCode.ER_YES, msg == null ? e.getClass().getSimpleName() : msg);
     }
 
     @Override
@@ -179,38 +213,25 @@ public class SingleNodeHandler implements ResponseHandler, Terminatable {
             session.clearConnections();
         }
         endRunning();
+        err.packetId = ++packetId;
         ServerConnection source = session.getSource();
         source.write(err.write(buffer, source));
     }
 
     @Override
     public void okPacket(byte[] data, MySQLConnection conn) {
-        StatusSync sync = conn.getStatusSync();
-        if (!sync.isExecuted()) {
-            if (sync.isSync()) {
-                sync.update();
-                try {
-                    sync.execute();
-                } catch (UnsupportedEncodingException e) {
-                    executeException(conn);
-                }
-            } else {
-                sync.update();
-                sync.sync();
-            }
-        } else {
-            conn.setRunning(false);
-            ServerConnection source = session.getSource();
-            if (source.isAutocommit()) {
-                session.clearConnections();
-            }
-            endRunning();
-            OkPacket ok = new OkPacket();
-            ok.read(data);
-            source.setLastInsertId(ok.insertId);
-            buffer = source.writeToBuffer(data, buffer);
-            source.write(buffer);
+        conn.setRunning(false);
+        ServerConnection source = session.getSource();
+        if (source.isAutocommit()) {
+            session.clearConnections();
         }
+        endRunning();
+        OkPacket ok = new OkPacket();
+        ok.read(data);
+        source.setLastInsertId(ok.insertId);
+        data[3] = ++packetId;
+        buffer = source.writeToBuffer(data, buffer);
+        source.write(buffer);
     }
 
     @Override
@@ -222,6 +243,7 @@ public class SingleNodeHandler implements ResponseHandler, Terminatable {
             session.clearConnections();
         }
         endRunning();
+        eof[3] = ++packetId;
         buffer = source.writeToBuffer(eof, buffer);
         source.write(buffer);
     }
@@ -229,22 +251,49 @@ public class SingleNodeHandler implements ResponseHandler, Terminatable {
     @Override
     public void fieldsEnd(byte[] header, byte[][] fields, byte[] eof, MySQLConnection conn) {
         ServerConnection source = session.getSource();
-        buffer = session.getSource().allocate();
-        ++packetId;
+        List<FieldPacket> list = binary ? new ArrayList<FieldPacket>(fields.length) : null;
+        header[3] = ++packetId;
         buffer = source.writeToBuffer(header, buffer);
         for (int i = 0, len = fields.length; i < len; ++i) {
-            ++packetId;
-            buffer = source.writeToBuffer(fields[i], buffer);
+            byte[] field = fields[i];
+            field[3] = ++packetId;
+            if (flag == RouteResultset.REWRITE_FIELD) {
+                StringBuilder fieldName = new StringBuilder();
+                fieldName.append("Tables_in_").append(source.getSchema());
+                FieldPacket packet = PacketUtil.getField(field, fieldName.toString());
+                buffer = packet.write(buffer, source);
+                if (list != null) {
+                    list.add(packet);
+                }
+            } else {
+                buffer = source.writeToBuffer(field, buffer);
+                if (list != null) {
+                    FieldPacket packet = new FieldPacket();
+                    packet.read(field);
+                    list.add(packet);
+                }
+            }
         }
-        ++packetId;
+        eof[3] = ++packetId;
         buffer = source.writeToBuffer(eof, buffer);
-        source.write(buffer);
+        fieldList = list;
     }
 
     @Override
-    public void rowAquired(byte[] row, MySQLConnection conn) {
-        ++packetId;
-        buffer = session.getSource().writeToBuffer(row, buffer);
+    public void rowAquired(PacketSlice row, MySQLConnection conn) {
+        ServerConnection source = session.getSource();
+        row.set(3, ++packetId);
+        ByteBuffer last = buffer;
+        if (binary) {
+            BinaryRowDataPacket packet = new BinaryRowDataPacket();
+            packet.read(fieldList, row.getBytes());
+            buffer = packet.write(buffer, source);
+        } else {
+            buffer = source.writeToBuffer(row, buffer);
+        }
+        if (buffer != last) {
+            conn.checkWritable(source);
+        }
     }
 
 }
@@ -40,6 +40,11 @@ public interface Channel {
      */
     boolean isAutocommit();
 
+    /**
+     * 取得会话状态，见{@link StatusIdleStack#status(int, int, boolean)}
+     */
+    int getSessionStatus();
+
     /**
      * 通道是否正在执行中
      */
@@ -0,0 +1,239 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.alibaba.cobar.net.util.TimeUtil;
+
+/**
+ * 并行初始化一组数据节点，最多等待给定的时间，初始化失败的节点可在后台重试。
+ * 
+ * @author xianmao.hexm
+ */
+public final class DataNodeInitializer {
+    private static final Logger LOGGER = Logger.getLogger(DataNodeInitializer.class);
+
+    public static final int PENDING = 0;
+    public static final int RUNNING = 1;
+    public static final int SUCCESS = 2;
+    public static final int FAILURE = 3;
+    public static final int CANCELLED = 4;
+
+    private final String name;
+    private final Executor executor;
+    private final List<Progress> progresses;
+    private final CountDownLatch latch;
+    private final long startTime;
+    private volatile boolean cancelled;
+
+    /**
+     * @param sizes 各节点初始化的连接数，未指定的节点为1
+     */
+    public DataNodeInitializer(String name, Map<String, MySQLDataNode> nodes, Map<String, Integer> sizes,
+                               Executor executor) {
+        this.name = name;
+        this.executor = executor;
+        List<Progress> list = new ArrayList<Progress>(nodes.size());
+        for (MySQLDataNode node : nodes.values()) {
+            Integer size = (sizes == null) ? null : sizes.get(node.getName());
+            list.add(new Progress(node, (size == null) ? 1 : size.intValue()));
+        }
+        this.progresses = Collections.unmodifiableList(list);
+        this.latch = new CountDownLatch(list.size());
+        this.startTime = TimeUtil.currentTimeMillis();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public List<Progress> getProgresses() {
+        return progresses;
+    }
+
+    /**
+     * 提交所有节点的初始化，最多等待timeout毫秒，超时未完成的节点继续在后台初始化。
+     * 
+     * @return 所有节点都在timeout内初始化成功
+     */
+    public boolean init(long timeout) {
+        for (Progress p : progresses) {
+            p.status.set(RUNNING);
+            execute(p);
+        }
+        try {
+            latch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return getFailures().isEmpty();
+    }
+
+    /**
+     * 重新初始化失败的节点，由定时任务调用。
+     */
+    public void retry() {
+        if (cancelled) {
+            return;
+        }
+        for (Progress p : progresses) {
+            if (p.status.compareAndSet(FAILURE, RUNNING)) {
+                ++p.retry;
+                execute(p);
+            }
+        }
+    }
+
+    /**
+     * 放弃本次初始化并释放已建立的连接，后台未完成的节点在完成后释放。各节点取消前的结果仍保留以便查看。
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Progress p : progresses) {
+            int status = p.status.get();
+            if (status == SUCCESS || status == FAILURE) {
+                cancel(p, status);
+            } else if (status != CANCELLED) {
+                p.unfinished = true;
+            }
+        }
+    }
+
+    /**
+     * @return 初始化失败或尚未完成的节点名
+     */
+    public List<String> getFailures() {
+        List<String> list = new ArrayList<String>();
+        for (Progress p : progresses) {
+            if (p.status.get() != SUCCESS) {
+                list.add(p.node.getName());
+            }
+        }
+        return list;
+    }
+
+    private void execute(final Progress p) {
+        p.startTime = TimeUtil.currentTimeMillis();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    p.node.init(p.size, 0);
+                } catch (Throwable e) {
+                    LOGGER.warn(new StringBuilder().append(name).append(' ').append(p.node.getName())
+                                                   .append(" init error."), e);
+                }
+                p.endTime = TimeUtil.currentTimeMillis();
+                boolean first = (p.retry == 0);
+                int status = p.node.isInitSuccess() ? SUCCESS : FAILURE;
+
+                // 先发布结果再检查取消，与cancel()中的检查至少有一方能看到对方
+                p.status.set(status);
+                if (cancelled) {
+                    cancel(p, status);
+                }
+                if (first) {
+                    latch.countDown();
+                }
+            }
+        });
+    }
+
+    /**
+     * 与初始化线程竞争把已完成的节点置为CANCELLED，只由成功的一方释放连接。
+     */
+    private static void cancel(Progress p, int status) {
+        if (p.status.compareAndSet(status, CANCELLED)) {
+            p.result = status;
+            MySQLDataSource ds = p.node.getSource();
+            if (ds != null) {
+                ds.clear();
+            }
+        }
+    }
+
+    /**
+     * 单个数据节点的初始化进度
+     */
+    public static final class Progress {
+        private final MySQLDataNode node;
+        private final int size;
+        private final AtomicInteger status;
+        private volatile int retry;
+        private volatile long startTime;
+        private volatile long endTime;
+        private volatile int result = PENDING;
+        private volatile boolean unfinished;
+
+        private Progress(MySQLDataNode node, int size) {
+            this.node = node;
+            this.size = size;
+            this.status = new AtomicInteger(PENDING);
+        }
+
+        public MySQLDataNode getNode() {
+            return node;
+        }
+
+        public int getStatus() {
+            return status.get();
+        }
+
+        public int getRetry() {
+            return retry;
+        }
+
+        /**
+         * @return 被取消的节点在取消前的初始化结果(SUCCESS或FAILURE)，未取消或取消时尚未完成为PENDING
+         */
+        public int getResult() {
+            return result;
+        }
+
+        /**
+         * 取消时是否尚未完成初始化，即超过了等待时间
+         */
+        public boolean isUnfinished() {
+            return unfinished;
+        }
+
+        /**
+         * @return 最近一次初始化的耗时，进行中时为已耗费的时间(毫秒)
+         */
+        public long getTime() {
+            long start = startTime;
+            if (start == 0L) {
+                return 0L;
+            }
+            return (status.get() == RUNNING ? TimeUtil.currentTimeMillis() : endTime) - start;
+        }
+    }
+
+}
@@ -149,6 +149,11 @@ public final class MySQLChannel implements Channel {
         return autocommit;
     }
 
+    @Override
+    public int getSessionStatus() {
+        return StatusIdleStack.status(charsetIndex, txIsolation, autocommit);
+    }
+
     @Override
     public boolean isRunning() {
         return isRunning;
@@ -197,29 +202,17 @@ public final class MySQLChannel implements Channel {
 
     public BinaryPacket execute(RouteResultsetNode rrn, ServerConnection sc, boolean autocommit) throws IOException {
         // 状态一致性检查
-        if (this.charsetIndex != sc.getCharsetIndex()) {
-            sendCharset(sc.getCharsetIndex());
-        }
-        if (this.txIsolation != sc.getTxIsolation()) {
-            sendTxIsolation(sc.getTxIsolation());
-        }
-        if (this.autocommit != autocommit) {
-            sendAutocommit(autocommit);
+        if (this.charsetIndex == sc.getCharsetIndex() && this.txIsolation == sc.getTxIsolation()
+            && this.autocommit == autocommit) {
+            dataSource.getCount().syncHit();
+        } else {
+            dataSource.getCount().syncMiss();
         }
 
-        // 生成执行数据包
-        CommandPacket packet = new CommandPacket();
-        packet.packetId = 0;
-        packet.command = Commands.COM_QUERY;
-        packet.arg = rrn.getStatement().getBytes(charset);
-
         // 记录执行开始时间
         lastActiveTime = TimeUtil.currentTimeMillis();
 
-        // 递交执行数据包并等待执行返回
-        packet.write(out);
-        out.flush();
-        BinaryPacket bin = receive();
+        BinaryPacket bin = execute(rrn.getStatement(), sc.getCharsetIndex(), sc.getTxIsolation(), autocommit);
 
         // SQL执行时间统计
         long now = TimeUtil.currentTimeMillis();
@@ -232,12 +225,83 @@ public final class MySQLChannel implements Channel {
         return bin;
     }
 
+    /**
+     * 同步连接状态后执行语句：事务级别和递交模式的设置逐条发送并确认成功，
+     * 字符集设置与执行数据包一次递交，再依次读取设置的返回和执行返回。
+     * 事务相关的设置不能与语句一次递交，原因见{@link com.alibaba.cobar.server.mysql.MySQLConnection.StatusSync}。
+     */
+    BinaryPacket execute(String stmt, int ci, int txIsolation, boolean autocommit) throws IOException {
+        boolean syncCharset = this.charsetIndex != ci;
+        if (this.txIsolation != txIsolation) {
+            getTxIsolationCommand(txIsolation).write(out);
+            out.flush();
+            receiveSync(false);
+            this.txIsolation = txIsolation;
+        }
+        if (this.autocommit != autocommit) {
+            getAutocommitCommand(autocommit).write(out);
+            out.flush();
+            receiveSync(false);
+            this.autocommit = autocommit;
+        }
+
+        // 生成执行数据包，使用同步后的字符集编码
+        CommandPacket packet = new CommandPacket();
+        packet.packetId = 0;
+        packet.command = Commands.COM_QUERY;
+        packet.arg = stmt.getBytes(syncCharset ? CharsetUtil.getCharset(ci) : charset);
+        if (syncCharset) {
+            getCharsetCommand(ci).write(out);
+        }
+        packet.write(out);
+        out.flush();
+        if (syncCharset) {
+            receiveSync(true);
+            this.charsetIndex = ci;
+            this.charset = CharsetUtil.getCharset(ci);
+        }
+        return receive();
+    }
+
+    /**
+     * 直接指定输入输出流，供测试使用。
+     */
+    void setStreams(InputStream in, OutputStream out, int charsetIndex) {
+        this.in = in;
+        this.out = out;
+        this.charsetIndex = charsetIndex;
+        this.charset = CharsetUtil.getCharset(charsetIndex);
+    }
+
     public BinaryPacket receive() throws IOException {
         BinaryPacket bin = new BinaryPacket();
         bin.read(in);
         return bin;
     }
 
+    /**
+     * 读取状态设置的返回。
+     * 
+     * @param pipelined 执行语句已经写出，设置出错时其返回已无法对应，关闭通道
+     */
+    private void receiveSync(boolean pipelined) throws IOException {
+        BinaryPacket bin = receive();
+        switch (bin.data[0]) {
+        case OkPacket.FIELD_COUNT:
+            break;
+        case ErrorPacket.FIELD_COUNT:
+            if (pipelined) {
+                close();
+            }
+            ErrorPacket err = new ErrorPacket();
+            err.read(bin);
+            throw new ErrorPacketException(new String(err.message, charset));
+        default:
+            close();
+            throw new UnknownPacketException(bin.toString());
+        }
+    }
+
     public BinaryPacket commit() throws IOException {
         _COMMIT.write(out);
         out.flush();
@@ -438,70 +502,6 @@ public final class MySQLChannel implements Channel {
         }
     }
 
-    /**
-     * 发送字符集设置
-     */
-    private void sendCharset(int ci) throws IOException {
-        CommandPacket cmd = getCharsetCommand(ci);
-        cmd.write(out);
-        out.flush();
-        BinaryPacket bin = receive();
-        switch (bin.data[0]) {
-        case OkPacket.FIELD_COUNT:
-            this.charsetIndex = ci;
-            this.charset = CharsetUtil.getCharset(ci);
-            break;
-        case ErrorPacket.FIELD_COUNT:
-            ErrorPacket err = new ErrorPacket();
-            err.read(bin);
-            throw new ErrorPacketException(new String(err.message, charset));
-        default:
-            throw new UnknownPacketException(bin.toString());
-        }
-    }
-
-    /**
-     * 发送事务级别设置
-     */
-    private void sendTxIsolation(int txIsolation) throws IOException {
-        CommandPacket cmd = getTxIsolationCommand(txIsolation);
-        cmd.write(out);
-        out.flush();
-        BinaryPacket bin = receive();
-        switch (bin.data[0]) {
-        case OkPacket.FIELD_COUNT:
-            this.txIsolation = txIsolation;
-            break;
-        case ErrorPacket.FIELD_COUNT:
-            ErrorPacket err = new ErrorPacket();
-            err.read(bin);
-            throw new ErrorPacketException(new String(err.message, charset));
-        default:
-            throw new UnknownPacketException(bin.toString());
-        }
-    }
-
-    /**
-     * 发送事务递交模式设置
-     */
-    private void sendAutocommit(boolean autocommit) throws IOException {
-        CommandPacket cmd = getAutocommitCommand(autocommit);
-        cmd.write(out);
-        out.flush();
-        BinaryPacket bin = receive();
-        switch (bin.data[0]) {
-        case OkPacket.FIELD_COUNT:
-            this.autocommit = autocommit;
-            break;
-        case ErrorPacket.FIELD_COUNT:
-            ErrorPacket err = new ErrorPacket();
-            err.read(bin);
-            throw new ErrorPacketException(new String(err.message, charset));
-        default:
-            throw new UnknownPacketException(bin.toString());
-        }
-    }
-
     private CommandPacket getSqlModeCommand() {
         StringBuilder s = new StringBuilder();
         s.append("SET sql_mode=\"").append(dsc.getSqlMode()).append('"');
@@ -545,7 +545,7 @@ public final class MySQLChannel implements Channel {
     private void killChannel() {
         MySQLChannel killChannel = null;
         try {
-            killChannel = (MySQLChannel) dataSource.getChannel();
+            killChannel = (MySQLChannel) dataSource.getChannel(StatusIdleStack.ANY_STATUS, false);
         } catch (Exception e) {
             logger.error("killProcess failure for getting channel", e);
             return;
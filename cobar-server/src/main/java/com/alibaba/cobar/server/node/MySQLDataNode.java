@@ -15,11 +15,15 @@
  */
 package com.alibaba.cobar.server.node;
 
+import java.util.Random;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
 
 import com.alibaba.cobar.CobarAlarms;
+import com.alibaba.cobar.CobarServer;
+import com.alibaba.cobar.net.NIOProcessor;
+import com.alibaba.cobar.net.util.StripedCounter;
 import com.alibaba.cobar.net.util.TimeUtil;
 import com.alibaba.cobar.server.config.DataNodeConfig;
 import com.alibaba.cobar.server.heartbeat.MySQLHeartbeat;
@@ -32,16 +36,25 @@ import com.alibaba.cobar.server.mysql.handler.ResponseHandler;
 public final class MySQLDataNode {
     private static final Logger LOGGER = Logger.getLogger(MySQLDataNode.class);
     private static final Logger ALARM = Logger.getLogger("alarm");
+    /** 心跳响应时间（毫秒）对读权重的影响：响应时间等于该值时权重减半 */
+    private static final long LATENCY_BASE = 10L;
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
 
     private final String name;
     private final DataNodeConfig config;
     private MySQLDataSource[] sources;
     private MySQLConnectionPool[] dataSources;
     private int activedIndex;
-    private long executeCount;
+    private final StripedCounter executeCount = new StripedCounter();
     private long heartbeatRecoveryTime;
     private volatile boolean initSuccess;
     private final ReentrantLock switchLock;
+    private volatile ReadRanges readRanges;
 
     public MySQLDataNode(DataNodeConfig config) {
         this.name = config.getName();
@@ -84,7 +97,7 @@ public final class MySQLDataNode {
     }
 
     public long getExecuteCount() {
-        return executeCount;
+        return executeCount.sum();
     }
 
     public int getActivedIndex() {
@@ -111,25 +124,116 @@ public final class MySQLDataNode {
      * 取得数据源通道
      */
     public Channel getChannel(int i) throws Exception {
+        return getChannel(i, StatusIdleStack.ANY_STATUS);
+    }
+
+    /**
+     * 取得数据源通道，优先取得会话状态为status的空闲通道
+     */
+    public Channel getChannel(int i, int status) throws Exception {
         if (initSuccess) {
-            Channel c = sources[i].getChannel();
-            ++executeCount;
+            Channel c = sources[i].getChannel(status);
+            executeCount.increment();
             return c;
         } else {
             throw new IllegalArgumentException("Invalid DataSource:" + i);
         }
     }
 
+    /**
+     * 读写分离时按读权重和心跳响应时间选择分担读的数据源，备库须心跳正常且复制延迟不超过maxReplicaLag。
+     * 
+     * @return 未配置读权重或没有可用的备库时返回当前数据源
+     */
+    public int getReadIndex() {
+        int active = activedIndex;
+        ReadRanges rr = readRanges;
+        if (rr == null || rr.active != active || !initSuccess) {
+            return active;
+        }
+        long[] ranges = rr.ranges;
+        long r = (long) (RANDOM.get().nextDouble() * rr.total);
+        for (int i = 0; i < ranges.length; ++i) {
+            if (r < ranges[i]) {
+                return i;
+            }
+        }
+        return active;
+    }
+
+    /**
+     * 每次心跳时按上一轮心跳的结果重新计算各数据源的读权重区间，切换数据源后到下一次心跳前读请求只发往当前数据源。
+     */
+    private void updateReadRanges() {
+        int[] weights = config.getReadWeights();
+        if (weights == null) {
+            return;
+        }
+        int active = activedIndex;
+        long[] ranges = new long[weights.length];
+        long total = 0L;
+        for (int i = 0; i < weights.length; ++i) {
+            if (weights[i] <= 0) {
+                ranges[i] = total;
+                continue;
+            }
+            MySQLHeartbeat heartbeat = sources[i].getHeartbeat();
+            if (i != active) {
+                long lag = heartbeat.getLag();
+                if (heartbeat.isStop() || heartbeat.getStatus() != MySQLHeartbeat.OK_STATUS || lag < 0
+                    || lag > config.getMaxReplicaLag()) {
+                    ranges[i] = total;
+                    continue;
+                }
+            }
+            long latency = Math.max(heartbeat.getRecorder().getAvg1(), 0L);
+            total += Math.max(weights[i] * 1000L * LATENCY_BASE / (LATENCY_BASE + latency), 1L);
+            ranges[i] = total;
+        }
+        readRanges = total == 0L ? null : new ReadRanges(active, ranges, total);
+    }
+
+    private static final class ReadRanges {
+        final int active;
+        final long[] ranges;
+        final long total;
+
+        ReadRanges(int active, long[] ranges, long total) {
+            this.active = active;
+            this.ranges = ranges;
+            this.total = total;
+        }
+    }
+
     public void getConnection(ResponseHandler handler, Object attachment) throws Exception {
         getConnection(handler, attachment, activedIndex);
     }
 
+    /**
+     * 取得NIO后端连接，连接就绪后回调handler。
+     */
     public void getConnection(ResponseHandler handler, Object attachment, int i) throws Exception {
+        getConnection(handler, attachment, i, StatusIdleStack.ANY_STATUS);
+    }
+
+    /**
+     * 取得NIO后端连接，优先取得会话状态为status的空闲连接，连接就绪后回调handler。
+     */
+    public void getConnection(ResponseHandler handler, Object attachment, int i, int status) throws Exception {
+        getConnection(handler, attachment, i, status, null);
+    }
+
+    /**
+     * 同上，并优先取得processor上的空闲连接，新建的连接也注册到processor。
+     */
+    public void getConnection(ResponseHandler handler, Object attachment, int i, int status, NIOProcessor processor)
+            throws Exception {
         if (initSuccess) {
             MySQLConnectionPool pool = dataSources[i];
-            pool.getConnection(handler, attachment);
+            executeCount.increment();
+            pool.getConnection(handler, attachment, status, processor);
         } else {
-            throw new IllegalArgumentException("Invalid DataSource:" + activedIndex);
+            throw new IllegalArgumentException("Invalid DataSource:" + i);
         }
     }
 
@@ -175,6 +279,9 @@ public final class MySQLDataNode {
                 // 清理切换前的数据源
                 sources[current].clear();
                 sources[current].stopHeartbeat();
+                if (dataSources != null) {
+                    dataSources[current].clear();
+                }
 
                 // 记录切换日志
                 if (isAlarm) {
@@ -200,6 +307,47 @@ public final class MySQLDataNode {
                 ds.idleCheck(config.getIdleTimeout());
             }
         }
+        if (dataSources != null) {
+            for (MySQLConnectionPool pool : dataSources) {
+                pool.idleCheck(config.getIdleTimeout());
+            }
+        }
+    }
+
+    /**
+     * 连接池检查：回调等待超时的取连接请求，为当前数据源和分担读的备库补足空闲连接。
+     * 
+     * @param nioBackend 补足NIO连接池还是阻塞式数据源
+     */
+    public void poolCheck(boolean nioBackend) {
+        if (sources == null || !initSuccess) {
+            return;
+        }
+        if (dataSources != null) {
+            for (MySQLConnectionPool pool : dataSources) {
+                pool.waitCheck();
+            }
+        }
+        int minIdle = config.getMinIdle();
+        if (minIdle <= 0) {
+            return;
+        }
+        int[] weights = config.getReadWeights();
+        int active = activedIndex;
+        for (int i = 0; i < sources.length; ++i) {
+            if (i != active && (weights == null || weights[i] <= 0)) {
+                continue;
+            }
+            // 心跳异常的数据源不预先创建连接
+            if (sources[i].getHeartbeat().getStatus() == MySQLHeartbeat.ERROR_STATUS) {
+                continue;
+            }
+            if (!nioBackend) {
+                sources[i].fillIdle(minIdle, CobarServer.getInstance().getDataNodeInitExecutor());
+            } else if (dataSources != null) {
+                dataSources[i].fillIdle(minIdle);
+            }
+        }
     }
 
     public MySQLHeartbeat getHeartbeat() {
@@ -237,13 +385,25 @@ public final class MySQLDataNode {
     }
 
     public void doHeartbeat() {
-        // 判断是否需要执行心跳检查
-        if (!config.isNeedHeartbeat()) {
+        // 检查内部是否有连接池配置信息
+        if (sources == null || sources.length == 0) {
             return;
         }
 
-        // 检查内部是否有连接池配置信息
-        if (sources == null || sources.length == 0) {
+        // 分担读的备库检查复制状态
+        int[] weights = config.getReadWeights();
+        if (weights != null) {
+            updateReadRanges();
+            int active = activedIndex;
+            for (int i = 0; i < sources.length; ++i) {
+                if (i != active && weights[i] > 0) {
+                    sources[i].doHeartbeat();
+                }
+            }
+        }
+
+        // 判断是否需要执行心跳检查
+        if (!config.isNeedHeartbeat()) {
             return;
         }
 
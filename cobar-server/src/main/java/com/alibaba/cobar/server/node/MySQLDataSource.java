@@ -15,14 +15,20 @@
  */
 package com.alibaba.cobar.server.node;
 
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.log4j.Logger;
 
 import com.alibaba.cobar.CobarAlarms;
+import com.alibaba.cobar.net.util.IdleStack;
 import com.alibaba.cobar.net.util.TimeUtil;
 import com.alibaba.cobar.server.config.DataSourceConfig;
 import com.alibaba.cobar.server.heartbeat.MySQLHeartbeat;
+import com.alibaba.cobar.server.statistics.DataSourceCount;
+import com.alibaba.cobar.server.statistics.PoolWaitRecorder;
 import com.alibaba.cobar.server.statistics.SQLRecorder;
 
 /**
@@ -36,26 +42,34 @@ public final class MySQLDataSource {
     private final int index;
     private final String name;
     private final DataSourceConfig config;
-    private int activeCount;
-    private int idleCount;
     private final int size;
-    private final Channel[] items;
-    private final ReentrantLock lock;
+    private final StatusIdleStack<Channel> idle;
+    private final PoolQuota<Channel> quota;
     private final ChannelFactory factory;
+    private final AtomicInteger creatingCount;
     private final MySQLHeartbeat heartbeat;
     private final SQLRecorder sqlRecorder;
+    private final PoolWaitRecorder waitRecorder;
+    private final DataSourceCount count;
 
     public MySQLDataSource(MySQLDataNode node, int index, DataSourceConfig config, int size) {
+        this(node, index, config, size, new MySQLChannelFactory());
+    }
+
+    MySQLDataSource(MySQLDataNode node, int index, DataSourceConfig config, int size, ChannelFactory factory) {
         this.node = node;
         this.index = index;
         this.name = config.getName();
         this.config = config;
         this.size = size;
-        this.items = new Channel[size];
-        this.lock = new ReentrantLock();
-        this.factory = new MySQLChannelFactory();
+        this.idle = new StatusIdleStack<Channel>();
+        this.quota = new PoolQuota<Channel>(size);
+        this.factory = factory;
+        this.creatingCount = new AtomicInteger();
         this.heartbeat = new MySQLHeartbeat(this);
         this.sqlRecorder = new SQLRecorder(config.getSqlRecordCount());
+        this.waitRecorder = new PoolWaitRecorder();
+        this.count = new DataSourceCount();
     }
 
     public MySQLDataNode getNode() {
@@ -79,11 +93,11 @@ public final class MySQLDataSource {
     }
 
     public int getActiveCount() {
-        return activeCount;
+        return quota.getActiveCount();
     }
 
     public int getIdleCount() {
-        return idleCount;
+        return idle.size();
     }
 
     public MySQLHeartbeat getHeartbeat() {
@@ -94,6 +108,14 @@ public final class MySQLDataSource {
         return sqlRecorder;
     }
 
+    public PoolWaitRecorder getWaitRecorder() {
+        return waitRecorder;
+    }
+
+    public DataSourceCount getCount() {
+        return count;
+    }
+
     public void startHeartbeat() {
         heartbeat.start();
     }
@@ -113,54 +135,53 @@ public final class MySQLDataSource {
     }
 
     /**
+     * 池满时在数据节点的waitTimeout内等待其他连接归还，超时抛出异常。
+     * 
      * @return never null
      */
     public Channel getChannel() throws Exception {
-        // 尝试从池中取得可用资源
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            // 当活跃资源大于等于池大小时，记录告警信息。
-            if (activeCount >= size) {
-                StringBuilder s = new StringBuilder();
-                s.append(CobarAlarms.DEFAULT).append("[name=").append(name).append(",active=");
-                s.append(activeCount).append(",size=").append(size).append(']');
-                alarm.error(s.toString());
-            }
+        return getChannel(StatusIdleStack.ANY_STATUS, true);
+    }
 
-            // 检查池中是否有可用资源
-            final Channel[] items = this.items;
-            for (int i = 0; idleCount > 0 && i < items.length; i++) {
-                if (items[i] != null) {
-                    Channel c = items[i];
-                    items[i] = null;
-                    --idleCount;
-                    if (c.isClosed()) {
-                        continue;
-                    } else {
-                        ++activeCount;
-                        return c;
-                    }
-                }
+    /**
+     * @param status 优先取得该会话状态的空闲资源
+     * @return never null
+     */
+    public Channel getChannel(int status) throws Exception {
+        return getChannel(status, true);
+    }
+
+    /**
+     * @param status 优先取得该会话状态的空闲资源
+     * @param bounded 为false时不受池大小限制，用于KILL等不能排队等待的操作。
+     * @return never null
+     */
+    public Channel getChannel(int status, boolean bounded) throws Exception {
+        if (!bounded) {
+            quota.forceActive();
+        } else if (quota.tryActive()) {
+            waitRecorder.record(0L);
+        } else {
+            Channel c = await();
+            if (c != null) {
+                return c;
             }
+        }
 
-            // 将创建新连接，在此先假设创建成功。
-            ++activeCount;
-        } finally {
-            lock.unlock();
+        // 已占用活跃名额，检查池中是否有可用资源
+        Channel c;
+        while ((c = idle.pop(status)) != null) {
+            if (!c.isClosed()) {
+                return c;
+            }
         }
 
         // 创建新的资源
-        Channel c = factory.make(this);
+        c = factory.make(this);
         try {
             c.connect(node.getConfig().getWaitTimeout());
         } catch (Exception e) {
-            lock.lock();
-            try {
-                --activeCount;
-            } finally {
-                lock.unlock();
-            }
+            quota.release();
             c.closeNoActive();
             throw e;
         }
@@ -172,73 +193,152 @@ public final class MySQLDataSource {
         if (c == null || c.isClosed()) {
             return;
         }
+        c.setLastActiveTime(TimeUtil.currentTimeMillis());
 
-        // 释放资源
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            final Channel[] items = this.items;
-            for (int i = 0; i < items.length; i++) {
-                if (items[i] == null) {
-                    ++idleCount;
-                    --activeCount;
-                    c.setLastActiveTime(TimeUtil.currentTimeMillis());
-                    items[i] = c;
-                    return;
-                }
-            }
-        } finally {
-            lock.unlock();
+        // 优先交给等待者，活跃名额随之转移
+        if (quota.handOff(c)) {
+            return;
         }
 
-        // 关闭多余的资源
-        c.close();
+        // 释放资源，关闭多余的资源
+        if (idle.size() < size) {
+            idle.push(c.getSessionStatus(), c);
+            quota.release();
+        } else {
+            quota.release();
+            c.closeNoActive();
+        }
     }
 
     public void deActive() {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            --activeCount;
-        } finally {
-            lock.unlock();
-        }
+        quota.release();
     }
 
     public void clear() {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            final Channel[] items = this.items;
-            for (int i = 0; i < items.length; i++) {
-                Channel c = items[i];
-                if (c != null) {
-                    c.closeNoActive();
-                    --idleCount;
-                    items[i] = null;
+        for (Channel c : idle.drain()) {
+            c.closeNoActive();
+        }
+    }
+
+    /**
+     * 在空闲栈中原地取出超时和已关闭的资源，其余资源在检查期间仍可被取用。
+     */
+    public void idleCheck(long timeout) {
+        final long time = TimeUtil.currentTimeMillis() - timeout;
+        IdleStack.Matcher<Channel> expired = new IdleStack.Matcher<Channel>() {
+            @Override
+            public boolean match(Channel c) {
+                return time > c.getLastAcitveTime() || c.isClosed();
+            }
+        };
+        for (Channel c : idle.remove(expired)) {
+            c.closeNoActive();
+        }
+    }
+
+    /**
+     * 异步预先创建连接，使空闲连接数不少于minIdle，由定时任务调用。
+     * 
+     * @param executor 执行建连的线程池，建连时会等待{@link com.alibaba.cobar.CobarServer#getInitExecutor()}完成握手，不能是该线程池本身。
+     */
+    public void fillIdle(int minIdle, Executor executor) {
+        int idleCount = idle.size();
+        int n = minIdle - idleCount - creatingCount.get();
+        int free = size - quota.getActiveCount() - idleCount - creatingCount.get();
+        for (int i = 0, len = Math.min(n, free); i < len; i++) {
+            creatingCount.incrementAndGet();
+            try {
+                executor.execute(new IdleCreateTask());
+            } catch (Exception e) {
+                creatingCount.decrementAndGet();
+                logger.warn(name + " fill idle error.", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 池满时排队等待，返回归还者直接转交的资源；返回null表示得到了活跃名额，由调用者取用或新建资源。
+     */
+    private Channel await() throws Exception {
+        // 当活跃资源大于等于池大小时，记录告警信息。
+        StringBuilder s = new StringBuilder();
+        s.append(CobarAlarms.DEFAULT).append("[name=").append(name).append(",active=");
+        s.append(quota.getActiveCount()).append(",size=").append(size).append(']');
+        alarm.error(s.toString());
+
+        long timeout = node.getConfig().getWaitTimeout();
+        Waiter w = new Waiter(timeout);
+        if (quota.enqueue(w)) {
+            waitRecorder.record(w.elapsed());
+            return null;
+        }
+
+        long deadline = w.getStartTime() + timeout * 1000000L;
+        boolean interrupted = false;
+        while (!w.isGranted()) {
+            long left = deadline - System.nanoTime();
+            if (!interrupted) {
+                interrupted = Thread.interrupted();
+            }
+            if (left <= 0L || interrupted) {
+                if (quota.cancel(w)) {
+                    if (interrupted) {
+                        throw new InterruptedException("wait for connection interrupted: " + name);
+                    }
+                    waitRecorder.timeout();
+                    throw new TimeoutException("wait for connection timeout: " + name);
                 }
+                // 已被转交，等待转交者发布结果
+                Thread.yield();
+                continue;
             }
-        } finally {
-            lock.unlock();
+            LockSupport.parkNanos(this, left);
         }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        waitRecorder.record(w.elapsed());
+        return w.getResource();
     }
 
-    public void idleCheck(long timeout) {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
-        try {
-            final Channel[] items = this.items;
-            long time = TimeUtil.currentTimeMillis() - timeout;
-            for (int i = 0; i < items.length; i++) {
-                Channel c = items[i];
-                if (c != null && time > c.getLastAcitveTime()) {
+    /**
+     * 预先创建的连接认证成功后直接放入空闲栈
+     */
+    private final class IdleCreateTask implements Runnable {
+        @Override
+        public void run() {
+            Channel c = null;
+            try {
+                c = factory.make(MySQLDataSource.this);
+                c.connect(node.getConfig().getWaitTimeout());
+            } catch (Exception e) {
+                creatingCount.decrementAndGet();
+                if (c != null) {
                     c.closeNoActive();
-                    --idleCount;
-                    items[i] = null;
                 }
+                logger.warn(name + " fill idle error.", e);
+                return;
             }
-        } finally {
-            lock.unlock();
+            c.setLastActiveTime(TimeUtil.currentTimeMillis());
+            idle.push(c.getSessionStatus(), c);
+            creatingCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * 池满时排队的取连接请求，阻塞在调用线程上自行计时。
+     */
+    private static final class Waiter extends PoolQuota.Waiter<Channel> {
+        private final Thread thread = Thread.currentThread();
+
+        private Waiter(long timeout) {
+            super(timeout);
+        }
+
+        @Override
+        protected void granted(Channel c) {
+            LockSupport.unpark(thread);
         }
     }
 
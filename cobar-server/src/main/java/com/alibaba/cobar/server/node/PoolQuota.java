@@ -0,0 +1,218 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.node;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.cobar.net.util.TimeUtil;
+
+/**
+ * 连接池的活跃名额和等待队列：池满时取连接的请求排队，归还的资源或空出的名额按排队顺序转交给等待者。
+ * 阻塞式的数据源和非阻塞的连接池共用，差别只在等待者得到转交后的处理。
+ * 
+ * @author xianmao.hexm
+ */
+public final class PoolQuota<R> {
+
+    private final int size;
+    private final AtomicInteger activeCount;
+    private final ConcurrentLinkedQueue<Waiter<R>> waiters;
+
+    public PoolQuota(int size) {
+        this.size = size;
+        this.activeCount = new AtomicInteger();
+        this.waiters = new ConcurrentLinkedQueue<Waiter<R>>();
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * 不受池大小限制地占用名额，用于KILL等不能排队等待的操作。
+     */
+    public void forceActive() {
+        activeCount.incrementAndGet();
+    }
+
+    /**
+     * @return 池未满时占用一个名额并返回true
+     */
+    public boolean tryActive() {
+        for (;;) {
+            int n = activeCount.get();
+            if (n >= size) {
+                return false;
+            }
+            if (activeCount.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还名额，并把空出的名额交给等待者。
+     */
+    public void release() {
+        activeCount.decrementAndGet();
+        while (!waiters.isEmpty() && tryActive()) {
+            Waiter<R> w = waiters.poll();
+            if (w == null || !w.grant(null)) {
+                activeCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 把归还的资源直接转交给等待者，名额随之转移。
+     * 
+     * @return 没有等待者时返回false，由调用者归还名额
+     */
+    public boolean handOff(R resource) {
+        Waiter<R> w;
+        while ((w = waiters.poll()) != null) {
+            if (w.grant(resource)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 池满时排队，入队后再次检查，避免错过入队前归还的名额。
+     * 
+     * @return true表示已取得名额，无需再等待
+     */
+    public boolean enqueue(Waiter<R> w) {
+        waiters.offer(w);
+        if (tryActive()) {
+            if (cancel(w)) {
+                return true;
+            }
+            // 已被归还者转交，退还多占的名额
+            release();
+        }
+        return false;
+    }
+
+    /**
+     * @return false表示等待者已被转交，调用者须等待转交完成
+     */
+    public boolean cancel(Waiter<R> w) {
+        if (w.cancel()) {
+            waiters.remove(w);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 回调等待超时的等待者，由定时任务调用。等待者按入队顺序排列，遇到未超时的即停止。
+     */
+    public void timeoutCheck() {
+        long now = TimeUtil.currentTimeMillis();
+        for (Iterator<Waiter<R>> it = waiters.iterator(); it.hasNext();) {
+            Waiter<R> w = it.next();
+            if (now < w.deadline) {
+                break;
+            }
+            if (w.cancel()) {
+                it.remove();
+                w.timeout();
+            }
+        }
+    }
+
+    /**
+     * 池满时排队的取资源请求，只有把状态从WAITING改为GRANTING的一方才能发布资源，
+     * 转交和取消(包括超时)只有一方能成功。
+     */
+    public static abstract class Waiter<R> {
+        private static final int WAITING = 0;
+        private static final int GRANTING = 1;
+        private static final int GRANTED = 2;
+        private static final int CANCELLED = 3;
+
+        private final AtomicInteger state;
+        private final long startTime;
+        private final long deadline;
+        private volatile R resource;
+
+        /**
+         * @param timeout 等待超时时间(毫秒)
+         */
+        protected Waiter(long timeout) {
+            this.state = new AtomicInteger(WAITING);
+            this.startTime = System.nanoTime();
+            this.deadline = TimeUtil.currentTimeMillis() + timeout;
+        }
+
+        /**
+         * @param resource 转交的资源，为null时只转交名额
+         */
+        private boolean grant(R resource) {
+            if (!state.compareAndSet(WAITING, GRANTING)) {
+                return false;
+            }
+            this.resource = resource;
+            state.set(GRANTED);
+            granted(resource);
+            return true;
+        }
+
+        private boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+
+        public boolean isGranted() {
+            return state.get() == GRANTED;
+        }
+
+        /**
+         * @return 转交的资源，只转交了名额时为null
+         */
+        public R getResource() {
+            return resource;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return 从排队开始的等待时间(毫秒)
+         */
+        public long elapsed() {
+            return (System.nanoTime() - startTime) / 1000000L;
+        }
+
+        /**
+         * 转交完成后在转交者线程中回调
+         * 
+         * @param resource 转交的资源，为null时只转交了名额
+         */
+        protected abstract void granted(R resource);
+
+        /**
+         * 由{@link PoolQuota#timeoutCheck()}回调，自行计时的等待者不需要处理。
+         */
+        protected void timeout() {
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.cobar.net.util.IdleStack;
+
+/**
+ * 按会话状态(字符集、事务隔离级别、autocommit)分区的空闲连接栈，优先取出状态一致的连接以省去执行前的SET同步。
+ * 
+ * @author xianmao.hexm
+ */
+public final class StatusIdleStack<T> {
+
+    /** 不要求会话状态 */
+    public static final int ANY_STATUS = -1;
+
+    /** 匹配全部会话状态 */
+    public static final int MATCH_ALL = -1;
+    /** 只匹配事务状态(隔离级别、autocommit)，字符集可以不同 */
+    public static final int MATCH_TX = 0x0f;
+    /** 不要求匹配，取需要同步的SET语句最少的 */
+    public static final int MATCH_NONE = 0;
+
+    private final ConcurrentMap<Integer, IdleStack<T>> stacks;
+    private final AtomicInteger size;
+
+    public StatusIdleStack() {
+        this.stacks = new ConcurrentHashMap<Integer, IdleStack<T>>();
+        this.size = new AtomicInteger();
+    }
+
+    public static int status(int charsetIndex, int txIsolation, boolean autocommit) {
+        return (charsetIndex << 4) | ((txIsolation & 0x07) << 1) | (autocommit ? 1 : 0);
+    }
+
+    /**
+     * @return 两个会话状态之间需要同步的SET语句个数
+     */
+    static int distance(int s1, int s2) {
+        int d = (s1 >>> 4) != (s2 >>> 4) ? 1 : 0;
+        if ((s1 & 0x0e) != (s2 & 0x0e)) {
+            ++d;
+        }
+        if ((s1 & 0x01) != (s2 & 0x01)) {
+            ++d;
+        }
+        return d;
+    }
+
+    public void push(int status, T item) {
+        IdleStack<T> stack = stacks.get(status);
+        if (stack == null) {
+            IdleStack<T> newStack = new IdleStack<T>();
+            stack = stacks.putIfAbsent(status, newStack);
+            if (stack == null) {
+                stack = newStack;
+            }
+        }
+        stack.push(item);
+        size.incrementAndGet();
+    }
+
+    /**
+     * 优先取出状态一致的资源，没有时取需要同步的SET语句最少的。
+     * 
+     * @return 没有空闲资源时返回null
+     */
+    public T pop(int status) {
+        return pop(status, MATCH_NONE);
+    }
+
+    /**
+     * 优先取出状态一致的资源，没有时在mask所示的状态位一致的资源中取需要同步的SET语句最少的。
+     * 
+     * @param mask {@link #MATCH_ALL}、{@link #MATCH_TX}或{@link #MATCH_NONE}，status为{@link #ANY_STATUS}时忽略
+     * @return 没有符合条件的空闲资源时返回null
+     */
+    public T pop(int status, int mask) {
+        IdleStack<T> stack = stacks.get(status);
+        T item = (stack == null) ? null : stack.pop();
+        while (item == null && size.get() > 0 && (mask != MATCH_ALL || status == ANY_STATUS)) {
+            IdleStack<T> best = null;
+            int min = Integer.MAX_VALUE;
+            for (Entry<Integer, IdleStack<T>> en : stacks.entrySet()) {
+                if (status != ANY_STATUS && ((status ^ en.getKey()) & mask) != 0) {
+                    continue;
+                }
+                int d = (status == ANY_STATUS) ? 0 : distance(status, en.getKey());
+                if (d < min && en.getValue().size() > 0) {
+                    best = en.getValue();
+                    min = d;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            item = best.pop();
+        }
+        if (item != null) {
+            size.decrementAndGet();
+        }
+        return item;
+    }
+
+    /**
+     * 一次取出所有资源，同一状态内按从栈顶到栈底的顺序返回。
+     */
+    public List<T> drain() {
+        List<T> list = new ArrayList<T>();
+        for (IdleStack<T> stack : stacks.values()) {
+            List<T> items = stack.drain();
+            size.addAndGet(-items.size());
+            list.addAll(items);
+        }
+        return list;
+    }
+
+    /**
+     * 原地取出所有满足条件的资源，其余资源留在栈中。
+     */
+    public List<T> remove(IdleStack.Matcher<T> matcher) {
+        List<T> list = new ArrayList<T>();
+        for (IdleStack<T> stack : stacks.values()) {
+            List<T> items = stack.remove(matcher);
+            size.addAndGet(-items.size());
+            list.addAll(items);
+        }
+        return list;
+    }
+
+    /**
+     * 并发修改时不是精确值
+     */
+    public int size() {
+        return size.get();
+    }
+
+}
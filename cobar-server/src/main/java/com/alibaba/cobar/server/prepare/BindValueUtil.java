@@ -0,0 +1,135 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.prepare;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.BindValue;
+
+/**
+ * 把二进制协议绑定的参数值转换成SQL字面量。
+ * 客户端发送的字符串以连接字符集为前缀的十六进制形式输出，含义与后端的sql_mode是否为NO_BACKSLASH_ESCAPES无关，
+ * 参数的内容不会提前结束字面量。
+ * 
+ * @author xianmao.hexm
+ */
+public final class BindValueUtil {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final BigInteger UNSIGNED_LONG_MASK = BigInteger.ONE.shiftLeft(64);
+
+    /**
+     * @throws IllegalArgumentException 浮点数为NaN或无穷大
+     */
+    public static String[] toLiterals(BindValue[] values, String charset) throws UnsupportedEncodingException {
+        String[] literals = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            literals[i] = toLiteral(values[i], charset);
+        }
+        return literals;
+    }
+
+    public static String toLiteral(BindValue bv, String charset) throws UnsupportedEncodingException {
+        if (bv.isNull || bv.value == null) {
+            return "NULL";
+        }
+        Object value = bv.value;
+        if (value instanceof Long) {
+            long l = (Long) value;
+            if (l < 0 && bv.isUnsigned && bv.type == Fields.FIELD_TYPE_LONGLONG) {
+                return BigInteger.valueOf(l).add(UNSIGNED_LONG_MASK).toString();
+            }
+            return Long.toString(l);
+        }
+        if (value instanceof Float || value instanceof Double) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new IllegalArgumentException("Incorrect value '" + value + "' for parameter");
+            }
+            return value.toString();
+        }
+        if (value instanceof String) {
+            String str = (String) value;
+            return isQuotable(str) ? quote(str) : hex(str.getBytes(charset), charset);
+        }
+        byte[] bytes = (byte[]) value;
+        switch (bv.type) {
+        case Fields.FIELD_TYPE_DECIMAL:
+        case Fields.FIELD_TYPE_NEW_DECIMAL:
+            String str = new String(bytes, charset);
+            try {
+                return new BigDecimal(str.trim()).toPlainString();
+            } catch (NumberFormatException e) {
+                return hex(bytes, charset);
+            }
+        case Fields.FIELD_TYPE_TINY_BLOB:
+        case Fields.FIELD_TYPE_MEDIUM_BLOB:
+        case Fields.FIELD_TYPE_LONG_BLOB:
+        case Fields.FIELD_TYPE_BLOB:
+        case Fields.FIELD_TYPE_BIT:
+        case Fields.FIELD_TYPE_GEOMETRY:
+            return hex(bytes);
+        default:
+            return hex(bytes, charset);
+        }
+    }
+
+    /**
+     * @return 字符集为前缀的十六进制字符串，如_utf8 X'616263'，语义与同字符集的引号字符串相同
+     */
+    private static String hex(byte[] bytes, String charset) throws UnsupportedEncodingException {
+        if (!Charset.isSupported(charset)) {
+            throw new UnsupportedEncodingException(charset);
+        }
+        return '_' + charset + ' ' + hex(bytes);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder s = new StringBuilder(bytes.length * 2 + 3);
+        s.append("X'");
+        for (byte b : bytes) {
+            s.append(HEX[(b >>> 4) & 0x0f]).append(HEX[b & 0x0f]);
+        }
+        return s.append('\'').toString();
+    }
+
+    /**
+     * 反斜杠的含义取决于NO_BACKSLASH_ESCAPES，含有反斜杠或NUL的字符串不能用引号形式
+     */
+    private static boolean isQuotable(String str) {
+        return str.indexOf('\\') < 0 && str.indexOf('\0') < 0;
+    }
+
+    /**
+     * 单引号写作两个单引号，两种sql_mode下含义相同
+     */
+    private static String quote(String str) {
+        StringBuilder s = new StringBuilder(str.length() + 8);
+        s.append('\'');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '\'') {
+                s.append('\'');
+            }
+            s.append(c);
+        }
+        return s.append('\'').toString();
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.prepare;
+
+import com.alibaba.cobar.route.PreparedRoute;
+
+/**
+ * 前端连接上的预处理语句
+ * 
+ * @author xianmao.hexm
+ */
+public final class PreparedStatement {
+
+    private final long id;
+    private final String statement;
+    private final int sqlType;
+    private final int[] parameterTypes;
+    private volatile PreparedRoute route;
+    private volatile boolean longData;
+
+    public PreparedStatement(long id, String statement, int sqlType, PreparedRoute route) {
+        this.id = id;
+        this.statement = statement;
+        this.sqlType = sqlType;
+        this.parameterTypes = new int[route.getParameterCount()];
+        this.route = route;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getStatement() {
+        return statement;
+    }
+
+    /**
+     * 语句类型，取值见{@link com.alibaba.cobar.server.parser.ServerParse}
+     */
+    public int getSqlType() {
+        return sqlType;
+    }
+
+    public int getParameterCount() {
+        return parameterTypes.length;
+    }
+
+    /**
+     * 客户端最近一次绑定的参数类型
+     */
+    public int[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public PreparedRoute getRoute() {
+        return route;
+    }
+
+    public void setRoute(PreparedRoute route) {
+        this.route = route;
+    }
+
+    /**
+     * 是否收到过COM_STMT_SEND_LONG_DATA
+     */
+    public boolean isLongData() {
+        return longData;
+    }
+
+    public void setLongData(boolean longData) {
+        this.longData = longData;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append("PreparedStatement[id=")
+                                  .append(id)
+                                  .append(",params=")
+                                  .append(parameterTypes.length)
+                                  .append(",fastRoute=")
+                                  .append(route.isFastRoute())
+                                  .append(",sql=")
+                                  .append(statement)
+                                  .append(']')
+                                  .toString();
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.response;
+
+import java.nio.ByteBuffer;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.FrontendConnection;
+import com.alibaba.cobar.net.packet.EOFPacket;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.net.packet.PreparedOkPacket;
+import com.alibaba.cobar.net.util.PacketUtil;
+import com.alibaba.cobar.server.prepare.PreparedStatement;
+
+/**
+ * COM_STMT_PREPARE的响应。结果集的字段在执行时才能从后端得到，所以这里返回的字段数为0。
+ * 
+ * @author xianmao.hexm
+ */
+public class PreparedStmt {
+
+    public static void response(FrontendConnection c, PreparedStatement pstmt) {
+        byte packetId = 0;
+        ByteBuffer buffer = c.allocate();
+
+        // write prepare ok packet
+        PreparedOkPacket ok = new PreparedOkPacket();
+        ok.packetId = ++packetId;
+        ok.statementId = pstmt.getId();
+        ok.parametersNumber = pstmt.getParameterCount();
+        buffer = ok.write(buffer, c);
+
+        // write parameter field packet
+        if (ok.parametersNumber > 0) {
+            for (int i = 0; i < ok.parametersNumber; i++) {
+                FieldPacket field = PacketUtil.getField("?", Fields.FIELD_TYPE_VAR_STRING);
+                field.packetId = ++packetId;
+                buffer = field.write(buffer, c);
+            }
+            EOFPacket eof = new EOFPacket();
+            eof.packetId = ++packetId;
+            buffer = eof.write(buffer, c);
+        }
+
+        // post write
+        c.write(buffer);
+    }
+
+}
@@ -31,6 +31,7 @@ import org.apache.log4j.Logger;
 import com.alibaba.cobar.CobarConfig;
 import com.alibaba.cobar.CobarServer;
 import com.alibaba.cobar.ErrorCode;
+import com.alibaba.cobar.net.FrontendConnection;
 import com.alibaba.cobar.net.packet.OkPacket;
 import com.alibaba.cobar.route.RouteResultset;
 import com.alibaba.cobar.route.RouteResultsetNode;
@@ -44,13 +45,16 @@ import com.alibaba.cobar.server.mysql.handler.RollbackReleaseHandler;
 import com.alibaba.cobar.server.mysql.handler.SingleNodeHandler;
 import com.alibaba.cobar.server.mysql.handler.Terminatable;
 import com.alibaba.cobar.server.node.MySQLDataNode;
+import com.alibaba.cobar.server.node.StatusIdleStack;
 import com.alibaba.cobar.server.parser.ServerParse;
 
 /**
+ * 基于NIO后端连接的执行会话，等待后端返回时不占用执行线程。
+ * 
  * @author xianmao.hexm 2012-4-12
  * @author <a href="mailto:shuo.qius@alibaba-inc.com">QIU Shuo</a>
  */
-public class ServerNIOSession {
+public class ServerNIOSession implements Session {
     private static final Logger logger = Logger.getLogger(ServerNIOSession.class);
     private final ServerConnection source;
     private final ConcurrentHashMap<RouteResultsetNode, MySQLConnection> target;
@@ -61,14 +65,27 @@ public class ServerNIOSession {
         this.terminating = new AtomicBoolean(false);
     }
 
+    @Override
     public ServerConnection getSource() {
         return source;
     }
 
+    @Override
+    public int getTargetCount() {
+        return target.size();
+    }
+
     public MySQLConnection removeBoundConnection(RouteResultsetNode node) {
         return target.remove(node);
     }
 
+    /**
+     * 仅当node当前绑定的是conn时才解除绑定
+     */
+    public boolean removeBoundConnection(RouteResultsetNode node, MySQLConnection conn) {
+        return target.remove(node, conn);
+    }
+
     public int boundConnectionNum() {
         return target.size();
     }
@@ -174,6 +191,7 @@ public class ServerNIOSession {
     /**
      * {@link ServerConnection#isClosed()} must be true before invoking this
      */
+    @Override
     public void terminate() {
         if (!terminating.compareAndSet(false, true)) {
             return;
@@ -202,7 +220,33 @@ public class ServerNIOSession {
         });
     }
 
+    /**
+     * 撤销执行中的语句：对运行中的后端连接执行KILL QUERY，执行中的handler收到后端的错误后返回给前端。
+     */
+    @Override
+    public void cancel(final FrontendConnection sponsor) {
+        kill(new Runnable() {
+            @Override
+            public void run() {
+                if (sponsor != null) {
+                    OkPacket packet = new OkPacket();
+                    packet.packetId = 1;
+                    packet.affectedRows = 0;
+                    packet.serverStatus = 2;
+                    packet.write(sponsor);
+                }
+            }
+        }, true);
+    }
+
     private void kill(Runnable run) {
+        kill(run, false);
+    }
+
+    /**
+     * @param query 为true时只终止执行中的语句(KILL QUERY)，否则终止后端连接。
+     */
+    private void kill(Runnable run, boolean query) {
         boolean hooked = false;
         AtomicInteger count = null;
         Map<RouteResultsetNode, MySQLConnection> killees = null;
@@ -220,11 +264,16 @@ public class ServerNIOSession {
         }
         if (hooked) {
             for (Entry<RouteResultsetNode, MySQLConnection> en : killees.entrySet()) {
-                KillConnectionHandler kill = new KillConnectionHandler(en.getValue(), this, run, count);
+                KillConnectionHandler kill = new KillConnectionHandler(en.getValue(), query, this, run, count);
                 CobarConfig conf = CobarServer.getInstance().getConfig();
                 MySQLDataNode dn = conf.getDataNodes().get(en.getKey().getName());
                 try {
-                    dn.getConnection(kill, en.getKey());
+                    // KILL须发往语句所在的数据源，且不受连接池大小限制
+                    int i = en.getKey().getReplicaIndex();
+                    if (i == RouteResultsetNode.DEFAULT_REPLICA_INDEX) {
+                        i = dn.getActivedIndex();
+                    }
+                    dn.getDataSources()[i].getConnection(kill, en.getKey(), StatusIdleStack.ANY_STATUS, false);
                 } catch (Exception e) {
                     logger.error("get killer connection failed for " + en.getKey(), e);
                     kill.connectionError(e, null);
@@ -264,6 +313,7 @@ public class ServerNIOSession {
         return source.isClosed();
     }
 
+    @Override
     public void commit() {
         final int initCount = target.size();
         if (initCount <= 0) {
@@ -276,6 +326,7 @@ public class ServerNIOSession {
         commitHandler.commit();
     }
 
+    @Override
     public void rollback() {
         final int initCount = target.size();
         if (initCount <= 0) {
@@ -288,7 +339,13 @@ public class ServerNIOSession {
         rollbackHandler.rollback();
     }
 
-    public void execute(RouteResultset rrs, int type) throws Exception {
+    @Override
+    public void execute(RouteResultset rrs, int type) {
+        execute(rrs, type, false);
+    }
+
+    @Override
+    public void execute(RouteResultset rrs, int type, boolean binary) {
         if (logger.isDebugEnabled()) {
             StringBuilder s = new StringBuilder();
             logger.debug(s.append(source).append(rrs).toString());
@@ -300,14 +357,14 @@ public class ServerNIOSession {
         }
 
         if (nodes.length == 1) {
-            singleNodeHandler = new SingleNodeHandler(nodes[0], this);
+            singleNodeHandler = new SingleNodeHandler(nodes[0], rrs.getFlag(), binary, this);
             singleNodeHandler.execute();
         } else {
             boolean autocommit = source.isAutocommit();
             if (autocommit && isModifySQL(type)) {
                 autocommit = false;
             }
-            multiNodeHandler = new MultiNodeQueryHandler(nodes, autocommit, this);
+            multiNodeHandler = new MultiNodeQueryHandler(rrs, autocommit, binary, this);
             multiNodeHandler.execute();
         }
     }
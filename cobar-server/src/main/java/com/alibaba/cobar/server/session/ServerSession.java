@@ -44,7 +44,7 @@ import com.alibaba.cobar.server.parser.ServerParse;
  * 
  * @author xianmao.hexm
  */
-public final class ServerSession {
+public final class ServerSession implements Session {
 
     private static final Logger logger = Logger.getLogger(ServerSession.class);
 
@@ -64,15 +64,27 @@ public final class ServerSession {
         this.rollbackExecutor = new RollbackExecutor();
     }
 
+    @Override
     public ServerConnection getSource() {
         return source;
     }
 
+    @Override
+    public int getTargetCount() {
+        return target.size();
+    }
+
     public ConcurrentHashMap<RouteResultsetNode, Channel> getTarget() {
         return target;
     }
 
+    @Override
     public void execute(RouteResultset rrs, int type) {
+        execute(rrs, type, false);
+    }
+
+    @Override
+    public void execute(RouteResultset rrs, int type, boolean binary) {
         if (logger.isDebugEnabled()) {
             StringBuilder s = new StringBuilder();
             logger.debug(s.append(source).append(rrs).toString());
@@ -87,17 +99,18 @@ public final class ServerSession {
 
         // 选择执行方式
         if (nodes.length == 1) {
-            singleNodeExecutor.execute(nodes[0], this, rrs.getFlag());
+            singleNodeExecutor.execute(nodes[0], this, rrs.getFlag(), binary);
         } else {
             // 多数据节点，非事务模式下，执行的是可修改数据的SQL，则后端为事务模式。
             boolean autocommit = source.isAutocommit();
             if (autocommit && isModifySQL(type)) {
                 autocommit = false;
             }
-            multiNodeExecutor.execute(nodes, autocommit, this, rrs.getFlag());
+            multiNodeExecutor.execute(rrs, autocommit, this, binary);
         }
     }
 
+    @Override
     public void commit() {
         final int initCount = target.size();
         if (initCount <= 0) {
@@ -109,6 +122,7 @@ public final class ServerSession {
         commitExecutor.commit(null, this, initCount);
     }
 
+    @Override
     public void rollback() {
         rollbackExecutor.rollback(this);
     }
@@ -116,6 +130,7 @@ public final class ServerSession {
     /**
      * 撤销执行中的会话
      */
+    @Override
     public void cancel(FrontendConnection sponsor) {
         //TODO terminate session
         source.writeErrMessage(ErrorCode.ER_QUERY_INTERRUPTED, "Query execution was interrupted");
@@ -131,6 +146,7 @@ public final class ServerSession {
     /**
      * {@link ServerConnection#isClosed()} must be true before invoking this
      */
+    @Override
     public void terminate() {
         // 终止所有正在执行的任务
         kill();
@@ -0,0 +1,71 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.session;
+
+import com.alibaba.cobar.net.FrontendConnection;
+import com.alibaba.cobar.route.RouteResultset;
+import com.alibaba.cobar.server.ServerConnection;
+
+/**
+ * 前端连接与后端数据节点之间的执行会话
+ * 
+ * @author xianmao.hexm
+ */
+public interface Session {
+
+    /**
+     * 取得前端连接
+     */
+    ServerConnection getSource();
+
+    /**
+     * 取得当前绑定的后端连接数
+     */
+    int getTargetCount();
+
+    /**
+     * 执行路由结果
+     */
+    void execute(RouteResultset rrs, int type);
+
+    /**
+     * @param binary 是否以二进制协议返回行数据，用于预处理语句的执行结果
+     */
+    void execute(RouteResultset rrs, int type, boolean binary);
+
+    /**
+     * 提交事务
+     */
+    void commit();
+
+    /**
+     * 回滚事务
+     */
+    void rollback();
+
+    /**
+     * 撤销执行中的语句
+     * 
+     * @param sponsor 发起者为null表示是自己
+     */
+    void cancel(FrontendConnection sponsor);
+
+    /**
+     * 终止会话，{@link ServerConnection#isClosed()}必须已经为true。
+     */
+    void terminate();
+
+}
@@ -15,9 +15,51 @@
  */
 package com.alibaba.cobar.server.statistics;
 
+import com.alibaba.cobar.net.util.StripedCounter;
+
 /**
+ * 数据源计数：执行语句前后端连接的会话状态已一致(命中)或需要SET同步(未命中)的次数；
+ * NIO后端连接与前端连接在同一个处理器(亲和)或不同处理器上执行的次数。
+ * 
  * @author xianmao.hexm 2010-9-30 上午10:47:47
  */
 public final class DataSourceCount {
 
+    private final StripedCounter syncHit = new StripedCounter();
+    private final StripedCounter syncMiss = new StripedCounter();
+    private final StripedCounter affinityHit = new StripedCounter();
+    private final StripedCounter affinityMiss = new StripedCounter();
+
+    public void syncHit() {
+        syncHit.increment();
+    }
+
+    public void syncMiss() {
+        syncMiss.increment();
+    }
+
+    public long getSyncHit() {
+        return syncHit.sum();
+    }
+
+    public long getSyncMiss() {
+        return syncMiss.sum();
+    }
+
+    public void affinityHit() {
+        affinityHit.increment();
+    }
+
+    public void affinityMiss() {
+        affinityMiss.increment();
+    }
+
+    public long getAffinityHit() {
+        return affinityHit.sum();
+    }
+
+    public long getAffinityMiss() {
+        return affinityMiss.sum();
+    }
+
 }
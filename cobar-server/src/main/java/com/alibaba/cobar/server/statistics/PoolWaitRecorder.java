@@ -0,0 +1,71 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 记录从连接池取得连接的等待时间分布，按1，10，100，1000毫秒分段。
+ * 
+ * @author xianmao.hexm
+ */
+public final class PoolWaitRecorder {
+
+    private static final long[] BOUNDS = { 1L, 10L, 100L, 1000L };
+    private static final String[] NAMES = { "<1ms", "<10ms", "<100ms", "<1s", ">=1s" };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * @param millis 等待时间，未等待时为0
+     */
+    public void record(long millis) {
+        int i = 0;
+        while (i < BOUNDS.length && millis >= BOUNDS[i]) {
+            ++i;
+        }
+        counts.incrementAndGet(i);
+    }
+
+    public void timeout() {
+        timeoutCount.incrementAndGet();
+    }
+
+    public long getCount(int i) {
+        return counts.get(i);
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return 如"<1ms:120,<10ms:3,<100ms:0,<1s:0,>=1s:0"
+     */
+    public String get() {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if (i > 0) {
+                s.append(',');
+            }
+            s.append(NAMES[i]).append(':').append(counts.get(i));
+        }
+        return s.toString();
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.channel;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.Isolations;
+import com.alibaba.cobar.server.node.StatusIdleStack;
+
+/**
+ * @author xianmao.hexm
+ */
+public class StatusIdleStackTest extends TestCase {
+
+    private static final int UTF8_RR_AC = StatusIdleStack.status(33, Isolations.REPEATED_READ, true);
+    private static final int UTF8_RC_AC = StatusIdleStack.status(33, Isolations.READ_COMMITTED, true);
+    private static final int GBK_RR_AC = StatusIdleStack.status(28, Isolations.REPEATED_READ, true);
+    private static final int GBK_RC_NOAC = StatusIdleStack.status(28, Isolations.READ_COMMITTED, false);
+
+    public void testExactMatch() {
+        StatusIdleStack<String> stack = new StatusIdleStack<String>();
+        stack.push(UTF8_RR_AC, "utf8");
+        stack.push(GBK_RR_AC, "gbk");
+        Assert.assertEquals(2, stack.size());
+        Assert.assertEquals("utf8", stack.pop(UTF8_RR_AC));
+        Assert.assertEquals("gbk", stack.pop(GBK_RR_AC));
+        Assert.assertNull(stack.pop(GBK_RR_AC));
+        Assert.assertEquals(0, stack.size());
+    }
+
+    public void testNearestMatch() {
+        StatusIdleStack<String> stack = new StatusIdleStack<String>();
+        stack.push(GBK_RC_NOAC, "far");
+        stack.push(UTF8_RC_AC, "near");
+        Assert.assertEquals("near", stack.pop(UTF8_RR_AC));
+        Assert.assertEquals("far", stack.pop(UTF8_RR_AC));
+        Assert.assertNull(stack.pop(StatusIdleStack.ANY_STATUS));
+    }
+
+    public void testMatchMask() {
+        StatusIdleStack<String> stack = new StatusIdleStack<String>();
+        stack.push(UTF8_RC_AC, "tx");
+        stack.push(GBK_RR_AC, "charset");
+        Assert.assertNull(stack.pop(UTF8_RR_AC, StatusIdleStack.MATCH_ALL));
+
+        // 只差字符集的可以取出，事务状态不同的不取
+        Assert.assertEquals("charset", stack.pop(UTF8_RR_AC, StatusIdleStack.MATCH_TX));
+        Assert.assertNull(stack.pop(UTF8_RR_AC, StatusIdleStack.MATCH_TX));
+        Assert.assertEquals("tx", stack.pop(UTF8_RR_AC, StatusIdleStack.MATCH_NONE));
+
+        stack.push(GBK_RC_NOAC, "any");
+        Assert.assertEquals("any", stack.pop(StatusIdleStack.ANY_STATUS, StatusIdleStack.MATCH_ALL));
+        Assert.assertEquals(0, stack.size());
+    }
+
+    public void testDrain() {
+        StatusIdleStack<String> stack = new StatusIdleStack<String>();
+        stack.push(UTF8_RR_AC, "a");
+        stack.push(GBK_RR_AC, "b");
+        stack.push(GBK_RR_AC, "c");
+        Assert.assertEquals(3, stack.drain().size());
+        Assert.assertEquals(0, stack.size());
+        Assert.assertNull(stack.pop(StatusIdleStack.ANY_STATUS));
+    }
+
+}
@@ -15,8 +15,12 @@
  */
 package com.alibaba.cobar.loader;
 
+import java.util.Arrays;
+
+import org.junit.Assert;
 import org.junit.Test;
 
+import com.alibaba.cobar.server.config.DataNodeConfig;
 
 /**
  * @author xianmao.hexm 2011-1-21
@@ -28,4 +32,13 @@ public class SchemaLoaderTest {
         new SchemaLoader();
     }
 
+    @Test
+    public void testReadWeight() {
+        SchemaLoader loader = new SchemaLoader();
+        DataNodeConfig rw = loader.getDataNodes().get("dnTestRw").getConfig();
+        Assert.assertTrue(Arrays.equals(new int[] { 1, 2 }, rw.getReadWeights()));
+        Assert.assertEquals(5L, rw.getMaxReplicaLag());
+        Assert.assertNull(loader.getDataNodes().get("dnTest1").getConfig().getReadWeights());
+    }
+
 }
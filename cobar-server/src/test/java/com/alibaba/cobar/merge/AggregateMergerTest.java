@@ -0,0 +1,90 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.merge;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.route.MergeColumn;
+import com.alibaba.cobar.server.merge.AggregateMerger;
+import com.alibaba.cobar.server.merge.RowDataUtil;
+
+/**
+ * @author xianmao.hexm
+ */
+public class AggregateMergerTest extends TestCase {
+
+    public void testMerge() {
+        List<FieldPacket> fields = new ArrayList<FieldPacket>();
+        fields.add(field(Fields.FIELD_TYPE_LONGLONG, 0));
+        fields.add(field(Fields.FIELD_TYPE_NEW_DECIMAL, 2));
+        fields.add(field(Fields.FIELD_TYPE_DOUBLE, 31));
+        fields.add(field(Fields.FIELD_TYPE_VAR_STRING, 0));
+        fields.add(field(Fields.FIELD_TYPE_LONG, 0));
+        fields.add(field(Fields.FIELD_TYPE_NEW_DECIMAL, 0));
+        MergeColumn[] columns = {
+                new MergeColumn(null, 0, MergeColumn.AGG_COUNT),
+                new MergeColumn(null, 1, MergeColumn.AGG_SUM),
+                new MergeColumn(null, 2, MergeColumn.AGG_SUM),
+                new MergeColumn(null, 3, MergeColumn.AGG_MIN),
+                new MergeColumn(null, 4, MergeColumn.AGG_MAX),
+                new MergeColumn(null, 5, MergeColumn.AGG_SUM) };
+        AggregateMerger merger = AggregateMerger.create(columns, fields);
+        Assert.assertNull(merger.getRow());
+
+        merger.add(OrderedMergerTest.row("3", "1.50", "0.5", "b", "9", null));
+        merger.add(OrderedMergerTest.row("0", null, null, null, null, null));
+        merger.add(OrderedMergerTest.row("9223372036854775807", "2", "2.5", "A", "10", "18446744073709551615"));
+        byte[][] values = RowDataUtil.read(merger.getRow(), columns.length);
+        Assert.assertEquals("9223372036854775810", new String(values[0]));
+        Assert.assertEquals("3.50", new String(values[1]));
+        Assert.assertEquals("3", new String(values[2]));
+        Assert.assertEquals("A", new String(values[3]));
+        Assert.assertEquals("10", new String(values[4]));
+        Assert.assertEquals("18446744073709551615", new String(values[5]));
+
+        Assert.assertNull(AggregateMerger.create(columns, fields.subList(0, 2)));
+    }
+
+    public void testAllNull() {
+        List<FieldPacket> fields = new ArrayList<FieldPacket>();
+        fields.add(field(Fields.FIELD_TYPE_LONGLONG, 0));
+        fields.add(field(Fields.FIELD_TYPE_NEW_DECIMAL, 0));
+        MergeColumn[] columns = {
+                new MergeColumn(null, 0, MergeColumn.AGG_COUNT),
+                new MergeColumn(null, 1, MergeColumn.AGG_SUM) };
+        AggregateMerger merger = AggregateMerger.create(columns, fields);
+        merger.add(OrderedMergerTest.row("0", null));
+        merger.add(OrderedMergerTest.row("0", null));
+        byte[][] values = RowDataUtil.read(merger.getRow(), columns.length);
+        Assert.assertEquals("0", new String(values[0]));
+        Assert.assertNull(values[1]);
+    }
+
+    private static FieldPacket field(int type, int decimals) {
+        FieldPacket field = new FieldPacket();
+        field.type = type;
+        field.decimals = (byte) decimals;
+        field.charsetIndex = 33;
+        return field;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.merge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.route.CountDistinctPlan;
+import com.alibaba.cobar.server.merge.DistinctCounter;
+import com.alibaba.cobar.server.merge.RowDataUtil;
+
+/**
+ * @author xianmao.hexm
+ */
+public class DistinctCounterTest extends TestCase {
+
+    public void testExact() throws IOException {
+        List<byte[]> rows = new ArrayList<byte[]>();
+        rows.add(OrderedMergerTest.row("a", "1"));
+        rows.add(OrderedMergerTest.row("A", "1"));
+        rows.add(OrderedMergerTest.row("a", "2"));
+        rows.add(OrderedMergerTest.row("b", "1"));
+        rows.add(OrderedMergerTest.row(null, "1"));
+        rows.add(OrderedMergerTest.row("b", null));
+        rows.add(OrderedMergerTest.row("b", "1"));
+        Assert.assertEquals(3L, count(false, 1024 * 1024, rows));
+    }
+
+    public void testSpill() throws IOException {
+        List<byte[]> rows = new ArrayList<byte[]>();
+        for (int n = 0; n < 2; ++n) {
+            for (int i = 0; i < 1000; ++i) {
+                rows.add(OrderedMergerTest.row("v" + i, String.valueOf(i % 7)));
+            }
+        }
+        Assert.assertEquals(1000L, count(false, 4096, rows));
+    }
+
+    public void testApproximate() throws IOException {
+        List<byte[]> rows = new ArrayList<byte[]>();
+        for (int i = 0; i < 100000; ++i) {
+            rows.add(OrderedMergerTest.row("v" + i, "0"));
+            rows.add(OrderedMergerTest.row("v" + i, "0"));
+        }
+        long count = count(true, 0, rows);
+        Assert.assertTrue(String.valueOf(count), Math.abs(count - 100000) < 2000);
+    }
+
+    private static long count(boolean approximate, int memoryLimit, List<byte[]> rows) throws IOException {
+        List<FieldPacket> fields = new ArrayList<FieldPacket>();
+        fields.add(field(Fields.FIELD_TYPE_VAR_STRING));
+        fields.add(field(Fields.FIELD_TYPE_LONGLONG));
+        CountDistinctPlan plan = new CountDistinctPlan("COUNT(DISTINCT name, type)", 2, approximate);
+        final List<String> result = new ArrayList<String>();
+        DistinctCounter counter = new DistinctCounter(plan, fields, memoryLimit) {
+            @Override
+            protected void output(byte[] row) {
+                result.add(new String(RowDataUtil.read(row, 1)[0]));
+            }
+        };
+        Assert.assertEquals(1, counter.getFields().size());
+        Assert.assertEquals(Fields.FIELD_TYPE_LONGLONG, counter.getFields().get(0).type);
+        try {
+            for (byte[] row : rows) {
+                counter.add(row);
+            }
+            counter.finish();
+        } finally {
+            counter.close();
+        }
+        Assert.assertEquals(1, result.size());
+        return Long.parseLong(result.get(0));
+    }
+
+    private static FieldPacket field(int type) {
+        FieldPacket field = new FieldPacket();
+        field.type = type;
+        field.charsetIndex = 33;
+        return field;
+    }
+
+}
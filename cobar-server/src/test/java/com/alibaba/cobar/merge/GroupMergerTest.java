@@ -0,0 +1,137 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.merge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.route.GroupByPlan;
+import com.alibaba.cobar.route.MergeColumn;
+import com.alibaba.cobar.route.MergeCondition;
+import com.alibaba.cobar.server.merge.GroupMerger;
+import com.alibaba.cobar.server.merge.RowDataUtil;
+
+/**
+ * @author xianmao.hexm
+ */
+public class GroupMergerTest extends TestCase {
+    /** SELECT name, COUNT(*), AVG(price) ... GROUP BY name，AVG下推为SUM(price)和COUNT(price) */
+    private static final MergeColumn[] COLUMNS = {
+            new MergeColumn("name", 0, MergeColumn.AGG_ANY),
+            new MergeColumn("COUNT(*)", 1, MergeColumn.AGG_COUNT),
+            new MergeColumn("AVG(price)", 2, MergeColumn.AGG_AVG, 3) };
+
+    public void testMerge() throws IOException {
+        List<String[]> rows = merge(plan(null, null, 0, -1), 100, "a", "2", "3.00", "2", "B", "1", "5.00", "1", "A",
+                "1", "1.50", "1", "b", "1", null, "0");
+        Assert.assertEquals(2, rows.size());
+        assertRow(rows.get(0), "a", "3", "1.500000");
+        assertRow(rows.get(1), "B", "2", "5.000000");
+    }
+
+    public void testHavingOrderLimit() throws IOException {
+        String[] data = { "a", "2", "3.00", "2", "b", "1", "5.00", "1", "c", "1", "1.00", "1", "c", "2", "2.00", "2" };
+        MergeCondition having = MergeCondition.compare(MergeCondition.GT, 1, 2L);
+        List<String[]> rows = merge(plan(having, null, 0, -1), 100, data);
+        Assert.assertEquals(1, rows.size());
+        assertRow(rows.get(0), "c", "3", "1.000000");
+
+        MergeColumn[] order = { new MergeColumn(null, 2, MergeColumn.ORDER_DESC) };
+        rows = merge(plan(null, order, 1, 1), 100, data);
+        Assert.assertEquals(1, rows.size());
+        assertRow(rows.get(0), "a", "2", "1.500000");
+    }
+
+    public void testSpill() throws IOException {
+        List<String> data = new ArrayList<String>();
+        for (int n = 0; n < 2; ++n) {
+            for (int i = 0; i < 50; ++i) {
+                String[] row = { "k" + (100 + i), "1", "1.00", "1" };
+                for (String s : row) {
+                    data.add(s);
+                }
+            }
+        }
+        String[] values = data.toArray(new String[data.size()]);
+        List<String[]> rows = merge(plan(null, null, 0, -1), 4, values);
+        Assert.assertEquals(50, rows.size());
+        for (int i = 0; i < 50; ++i) {
+            assertRow(rows.get(i), "k" + (100 + i), "2", "1.000000");
+        }
+        rows = merge(plan(null, null, 10, 5), 4, values);
+        Assert.assertEquals(5, rows.size());
+        assertRow(rows.get(0), "k110", "2", "1.000000");
+        assertRow(rows.get(4), "k114", "2", "1.000000");
+    }
+
+    private static GroupByPlan plan(MergeCondition having, MergeColumn[] orderBy, long offset, long size) {
+        if (orderBy == null) {
+            orderBy = new MergeColumn[] { new MergeColumn(null, 0, MergeColumn.ORDER_ASC) };
+        }
+        return new GroupByPlan(new int[] { 0 }, COLUMNS, COLUMNS.length, having, orderBy, offset, size);
+    }
+
+    private static List<String[]> merge(GroupByPlan plan, int spillThreshold, String... values) throws IOException {
+        List<FieldPacket> fields = new ArrayList<FieldPacket>();
+        fields.add(field(Fields.FIELD_TYPE_VAR_STRING, 0));
+        fields.add(field(Fields.FIELD_TYPE_LONGLONG, 0));
+        fields.add(field(Fields.FIELD_TYPE_NEW_DECIMAL, 2));
+        fields.add(field(Fields.FIELD_TYPE_LONGLONG, 0));
+        final List<String[]> rows = new ArrayList<String[]>();
+        GroupMerger merger = new GroupMerger(plan, fields, spillThreshold) {
+            @Override
+            protected void output(byte[] row) {
+                byte[][] data = RowDataUtil.read(row, COLUMNS.length);
+                String[] values = new String[data.length];
+                for (int i = 0; i < data.length; ++i) {
+                    values[i] = data[i] == null ? null : new String(data[i]);
+                }
+                rows.add(values);
+            }
+        };
+        Assert.assertEquals(6, merger.getFields().get(2).decimals);
+        try {
+            for (int i = 0; i < values.length; i += 4) {
+                merger.add(OrderedMergerTest.row(values[i], values[i + 1], values[i + 2], values[i + 3]));
+            }
+            merger.finish();
+        } finally {
+            merger.close();
+        }
+        return rows;
+    }
+
+    private static void assertRow(String[] row, String... expected) {
+        for (int i = 0; i < expected.length; ++i) {
+            Assert.assertEquals(expected[i], row[i]);
+        }
+    }
+
+    private static FieldPacket field(int type, int decimals) {
+        FieldPacket field = new FieldPacket();
+        field.type = type;
+        field.decimals = (byte) decimals;
+        field.charsetIndex = 33;
+        return field;
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.merge;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.route.MergeColumn;
+import com.alibaba.cobar.server.merge.OrderedMerger;
+import com.alibaba.cobar.server.merge.RowDataUtil;
+import com.alibaba.cobar.server.merge.SortKey;
+
+/**
+ * @author xianmao.hexm
+ */
+public class OrderedMergerTest extends TestCase {
+
+    private List<FieldPacket> fields;
+    private List<String> output;
+
+    @Override
+    protected void setUp() throws Exception {
+        fields = new ArrayList<FieldPacket>();
+        fields.add(field("id", Fields.FIELD_TYPE_LONGLONG));
+        fields.add(field("name", Fields.FIELD_TYPE_VAR_STRING));
+        output = new ArrayList<String>();
+    }
+
+    public void testMerge() {
+        MergeColumn[] orderBy = { new MergeColumn("id", -1, MergeColumn.ORDER_ASC) };
+        OrderedMerger merger = newMerger(orderBy, 3, 4);
+        Assert.assertFalse(merger.offer("a", row("1", "a1")));
+        Assert.assertFalse(merger.offer("a", row("5", "a5")));
+        Assert.assertFalse(merger.offer("b", row("2", "b2")));
+        // c没有数据时不能输出
+        Assert.assertTrue(output.isEmpty());
+        Assert.assertFalse(merger.offer("c", row("10", "c10")));
+        Assert.assertEquals("[a1, b2]", output.toString());
+        merger.finish("b");
+        Assert.assertEquals("[a1, b2, a5]", output.toString());
+        merger.finish("a");
+        Assert.assertEquals("[a1, b2, a5, c10]", output.toString());
+        merger.finish("c");
+        Assert.assertEquals("[a1, b2, a5, c10]", output.toString());
+    }
+
+    public void testDescAndNull() {
+        MergeColumn[] orderBy = { new MergeColumn(null, 1, MergeColumn.ORDER_DESC) };
+        OrderedMerger merger = newMerger(orderBy, 2, 4);
+        merger.offer("a", row("1", "b"));
+        merger.offer("a", row("2", null));
+        merger.offer("b", row("3", "C"));
+        merger.offer("b", row("4", "a"));
+        merger.finish("a");
+        merger.finish("b");
+        Assert.assertEquals("[C, b, a, null]", output.toString());
+    }
+
+    public void testWindow() {
+        MergeColumn[] orderBy = { new MergeColumn("id", 0, MergeColumn.ORDER_ASC) };
+        OrderedMerger merger = newMerger(orderBy, 2, 4);
+        final int[] resumed = new int[1];
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                ++resumed[0];
+            }
+        };
+        for (int i = 1; i < 4; ++i) {
+            Assert.assertFalse(merger.offer("a", row(String.valueOf(i), "a" + i)));
+        }
+        Assert.assertTrue(merger.offer("a", row("4", "a4")));
+        merger.onAvailable("a", task);
+        Assert.assertEquals(0, resumed[0]);
+
+        // b的数据使a的窗口降到一半
+        merger.offer("b", row("3", "b3"));
+        Assert.assertEquals("[a1, a2, a3, b3]", output.toString());
+        Assert.assertEquals(1, resumed[0]);
+
+        Assert.assertFalse(merger.offer("b", row("5", "b5")));
+        Assert.assertEquals("[a1, a2, a3, b3, a4]", output.toString());
+        merger.onAvailable("a", task);
+        Assert.assertEquals(2, resumed[0]);
+    }
+
+    public void testAbort() {
+        MergeColumn[] orderBy = { new MergeColumn("id", -1, MergeColumn.ORDER_ASC) };
+        OrderedMerger merger = newMerger(orderBy, 2, 1);
+        final int[] resumed = new int[1];
+        Assert.assertTrue(merger.offer("a", row("1", "a1")));
+        merger.onAvailable("a", new Runnable() {
+            @Override
+            public void run() {
+                ++resumed[0];
+            }
+        });
+        merger.abort();
+        Assert.assertEquals(1, resumed[0]);
+        Assert.assertFalse(merger.offer("a", row("2", "a2")));
+        merger.finish("b");
+        Assert.assertTrue(output.isEmpty());
+    }
+
+    public void testSortKey() {
+        Assert.assertNull(SortKey.create(new MergeColumn[] { new MergeColumn("x", -1, MergeColumn.ORDER_ASC) },
+                fields));
+        fields.get(0).orgName = "member_id".getBytes();
+        fields.get(0).name = "mid".getBytes();
+        Assert.assertEquals(0, RowDataUtil.indexOf(fields, new MergeColumn("MEMBER_ID", -1, MergeColumn.ORDER_ASC)));
+        SortKey key = SortKey.create(new MergeColumn[] { new MergeColumn("mid", -1, MergeColumn.ORDER_ASC) }, fields);
+        Assert.assertTrue(key.compare(key.getKey(row("9", "")), key.getKey(row("10", ""))) < 0);
+        Assert.assertTrue(key.compare(key.getKey(row("18446744073709551615", "")), key.getKey(row("10", ""))) > 0);
+    }
+
+    private OrderedMerger newMerger(MergeColumn[] orderBy, int shards, int window) {
+        SortKey key = SortKey.create(orderBy, fields);
+        Assert.assertNotNull(key);
+        return new OrderedMerger(key, shards, window) {
+            @Override
+            protected void output(byte[] row) {
+                output.add(String.valueOf(values(row)[1]));
+            }
+        };
+    }
+
+    private static FieldPacket field(String name, int type) {
+        FieldPacket field = new FieldPacket();
+        field.name = name.getBytes();
+        field.type = type;
+        field.charsetIndex = 33;
+        return field;
+    }
+
+    private static String[] values(byte[] row) {
+        byte[][] values = RowDataUtil.read(row, 2);
+        String[] s = new String[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            s[i] = values[i] == null ? null : new String(values[i]);
+        }
+        return s;
+    }
+
+    /**
+     * 生成文本协议的行数据包，列值均小于251字节。
+     */
+    static byte[] row(String... values) {
+        int size = 0;
+        for (String v : values) {
+            size += v == null ? 1 : 1 + v.getBytes().length;
+        }
+        byte[] row = new byte[4 + size];
+        row[0] = (byte) size;
+        row[1] = (byte) (size >>> 8);
+        row[2] = (byte) (size >>> 16);
+        int pos = 4;
+        for (String v : values) {
+            if (v == null) {
+                row[pos++] = (byte) 251;
+            } else {
+                byte[] b = v.getBytes();
+                row[pos++] = (byte) b.length;
+                System.arraycopy(b, 0, row, pos, b.length);
+                pos += b.length;
+            }
+        }
+        return row;
+    }
+
+}
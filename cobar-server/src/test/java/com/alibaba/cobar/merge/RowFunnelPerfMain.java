@@ -0,0 +1,172 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.merge;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.alibaba.cobar.net.buffer.PacketSlice;
+import com.alibaba.cobar.server.merge.RowFunnel;
+
+/**
+ * 多节点行数据汇聚的吞吐量：每行加锁写入前端缓存与按块经{@link RowFunnel}交付的对比。
+ * 
+ * @author xianmao.hexm
+ */
+public class RowFunnelPerfMain {
+    private static final int TOTAL_ROWS = 4 * 1024 * 1024;
+    private static final int ROW_SIZE = 100;
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private byte packetId;
+
+    public static void main(String[] args) throws InterruptedException {
+        RowFunnelPerfMain test = new RowFunnelPerfMain();
+        // 预热
+        test.run(4, false);
+        test.run(4, true);
+        System.out.println("shards\tlock(rows/s)\tfunnel(rows/s)");
+        for (int shards = 1; shards <= 64; shards <<= 1) {
+            long locked = test.run(shards, false);
+            long funneled = test.run(shards, true);
+            System.out.println(shards + "\t" + locked + "\t" + funneled);
+        }
+    }
+
+    private long run(int shards, final boolean funneled) throws InterruptedException {
+        final int rows = TOTAL_ROWS / shards;
+        final RowFunnel funnel = new RowFunnel();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(shards);
+        for (int i = 0; i < shards; ++i) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (funneled) {
+                        produce(funnel, rows);
+                    } else {
+                        produce(rows);
+                    }
+                    end.countDown();
+                }
+            }.start();
+        }
+        long t1 = System.nanoTime();
+        start.countDown();
+        end.await();
+        drain(funnel);
+        long t2 = System.nanoTime();
+        return (long) rows * shards * 1000000000L / (t2 - t1);
+    }
+
+    /**
+     * 原有方式：持有锁接收并写入每一行
+     */
+    private void produce(int rows) {
+        for (int i = 0; i < rows; ++i) {
+            lock.lock();
+            try {
+                write(receive(i));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 按块交付，取得锁的线程统一写入
+     */
+    private void produce(RowFunnel funnel, int rows) {
+        RowFunnel.Chunk chunk = new RowFunnel.Chunk(ByteBuffer.allocate(CHUNK_SIZE), null);
+        for (int i = 0; i < rows; ++i) {
+            byte[] row = receive(i);
+            if (!chunk.add(row)) {
+                offer(funnel, chunk);
+                chunk = new RowFunnel.Chunk(ByteBuffer.allocate(CHUNK_SIZE), null);
+                chunk.add(row);
+            }
+        }
+        offer(funnel, chunk);
+    }
+
+    private void offer(RowFunnel funnel, RowFunnel.Chunk chunk) {
+        funnel.offer(chunk);
+        while (!funnel.isEmpty() && lock.tryLock()) {
+            try {
+                drain0(funnel);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 模拟从后端接收并复制一行数据
+     */
+    private static byte[] receive(int seed) {
+        byte[] row = new byte[ROW_SIZE];
+        int x = seed | 1;
+        for (int i = 0; i < ROW_SIZE; ++i) {
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            row[i] = (byte) x;
+        }
+        return row;
+    }
+
+    private void drain(RowFunnel funnel) {
+        lock.lock();
+        try {
+            drain0(funnel);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain0(RowFunnel funnel) {
+        for (RowFunnel.Chunk c = funnel.poll(); c != null; c = c.next()) {
+            for (int i = 0, n = c.count(); i < n; ++i) {
+                PacketSlice row = c.get(i);
+                row.set(3, ++packetId);
+                if (buffer.remaining() < row.length()) {
+                    buffer.clear();
+                }
+                row.writeTo(buffer, 0, row.length());
+            }
+        }
+    }
+
+    /**
+     * 模拟写入前端缓存，缓存满时清空
+     */
+    private void write(byte[] row) {
+        row[3] = ++packetId;
+        if (buffer.remaining() < row.length) {
+            buffer.clear();
+        }
+        buffer.put(row);
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.merge;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.net.buffer.PacketSlice;
+import com.alibaba.cobar.net.packet.BinaryPacket;
+import com.alibaba.cobar.server.merge.RowFunnel;
+
+/**
+ * @author xianmao.hexm
+ */
+public class RowFunnelTest extends TestCase {
+
+    public void testOrder() throws InterruptedException {
+        final int producers = 8;
+        final int chunks = 2000;
+        final RowFunnel funnel = new RowFunnel();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; ++p) {
+            final byte id = (byte) p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < chunks; ++i) {
+                        RowFunnel.Chunk chunk = new RowFunnel.Chunk(ByteBuffer.allocate(6), null);
+                        chunk.add(new byte[] { id, (byte) (i >>> 8), (byte) i });
+                        chunk.add(new byte[] { id, (byte) (i >>> 8), (byte) i });
+                        funnel.offer(chunk);
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        start.countDown();
+
+        int[] next = new int[producers];
+        int rows = 0;
+        boolean alive = true;
+        while (alive || !funnel.isEmpty()) {
+            alive = false;
+            for (Thread t : threads) {
+                alive |= t.isAlive();
+            }
+            for (RowFunnel.Chunk c = funnel.poll(); c != null; c = c.next()) {
+                Assert.assertEquals(2, c.count());
+                Assert.assertEquals(6, c.size());
+                PacketSlice row = c.get(0);
+                int seq = ((row.get(1) & 0xff) << 8) | (row.get(2) & 0xff);
+                Assert.assertEquals(next[row.get(0)]++, seq);
+                rows += c.count();
+            }
+        }
+        Assert.assertEquals(producers * chunks * 2, rows);
+        Assert.assertNull(funnel.poll());
+    }
+
+    public void testChunkFull() {
+        RowFunnel.Chunk chunk = new RowFunnel.Chunk(ByteBuffer.allocate(11), null);
+        BinaryPacket bin = new BinaryPacket();
+        bin.packetId = 5;
+        bin.data = new byte[] { 1, 2 };
+        Assert.assertTrue(chunk.add(bin));
+        Assert.assertTrue(chunk.add(PacketSlice.wrap(new byte[] { 1, 0, 0, 6, 3 })));
+        Assert.assertFalse(chunk.add(new byte[] { 0 }));
+        Assert.assertEquals(2, chunk.count());
+        Assert.assertEquals(11, chunk.size());
+
+        PacketSlice row = chunk.get(0);
+        Assert.assertEquals(6, row.length());
+        Assert.assertEquals(2, row.get(0));
+        Assert.assertEquals(5, row.get(3));
+        Assert.assertEquals(2, row.get(5));
+        row = chunk.get(1);
+        Assert.assertEquals(5, row.length());
+        Assert.assertEquals(6, row.get(3));
+        Assert.assertEquals(3, row.get(4));
+    }
+
+}
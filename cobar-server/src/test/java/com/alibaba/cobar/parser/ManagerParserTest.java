@@ -91,6 +91,9 @@ public class ManagerParserTest {
                             0xff & ManagerParseShow.parse("show @@DATANODE WHERE schema =1", 5));
         Assert.assertEquals(ManagerParseShow.DATANODE_WHERE,
                             0xff & ManagerParseShow.parse("show @@DATANODE WHERE SCHEMA= 1", 5));
+        Assert.assertEquals(ManagerParseShow.DATANODE_INIT, ManagerParseShow.parse("show @@datanode.init", 5));
+        Assert.assertEquals(ManagerParseShow.DATANODE_INIT, ManagerParseShow.parse("SHOW @@DATANODE.INIT;", 5));
+        Assert.assertEquals(ManagerParseShow.OTHER, ManagerParseShow.parse("show @@datanode.initx", 5));
     }
 
     @Test
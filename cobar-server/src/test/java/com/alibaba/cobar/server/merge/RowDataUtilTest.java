@@ -0,0 +1,73 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.util.Collections;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.route.MergeColumn;
+
+/**
+ * @author xianmao.hexm
+ */
+public class RowDataUtilTest extends TestCase {
+
+    private static FieldPacket varchar(int charsetIndex) {
+        FieldPacket field = new FieldPacket();
+        field.name = "name".getBytes();
+        field.type = Fields.FIELD_TYPE_VAR_STRING;
+        field.charsetIndex = charsetIndex;
+        return field;
+    }
+
+    private static int compare(FieldPacket field, String s1, String s2) {
+        MergeColumn[] orderBy = { new MergeColumn("name", 0, MergeColumn.ORDER_ASC) };
+        SortKey key = SortKey.create(orderBy, Collections.singletonList(field));
+        byte[] r1 = RowDataUtil.toPacket(new byte[][] { s1.getBytes() });
+        byte[] r2 = RowDataUtil.toPacket(new byte[][] { s2.getBytes() });
+        return key.compare(key.getKey(r1), key.getKey(r2));
+    }
+
+    public void testCaseInsensitive() {
+        // utf8_general_ci
+        FieldPacket field = varchar(33);
+        Assert.assertNotNull(RowDataUtil.getCharset(field));
+        Assert.assertTrue(compare(field, "a", "B") < 0);
+        Assert.assertEquals(0, compare(field, "abc", "ABC"));
+    }
+
+    public void testBinaryCollation() {
+        // utf8_bin：大写字母排在小写字母之前
+        FieldPacket field = varchar(83);
+        Assert.assertNull(RowDataUtil.getCharset(field));
+        Assert.assertTrue(compare(field, "a", "B") > 0);
+        Assert.assertTrue(compare(field, "abc", "ABC") > 0);
+
+        // utf8mb4_bin, utf8mb4_0900_bin
+        Assert.assertNull(RowDataUtil.getCharset(varchar(46)));
+        Assert.assertNull(RowDataUtil.getCharset(varchar(309)));
+    }
+
+    public void testUnknownCollation() {
+        // utf8mb4_unicode_ci不在字符集表中，按字节比较
+        Assert.assertNull(RowDataUtil.getCharset(varchar(224)));
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.merge;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.net.packet.FieldPacket;
+import com.alibaba.cobar.route.MergeColumn;
+import com.alibaba.cobar.route.RouteResultset;
+
+/**
+ * @author xianmao.hexm
+ */
+public class RowLimitTest extends TestCase {
+
+    public void testUnsortable() {
+        // select name from t order by id limit 100, 10：排序列不在结果集中，各节点执行原语句
+        RouteResultset rrs = new RouteResultset("select name from t order by id limit 100, 10");
+        rrs.setLimitSize(10L);
+        rrs.setOrderBy(new MergeColumn[] { new MergeColumn("id", -1, MergeColumn.ORDER_ASC) });
+        List<FieldPacket> fields = new ArrayList<FieldPacket>();
+        FieldPacket name = new FieldPacket();
+        name.name = "name".getBytes();
+        fields.add(name);
+        Assert.assertNull(SortKey.create(rrs.getOrderBy(), fields));
+
+        // 无法归并时按到达顺序输出，仍只返回LIMIT行
+        RowLimit rows = new RowLimit(rrs);
+        int accepted = 0;
+        for (int i = 0; i < 4 * 10; ++i) {
+            if (rows.accept()) {
+                ++accepted;
+            }
+        }
+        Assert.assertEquals(10, accepted);
+        Assert.assertTrue(rows.isReached());
+    }
+
+    public void testOffset() {
+        RouteResultset rrs = new RouteResultset("select id from t order by id limit 3, 2");
+        rrs.setLimitSize(2L);
+        rrs.setLimitOffset(3L);
+        RowLimit rows = new RowLimit(rrs);
+        boolean[] expected = { false, false, false, true, true, false };
+        for (boolean b : expected) {
+            Assert.assertEquals(b, rows.accept());
+        }
+        Assert.assertTrue(rows.isReached());
+    }
+
+    public void testMerged() {
+        // 按列聚合的结果不按节点的行数截断
+        RouteResultset rrs = new RouteResultset("select count(*) from t limit 1");
+        rrs.setLimitSize(1L);
+        rrs.setAggregates(new MergeColumn[] { new MergeColumn(null, 0, MergeColumn.AGG_COUNT) });
+        RowLimit rows = new RowLimit(rrs);
+        for (int i = 0; i < 4; ++i) {
+            Assert.assertTrue(rows.accept());
+        }
+        Assert.assertFalse(rows.isReached());
+
+        rrs = new RouteResultset("select id from t");
+        rows = new RowLimit(rrs);
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertTrue(rows.accept());
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.mysql;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.Isolations;
+import com.alibaba.cobar.net.NIOProcessor;
+import com.alibaba.cobar.net.buffer.BufferQueue;
+import com.alibaba.cobar.route.RouteResultsetNode;
+import com.alibaba.cobar.server.mysql.MySQLConnection.StatusSync;
+import com.alibaba.cobar.server.node.StatusIdleStack;
+
+/**
+ * @author xianmao.hexm
+ */
+public class StatusSyncTest extends TestCase {
+
+    private static final int LATIN1 = 8;
+    private static final int UTF8 = 33;
+
+    private Selector selector;
+    private SocketChannel channel;
+    private BufferQueue writeQueue;
+    private MySQLConnection conn;
+
+    @Override
+    protected void setUp() throws Exception {
+        selector = Selector.open();
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        writeQueue = new BufferQueue(16);
+        conn = new MySQLConnection(channel);
+        conn.setProcessor(new NIOProcessor("test", 64 * 1024, 4096, 0, 0));
+        conn.setWriteQueue(writeQueue);
+        conn.register(selector);
+        conn.setCharsetIndex(LATIN1);
+        conn.setCharset("latin1");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        channel.close();
+        selector.close();
+    }
+
+    private StatusSync newSync(int charsetIndex, int txIsolation, boolean autocommit) {
+        RouteResultsetNode rrn = new RouteResultsetNode("dn", "select 1");
+        return new StatusSync(conn, rrn, charsetIndex, txIsolation, autocommit);
+    }
+
+    /**
+     * @return 一次写出的缓存中的各条命令
+     */
+    private List<String> written() {
+        ByteBuffer buffer = writeQueue.poll();
+        Assert.assertNotNull(buffer);
+        buffer.flip();
+        List<String> cmds = new ArrayList<String>();
+        while (buffer.hasRemaining()) {
+            int len = (buffer.get() & 0xff) | ((buffer.get() & 0xff) << 8) | ((buffer.get() & 0xff) << 16);
+            buffer.get();
+            byte[] b = new byte[len];
+            buffer.get(b);
+            cmds.add(new String(b, 1, len - 1));
+        }
+        return cmds;
+    }
+
+    public void testUpdateOrder() throws Exception {
+        StatusSync sync = newSync(UTF8, Isolations.READ_COMMITTED, false);
+        Assert.assertFalse(sync.isSync());
+
+        // 每条事务相关的设置收到OK后才写出下一条
+        sync.execute();
+        Assert.assertEquals("[SET SESSION TRANSACTION ISOLATION LEVEL READ COMMITTED]", written().toString());
+        Assert.assertNull(writeQueue.poll());
+        sync.update();
+        Assert.assertEquals("[SET autocommit=0]", written().toString());
+        Assert.assertFalse(sync.isPipelined());
+
+        // 字符集设置与执行语句一次写出
+        sync.update();
+        Assert.assertEquals("[SET names utf8, select 1]", written().toString());
+        Assert.assertTrue(sync.isPipelined());
+        Assert.assertFalse(sync.isExecuted());
+
+        // 字符集设置的OK之后的响应属于执行语句
+        sync.update();
+        Assert.assertTrue(sync.isExecuted());
+        Assert.assertNull(writeQueue.poll());
+        Assert.assertEquals(StatusIdleStack.status(UTF8, Isolations.READ_COMMITTED, false), conn.getSessionStatus());
+    }
+
+    public void testAutocommitOnly() throws Exception {
+        StatusSync sync = newSync(LATIN1, 0, false);
+        sync.execute();
+        Assert.assertEquals("[SET autocommit=0]", written().toString());
+        sync.update();
+        Assert.assertEquals("[select 1]", written().toString());
+        Assert.assertFalse(sync.isPipelined());
+        Assert.assertTrue(sync.isExecuted());
+        Assert.assertFalse(conn.isAutocommit());
+    }
+
+    public void testCharsetOnly() throws Exception {
+        StatusSync sync = newSync(UTF8, 0, true);
+        sync.execute();
+        Assert.assertEquals("[SET names utf8, select 1]", written().toString());
+        Assert.assertTrue(sync.isPipelined());
+        sync.update();
+        Assert.assertTrue(sync.isExecuted());
+        Assert.assertEquals("utf8", conn.getCharset());
+    }
+
+    public void testInSync() throws Exception {
+        StatusSync sync = newSync(LATIN1, 0, true);
+        Assert.assertTrue(sync.isSync());
+        sync.execute();
+        Assert.assertEquals("[select 1]", written().toString());
+        Assert.assertTrue(sync.isExecuted());
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.node;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.server.config.DataNodeConfig;
+import com.alibaba.cobar.server.config.DataSourceConfig;
+
+/**
+ * @author xianmao.hexm
+ */
+public class DataNodeInitializerTest extends TestCase {
+
+    /** 提交的任务由测试线程按需执行 */
+    private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            tasks.offer(task);
+        }
+    };
+    private volatile boolean fail;
+    private MySQLDataNode node;
+    private MySQLDataSource source;
+
+    @Override
+    protected void setUp() throws Exception {
+        DataNodeConfig dnc = new DataNodeConfig();
+        dnc.setName("dn");
+        dnc.setWaitTimeout(50L);
+        node = new MySQLDataNode(dnc);
+        DataSourceConfig dsc = new DataSourceConfig();
+        dsc.setName("ds");
+        source = new MySQLDataSource(node, 0, dsc, 4, new ChannelFactory() {
+            @Override
+            public Channel make(MySQLDataSource dataSource) {
+                return new TestChannel(dataSource, fail ? new Exception("connect refused") : null);
+            }
+        });
+        node.setSources(new MySQLDataSource[] { source });
+    }
+
+    private DataNodeInitializer newInitializer() {
+        return new DataNodeInitializer("test", Collections.singletonMap("dn", node), null, executor);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private int status(DataNodeInitializer init) {
+        return init.getProgresses().get(0).getStatus();
+    }
+
+    public void testTimeout() {
+        DataNodeInitializer init = newInitializer();
+        Assert.assertFalse(init.init(10L));
+        Assert.assertEquals(DataNodeInitializer.RUNNING, status(init));
+        Assert.assertEquals(Collections.singletonList("dn"), init.getFailures());
+
+        // 超时后在后台继续完成
+        runTasks();
+        Assert.assertEquals(DataNodeInitializer.SUCCESS, status(init));
+        Assert.assertTrue(init.getFailures().isEmpty());
+        Assert.assertEquals(1, source.getIdleCount());
+    }
+
+    public void testRetry() {
+        fail = true;
+        DataNodeInitializer init = newInitializer();
+        init.init(0L);
+        runTasks();
+        Assert.assertEquals(DataNodeInitializer.FAILURE, status(init));
+
+        fail = false;
+        init.retry();
+        Assert.assertEquals(DataNodeInitializer.RUNNING, status(init));
+        Assert.assertEquals(1, init.getProgresses().get(0).getRetry());
+
+        // 进行中的节点不重复提交
+        init.retry();
+        Assert.assertEquals(1, tasks.size());
+        runTasks();
+        Assert.assertEquals(DataNodeInitializer.SUCCESS, status(init));
+        Assert.assertTrue(init.getFailures().isEmpty());
+    }
+
+    public void testCancelRunning() {
+        DataNodeInitializer init = newInitializer();
+        init.init(0L);
+        init.cancel();
+        Assert.assertEquals(DataNodeInitializer.RUNNING, status(init));
+
+        // 取消时尚未完成的节点在完成后释放连接
+        runTasks();
+        Assert.assertEquals(DataNodeInitializer.CANCELLED, status(init));
+        Assert.assertTrue(init.getProgresses().get(0).isUnfinished());
+        Assert.assertEquals(0, source.getIdleCount());
+
+        // 取消后不再重试
+        init.retry();
+        Assert.assertTrue(tasks.isEmpty());
+    }
+
+    public void testCancelFinished() throws Exception {
+        DataNodeInitializer init = newInitializer();
+        init.init(0L);
+        runTasks();
+        Assert.assertEquals(1, source.getIdleCount());
+
+        init.cancel();
+        Assert.assertEquals(DataNodeInitializer.CANCELLED, status(init));
+        Assert.assertEquals(DataNodeInitializer.SUCCESS, init.getProgresses().get(0).getResult());
+        Assert.assertFalse(init.getProgresses().get(0).isUnfinished());
+        Assert.assertEquals(0, source.getIdleCount());
+        Assert.assertEquals(Collections.singletonList("dn"), init.getFailures());
+
+        // 取消后保留失败节点的结果
+        fail = true;
+        setUp();
+        init = newInitializer();
+        init.init(0L);
+        runTasks();
+        init.cancel();
+        Assert.assertEquals(DataNodeInitializer.CANCELLED, status(init));
+        Assert.assertEquals(DataNodeInitializer.FAILURE, init.getProgresses().get(0).getResult());
+    }
+
+    public void testCancelRace() throws Exception {
+        for (int i = 0; i < 200; ++i) {
+            setUp();
+            final DataNodeInitializer init = newInitializer();
+            init.init(0L);
+            final Runnable task = tasks.poll();
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    task.run();
+                }
+            };
+            t.start();
+            init.cancel();
+            t.join();
+            Assert.assertEquals(DataNodeInitializer.CANCELLED, status(init));
+            Assert.assertEquals(0, source.getIdleCount());
+        }
+    }
+
+}
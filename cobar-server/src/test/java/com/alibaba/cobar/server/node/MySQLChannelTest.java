@@ -0,0 +1,173 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.node;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.Isolations;
+import com.alibaba.cobar.net.packet.OkPacket;
+import com.alibaba.cobar.server.ErrorPacketException;
+import com.alibaba.cobar.server.config.DataNodeConfig;
+import com.alibaba.cobar.server.config.DataSourceConfig;
+
+/**
+ * @author xianmao.hexm
+ */
+public class MySQLChannelTest extends TestCase {
+
+    private static final int LATIN1 = 8;
+    private static final int UTF8 = 33;
+    private static final byte[] ERROR = error("sync failed");
+
+    private MockServer server;
+    private MySQLChannel channel;
+
+    @Override
+    protected void setUp() throws Exception {
+        DataNodeConfig dnc = new DataNodeConfig();
+        dnc.setName("dn");
+        DataSourceConfig dsc = new DataSourceConfig();
+        dsc.setName("ds");
+        MySQLDataSource ds = new MySQLDataSource(new MySQLDataNode(dnc), 0, dsc, 1, new ChannelFactory() {
+            @Override
+            public Channel make(MySQLDataSource dataSource) {
+                return new MySQLChannel(dataSource);
+            }
+        });
+        server = new MockServer();
+        channel = new MySQLChannel(ds);
+        channel.setStreams(server.in, server.out, LATIN1);
+    }
+
+    public void testSyncOrder() throws IOException {
+        server.replies(OkPacket.OK, OkPacket.OK, OkPacket.OK, OkPacket.OK);
+        channel.execute("select 1", UTF8, Isolations.READ_COMMITTED, false);
+
+        // 事务级别和递交模式逐条确认，字符集设置与语句一次递交
+        List<List<String>> flushes = server.flushes;
+        Assert.assertEquals(3, flushes.size());
+        Assert.assertEquals("[SET SESSION TRANSACTION ISOLATION LEVEL READ COMMITTED]", flushes.get(0).toString());
+        Assert.assertEquals("[SET autocommit=0]", flushes.get(1).toString());
+        Assert.assertEquals("[SET names utf8, select 1]", flushes.get(2).toString());
+        Assert.assertEquals(StatusIdleStack.status(UTF8, Isolations.READ_COMMITTED, false),
+                channel.getSessionStatus());
+    }
+
+    public void testAutocommitError() throws IOException {
+        server.replies(OkPacket.OK, ERROR);
+        try {
+            channel.execute("select 1", UTF8, Isolations.READ_COMMITTED, false);
+            Assert.fail("autocommit sync failed");
+        } catch (ErrorPacketException e) {
+        }
+
+        // 语句未写出，通道仍可使用
+        Assert.assertEquals(2, server.flushes.size());
+        Assert.assertEquals("[SET autocommit=0]", server.flushes.get(1).toString());
+        Assert.assertFalse(channel.isClosed());
+        Assert.assertTrue(channel.isAutocommit());
+        Assert.assertEquals(StatusIdleStack.status(LATIN1, Isolations.READ_COMMITTED, true),
+                channel.getSessionStatus());
+    }
+
+    public void testCharsetError() throws IOException {
+        server.replies(ERROR, OkPacket.OK);
+        try {
+            channel.execute("select 1", UTF8, 0, true);
+            Assert.fail("charset sync failed");
+        } catch (ErrorPacketException e) {
+        }
+
+        // 语句已随字符集设置写出，其返回无法对应，关闭通道(之后写出的是QUIT)
+        Assert.assertEquals(2, server.flushes.size());
+        Assert.assertEquals("[SET names utf8, select 1]", server.flushes.get(0).toString());
+        Assert.assertTrue(channel.isClosed());
+    }
+
+    private static byte[] error(String message) {
+        byte[] msg = message.getBytes();
+        int size = 9 + msg.length;
+        byte[] b = new byte[4 + size];
+        b[0] = (byte) size;
+        b[3] = 1;
+        b[4] = (byte) 0xff;
+        b[5] = (byte) 0xe8;
+        b[6] = 0x03;
+        b[7] = '#';
+        System.arraycopy("HY000".getBytes(), 0, b, 8, 5);
+        System.arraycopy(msg, 0, b, 13, msg.length);
+        return b;
+    }
+
+    /**
+     * 按收到的命令依次返回预设的响应，读取尚未发送的命令的响应时报错。
+     */
+    private static final class MockServer {
+        private final LinkedList<byte[]> replies = new LinkedList<byte[]>();
+        private final List<List<String>> flushes = new ArrayList<List<String>>();
+        private int sent;
+        private byte[] pending = new byte[0];
+        private int pos;
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                List<String> cmds = new ArrayList<String>();
+                byte[] b = toByteArray();
+                for (int i = 0; i < b.length;) {
+                    int len = (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) | ((b[i + 2] & 0xff) << 16);
+                    cmds.add(new String(b, i + 5, len - 1));
+                    i += 4 + len;
+                }
+                reset();
+                if (!cmds.isEmpty()) {
+                    flushes.add(cmds);
+                    sent += cmds.size();
+                }
+            }
+        };
+
+        private final InputStream in = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if (pos == pending.length) {
+                    if (sent == 0) {
+                        throw new IOException("read before the command is sent");
+                    }
+                    --sent;
+                    pending = replies.poll();
+                    pos = 0;
+                }
+                return pending[pos++] & 0xff;
+            }
+        };
+
+        void replies(byte[]... packets) {
+            for (byte[] p : packets) {
+                replies.add(p);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.node;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.server.config.DataNodeConfig;
+import com.alibaba.cobar.server.config.DataSourceConfig;
+
+/**
+ * @author xianmao.hexm
+ */
+public class MySQLDataSourceTest extends TestCase {
+
+    private final AtomicInteger made = new AtomicInteger();
+
+    private MySQLDataSource newSource(int size, long waitTimeout) {
+        DataNodeConfig dnc = new DataNodeConfig();
+        dnc.setName("dn");
+        dnc.setWaitTimeout(waitTimeout);
+        DataSourceConfig dsc = new DataSourceConfig();
+        dsc.setName("ds");
+        return new MySQLDataSource(new MySQLDataNode(dnc), 0, dsc, size, new ChannelFactory() {
+            @Override
+            public Channel make(MySQLDataSource dataSource) {
+                made.incrementAndGet();
+                return new TestChannel(dataSource);
+            }
+        });
+    }
+
+    public void testBoundAndTimeout() throws Exception {
+        MySQLDataSource ds = newSource(2, 50L);
+        Channel c1 = ds.getChannel();
+        Channel c2 = ds.getChannel();
+        Assert.assertEquals(2, ds.getActiveCount());
+        try {
+            ds.getChannel();
+            Assert.fail("pool is full");
+        } catch (TimeoutException e) {
+        }
+        Assert.assertEquals(2, ds.getActiveCount());
+        Assert.assertEquals(1L, ds.getWaitRecorder().getTimeoutCount());
+
+        c1.release();
+        c2.release();
+        Assert.assertEquals(0, ds.getActiveCount());
+        Assert.assertEquals(2, ds.getIdleCount());
+        Assert.assertEquals(2, made.get());
+    }
+
+    public void testIdleCheck() throws Exception {
+        MySQLDataSource ds = newSource(4, 50L);
+        Channel c1 = ds.getChannel();
+        Channel c2 = ds.getChannel();
+        Channel c3 = ds.getChannel();
+        c1.release();
+        c2.release();
+        c3.release();
+        c1.setLastActiveTime(0L);
+        c3.closeNoActive();
+        ds.idleCheck(60 * 1000L);
+        Assert.assertTrue(c1.isClosed());
+        Assert.assertEquals(1, ds.getIdleCount());
+        Assert.assertSame(c2, ds.getChannel());
+    }
+
+    public void testHandoff() throws Exception {
+        final MySQLDataSource ds = newSource(1, 10 * 1000L);
+        Channel c1 = ds.getChannel();
+        final AtomicReference<Channel> got = new AtomicReference<Channel>();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    got.set(ds.getChannel());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        t.start();
+        while (t.getState() != Thread.State.TIMED_WAITING && t.isAlive()) {
+            Thread.sleep(1L);
+        }
+        c1.release();
+        t.join(5000L);
+        Assert.assertSame(c1, got.get());
+        Assert.assertEquals(1, ds.getActiveCount());
+        Assert.assertEquals(0, ds.getIdleCount());
+        Assert.assertEquals(1, made.get());
+    }
+
+    public void testClosedChannelGrantsSlot() throws Exception {
+        final MySQLDataSource ds = newSource(1, 10 * 1000L);
+        Channel c1 = ds.getChannel();
+        final AtomicReference<Channel> got = new AtomicReference<Channel>();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    got.set(ds.getChannel());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        t.start();
+        while (t.getState() != Thread.State.TIMED_WAITING && t.isAlive()) {
+            Thread.sleep(1L);
+        }
+        c1.close();
+        t.join(5000L);
+        Assert.assertNotNull(got.get());
+        Assert.assertTrue(c1 != got.get());
+        Assert.assertEquals(1, ds.getActiveCount());
+        Assert.assertEquals(2, made.get());
+    }
+
+    public void testConcurrentBorrow() throws Exception {
+        final int size = 4;
+        final MySQLDataSource ds = newSource(size, 10 * 1000L);
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 16; i++) {
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 2000; j++) {
+                            TestChannel c = (TestChannel) ds.getChannel();
+                            if (!c.borrowed.compareAndSet(false, true) || ds.getActiveCount() > size) {
+                                errors.incrementAndGet();
+                            }
+                            c.borrowed.set(false);
+                            c.release();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                        e.printStackTrace();
+                    }
+                }
+            };
+            threads.add(t);
+            t.start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertEquals(0, errors.get());
+        Assert.assertEquals(0, ds.getActiveCount());
+        Assert.assertTrue(made.get() <= size);
+        Assert.assertEquals(made.get(), ds.getIdleCount());
+    }
+
+    public void testFillIdle() throws Exception {
+        final Queue<Runnable> tasks = new LinkedList<Runnable>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                tasks.offer(task);
+            }
+        };
+        MySQLDataSource ds = newSource(4, 50L);
+        Channel c1 = ds.getChannel();
+
+        // 建连未完成时重复补足，不重复创建
+        ds.fillIdle(2, executor);
+        ds.fillIdle(2, executor);
+        Assert.assertEquals(2, tasks.size());
+        Assert.assertEquals(0, ds.getIdleCount());
+
+        // 建连中的连接计入池大小
+        ds.fillIdle(4, executor);
+        Assert.assertEquals(3, tasks.size());
+
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+        Assert.assertEquals(3, ds.getIdleCount());
+        Assert.assertEquals(4, made.get());
+
+        ds.fillIdle(4, executor);
+        Assert.assertEquals(0, tasks.size());
+        c1.release();
+        Assert.assertEquals(4, ds.getIdleCount());
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.node;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 不连接数据库的通道，供数据源相关的测试使用。
+ * 
+ * @author xianmao.hexm
+ */
+final class TestChannel implements Channel {
+    final AtomicBoolean borrowed = new AtomicBoolean(false);
+    private final MySQLDataSource dataSource;
+    private final Exception connectError;
+    private volatile boolean closed;
+    private volatile long lastActiveTime;
+    private volatile boolean running;
+
+    TestChannel(MySQLDataSource dataSource) {
+        this(dataSource, null);
+    }
+
+    /**
+     * @param connectError connect()时抛出的异常，为null时连接成功
+     */
+    TestChannel(MySQLDataSource dataSource, Exception connectError) {
+        this.dataSource = dataSource;
+        this.connectError = connectError;
+    }
+
+    @Override
+    public long getLastAcitveTime() {
+        return lastActiveTime;
+    }
+
+    @Override
+    public void setLastActiveTime(long time) {
+        this.lastActiveTime = time;
+    }
+
+    @Override
+    public void connect(long timeout) throws Exception {
+        if (connectError != null) {
+            throw connectError;
+        }
+    }
+
+    @Override
+    public boolean isAutocommit() {
+        return true;
+    }
+
+    @Override
+    public int getSessionStatus() {
+        return 0;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    @Override
+    public void release() {
+        dataSource.releaseChannel(this);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void kill() {
+        close();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dataSource.deActive();
+    }
+
+    @Override
+    public void closeNoActive() {
+        closed = true;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.server.prepare;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.alibaba.cobar.Fields;
+import com.alibaba.cobar.net.packet.BindValue;
+import com.alibaba.cobar.parser.recognizer.lexer.SQLLexer;
+import com.alibaba.cobar.parser.recognizer.syntax.SQLExprParser;
+
+/**
+ * @author xianmao.hexm
+ */
+public class BindValueUtilTest extends TestCase {
+
+    private static BindValue value(int type, Object value) {
+        BindValue bv = new BindValue();
+        bv.type = type;
+        bv.value = value;
+        return bv;
+    }
+
+    private static String literal(int type, Object value) throws Exception {
+        return BindValueUtil.toLiteral(value(type, value), "utf8");
+    }
+
+    public void testDecimal() throws Exception {
+        Assert.assertEquals("12.50", literal(Fields.FIELD_TYPE_NEW_DECIMAL, "12.50".getBytes()));
+        Assert.assertEquals("-1000", literal(Fields.FIELD_TYPE_DECIMAL, "-1E+3".getBytes()));
+        Assert.assertEquals("_utf8 X'312D31'", literal(Fields.FIELD_TYPE_NEW_DECIMAL, "1-1".getBytes()));
+        Assert.assertEquals("_utf8 X'2D2D'", literal(Fields.FIELD_TYPE_NEW_DECIMAL, "--".getBytes()));
+        Assert.assertEquals("_utf8 X'65'", literal(Fields.FIELD_TYPE_DECIMAL, "e".getBytes()));
+    }
+
+    public void testDouble() throws Exception {
+        Assert.assertEquals("1.5", literal(Fields.FIELD_TYPE_DOUBLE, Double.valueOf(1.5)));
+        try {
+            literal(Fields.FIELD_TYPE_DOUBLE, Double.valueOf(Double.NaN));
+            Assert.fail("NaN");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            literal(Fields.FIELD_TYPE_FLOAT, Float.valueOf(Float.NEGATIVE_INFINITY));
+            Assert.fail("Infinity");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testString() throws Exception {
+        Assert.assertEquals("_utf8 X'612762'", literal(Fields.FIELD_TYPE_VAR_STRING, "a'b".getBytes()));
+        Assert.assertEquals("_utf8 X''", literal(Fields.FIELD_TYPE_STRING, new byte[0]));
+        Assert.assertEquals("'2012-01-01 00:00:00'", literal(Fields.FIELD_TYPE_DATETIME, "2012-01-01 00:00:00"));
+        Assert.assertEquals("'it''s'", literal(Fields.FIELD_TYPE_DATETIME, "it's"));
+        Assert.assertEquals("_utf8 X'615C62'", literal(Fields.FIELD_TYPE_DATETIME, "a\\b"));
+        try {
+            BindValueUtil.toLiteral(value(Fields.FIELD_TYPE_VAR_STRING, "a".getBytes()), "unknown");
+            Assert.fail("unknown charset");
+        } catch (UnsupportedEncodingException e) {
+        }
+    }
+
+    public void testInjection() throws Exception {
+        // NO_BACKSLASH_ESCAPES下\'不是转义，引号形式会在此结束字面量
+        String value = "\\'; DROP TABLE offer; -- ";
+        String literal = literal(Fields.FIELD_TYPE_VAR_STRING, value.getBytes("utf-8"));
+        Assert.assertTrue(literal.matches("_utf8 X'[0-9A-F]*'"));
+        SQLExprParser parser = new SQLExprParser(new SQLLexer(literal), "utf8");
+        Assert.assertEquals(value, parser.expression().evaluation(Collections.emptyMap()));
+
+        value = "\u4e2d\u6587'";
+        literal = literal(Fields.FIELD_TYPE_VAR_STRING, value.getBytes("utf-8"));
+        parser = new SQLExprParser(new SQLLexer(literal), "utf8");
+        Assert.assertEquals(value, parser.expression().evaluation(Collections.emptyMap()));
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.cobar.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.cobar.Capabilities;
+import com.alibaba.cobar.Commands;
+import com.alibaba.cobar.net.packet.AuthPacket;
+import com.alibaba.cobar.net.packet.BinaryPacket;
+import com.alibaba.cobar.net.packet.CommandPacket;
+import com.alibaba.cobar.net.packet.EOFPacket;
+import com.alibaba.cobar.net.packet.ErrorPacket;
+import com.alibaba.cobar.net.packet.HandshakePacket;
+import com.alibaba.cobar.net.packet.OkPacket;
+import com.alibaba.cobar.net.util.SecurityUtil;
+
+/**
+ * 阻塞后端与NIO后端的吞吐量对比，需要预先启动两个Cobar实例，其中一个配置nioBackend=true。
+ * 
+ * <pre>
+ * 参数：host blockingPort nioPort user password schema sql [threads] [seconds]
+ * </pre>
+ * 
+ * @author xianmao.hexm
+ */
+public class SessionPerfMain {
+
+    private static final long CLIENT_FLAGS = Capabilities.CLIENT_LONG_PASSWORD | Capabilities.CLIENT_LONG_FLAG
+            | Capabilities.CLIENT_CONNECT_WITH_DB | Capabilities.CLIENT_PROTOCOL_41
+            | Capabilities.CLIENT_TRANSACTIONS | Capabilities.CLIENT_SECURE_CONNECTION;
+
+    private final String host;
+    private final String user;
+    private final String password;
+    private final String schema;
+    private final String sql;
+
+    public SessionPerfMain(String host, String user, String password, String schema, String sql) {
+        this.host = host;
+        this.user = user;
+        this.password = password;
+        this.schema = schema;
+        this.sql = sql;
+    }
+
+    /**
+     * 在指定端口上以threads个连接压测seconds秒，返回QPS。
+     */
+    public double run(final int port, int threads, final int seconds) throws Exception {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong error = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    Socket socket = null;
+                    try {
+                        socket = new Socket(host, port);
+                        socket.setTcpNoDelay(true);
+                        InputStream in = new BufferedInputStream(socket.getInputStream());
+                        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                        login(in, out);
+                        start.await();
+                        long deadline = System.currentTimeMillis() + seconds * 1000L;
+                        while (System.currentTimeMillis() < deadline) {
+                            if (query(in, out)) {
+                                count.incrementAndGet();
+                            } else {
+                                error.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        if (socket != null) {
+                            try {
+                                socket.close();
+                            } catch (IOException e) {
+                            }
+                        }
+                        end.countDown();
+                    }
+                }
+            }.start();
+        }
+        long t1 = System.currentTimeMillis();
+        start.countDown();
+        end.await();
+        long t2 = System.currentTimeMillis();
+        if (error.get() > 0) {
+            System.out.println("port " + port + " errors: " + error.get());
+        }
+        return count.get() * 1000D / (t2 - t1);
+    }
+
+    private void login(InputStream in, OutputStream out) throws Exception {
+        BinaryPacket bin = new BinaryPacket();
+        bin.read(in);
+        HandshakePacket hsp = new HandshakePacket();
+        hsp.read(bin);
+
+        AuthPacket ap = new AuthPacket();
+        ap.packetId = 1;
+        ap.clientFlags = CLIENT_FLAGS;
+        ap.maxPacketSize = 16 * 1024 * 1024;
+        ap.charsetIndex = hsp.serverCharsetIndex & 0xff;
+        ap.user = user;
+        if (password != null && password.length() > 0) {
+            byte[] seed = new byte[hsp.seed.length + hsp.restOfScrambleBuff.length];
+            System.arraycopy(hsp.seed, 0, seed, 0, hsp.seed.length);
+            System.arraycopy(hsp.restOfScrambleBuff, 0, seed, hsp.seed.length, hsp.restOfScrambleBuff.length);
+            ap.password = SecurityUtil.scramble411(password.getBytes(), seed);
+        }
+        ap.database = schema;
+        ap.write(out);
+        out.flush();
+
+        bin = new BinaryPacket();
+        bin.read(in);
+        if (bin.data[0] != OkPacket.FIELD_COUNT) {
+            throw new IOException("login failed: " + bin);
+        }
+    }
+
+    private boolean query(InputStream in, OutputStream out) throws IOException {
+        CommandPacket cmd = new CommandPacket();
+        cmd.packetId = 0;
+        cmd.command = Commands.COM_QUERY;
+        cmd.arg = sql.getBytes();
+        cmd.write(out);
+        out.flush();
+
+        BinaryPacket bin = new BinaryPacket();
+        bin.read(in);
+        switch (bin.data[0]) {
+        case OkPacket.FIELD_COUNT:
+            return true;
+        case ErrorPacket.FIELD_COUNT:
+            return false;
+        default:
+            // 结果集：字段列表和行数据各以一个EOF包结束
+            int eof = 0;
+            while (eof < 2) {
+                bin = new BinaryPacket();
+                bin.read(in);
+                if (bin.data[0] == ErrorPacket.FIELD_COUNT) {
+                    return false;
+                }
+                if (bin.data[0] == EOFPacket.FIELD_COUNT && bin.packetLength < 9) {
+                    ++eof;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 7) {
+            System.out.println("usage: host blockingPort nioPort user password schema sql [threads] [seconds]");
+            return;
+        }
+        String host = args[0];
+        int blockingPort = Integer.parseInt(args[1]);
+        int nioPort = Integer.parseInt(args[2]);
+        int threads = args.length > 7 ? Integer.parseInt(args[7]) : 64;
+        int seconds = args.length > 8 ? Integer.parseInt(args[8]) : 30;
+        SessionPerfMain test = new SessionPerfMain(host, args[3], args[4], args[5], args[6]);
+
+        // 预热
+        test.run(blockingPort, threads, 5);
+        test.run(nioPort, threads, 5);
+
+        double blocking = test.run(blockingPort, threads, seconds);
+        double nio = test.run(nioPort, threads, seconds);
+        System.out.println("threads=" + threads + ", seconds=" + seconds);
+        System.out.println("blocking backend: " + (long) blocking + " qps");
+        System.out.println("nio backend     : " + (long) nio + " qps");
+    }
+
+}